@@ -92,6 +92,7 @@ public final class Const
     PREF_KEY_LINUX_WORKAROUND = "linuxWindowResizabilityWorkaround",
     PREF_KEY_PDFJS_SIDEBAR_VIEW = "pdfjsSidebarView",
     PREF_KEY_FONT_SIZE = "fontSize",
+    PREF_KEY_RECORD_SNAPSHOTS = "recordSnapshots",
 
     PREF_KEY_IMPORT_ACTION_MOVE = "move",
     PREF_KEY_IMPORT_ACTION_COPY = "copy",
@@ -30,20 +30,26 @@ import static org.hypernomicon.view.tabs.HyperTab.TabEnum.*;
 import static org.hypernomicon.model.records.HDT_RecordType.*;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.hypernomicon.model.HyperDB;
@@ -70,7 +76,7 @@ public class FolderTreeWatcher
     private final WatcherEventKind kind;
     private final PathInfo oldPathInfo, newPathInfo;
 
-    private WatcherEvent(WatcherEventKind kind, PathInfo oldPathInfo, PathInfo newPathInfo)
+    WatcherEvent(WatcherEventKind kind, PathInfo oldPathInfo, PathInfo newPathInfo)
     {
       this.kind = kind;
       this.oldPathInfo = oldPathInfo;
@@ -81,6 +87,126 @@ public class FolderTreeWatcher
     {
       return ((oldPathInfo != null) && oldPathInfo.isDirectory()) || ((newPathInfo != null) && newPathInfo.isDirectory());
     }
+
+    WatcherEventKind getKind()     { return kind; }
+    PathInfo getOldPathInfo()      { return oldPathInfo; }
+    PathInfo getNewPathInfo()      { return newPathInfo; }
+    FilePath getFilePath()         { return (newPathInfo == null ? oldPathInfo : newPathInfo).getFilePath(); }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Collects the events of one burst of file system activity. Repeated events for the same path are folded
+  // into one, so for example a file that is created and then deleted again within the window produces no
+  // event at all. Deletes and creates are paired into renames when the window is closed, so a rename is
+  // detected even when its two halves arrive in different WatchKey batches.
+  //
+  // A directory that is deleted and then created again is the exception: its contents may be entirely
+  // different, so it is reported as the delete of the old directory, which lets its folder record tree be
+  // reconciled, followed by the create of the new one.
+
+  static class EventWindow
+  {
+    private final Map<FilePath, WatcherEvent> pathToEvent = new LinkedHashMap<>(),
+                                              replacedDirToDelete = new HashMap<>();
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    boolean isEmpty() { return pathToEvent.isEmpty(); }
+
+    void add(WatcherEvent event)
+    {
+      FilePath filePath = event.getFilePath();
+      WatcherEvent prevEvent = pathToEvent.remove(filePath);
+
+      if (prevEvent == null)
+      {
+        pathToEvent.put(filePath, event);
+        return;
+      }
+
+      switch (prevEvent.kind)
+      {
+        case wekCreate :
+
+          if (event.kind == wekDelete)
+          {
+            WatcherEvent deleteEvent = replacedDirToDelete.remove(filePath);
+            if (deleteEvent == null) return;                          // Temporary file; nothing to report
+
+            event = deleteEvent;                                      // Replaced directory was deleted again
+          }
+          else if (event.kind == wekModify)
+            event = prevEvent;                                        // Still a new file
+          break;
+
+        case wekDelete :
+
+          if (event.kind == wekCreate)
+          {
+            if (prevEvent.isDirectory() || event.isDirectory())       // Directory was replaced
+              replacedDirToDelete.put(filePath, prevEvent);
+            else                                                      // File was replaced
+              event = new WatcherEvent(wekModify, prevEvent.oldPathInfo, event.newPathInfo);
+          }
+          break;
+
+        default : break;
+      }
+
+      pathToEvent.put(filePath, event);
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    // A delete and a create in the same folder are treated as a rename, as long as that folder has exactly
+    // one of each; otherwise there is no way to tell which old name became which new one. A replaced
+    // directory's delete and create are never paired.
+
+    List<WatcherEvent> close()
+    {
+      Map<FilePath, List<WatcherEvent>> folderToDeletes = new HashMap<>(), folderToCreates = new HashMap<>();
+
+      pathToEvent.values().forEach(event ->
+      {
+        if (event.kind == wekDelete)
+          folderToDeletes.computeIfAbsent(event.oldPathInfo.getFilePath().getParent(), dir -> new ArrayList<>()).add(event);
+        else if ((event.kind == wekCreate) && (replacedDirToDelete.containsKey(event.getFilePath()) == false))
+          folderToCreates.computeIfAbsent(event.newPathInfo.getFilePath().getParent(), dir -> new ArrayList<>()).add(event);
+      });
+
+      Map<WatcherEvent, WatcherEvent> deleteToRename = new HashMap<>();
+      List<WatcherEvent> pairedCreates = new ArrayList<>();
+
+      folderToDeletes.forEach((folder, deletes) ->
+      {
+        List<WatcherEvent> creates = folderToCreates.get(folder);
+
+        if ((folder == null) || (deletes.size() != 1) || (creates == null) || (creates.size() != 1)) return;
+
+        deleteToRename.put(deletes.get(0), new WatcherEvent(wekRename, deletes.get(0).oldPathInfo, creates.get(0).newPathInfo));
+        pairedCreates.add(creates.get(0));
+      });
+
+      List<WatcherEvent> eventList = new ArrayList<>();
+
+      pathToEvent.values().forEach(event ->
+      {
+        if (pairedCreates.contains(event)) return;
+
+        if (event.kind == wekCreate)
+          nullSwitch(replacedDirToDelete.get(event.getFilePath()), eventList::add);
+
+        eventList.add(deleteToRename.getOrDefault(event, event));
+      });
+
+      pathToEvent.clear();
+      replacedDirToDelete.clear();
+      return eventList;
+    }
   }
 
 //---------------------------------------------------------------------------
@@ -91,18 +217,20 @@ public class FolderTreeWatcher
     private boolean done = false;
     private final WatchService watcher;
     private final Map<WatchKey, HDT_Folder> watchKeyToDir;
+    private final boolean registerAll;
     private boolean sentResponse = false;
     private HDB_MessageType requestType;
 
   //---------------------------------------------------------------------------
   //---------------------------------------------------------------------------
 
-    WatcherThread(WatchService watcher, Map<WatchKey, HDT_Folder> watchKeyToDir)
+    WatcherThread(WatchService watcher, Map<WatchKey, HDT_Folder> watchKeyToDir, boolean registerAll)
     {
       super();
 
       this.watcher = watcher;
       this.watchKeyToDir = watchKeyToDir;
+      this.registerAll = registerAll;
 
       start();
     }
@@ -110,24 +238,83 @@ public class FolderTreeWatcher
   //---------------------------------------------------------------------------
   //---------------------------------------------------------------------------
 
+    // Keys have to be reset, otherwise they are never signalled again
+
     private void clearKeyQueue()
     {
-      while (watcher.poll() != null);
+      for (WatchKey watchKey = watcher.poll(); watchKey != null; watchKey = watcher.poll())
+      {
+        watchKey.pollEvents();
+        watchKey.reset();
+      }
     }
 
-    //---------------------------------------------------------------------------
-    //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
 
-    @Override public void run()
+    // Registrations are kept while the watcher is stopped. Changes made in the meantime are not processed,
+    // but directories that were created or moved into the tree still have to be registered.
+
+    private void registerNewSubtrees() throws IOException
     {
-      clearKeyQueue();
+      for (WatchKey watchKey = watcher.poll(); watchKey != null; watchKey = watcher.poll())
+      {
+        Path dirPath = getDirPath(watchKey);
+
+        for (WatchEvent<?> event : watchKey.pollEvents())
+        {
+          if (event.kind() == OVERFLOW)
+            registerTree(new FilePath(dirPath));
+          else if (event.kind() == ENTRY_CREATE)
+          {
+            Path path = dirPath.resolve((Path) event.context());
 
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+              registerTree(new FilePath(path));
+          }
+        }
+
+        watchKey.reset();
+      }
+
+      watchKeyToDir.keySet().removeIf(watchKey -> watchKey.isValid() == false);
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    // The folder record follows the directory if it was renamed by the program; the watchable is the path
+    // the directory had when it was registered
+
+    private Path getDirPath(WatchKey watchKey)
+    {
+      HDT_Folder folder = watchKeyToDir.get(watchKey);
+
+      if ((folder != null) && (folder.getID() > 0))
+        return folder.filePath().toPath();
+
+      return (Path) watchKey.watchable();
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    @Override public void run()
+    {
       try
       {
-        registerTree(db.getRootPath());
+        if (registerAll)
+        {
+          clearKeyQueue();
+          registerTree(db.getRootPath());
+        }
+        else
+          registerNewSubtrees();
       }
       catch (IOException e)
       {
+        registeredRootFolder = null; // Register everything again next time
+
         e.printStackTrace();
         messageDialog("Unable to start watch service: " + e.getMessage(), mtError);
         return;
@@ -138,6 +325,8 @@ public class FolderTreeWatcher
 
       clearKeyQueue();
 
+      long lastMessageCheckTime = 0;
+
       while (done == false)
       {
         if (stopRequested)
@@ -146,91 +335,87 @@ public class FolderTreeWatcher
           return;
         }
 
-        List<WatcherEvent> eventList = null;
-        WatchKey watchKey = null;
-
-        if (handleInterComputerMessage() == false)
+        if ((System.currentTimeMillis() - lastMessageCheckTime) >= INTER_COMPUTER_MSG_CHECK_INTERVAL_MS)
         {
-          try { watchKey = watcher.poll(FOLDER_TREE_WATCHER_POLL_TIME_MS, TimeUnit.MILLISECONDS); }
-          catch (InterruptedException e1) { return; }
-        }
+          lastMessageCheckTime = System.currentTimeMillis();
 
-        if (watchKey != null)
-          eventList = new ArrayList<>();
+          if (handleInterComputerMessage())
+          {
+            sleepForMillis(FOLDER_TREE_WATCHER_POLL_TIME_MS);
+            continue;
+          }
+        }
 
-        while (watchKey != null)
-        {
-          List<WatcherEvent> shortList = new ArrayList<>();
+        WatchKey watchKey;
 
-          for (final WatchEvent<?> event : watchKey.pollEvents())
-          {
-            @SuppressWarnings("unchecked")
-            WatchEvent<Path> watchEvent = (WatchEvent<Path>) event;
+        try { watchKey = watcher.poll(FOLDER_TREE_WATCHER_POLL_TIME_MS, TimeUnit.MILLISECONDS); }
+        catch (InterruptedException e1) { return; }
 
-            HDT_Folder folder = watchKeyToDir.get(watchKey);
+        if (watchKey == null) continue;
 
-            if (folder == null)
-            {
-              folder = HyperPath.getFolderFromFilePath(new FilePath((Path)watchKey.watchable()), false);
-              watchKeyToDir.put(watchKey, folder);
-            }
+        // Keep collecting until no new events have arrived for EVENT_QUIET_PERIOD_MS, or until the window has
+        // been open for EVENT_MAX_WINDOW_MS, so that a burst of changes is processed as one change set
 
-            if (folder.getID() > 0)
-            {
-              FilePath filePath = folder.filePath().resolve(new FilePath(watchEvent.context())); // This is what actually changed
-              PathInfo newPathInfo = new PathInfo(filePath);
-              WatcherEvent watcherEvent = null;
+        EventWindow window = new EventWindow();
+        long windowEnd = System.currentTimeMillis() + EVENT_MAX_WINDOW_MS;
 
-              if      (watchEvent.kind() == ENTRY_CREATE) watcherEvent = new WatcherEvent(wekCreate, null,        newPathInfo);
-              else if (watchEvent.kind() == ENTRY_DELETE) watcherEvent = new WatcherEvent(wekDelete, newPathInfo, null       );
-              else if (watchEvent.kind() == ENTRY_MODIFY) watcherEvent = new WatcherEvent(wekModify, newPathInfo, newPathInfo);
+        while (watchKey != null)
+        {
+          addEventsToWindow(watchKey, window);
+          watchKey.reset();
 
-              if (watcherEvent != null)
-                shortList.add(watcherEvent);
-            }
-          }
+          watchKey = watcher.poll();
 
-          int deleteNdx = -1, createNdx = -1;
-          for (int ndx = 0; ndx < shortList.size(); ndx++)
+          if ((watchKey == null) && (stopRequested == false) && (System.currentTimeMillis() < windowEnd))
           {
-            WatcherEvent watcherEvent = shortList.get(ndx);
-
-            if      (watcherEvent.kind == wekDelete) deleteNdx = ndx;
-            else if (watcherEvent.kind == wekCreate) createNdx = ndx;
+            try { watchKey = watcher.poll(EVENT_QUIET_PERIOD_MS, TimeUnit.MILLISECONDS); }
+            catch (InterruptedException e) { return; }
           }
+        }
 
-          if ((deleteNdx >= 0) && (createNdx >= 0))
-          {
-            PathInfo oldPathInfo = shortList.get(deleteNdx).oldPathInfo,
-                     newPathInfo = shortList.get(createNdx).newPathInfo;
+        if (window.isEmpty()) continue;
 
-            if (oldPathInfo.getParentFolder() == newPathInfo.getParentFolder())
-            {
-              shortList.add(new WatcherEvent(wekRename, oldPathInfo, newPathInfo));
-              WatcherEvent watcherEvent = shortList.get(createNdx);
-              shortList.remove(deleteNdx);
-              shortList.remove(watcherEvent);
-            }
-          }
+        try
+        {
+          processEventList(window.close());
+        }
+        catch (IOException e)
+        {
+          messageDialog("Unable to process watcher event list: " + e.getMessage(), mtError);
+        }
+      }
+    }
 
-          eventList.addAll(shortList);
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
 
-          watchKey.reset();
+    private void addEventsToWindow(WatchKey watchKey, EventWindow window)
+    {
+      for (final WatchEvent<?> event : watchKey.pollEvents())
+      {
+        if (event.kind() == OVERFLOW) continue;
 
-          watchKey = watcher.poll();
-        }
+        @SuppressWarnings("unchecked")
+        WatchEvent<Path> watchEvent = (WatchEvent<Path>) event;
 
-        if (eventList != null)
+        HDT_Folder folder = watchKeyToDir.get(watchKey);
+
+        if ((folder == null) || (folder.getID() < 1))
         {
-          try
-          {
-            processEventList(eventList);
-          }
-          catch (IOException e)
-          {
-            messageDialog("Unable to process watcher event list: " + e.getMessage(), mtError);
-          }
+          folder = HyperPath.getFolderFromFilePath(new FilePath((Path)watchKey.watchable()), false);
+          if (folder == null) continue;
+
+          watchKeyToDir.put(watchKey, folder);
         }
+
+        if (folder.getID() < 1) continue;
+
+        FilePath filePath = folder.filePath().resolve(new FilePath(watchEvent.context())); // This is what actually changed
+        PathInfo pathInfo = new PathInfo(filePath);
+
+        if      (watchEvent.kind() == ENTRY_CREATE) window.add(new WatcherEvent(wekCreate, null,     pathInfo));
+        else if (watchEvent.kind() == ENTRY_DELETE) window.add(new WatcherEvent(wekDelete, pathInfo, null    ));
+        else if (watchEvent.kind() == ENTRY_MODIFY) window.add(new WatcherEvent(wekModify, pathInfo, pathInfo));
       }
     }
 
@@ -246,7 +431,9 @@ public class FolderTreeWatcher
         System.out.println("---------------------------");
       }
 
-      boolean dontImport = false;
+      FilePath.clearIdentityCache();
+
+      boolean dontImport = false, needRefresh = false;
 
       for (WatcherEvent watcherEvent : eventList)
       {
@@ -276,8 +463,7 @@ public class FolderTreeWatcher
               else
                 downloading.add(newPathInfo.getFilePath());
 
-            Platform.runLater(fileManagerDlg::refresh);
-
+            needRefresh = true;
             break;
 
           case wekDelete:
@@ -294,21 +480,19 @@ public class FolderTreeWatcher
                 {
                   FilePath oldPath = oldPathInfo.getFilePath();
 
-                  Platform.runLater(() ->
+                  delayedCheckExecutor.schedule(() ->
                   {
-                    sleepForMillis(2000);
-
                     if (oldPath.exists() == false)
                       messageDialog("A file that is in use by the database, \"" + oldPath.getNameOnly() + "\", has been deleted or moved from outside the program. This may or may not cause a data integrity problem. Changes to database files should be made using the Hypernomicon File Manager instead.", mtWarning);
-                  });
+
+                  }, DELAYED_CHECK_MS, TimeUnit.MILLISECONDS);
                 }
               }
               else if (watcherEvent.isDirectory())
                 HDT_Folder.deleteFolderRecordTree((HDT_Folder) hyperPath.getRecord());
             }
 
-            Platform.runLater(fileManagerDlg::refresh);
-
+            needRefresh = true;
             break;
 
           case wekModify:
@@ -357,49 +541,51 @@ public class FolderTreeWatcher
                   FilePath newPath = newPathInfo.getFilePath();
                   final HyperPath hyperPath2 = hyperPath;
 
-                  Platform.runLater(() ->
+                  delayedCheckExecutor.schedule(() ->
                   {
-                    sleepForMillis(2000);
-
                     if ((newPath.exists() == false) || oldPathInfo.getFilePath().equals(newPath)) return;
 
-                    if (confirmDialog("A file that is in use by the database has been renamed from outside the program." + System.lineSeparator() +
-                                      "This may or may not cause a data integrity problem." + System.lineSeparator() +
-                                      "Should the record be reassigned to \"" + newPath.getNameOnly() + "\"?"))
+                    Platform.runLater(() ->
                     {
-                      if (newPath.exists())
+                      if (confirmDialog("A file that is in use by the database has been renamed from outside the program." + System.lineSeparator() +
+                                        "This may or may not cause a data integrity problem." + System.lineSeparator() +
+                                        "Should the record be reassigned to \"" + newPath.getNameOnly() + "\"?"))
                       {
-                        hyperPath2.assign(hyperPath2.parentFolder(), newPath.getNameOnly());
+                        if (newPath.exists())
+                        {
+                          hyperPath2.assign(hyperPath2.parentFolder(), newPath.getNameOnly());
 
-                        HDT_RecordWithPath record = hyperPath2.getRecord();
+                          HDT_RecordWithPath record = hyperPath2.getRecord();
 
-                        if (record != null)
-                        {
-                          if ((record.getType() == hdtWorkFile) && (ui.activeTabEnum() == workTabEnum))
+                          if (record != null)
                           {
-                            HDT_WorkFile workFile = (HDT_WorkFile) record;
-
-                            if (workFile.works.contains(ui.activeRecord()))
+                            if ((record.getType() == hdtWorkFile) && (ui.activeTabEnum() == workTabEnum))
                             {
-                              if      (ui.workHyperTab().wdc != null) ui.workHyperTab().wdc.btnCancel.fire();
-                              else if (ui.workHyperTab().fdc != null) ui.workHyperTab().fdc.btnCancel.fire();
+                              HDT_WorkFile workFile = (HDT_WorkFile) record;
+
+                              if (workFile.works.contains(ui.activeRecord()))
+                              {
+                                if      (ui.workHyperTab().wdc != null) ui.workHyperTab().wdc.btnCancel.fire();
+                                else if (ui.workHyperTab().fdc != null) ui.workHyperTab().fdc.btnCancel.fire();
 
-                              ui.workHyperTab().refreshFiles();
+                                ui.workHyperTab().refreshFiles();
+                              }
                             }
-                          }
-                          else if ((record.getType() == hdtMiscFile) && (ui.activeTabEnum() == fileTabEnum))
-                          {
-                            if (ui.fileHyperTab().fdc != null)
-                              ui.fileHyperTab().fdc.btnCancel.fire();
+                            else if ((record.getType() == hdtMiscFile) && (ui.activeTabEnum() == fileTabEnum))
+                            {
+                              if (ui.fileHyperTab().fdc != null)
+                                ui.fileHyperTab().fdc.btnCancel.fire();
 
-                            ui.fileHyperTab().refreshFile();
+                              ui.fileHyperTab().refreshFile();
+                            }
                           }
                         }
+                        else
+                          messageDialog("The file \"" + newPath.getNameOnly() + "\" no longer exists. Record was not changed.", mtError);
                       }
-                      else
-                        messageDialog("The file \"" + newPath.getNameOnly() + "\" no longer exists. Record was not changed.", mtError);
-                    }
-                  });
+                    });
+
+                  }, DELAYED_CHECK_MS, TimeUnit.MILLISECONDS);
                 }
               }
             }
@@ -410,8 +596,7 @@ public class FolderTreeWatcher
               registerTree(newPathInfo.getFilePath());
             }
 
-            Platform.runLater(fileManagerDlg::refresh);
-
+            needRefresh = true;
             break;
 
           default:
@@ -433,6 +618,9 @@ public class FolderTreeWatcher
           }
         }
       }
+
+      if (needRefresh)
+        Platform.runLater(fileManagerDlg::refresh);
     }
 
   //---------------------------------------------------------------------------
@@ -495,38 +683,70 @@ public class FolderTreeWatcher
   private WatcherThread watcherThread;
   private final FilePathSet downloading = new FilePathSet();
   private final Map<WatchKey, HDT_Folder> watchKeyToDir = new HashMap<>();
+  private HDT_Folder registeredRootFolder = null;
+  private FilePath registeredRootPath = null;
   public static final int FOLDER_TREE_WATCHER_POLL_TIME_MS = 100;
+  private static final int EVENT_QUIET_PERIOD_MS = 300,
+                           EVENT_MAX_WINDOW_MS = 2000,
+                           INTER_COMPUTER_MSG_CHECK_INTERVAL_MS = 500,
+                           DELAYED_CHECK_MS = 2000;  // Time to wait before deciding that a file in use was really deleted or renamed
+
+  // Shared by all calls to registerTree. Kept apart from the common pool because its tasks block on I/O.
+
+  private static final ForkJoinPool registerPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  // Runs the delayed checks so that neither the watcher thread nor the FX thread has to sleep
+
+  private final ScheduledExecutorService delayedCheckExecutor = Executors.newSingleThreadScheduledExecutor(runnable ->
+  {
+    Thread thread = new Thread(runnable, "FolderTreeWatcher delayed checks");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   public static boolean alreadyImporting = false;
   private boolean stopRequested = false,
                   stopped = true,
                   disabled = false;
 
-  public void disable()       { stop(); disabled = true; }
+  public void disable()       { stop(); closeWatchService(); disabled = true; }
   public void enable()        { disabled = false; }
   public boolean isDisabled() { return disabled; }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
+  // Keeps the existing WatchService and its registrations unless the database or its root folder has changed
+  // since they were made, so that stopping and restarting the watcher around a file operation is cheap
+
   public boolean createNewWatcherAndStart()
   {
     stop();
 
     if (disabled || db.isLoaded() == false) return false;
 
-    watchKeyToDir.clear();
+    HDT_Folder rootFolder = db.folders.getByID(ROOT_FOLDER_ID);
+    boolean registerAll = (watcher == null) || (rootFolder != registeredRootFolder) || (db.getRootPath().equals(registeredRootPath) == false);
 
-    try
+    if (registerAll)
     {
-      watcher = FileSystems.getDefault().newWatchService();
-    }
-    catch (IOException e)
-    {
-      e.printStackTrace();
-      return falseWithErrorMessage("Unable to start watch service: " + e.getMessage());
+      closeWatchService();
+
+      try
+      {
+        watcher = FileSystems.getDefault().newWatchService();
+      }
+      catch (IOException e)
+      {
+        e.printStackTrace();
+        return falseWithErrorMessage("Unable to start watch service: " + e.getMessage());
+      }
+
+      registeredRootFolder = rootFolder;
+      registeredRootPath = db.getRootPath();
     }
 
-    start();
+    start(registerAll);
 
     return true;
   }
@@ -534,71 +754,84 @@ public class FolderTreeWatcher
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
+  // Directories are listed and registered in parallel. Folder records are then looked up, and created if
+  // necessary, on the calling thread in order of depth so that parent records always exist first.
+
   private void registerTree(FilePath rootFilePath) throws IOException
   {
-    Files.walkFileTree(rootFilePath.toPath(), new FileVisitor<>()
+    Map<Path, WatchKey> pathToKey = new ConcurrentHashMap<>();
+
+    try
     {
-      /**
-       * Invoked for a directory before entries in the directory are visited.
-       */
-      @Override public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException
-      {
-        Objects.requireNonNull(path);
-        Objects.requireNonNull(attrs);
+      registerPool.invoke(new RegisterTask(rootFilePath.toPath(), watcher, pathToKey));
+    }
+    catch (UncheckedIOException e)
+    {
+      throw e.getCause();
+    }
 
-        if (new FilePath(path).exists() == false) return FileVisitResult.SKIP_SUBTREE;
+    List<Path> paths = new ArrayList<>(pathToKey.keySet());
+    paths.sort(Comparator.comparingInt(Path::getNameCount));
 
-        HDT_Folder folder = HyperPath.getFolderFromFilePath(new FilePath(path), true);
+    for (Path path : paths)
+    {
+      HDT_Folder folder = HyperPath.getFolderFromFilePath(new FilePath(path), true);
 
-        if (folder == null)
-          throw new IOException(new HDB_InternalError(92733));
+      if (folder == null)
+        throw new IOException(new HDB_InternalError(92733));
 
-        watchKeyToDir.put(path.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), folder);
+      watchKeyToDir.put(pathToKey.get(path), folder);
+    }
+  }
 
-        return FileVisitResult.CONTINUE;
-      }
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-      /**
-       * Invoked for a file in a directory.
-       */
-      @Override public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException
-      {
-        Objects.requireNonNull(path);
-        Objects.requireNonNull(attrs);
-        return FileVisitResult.CONTINUE;
-      }
+  private static class RegisterTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
 
-      /**
-       * Invoked for a file that could not be visited.
-       */
-      @Override public FileVisitResult visitFileFailed(Path path, IOException exc) throws IOException
-      {
-        Objects.requireNonNull(path);
+    private final Path dirPath;
+    private final transient WatchService watcher;
+    private final transient Map<Path, WatchKey> pathToKey;
 
-        if (new FilePath(path).exists() == false) return FileVisitResult.CONTINUE; // If folder doesn't exist just keep going
+    private RegisterTask(Path dirPath, WatchService watcher, Map<Path, WatchKey> pathToKey)
+    {
+      this.dirPath = dirPath;
+      this.watcher = watcher;
+      this.pathToKey = pathToKey;
+    }
 
-        throw exc;
-      }
+    @Override protected void compute()
+    {
+      List<RegisterTask> subtasks = new ArrayList<>();
 
-      /**
-       * Invoked for a directory after entries in the directory, and all of their
-       * descendants, have been visited.
-       */
-      @Override public FileVisitResult postVisitDirectory(Path path, IOException exc) throws IOException
+      try
       {
-        Objects.requireNonNull(path);
+        pathToKey.put(dirPath, dirPath.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY));
 
-        if (exc != null) throw exc;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath))
+        {
+          for (Path path : stream)
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+              subtasks.add(new RegisterTask(path, watcher, pathToKey));
+        }
+      }
+      catch (IOException e)
+      {
+        if (Files.exists(dirPath) == false) return; // If folder doesn't exist just keep going
 
-        return FileVisitResult.CONTINUE;
+        throw new UncheckedIOException(e);
       }
-    });
+
+      invokeAll(subtasks);
+    }
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private void start()
+  private void start(boolean registerAll)
   {
     if (watcherThread != null)
     {
@@ -606,7 +839,7 @@ public class FolderTreeWatcher
       stop();
     }
 
-    watcherThread = new WatcherThread(watcher, watchKeyToDir);
+    watcherThread = new WatcherThread(watcher, watchKeyToDir, registerAll);
     stopped = false;
   }
 
@@ -632,25 +865,36 @@ public class FolderTreeWatcher
       try { watcherThread.join(); } catch (InterruptedException e) { noOp(); }
     }
 
-    if ((watcher != null) && (stopped == false))
+    stopped = true;
+    watcherThread = null;
+    return wasRunning;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void closeWatchService()
+  {
+    watchKeyToDir.clear();
+    registeredRootFolder = null;
+    registeredRootPath = null;
+
+    if (watcher == null) return;
+
+    try
     {
-      try
-      {
-        watcher.close();
-        stopped = true;
+      watcher.close();
 
-        if (app.debugging())
-          System.out.println("Watcher closed");
-      }
-      catch (IOException e)
-      {
-        if (app.debugging())
-          System.out.println("Watcher close exception");
-      }
+      if (app.debugging())
+        System.out.println("Watcher closed");
+    }
+    catch (IOException e)
+    {
+      if (app.debugging())
+        System.out.println("Watcher close exception");
     }
 
-    watcherThread = null;
-    return wasRunning;
+    watcher = null;
   }
 
 //---------------------------------------------------------------------------
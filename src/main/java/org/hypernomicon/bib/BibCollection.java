@@ -20,12 +20,12 @@ package org.hypernomicon.bib;
 import org.hypernomicon.bib.LibraryWrapper.LibraryType;
 import org.hypernomicon.bib.mendeley.MendeleyFolder;
 import org.hypernomicon.bib.zotero.ZoteroCollection;
-import org.hypernomicon.util.json.JsonArray;
 import org.hypernomicon.util.json.JsonObj;
 
 public abstract class BibCollection implements BibEntity
 {
   protected JsonObj jObj;
+  private volatile long diskVersion = LibraryWrapper.nextDiskVersion();
 
   public abstract String getName();
   public abstract String getParentKey();
@@ -33,7 +33,10 @@ public abstract class BibCollection implements BibEntity
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  @Override public void saveToDisk(JsonArray jArr) { jArr.add(jObj.clone()); }
+  @Override public JsonObj getDiskObj()    { return jObj; }
+  @Override public long getDiskVersion()   { return diskVersion; }
+
+  protected final void diskObjChanged()    { diskVersion = LibraryWrapper.nextDiskVersion(); }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
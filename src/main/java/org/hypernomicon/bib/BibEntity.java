@@ -17,7 +17,6 @@
 
 package org.hypernomicon.bib;
 
-import org.hypernomicon.util.json.JsonArray;
 import org.hypernomicon.util.json.JsonObj;
 
 public interface BibEntity
@@ -25,5 +24,6 @@ public interface BibEntity
   boolean isSynced();
   void update(JsonObj jObj, boolean updatingExistingDataFromServer, boolean preMerge);
   String getKey();
-  void saveToDisk(JsonArray jArr);
+  JsonObj getDiskObj(); // Returns null for backup copies, which are saved as part of the entry they back up
+  long getDiskVersion(); // Changes whenever the contents of the object returned by getDiskObj may have changed
 }
@@ -38,7 +38,6 @@ import org.hypernomicon.bib.zotero.ZoteroItem;
 import org.hypernomicon.bib.zotero.ZoteroWrapper;
 import org.hypernomicon.model.records.HDT_Work;
 import org.hypernomicon.model.records.SimpleRecordTypes.HDT_WorkType;
-import org.hypernomicon.util.json.JsonArray;
 import org.hypernomicon.util.json.JsonObj;
 
 public abstract class BibEntry extends BibData implements BibEntity
@@ -46,6 +45,7 @@ public abstract class BibEntry extends BibData implements BibEntity
   protected final boolean thisIsBackup;
   protected JsonObj jObj;
   protected BibEntry backupItem = null;
+  private volatile long diskVersion = LibraryWrapper.nextDiskVersion();
 
   protected abstract void syncBookAuthorsTo(RelatedBibEntry relative);
   protected abstract List<String> getCollKeys(boolean deletedOK);
@@ -61,6 +61,11 @@ public abstract class BibEntry extends BibData implements BibEntity
 
   @Override public void setWorkType(HDT_WorkType workType) { if (linkedToWork()) getWork().workType.set(workType); }
 
+  // Versions are unique across all entities, so replacing the backup item also yields a new version
+
+  @Override public long getDiskVersion()  { return backupItem == null ? diskVersion : Math.max(diskVersion, backupItem.diskVersion); }
+  protected final void diskObjChanged()   { diskVersion = LibraryWrapper.nextDiskVersion(); }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -119,16 +124,15 @@ public abstract class BibEntry extends BibData implements BibEntity
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  @Override public void saveToDisk(JsonArray jArr)
+  @Override public JsonObj getDiskObj()
   {
-    if (thisIsBackup) return;
-
-    JsonObj jDiskObj = jObj.clone();
+    if (thisIsBackup) return null;
+    if (backupItem == null) return jObj;
 
-    if (backupItem != null)
-      jDiskObj.put("backupItem", backupItem.jObj);
+    JsonObj jDiskObj = jObj.shallowCopy();
+    jDiskObj.put("backupItem", backupItem.jObj);
 
-    jArr.add(jDiskObj);
+    return jDiskObj;
   }
 
 //---------------------------------------------------------------------------
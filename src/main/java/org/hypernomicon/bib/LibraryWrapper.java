@@ -17,21 +17,37 @@
 
 package org.hypernomicon.bib;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 
+import static java.nio.charset.StandardCharsets.*;
+
 import org.apache.http.client.methods.HttpUriRequest;
+import org.json.simple.JSONValue;
 import org.json.simple.parser.ParseException;
 
 import com.google.common.collect.EnumHashBiMap;
@@ -41,11 +57,13 @@ import org.hypernomicon.HyperTask;
 import org.hypernomicon.bib.data.EntryType;
 import org.hypernomicon.util.JsonHttpClient;
 import org.hypernomicon.util.filePath.FilePath;
-import org.hypernomicon.util.json.JsonArray;
 import org.hypernomicon.util.json.JsonObj;
+import org.hypernomicon.util.json.JsonStreamReader;
 import org.hypernomicon.view.mainText.MainTextUtil;
 import org.hypernomicon.view.workMerge.MergeWorksDlgCtrlr;
 
+import static org.hypernomicon.App.*;
+import static org.hypernomicon.Const.*;
 import static org.hypernomicon.model.HyperDB.*;
 import static org.hypernomicon.util.Util.*;
 import static org.hypernomicon.util.Util.MessageDialogType.*;
@@ -79,6 +97,8 @@ public abstract class LibraryWrapper<BibEntry_T extends BibEntry, BibCollection_
     public boolean getChanged() { return changed; }
   }
 
+  //---------------------------------------------------------------------------
+
   private final List<String> keyList = new ArrayList<>();
 
   protected final Map<String, BibEntry_T> keyToAllEntry = new HashMap<>(), keyToTrashEntry = new HashMap<>();
@@ -87,7 +107,14 @@ public abstract class LibraryWrapper<BibEntry_T extends BibEntry, BibCollection_
   protected final JsonHttpClient jsonClient = new JsonHttpClient();
   protected SyncTask syncTask = null;
   protected HttpUriRequest request = null;
+  protected final Set<HttpUriRequest> activeRequests = ConcurrentHashMap.newKeySet(); // For wrappers that make more than one request at a time
   private BiConsumer<String, String> keyChangeHndlr;
+  private final Map<String, Map<BibEntity, Long>> fileNodeToSavedVersions = new HashMap<>(); // Disk version of each entity as of the last save
+
+  private static final AtomicLong diskVersionCounter = new AtomicLong();
+
+  private static final String BIB_TEMP_FILE_SUFFIX = ".tmp";
+  private static final int BIB_FILE_BUFFER_SIZE = 65536;
 
   protected boolean didMergeDuringSync = false;
 
@@ -110,6 +137,8 @@ public abstract class LibraryWrapper<BibEntry_T extends BibEntry, BibCollection_
 
   public final void setKeyChangeHandler(BiConsumer<String, String> hndlr) { keyChangeHndlr = hndlr; }
 
+  static long nextDiskVersion() { return diskVersionCounter.incrementAndGet(); }
+
   //---------------------------------------------------------------------------
   //---------------------------------------------------------------------------
 
@@ -119,6 +148,7 @@ public abstract class LibraryWrapper<BibEntry_T extends BibEntry, BibCollection_
     keyToTrashEntry.clear();
     keyToColl.clear();
     keyList.clear();
+    fileNodeToSavedVersions.clear();
   }
 
   //---------------------------------------------------------------------------
@@ -131,6 +161,8 @@ public abstract class LibraryWrapper<BibEntry_T extends BibEntry, BibCollection_
 
     if (request != null)
       request.abort();
+
+    activeRequests.forEach(HttpUriRequest::abort);
   }
 
   //---------------------------------------------------------------------------
@@ -342,84 +374,168 @@ public abstract class LibraryWrapper<BibEntry_T extends BibEntry, BibCollection_
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  protected void loadFromJSON(JsonObj jObj)
+  // Returns false if the file does not exist. Entries are created as they are read instead of after the
+  // whole file has been parsed.
+
+  protected final boolean loadFromJsonFile(FilePath filePath) throws IOException, ParseException
   {
-    jObj.getArray(entryFileNode()).getObjs().forEach(itemJsonObj ->
+    try (Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(filePath.toFile()), UTF_8), BIB_FILE_BUFFER_SIZE))
+    {
+      JsonStreamReader.readObjArrays(in, this::loadFromJSON);
+    }
+    catch (FileNotFoundException e)
     {
-      BibEntry_T entry = BibEntry.create(type(), this, itemJsonObj, false);
+      return false;
+    }
+    catch (IOException | ParseException | RuntimeException e)
+    {
+      clear();
+      throw e;
+    }
 
-      if (entry != null)
-        keyToAllEntry.put(entry.getKey(), entry);
-    });
+    return true;
+  }
 
-    nullSwitch(jObj.getArray("trash"), jArr -> jArr.getObjs().forEach(itemJsonObj ->
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void loadFromJSON(String fileNode, JsonObj jObj)
+  {
+    if (fileNode.equals(entryFileNode()) || fileNode.equals("trash"))
     {
-      BibEntry_T entry = BibEntry.create(type(), this, itemJsonObj, false);
+      BibEntry_T entry = BibEntry.create(type(), this, jObj, false);
 
       if (entry == null) return;
 
       keyToAllEntry.put(entry.getKey(), entry);
-      keyToTrashEntry.put(entry.getKey(), entry);
-    }));
 
-    nullSwitch(jObj.getArray(collectionFileNode()), jArr -> jArr.getObjs().forEach(collJsonObj ->
+      if (fileNode.equals("trash"))
+        keyToTrashEntry.put(entry.getKey(), entry);
+    }
+    else if (fileNode.equals(collectionFileNode()))
     {
-      BibCollection_T coll = BibCollection.create(type(), collJsonObj);
+      BibCollection_T coll = BibCollection.create(type(), jObj);
 
       if (coll != null)
         keyToColl.put(coll.getKey(), coll);
-    }));
+    }
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
+  // The file is streamed to a temporary file one entity at a time and then moved over the old file, so the
+  // whole library is never held in memory as one string and an interrupted save leaves the old file intact.
+  //
+  // If no entity has been added, removed, moved to or from the trash, or changed since the last save, the
+  // file is not written at all. Otherwise every entity is serialized again, changed or not: the skip is for the
+  // whole file, not per entity, because keeping each entity's serialized form between saves would hold a second
+  // copy of the library in memory. The library's sync state is saved to the preferences either way.
+
   public void saveToDisk()
   {
-    StringBuilder json = null;
+    FilePath filePath = db.xmlPath(BIB_FILE_NAME), tempFilePath = db.xmlPath(BIB_FILE_NAME + BIB_TEMP_FILE_SUFFIX);
+
+    Collection<BibEntry_T> nonTrashEntries = getNonTrashEntries();
+
+    if (filePath.exists() && unchangedSinceSave(entryFileNode()     , nonTrashEntries        )
+                          && unchangedSinceSave("trash"             , keyToTrashEntry.values())
+                          && unchangedSinceSave(collectionFileNode(), keyToColl.values()     ))
+    {
+      safePrefs();
+      return;
+    }
+
+    Map<String, Map<BibEntity, Long>> newFileNodeToSavedVersions = new HashMap<>();
 
     try
     {
-      JsonObj jMainObj = new JsonObj();
+      try (FileOutputStream fos = new FileOutputStream(tempFilePath.toFile());
+           Writer out = new BufferedWriter(new OutputStreamWriter(fos, UTF_8), BIB_FILE_BUFFER_SIZE))
+      {
+        out.write('{');
+        writeFileNode(out, entryFileNode(), nonTrashEntries, newFileNodeToSavedVersions);
+        out.write(',');
+        writeFileNode(out, "trash", keyToTrashEntry.values(), newFileNodeToSavedVersions);
+        out.write(',');
+        writeFileNode(out, collectionFileNode(), keyToColl.values(), newFileNodeToSavedVersions);
+        out.write('}');
+
+        out.flush();
+        fos.getFD().sync();
+      }
 
-      JsonArray jArr = new JsonArray();
+      replaceFileAtomically(tempFilePath, filePath);
+    }
+    catch (IOException e)
+    {
+      deleteTempFile(tempFilePath);
+      messageDialog("An error occurred while saving bibliographic data to disk.", mtError);
+      return;
+    }
+    catch (Throwable e)
+    {
+      deleteTempFile(tempFilePath);
+      showStackTrace(e);
+      return;
+    }
 
-      for (BibEntry_T entry : getNonTrashEntries())
-        entry.saveToDisk(jArr);
+    fileNodeToSavedVersions.clear();
+    fileNodeToSavedVersions.putAll(newFileNodeToSavedVersions);
+    safePrefs();
+  }
 
-      jMainObj.put(entryFileNode(), jArr);
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-      jArr = new JsonArray();
+  private static void deleteTempFile(FilePath tempFilePath)
+  {
+    try { Files.deleteIfExists(tempFilePath.toPath()); }
+    catch (IOException e) { noOp(); }
+  }
 
-      for (BibEntry_T entry : keyToTrashEntry.values())
-        entry.saveToDisk(jArr);
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-      jMainObj.put("trash", jArr);
+  // The entities must be the same ones, in any order, with the same disk versions
 
-      jArr = new JsonArray();
+  private boolean unchangedSinceSave(String fileNode, Collection<? extends BibEntity> entities)
+  {
+    Map<BibEntity, Long> savedVersions = fileNodeToSavedVersions.get(fileNode);
 
-      for (BibCollection_T coll : keyToColl.values())
-        coll.saveToDisk(jArr);
+    if ((savedVersions == null) || (savedVersions.size() != entities.size())) return false;
 
-      jMainObj.put(collectionFileNode(), jArr);
+    return entities.stream().allMatch(entity -> nullSwitch(savedVersions.get(entity), false, version -> version == entity.getDiskVersion()));
+  }
 
-      json = new StringBuilder(jMainObj.toString());
-    }
-    catch (Throwable e)
-    {
-      showStackTrace(e);
-      return;
-    }
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-    try
-    {
-      saveStringBuilderToFile(json, db.xmlPath(BIB_FILE_NAME));
-      safePrefs();
-    }
-    catch (IOException e)
+  private static void writeFileNode(Writer out, String fileNode, Collection<? extends BibEntity> entities, Map<String, Map<BibEntity, Long>> fileNodeToVersions) throws IOException
+  {
+    Map<BibEntity, Long> versions = new IdentityHashMap<>();
+    fileNodeToVersions.put(fileNode, versions);
+
+    out.write('"');
+    out.write(JSONValue.escape(fileNode));
+    out.write("\":[");
+
+    boolean first = true;
+
+    for (BibEntity entity : entities)
     {
-      messageDialog("An error occurred while saving bibliographic data to disk.", mtError);
+      versions.put(entity, entity.getDiskVersion());  // Before writing, so a change made while writing is saved next time
+
+      JsonObj jDiskObj = entity.getDiskObj();
+      if (jDiskObj == null) continue;
+
+      if (first == false) out.write(',');
+      first = false;
+
+      jDiskObj.writeTo(out);
     }
+
+    out.write(']');
   }
 
 //---------------------------------------------------------------------------
@@ -33,11 +33,18 @@ public class MendeleyAuthors extends BibAuthors
 {
   private final JsonObj jsonObj;
   private final EntryType entryType;
+  private final Runnable changeHndlr;
 
   MendeleyAuthors(JsonObj jsonObj, EntryType entryType)
+  {
+    this(jsonObj, entryType, null);
+  }
+
+  MendeleyAuthors(JsonObj jsonObj, EntryType entryType, Runnable changeHndlr)
   {
     this.jsonObj = jsonObj;
     this.entryType = entryType;
+    this.changeHndlr = changeHndlr;
   }
 
 //---------------------------------------------------------------------------
@@ -45,6 +52,8 @@ public class MendeleyAuthors extends BibAuthors
 
   @Override public void clear()
   {
+    if (changeHndlr != null) changeHndlr.run();
+
     JsonArray authorsArr = jsonObj.getArray("authors"),
               editorsArr = jsonObj.getArray("editors"),
               transArr   = jsonObj.getArray("translators");
@@ -111,6 +120,8 @@ public class MendeleyAuthors extends BibAuthors
 
   @Override public void add(BibAuthor bibAuthor)
   {
+    if (changeHndlr != null) changeHndlr.run();
+
     String aTypeStr;
 
     switch (bibAuthor.getType())
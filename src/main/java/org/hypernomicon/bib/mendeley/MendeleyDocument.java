@@ -78,7 +78,7 @@ public class MendeleyDocument extends BibEntry implements MendeleyEntity
   @Override public String getKey()          { return jObj.getStr("id"); }
   @Override protected boolean isNewEntry()  { return jObj.containsKey("last_modified") == false; }
   @Override public String getEntryURL()     { return ""; }
-  @Override public BibAuthors getAuthors()  { return linkedToWork() ? new WorkBibAuthors(getWork()) : new MendeleyAuthors(jObj, getEntryType()); }
+  @Override public BibAuthors getAuthors()  { return linkedToWork() ? new WorkBibAuthors(getWork()) : new MendeleyAuthors(jObj, getEntryType(), this::diskObjChanged); }
   @Override public EntryType getEntryType() { return parseMendeleyType(jObj.getStrSafe(getFieldKey(bfEntryType))); }
 
   @Override public LibraryWrapper<?, ?> getLibrary() { return mWrapper; }
@@ -100,6 +100,8 @@ public class MendeleyDocument extends BibEntry implements MendeleyEntity
 
   @Override public void update(JsonObj jObj, boolean updatingExistingDataFromServer, boolean preMerge)
   {
+    diskObjChanged();
+
     this.jObj = jObj;
 
     if (thisIsBackup)
@@ -167,6 +169,8 @@ public class MendeleyDocument extends BibEntry implements MendeleyEntity
 
   @Override public void setStr(BibFieldEnum bibFieldEnum, String newStr)
   {
+    diskObjChanged();
+
     if (linkedToWork())
     {
       switch (bibFieldEnum)
@@ -350,6 +354,8 @@ public class MendeleyDocument extends BibEntry implements MendeleyEntity
 
   @Override public void setMultiStr(BibFieldEnum bibFieldEnum, List<String> list)
   {
+    diskObjChanged();
+
     if (linkedToWork())
     {
       switch (bibFieldEnum)
@@ -582,6 +588,8 @@ public class MendeleyDocument extends BibEntry implements MendeleyEntity
 
         authors.getLists(authorList, editorList, translatorList);
 
+        dest.diskObjChanged();
+
         JsonArray jsonArr = dest.jObj.getArray("editors");
         if (jsonArr == null)
         {
@@ -617,6 +625,8 @@ public class MendeleyDocument extends BibEntry implements MendeleyEntity
 
       case Sibling:
 
+        dest.diskObjChanged();
+
         jsonArr = jObj.getArray("editors");
         if (jsonArr == null)
           dest.jObj.put("editors", new JsonArray());
@@ -50,6 +50,8 @@ public class MendeleyFolder extends BibCollection implements MendeleyEntity
 
   @Override public void update(JsonObj jObj, boolean updatingExistingDataFromServer, boolean preMerge)
   {
+    diskObjChanged();
+
     this.jObj = jObj;
   }
 
@@ -24,11 +24,8 @@ import static org.hypernomicon.bib.data.BibField.BibFieldEnum.*;
 import static org.hypernomicon.util.Util.*;
 import static org.hypernomicon.util.Util.MessageDialogType.*;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.time.Instant;
@@ -586,21 +583,12 @@ public class MendeleyWrapper extends LibraryWrapper<MendeleyDocument, MendeleyFo
 
   @Override public void loadFromDisk(FilePath filePath) throws FileNotFoundException, IOException, ParseException
   {
-    JsonObj jMainObj = null;
     clear();
 
-    try (InputStream in = new FileInputStream(filePath.toFile()))
-    {
-      jMainObj = parseJsonObj(new InputStreamReader(in, UTF_8));
-    }
-    catch (FileNotFoundException e) { noOp(); }
-
-    if (jMainObj != null)
+    if (loadFromJsonFile(filePath))
     {
       String lastSyncTimeStr = db.prefs.get(PREF_KEY_BIB_LAST_SYNC_TIME, "");
       lastSyncTime = lastSyncTimeStr.isBlank() ? Instant.EPOCH : parseIso8601(lastSyncTimeStr);
-
-      loadFromJSON(jMainObj);
     }
   }
 
@@ -41,11 +41,18 @@ public class ZoteroAuthors extends BibAuthors
 
   private final JsonArray creatorsArr;
   private final EntryType entryType;
+  private final Runnable changeHndlr;
 
   ZoteroAuthors(JsonArray creatorsArr, EntryType entryType)
+  {
+    this(creatorsArr, entryType, null);
+  }
+
+  ZoteroAuthors(JsonArray creatorsArr, EntryType entryType, Runnable changeHndlr)
   {
     this.creatorsArr = creatorsArr;
     this.entryType = entryType;
+    this.changeHndlr = changeHndlr;
   }
 
 //---------------------------------------------------------------------------
@@ -53,6 +60,8 @@ public class ZoteroAuthors extends BibAuthors
 
   @Override public void clear()
   {
+    if (changeHndlr != null) changeHndlr.run();
+
     Iterators.removeIf(creatorsArr.getObjs(), creatorObj ->
     {
       AuthorType aType = getAuthorTypeForStr(creatorObj.getStrSafe("creatorType"));
@@ -119,6 +128,8 @@ public class ZoteroAuthors extends BibAuthors
 
   @Override public void add(BibAuthor bibAuthor)
   {
+    if (changeHndlr != null) changeHndlr.run();
+
     AuthorType aType = bibAuthor.getType();
     if ((aType == editor) && ignoreEditors()) return;
 
@@ -46,6 +46,8 @@ public class ZoteroCollection extends BibCollection implements ZoteroEntity
 
   @Override public void update(JsonObj jObj, boolean updatingExistingDataFromServer, boolean preMerge)
   {
+    diskObjChanged();
+
     this.jObj = jObj;
   }
 
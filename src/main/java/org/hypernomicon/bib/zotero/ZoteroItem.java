@@ -80,7 +80,7 @@ public class ZoteroItem extends BibEntry implements ZoteroEntity
   @Override public String getKey()          { return jObj.getStr("key"); }
   @Override public long getVersion()        { return jObj.getLong("version", 0); }
   @Override protected boolean isNewEntry()  { return jObj.containsKey("version") == false; }
-  @Override public BibAuthors getAuthors()  { return linkedToWork() ? new WorkBibAuthors(getWork()) : new ZoteroAuthors(jData.getArray("creators"), getEntryType()); }
+  @Override public BibAuthors getAuthors()  { return linkedToWork() ? new WorkBibAuthors(getWork()) : new ZoteroAuthors(jData.getArray("creators"), getEntryType(), this::diskObjChanged); }
   @Override public EntryType getEntryType() { return parseZoteroType(jData.getStrSafe(getFieldKey(bfEntryType))); }
 
   @Override public LibraryWrapper<?, ?> getLibrary() { return zWrapper; }
@@ -100,6 +100,8 @@ public class ZoteroItem extends BibEntry implements ZoteroEntity
 
   @Override public void update(JsonObj jObj, boolean updatingExistingDataFromServer, boolean preMerge)
   {
+    diskObjChanged();
+
     this.jObj = jObj;
     jData = jObj.getObj("data");
 
@@ -168,6 +170,8 @@ public class ZoteroItem extends BibEntry implements ZoteroEntity
 
   @Override public void setStr(BibFieldEnum bibFieldEnum, String newStr)
   {
+    diskObjChanged();
+
     if (linkedToWork())
     {
       switch (bibFieldEnum)
@@ -334,6 +338,8 @@ public class ZoteroItem extends BibEntry implements ZoteroEntity
 
   @Override public void setMultiStr(BibFieldEnum bibFieldEnum, List<String> list)
   {
+    diskObjChanged();
+
     if (linkedToWork())
     {
       switch (bibFieldEnum)
@@ -560,6 +566,7 @@ public class ZoteroItem extends BibEntry implements ZoteroEntity
         authors.getLists(authorList, editorList, translatorList);
 
         JsonArray creatorsArr = dest.jData.getArray("creators");
+        dest.diskObjChanged();
 
         JsonObjIterator it = creatorsArr.getObjs();
         while (it.hasNext())
@@ -636,6 +643,7 @@ public class ZoteroItem extends BibEntry implements ZoteroEntity
       case Sibling:
 
         JsonArray destCreatorsArr = dest.jData.getArray("creators");
+        dest.diskObjChanged();
 
         it = destCreatorsArr.getObjs();
         while (it.hasNext())
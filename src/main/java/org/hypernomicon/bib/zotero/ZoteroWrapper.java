@@ -24,11 +24,8 @@ import static org.hypernomicon.bib.data.EntryType.*;
 import static org.hypernomicon.util.Util.*;
 import static org.hypernomicon.util.Util.MessageDialogType.*;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.time.Instant;
@@ -36,6 +33,11 @@ import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static java.nio.charset.StandardCharsets.*;
 
@@ -43,6 +45,7 @@ import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.entity.StringEntity;
 import org.json.simple.parser.ParseException;
@@ -50,6 +53,7 @@ import org.json.simple.parser.ParseException;
 import com.google.common.collect.EnumHashBiMap;
 import com.google.common.collect.Lists;
 
+import org.hypernomicon.util.JsonHttpClient;
 import org.hypernomicon.util.filePath.FilePath;
 import org.hypernomicon.util.json.JsonArray;
 import org.hypernomicon.util.json.JsonObj;
@@ -67,15 +71,23 @@ import org.hypernomicon.util.AsyncHttpClient.HttpRequestType;
 
 public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
 {
-  private final String apiKey, userID;
-  private long offlineLibVersion = -1, onlineLibVersion = -1;
-  private Instant backoffTime = null, retryTime = null;
+  private final String apiKey, userID, apiUrl;
+  private volatile long offlineLibVersion = -1, onlineLibVersion = -1;
+  private volatile Instant backoffTime = null, retryTime = null;
+
+  private static final String DEFAULT_API_URL = "https://api.zotero.org/";
+
+  private static final int DOWNLOAD_BATCH_SIZE = 50,        // Maximum number of keys the API accepts per request
+                           MAX_CONCURRENT_DOWNLOADS = 4,
+                           MAX_BATCH_ATTEMPTS = 5,
+                           DEFAULT_RETRY_SEC = 5,           // Used if the server asks to slow down without saying for how long
+                           SC_TOO_MANY_REQUESTS = 429;
 
   static final EnumHashBiMap<EntryType, String> entryTypeMap = initTypeMap();
 
   private static EnumMap<EntryType, JsonObj> templates = null;
 
-  private static enum ZoteroCmd
+  static enum ZoteroCmd
   {
     readItems , readTrash    , readTrashVersions, readChangedItemVersions,
     writeItems, readDeletions, readCollections  , readChangedCollVersions
@@ -85,9 +97,15 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
 //---------------------------------------------------------------------------
 
   public ZoteroWrapper(String apiKey, String userID)
+  {
+    this(apiKey, userID, DEFAULT_API_URL);
+  }
+
+  ZoteroWrapper(String apiKey, String userID, String apiUrl)  // apiUrl can point to a local stand-in for the API in a test
   {
     this.apiKey = apiKey;
     this.userID = userID;
+    this.apiUrl = apiUrl;
   }
 
   JsonObj getTemplate(EntryType type)          { return templates.get(type); }
@@ -104,7 +122,7 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
 
   private JsonArray doWriteCommand(ZoteroCmd command, String jsonPostData) throws TerminateTaskException, UnsupportedOperationException, IOException, ParseException
   {
-    String url = "https://api.zotero.org/users/" + userID + "/";
+    String url = apiUrl + "users/" + userID + "/";
 
     switch (command)
     {
@@ -135,7 +153,15 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
 
   private JsonArray doReadCommand(ZoteroCmd command, String itemKey, String collectionKey) throws TerminateTaskException, UnsupportedOperationException, IOException, ParseException
   {
-    String url = "https://api.zotero.org/users/" + userID + "/";
+    return doReadCommand(jsonClient, command, itemKey, collectionKey);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private JsonArray doReadCommand(JsonHttpClient client, ZoteroCmd command, String itemKey, String collectionKey) throws TerminateTaskException, UnsupportedOperationException, IOException, ParseException
+  {
+    String url = apiUrl + "users/" + userID + "/";
 
     switch (command)
     {
@@ -180,9 +206,9 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
         return null;
     }
 
-    JsonArray jsonArray = doHttpRequest(url, HttpRequestType.get, null);
+    JsonArray jsonArray = doHttpRequest(client, url, HttpRequestType.get, null);
 
-    switch (jsonClient.getStatusCode())
+    switch (client.getStatusCode())
     {
       case HttpStatus.SC_OK :
       case HttpStatus.SC_NOT_MODIFIED :
@@ -191,31 +217,42 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
         return jsonArray;
     }
 
-    throw new HttpResponseException(jsonClient.getStatusCode(), jsonClient.getReasonPhrase());
+    throw new HttpResponseException(client.getStatusCode(), client.getReasonPhrase());
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
   private JsonArray doHttpRequest(String url, HttpRequestType requestType, String postJsonData) throws IOException, UnsupportedOperationException, ParseException, TerminateTaskException
+  {
+    return doHttpRequest(jsonClient, url, requestType, postJsonData);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // May be called from several download threads at once, each with its own client. The Backoff and
+  // Retry-After times are shared, so a delay requested by the server applies to every thread.
+
+  private JsonArray doHttpRequest(JsonHttpClient client, String url, HttpRequestType requestType, String postJsonData) throws IOException, UnsupportedOperationException, ParseException, TerminateTaskException
   {
     RequestBuilder rb;
 
     if (retryTime != null)
     {
-      while ((retryTime.compareTo(Instant.now()) > 0) && (syncTask.isCancelled() == false))
+      while ((retryTime.compareTo(Instant.now()) > 0) && (syncCancelled() == false))
       {
         sleepForMillis(30);
-        if (syncTask.isCancelled()) throw new TerminateTaskException();
+        if (syncCancelled()) throw new TerminateTaskException();
       }
     }
 
     if (backoffTime != null)
     {
-      while ((backoffTime.compareTo(Instant.now()) > 0) && (syncTask.isCancelled() == false))
+      while ((backoffTime.compareTo(Instant.now()) > 0) && (syncCancelled() == false))
       {
         sleepForMillis(30);
-        if (syncTask.isCancelled()) throw new TerminateTaskException();
+        if (syncCancelled()) throw new TerminateTaskException();
       }
     }
 
@@ -232,7 +269,7 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
       default : throw new UnsupportedOperationException(requestType.name());
     }
 
-    request = rb
+    HttpUriRequest request = rb
       .setUri(url)
       .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
       .setHeader("Zotero-API-Version", "3")
@@ -242,27 +279,28 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
       .build();
 
     JsonArray jsonArray = null;
+    activeRequests.add(request);
 
     try
     {
-      jsonArray = jsonClient.requestArrayInThisThread(request);
+      jsonArray = client.requestArrayInThisThread(request);
     }
     catch(SocketException e)
     {
-      if (syncTask.isCancelled())
-      {
-        request = null;
+      if (syncCancelled())
         throw new TerminateTaskException();
-      }
 
-      request = null;
       throw e;
     }
+    finally
+    {
+      activeRequests.remove(request);
+    }
 
     StringBuilder apiVersion = new StringBuilder();
     MutableInt totalResults = new MutableInt(-1);
 
-    nullSwitch(jsonClient.getHeaders(), headers -> headers.forEach(header ->
+    nullSwitch(client.getHeaders(), headers -> headers.forEach(header ->
     {
       int sec;
 
@@ -289,9 +327,7 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
       }
     }));
 
-    request = null;
-
-    if (syncTask.isCancelled()) throw new TerminateTaskException();
+    if (syncCancelled()) throw new TerminateTaskException();
 
     return jsonArray;
   }
@@ -318,7 +354,7 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
         "interview", "journalArticle", "letter", "magazineArticle", "manuscript", "map", "newspaperArticle", "patent", "podcast",
         "presentation", "radioBroadcast", "report", "statute", "tvBroadcast", "thesis", "videoRecording", "webpage"})
       {
-        jObj.put(zType, doHttpRequest("https://api.zotero.org/itemTypeCreatorTypes?itemType=" + zType, HttpRequestType.get, null));
+        jObj.put(zType, doHttpRequest(apiUrl + "itemTypeCreatorTypes?itemType=" + zType, HttpRequestType.get, null));
       }
 
       StringBuilder json = new StringBuilder(jObj.toString());
@@ -347,7 +383,7 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
         "interview", "journalArticle", "letter", "magazineArticle", "manuscript", "map", "newspaperArticle", "patent", "podcast",
         "presentation", "radioBroadcast", "report", "statute", "tvBroadcast", "thesis", "videoRecording", "webpage"})
       {
-        jArr.add(doHttpRequest("https://api.zotero.org/items/new?itemType=" + zType, HttpRequestType.get, null).getObj(0));
+        jArr.add(doHttpRequest(apiUrl + "items/new?itemType=" + zType, HttpRequestType.get, null).getObj(0));
       }
 
       StringBuilder json = new StringBuilder(jArr.toString());
@@ -380,7 +416,7 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
 
     int statusCode = HttpStatus.SC_OK;
 
-    while ((uploadQueue.size() > 0) && (statusCode == HttpStatus.SC_OK) && (syncTask.isCancelled() == false))
+    while ((uploadQueue.size() > 0) && (statusCode == HttpStatus.SC_OK) && (syncCancelled() == false))
     {
       jArr.clear();
 
@@ -453,8 +489,7 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
   //---------------------------------------------------------------------------
   //---------------------------------------------------------------------------
 
-  @SuppressWarnings("unchecked")
-  private <ZEntity extends ZoteroEntity> boolean getRemoteUpdates(ZoteroCmd versionsCmd, ZoteroCmd readCmd, Map<String, ZEntity> keyToEntity) throws TerminateTaskException, UnsupportedOperationException, IOException, ParseException
+  <ZEntity extends ZoteroEntity> boolean getRemoteUpdates(ZoteroCmd versionsCmd, ZoteroCmd readCmd, Map<String, ZEntity> keyToEntity) throws TerminateTaskException, UnsupportedOperationException, IOException, ParseException
   {
     List<String> downloadQueue = new ArrayList<>();
 
@@ -486,56 +521,178 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
         keyToTrashEntry.entrySet().removeIf(entry -> jObj.containsKey(entry.getKey()) == false);
     }
 
-    while ((downloadQueue.size() > 0) && (jsonClient.getStatusCode() == HttpStatus.SC_OK))
+    if ((downloadQueue.size() > 0) && (jsonClient.getStatusCode() == HttpStatus.SC_OK))
+      if (downloadInBatches(readCmd, downloadQueue, keyToEntity) == false)
+        return false;
+
+    return (jsonClient.getStatusCode() == HttpStatus.SC_OK) || (jsonClient.getStatusCode() == HttpStatus.SC_NOT_MODIFIED);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static final class DownloadedBatch
+  {
+    private final String keys;
+    private final int attempt, statusCode;
+    private final JsonArray jsonArray;
+
+    private DownloadedBatch(String keys, int attempt, int statusCode, JsonArray jsonArray)
     {
-      String keys = "";
+      this.keys = keys;
+      this.attempt = attempt;
+      this.statusCode = statusCode;
+      this.jsonArray = jsonArray;
+    }
+  }
 
-      int downloadCount = (downloadQueue.size() > 50) ? 50 : downloadQueue.size();
-      for (int ndx = 0; ndx < downloadCount; ndx++)
-        keys = keys + (keys.isEmpty() ? downloadQueue.get(ndx) : "," + downloadQueue.get(ndx));
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-      if (readCmd == ZoteroCmd.readCollections)
-        jArr = doReadCommand(ZoteroCmd.readCollections, "", keys);
-      else
-        jArr = doReadCommand(readCmd, keys, "");
+  // Up to MAX_CONCURRENT_DOWNLOADS batch requests are in flight at a time. The results are merged on the
+  // calling thread, in the order the requests complete, so the entity maps are never touched concurrently.
+  //
+  // A batch that gets a 429 or 503 response is submitted again. doHttpRequest holds it back until the
+  // Retry-After time, which applies to the other batches as well.
+
+  private <ZEntity extends ZoteroEntity> boolean downloadInBatches(ZoteroCmd readCmd, List<String> downloadQueue, Map<String, ZEntity> keyToEntity) throws TerminateTaskException, UnsupportedOperationException, IOException, ParseException
+  {
+    List<List<String>> batches = Lists.partition(downloadQueue, DOWNLOAD_BATCH_SIZE);
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_CONCURRENT_DOWNLOADS, batches.size()), runnable ->
+    {
+      Thread thread = new Thread(runnable, "ZoteroDownload");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    CompletionService<DownloadedBatch> completionService = new ExecutorCompletionService<>(executor);
 
-      if (jsonClient.getStatusCode() == HttpStatus.SC_OK)
+    try
+    {
+      for (List<String> batch : batches)
+        submitBatch(completionService, readCmd, String.join(",", batch), 1);
+
+      for (int ndx = 0; ndx < batches.size(); ndx++)
       {
-        jArr.getObjs().forEach(jObj ->
+        DownloadedBatch downloaded;
+
+        try
+        {
+          downloaded = completionService.take().get();
+        }
+        catch (InterruptedException e)
+        {
+          throw new TerminateTaskException();
+        }
+        catch (ExecutionException e)
         {
-          String key = jObj.getStrSafe("key");
-          ZEntity entity = keyToEntity.get(key);
+          Throwable cause = e.getCause();
 
-          if (entity == null)
-          {
-            entity = (ZEntity) ZoteroEntity.create(this, jObj);
+          if (cause instanceof TerminateTaskException) throw (TerminateTaskException) cause;
+          if (cause instanceof IOException           ) throw (IOException)            cause;
+          if (cause instanceof ParseException        ) throw (ParseException)         cause;
+          if (cause instanceof RuntimeException      ) throw (RuntimeException)       cause;
 
-            if (entity != null)
-              keyToEntity.put(key, entity);
-          }
-          else
-          {
-            if (entity.isSynced())
-            {
-              long onlineVersion = jObj.getLong("version", -1);
-              if (entity.getVersion() < onlineVersion)
-                entity.update(jObj, true, false);
-            }
-            else
-            {
-              if (readCmd == ZoteroCmd.readItems)
-                doMerge((ZoteroItem)entity, jObj);
-              else
-                entity.update(jObj, true, false);     // Conflict resolution is only implemented for items, not collections
-            }
-          }
+          throw new IOException(cause);
+        }
 
-          downloadQueue.remove(key);
-        });
+        if (((downloaded.statusCode == SC_TOO_MANY_REQUESTS) || (downloaded.statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE)) &&
+            (downloaded.attempt < MAX_BATCH_ATTEMPTS))
+        {
+          if ((retryTime == null) || (retryTime.compareTo(Instant.now()) <= 0))
+            retryTime = Instant.now().plusSeconds(DEFAULT_RETRY_SEC);
+
+          submitBatch(completionService, readCmd, downloaded.keys, downloaded.attempt + 1);
+          ndx--;  // The batch is still outstanding
+          continue;
+        }
+
+        if (downloaded.statusCode != HttpStatus.SC_OK)
+          return downloaded.statusCode == HttpStatus.SC_NOT_MODIFIED;
+
+        downloaded.jsonArray.getObjs().forEach(jObj -> mergeDownloadedEntity(readCmd, jObj, keyToEntity));
       }
     }
+    finally
+    {
+      executor.shutdownNow();
+      activeRequests.forEach(HttpUriRequest::abort);
+    }
 
-    return (jsonClient.getStatusCode() == HttpStatus.SC_OK) || (jsonClient.getStatusCode() == HttpStatus.SC_NOT_MODIFIED);
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void submitBatch(CompletionService<DownloadedBatch> completionService, ZoteroCmd readCmd, String keys, int attempt)
+  {
+    completionService.submit(() ->
+    {
+      JsonHttpClient client = new JsonHttpClient();
+      JsonArray jArr;
+
+      try
+      {
+        jArr = readCmd == ZoteroCmd.readCollections ?
+          doReadCommand(client, readCmd, "", keys)
+        :
+          doReadCommand(client, readCmd, keys, "");
+      }
+      catch (HttpResponseException e)
+      {
+        // doReadCommand throws for a 429 or 503, but those are retried by downloadInBatches
+
+        if ((e.getStatusCode() != SC_TOO_MANY_REQUESTS) && (e.getStatusCode() != HttpStatus.SC_SERVICE_UNAVAILABLE))
+          throw e;
+
+        jArr = null;
+      }
+
+      return new DownloadedBatch(keys, attempt, client.getStatusCode(), jArr);
+    });
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private boolean syncCancelled()
+  {
+    return (syncTask != null) && syncTask.isCancelled();  // There is no task when getRemoteUpdates is called directly from a test
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @SuppressWarnings("unchecked")
+  private <ZEntity extends ZoteroEntity> void mergeDownloadedEntity(ZoteroCmd readCmd, JsonObj jObj, Map<String, ZEntity> keyToEntity)
+  {
+    String key = jObj.getStrSafe("key");
+    ZEntity entity = keyToEntity.get(key);
+
+    if (entity == null)
+    {
+      entity = (ZEntity) ZoteroEntity.create(this, jObj);
+
+      if (entity != null)
+        keyToEntity.put(key, entity);
+    }
+    else
+    {
+      if (entity.isSynced())
+      {
+        long onlineVersion = jObj.getLong("version", -1);
+        if (entity.getVersion() < onlineVersion)
+          entity.update(jObj, true, false);
+      }
+      else
+      {
+        if (readCmd == ZoteroCmd.readItems)
+          doMerge((ZoteroItem)entity, jObj);
+        else
+          entity.update(jObj, true, false);     // Conflict resolution is only implemented for items, not collections
+      }
+    }
   }
 
 //---------------------------------------------------------------------------
@@ -687,22 +844,11 @@ public class ZoteroWrapper extends LibraryWrapper<ZoteroItem, ZoteroCollection>
 
   @Override public void loadFromDisk(FilePath filePath) throws FileNotFoundException, IOException, ParseException
   {
-    JsonObj jMainObj = null;
     clear();
 
-    try (InputStream in = new FileInputStream(filePath.toFile()))
-    {
-      jMainObj = parseJsonObj(new InputStreamReader(in, UTF_8));
-    }
-    catch (FileNotFoundException e) { noOp(); }
-
-    if (jMainObj != null)
-    {
+    if (loadFromJsonFile(filePath))
       offlineLibVersion = db.prefs.getLong(PREF_KEY_BIB_LIBRARY_VERSION, -1);
 
-      loadFromJSON(jMainObj);
-    }
-
     initTemplates();
   }
 
@@ -17,87 +17,57 @@
 
 package org.hypernomicon.model;
 
-import static java.util.Collections.*;
-
 import static org.hypernomicon.util.Util.*;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.hypernomicon.model.Exceptions.HDB_InternalError;
 import org.hypernomicon.model.records.HDT_Record;
+import org.hypernomicon.util.IntObjectMap;
 
 final class HyperCore<HDT_DT extends HDT_Record>
 {
+  private final OrderStatisticTree sortedKeys = new OrderStatisticTree(),
+                                   sortedIDs  = new OrderStatisticTree();
+  private final IntObjectMap<String> idToKey = new IntObjectMap<>();
+  private final IntObjectMap<HDT_DT> idToRecord = new IntObjectMap<>();
 
-//---------------------------------------------------------------------------
-//---------------------------------------------------------------------------
-
-  private final class KeyIDpair implements Comparable<KeyIDpair>, Cloneable
-  {
-    private final int id;
-    private final String key;
+  int size()                   { return sortedIDs.size(); }
+  String getKeyByID(int id)    { return idToKey.get(id); }
+  int getIDbyIDNdx(int ndx)    { return sortedIDs.getID(ndx); }
+  int getIDbyKeyNdx(int ndx)   { return sortedKeys.getID(ndx); }
+  boolean containsID(int id)   { return idToRecord.containsKey(id); }
+  HDT_DT getRecordByID(int id) { return idToRecord.get(id); }
+  int getIDNdxByID(int id)     { return sortedIDs.indexOf("", id); }
+  int getKeyNdxByID(int id)    { return nullSwitch(idToKey.get(id), -1, key -> sortedKeys.indexOf(key, id)); }
 
-    private KeyIDpair(int id, String key) { this.id = id; this.key = key; }
-    private int getID()                   { return id; }
+  PrimitiveIterator.OfInt idIterator()      { return sortedIDs.idIterator(); }   // IDs in ID order
+  PrimitiveIterator.OfInt idIteratorByKey() { return sortedKeys.idIterator(); }  // IDs in sort key order
 
 //---------------------------------------------------------------------------
-
-    @Override public int hashCode()
-    {
-      return 31 * (31 + id) + (key == null ? 0 : key.hashCode());
-    }
-
-//---------------------------------------------------------------------------
-
-    @Override @SuppressWarnings("unchecked") public KeyIDpair clone()
-    {
-      try { return (KeyIDpair) super.clone(); } catch (CloneNotSupportedException ex) { throw new RuntimeException(ex); }
-    }
-
 //---------------------------------------------------------------------------
 
-    @Override @SuppressWarnings("unchecked") public boolean equals(Object obj)
-    {
-      if (this == obj) return true;
-      if (obj == null) return false;
-      if (getClass() != obj.getClass()) return false;
-
-      KeyIDpair otherPair = (KeyIDpair)obj;
-      return (otherPair.id == id) && otherPair.key.equals(key);
-    }
-
-//---------------------------------------------------------------------------
-
-    @Override public int compareTo(KeyIDpair otherPair)
-    {
-      int result = key.compareTo(otherPair.key);
-      return result != 0 ? result : id - otherPair.id;
-    }
+  Stream<HDT_DT> stream()
+  {
+    return StreamSupport.intStream(Spliterators.spliterator(idIterator(), size(), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                        .mapToObj(idToRecord::get);
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private final List<KeyIDpair> sortedKeys = new ArrayList<>();
-  private final List<Integer> sortedIDs = new ArrayList<>();
-  private final Map<Integer, String> idToKey = new HashMap<>();
-  private final Map<Integer, HDT_DT> idToRecord = new HashMap<>();
+  private int[] getIDsInOrder()
+  {
+    int[] ids = new int[size()], ndx = { 0 };
 
-  int size()                   { return sortedIDs.size(); }
-  Stream<HDT_DT> stream()      { return sortedIDs.stream().map(idToRecord::get); }
-  String getKeyByID(int id)    { return idToKey.get(id); }
-  int getIDbyIDNdx(int ndx)    { return sortedIDs.get(ndx); }
-  int getIDbyKeyNdx(int ndx)   { return sortedKeys.get(ndx).getID(); }
-  boolean containsID(int id)   { return sortedIDs.contains(id); }
-  HDT_DT getRecordByID(int id) { return idToRecord.get(id); }
-  int getIDNdxByID(int id)     { return Math.max(-1, binarySearch(sortedIDs, id)); }
-  int getKeyNdxByID(int id)    { return Math.max(-1, binarySearch(sortedKeys, new KeyIDpair(id, idToKey.get(id)))); }
+    sortedIDs.forEachID(id -> ids[ndx[0]++] = id);
+
+    return ids;
+  }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
@@ -127,13 +97,9 @@ final class HyperCore<HDT_DT extends HDT_Record>
 
   void resolvePointers() throws HDB_InternalError
   {
-    Iterator<Entry<Integer, HDT_DT>> it = idToRecord.entrySet().iterator();
-
-    while (it.hasNext())
+    for (int id : getIDsInOrder())
     {
-      Entry<Integer, HDT_DT> entry = it.next();
-      int id = entry.getKey();
-      HDT_DT record = entry.getValue();
+      HDT_DT record = idToRecord.get(id);
 
       if (record.isExpired() == false)
       {
@@ -147,17 +113,7 @@ final class HyperCore<HDT_DT extends HDT_Record>
       }
 
       if (record.isExpired()) // See HDI_OnlineHubSpokes.resolvePointers
-      {
-        it.remove();
-
-        sortedIDs.remove(getIDNdxByID(id));
-
-        if (idToKey.containsKey(id))
-        {
-          sortedKeys.remove(getKeyNdxByID(id));
-          idToKey.remove(id);
-        }
-      }
+        remove(id);
       else if (record.getID() < 1)
       {
         throw new HDB_InternalError(88388);
@@ -170,7 +126,7 @@ final class HyperCore<HDT_DT extends HDT_Record>
 
   void add(int id, String key, HDT_DT record)
   {
-    addToSortedList(sortedIDs, id);
+    sortedIDs.insert("", id);
     setKey(id, key);
     idToRecord.put(id, record);
   }
@@ -180,10 +136,13 @@ final class HyperCore<HDT_DT extends HDT_Record>
 
   void remove(int id)
   {
-    sortedIDs.remove(getIDNdxByID(id));
-    sortedKeys.remove(getKeyNdxByID(id));
-    idToKey.remove(id);
-    idToRecord.remove(id);
+    if (idToRecord.remove(id) == null) return;
+
+    sortedIDs.remove("", id);
+
+    String key = idToKey.remove(id);
+    if (key != null)
+      sortedKeys.remove(key, id);
   }
 
 //---------------------------------------------------------------------------
@@ -197,11 +156,11 @@ final class HyperCore<HDT_DT extends HDT_Record>
     {
       if (oldKey.equals(newKey)) return;
 
-      sortedKeys.remove(getKeyNdxByID(id));
+      sortedKeys.remove(oldKey, id);
     }
 
     idToKey.put(id, newKey);
-    addToSortedList(sortedKeys, new KeyIDpair(id, newKey));
+    sortedKeys.insert(newKey, id);
   }
 
 //---------------------------------------------------------------------------
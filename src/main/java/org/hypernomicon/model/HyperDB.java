@@ -34,7 +34,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -42,6 +44,7 @@ import java.security.spec.InvalidKeySpecException;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.EnumSet;
@@ -52,35 +55,39 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.InvalidPreferencesFormatException;
 import java.util.prefs.Preferences;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
 
 import static java.nio.charset.StandardCharsets.*;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.Attribute;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.mutable.MutableBoolean;
+import org.apache.commons.lang3.mutable.MutableLong;
 import org.json.simple.parser.ParseException;
 
 import com.google.common.collect.EnumBiMap;
 import com.google.common.collect.EnumHashBiMap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -94,9 +101,11 @@ import org.hypernomicon.bib.LibraryWrapper.LibraryType;
 import org.hypernomicon.bib.mendeley.MendeleyWrapper;
 import org.hypernomicon.bib.zotero.ZoteroWrapper;
 import org.hypernomicon.model.Exceptions.*;
+import org.hypernomicon.model.RecordSnapshot.SnapshotWriter;
 import org.hypernomicon.model.SearchKeys.SearchKeyword;
 import org.hypernomicon.model.items.*;
 import org.hypernomicon.model.items.HDI_OfflineTernary.Ternary;
+import org.hypernomicon.model.items.MainText.DisplayItemType;
 import org.hypernomicon.model.records.*;
 import org.hypernomicon.model.records.HDT_RecordBase.HyperDataCategory;
 import org.hypernomicon.model.records.SimpleRecordTypes.*;
@@ -104,7 +113,6 @@ import org.hypernomicon.model.relations.*;
 import org.hypernomicon.model.relations.RelationSet.RelationType;
 import org.hypernomicon.util.BidiOneToManyMainTextMap;
 import org.hypernomicon.util.CryptoUtil;
-import org.hypernomicon.util.FilenameMap;
 import org.hypernomicon.util.PopupDialog.DialogResult;
 import org.hypernomicon.util.VersionNumber;
 import org.hypernomicon.util.filePath.FilePath;
@@ -123,6 +131,8 @@ public final class HyperDB
   final private EnumMap<Tag, HDT_RecordType> tagToObjType = new EnumMap<>(Tag.class);
   final private EnumMap<Tag, EnumSet<HDT_RecordType>> tagToSubjType = new EnumMap<>(Tag.class);
   final private EnumMap<Tag, String> tagToHeader = new EnumMap<>(Tag.class);
+  final private EnumMap<HDT_RecordType, EnumSet<HDT_RecordType>> typeToDirtyTypes = new EnumMap<>(HDT_RecordType.class);
+  final private EnumSet<HDT_RecordType> keyWorkHolderTypes = EnumSet.noneOf(HDT_RecordType.class);
 
   final private List<Consumer<HDT_Record>> recordDeleteHandlers          = new ArrayList<>();
   final private List<Runnable>             dbCloseHandlers               = new ArrayList<>(),
@@ -135,13 +145,14 @@ public final class HyperDB
   final private EnumHashBiMap<HDT_RecordType, String> typeToTagStr = EnumHashBiMap.create(HDT_RecordType.class);
   final private SearchKeys searchKeys = new SearchKeys();
   final private MentionsIndex mentionsIndex = new MentionsIndex(dbMentionsNdxCompleteHandlers);
+  final private RecordTextIndex recordTextIndex = new RecordTextIndex();
   final private List<HDT_Record> initialNavList = new ArrayList<>();
   final private EnumMap<HDT_RecordType, RelationChangeHandler> keyWorkHandlers = new EnumMap<>(HDT_RecordType.class);
   final private Map<HDT_RecordWithPath, Set<HDT_RecordWithConnector>> keyWorkIndex = new HashMap<>();
   final private BidiOneToManyMainTextMap displayedAtIndex = new BidiOneToManyMainTextMap();
   final private Map<String, HDT_Work> bibEntryKeyToWork = new HashMap<>();
-
-  final public FilenameMap<Set<HyperPath>> filenameMap = new FilenameMap<>();
+  final private Map<HDT_Record, Integer> expiredRecordToID = new LinkedHashMap<>();  // Records expired by the deletion in progress, with the IDs they had
+  final private Set<HDT_Record> referrersToResolve = new LinkedHashSet<>();           // Records that may still point to one of them
 
   public Preferences prefs;
   private Preferences appPrefs;
@@ -149,13 +160,14 @@ public final class HyperDB
   private FolderTreeWatcher folderTreeWatcher;
   private FilePath lockFilePath = null;
   private DialogResult deleteFileAnswer;
+  private long schemaFingerprint;
   HyperTask task;
   long totalTaskCount, curTaskCount;
   private FilePath rootFilePath, hdbFilePath;
   private Instant dbCreationDate;
 
   private boolean loaded       = false, deletionInProgress = false, pointerResolutionInProgress     = false, resolveAgain = false,
-                  unableToLoad = false, initialized        = false, startMentionsRebuildAfterDelete = false;
+                  unableToLoad = false, initialized        = false;
 
   public boolean runningConversion     = false, // suppresses "modified date" updating
                  viewTestingInProgress = false; // suppresses "view date" updating
@@ -167,6 +179,8 @@ public final class HyperDB
   public boolean isDeletionInProgress()                         { return deletionInProgress; }
   public boolean resolvingPointers()                            { return pointerResolutionInProgress; }
   public int getNextID(HDT_RecordType type)                     { return datasets.get(type).getNextID(); }
+  public int getNameModCount(HDT_RecordType type)               { return datasets.get(type).getNameModCount(); }
+  public void nameChanged(HDT_Record record)                    { datasets.get(record.getType()).nameChanged(record); }
   public boolean idAvailable(HDT_RecordType type, int id)       { return datasets.get(type).idAvailable(id); }
   public String getTypeTagStr(HDT_RecordType type)              { return typeToTagStr.get(type); }
   public HDT_RecordType parseTypeTagStr(String tag)             { return typeToTagStr.inverse().getOrDefault(tag, hdtNone); }
@@ -184,15 +198,19 @@ public final class HyperDB
   public String getFirstActiveKeyWord(HDT_Record record)        { return searchKeys.getFirstActiveKeyword(record); }
   public List<SearchKeyword> getKeysByPrefix(String prefix)     { return searchKeys.getKeywordsByPrefix(prefix); }
   public List<SearchKeyword> getKeysByRecord(HDT_Record record) { return searchKeys.getKeysByRecord(record); }
+  KeywordAutomaton getKeywordAutomaton()                        { return searchKeys.getAutomaton(); }
   public HDT_Work getWorkByBibEntryKey(String key)              { return bibEntryKeyToWork.get(key); }
   public boolean reindexingMentioners()                         { return mentionsIndex.isRebuilding(); }
+  public int mentionsRebuildRestartsAvoided()                   { return mentionsIndex.getRestartsAvoided(); }
   public BibEntry getBibEntryByKey(String key)                  { return bibLibrary.getEntryByKey(key); }
+  public RecordTextIndex getRecordTextIndex()                   { return recordTextIndex; }
 
   public void setSearchKey(HDT_Record record, String newKey, boolean noMod, boolean dontRebuildMentions) throws SearchKeyException
-  { searchKeys.setSearchKey(record, newKey, noMod, dontRebuildMentions); }
+  { searchKeys.setSearchKey(record, newKey, noMod, dontRebuildMentions); nameChanged(record); invalidateRecordText(record); }
 
   public LibraryWrapper<? extends BibEntry, ? extends BibCollection> getBibLibrary()        { return bibLibrary; }
   public List<Consumer<HDT_Record>> getRecordDeleteHandlers()                               { return unmodifiableList(recordDeleteHandlers); }
+  public List<HDT_Record> getNameChangesSince(HDT_RecordType type, int modCount)            { return datasets.get(type).getNameChangesSince(modCount); }
   public void addRelationChangeHandler(RelationType relType, RelationChangeHandler handler) { relationSets.get(relType).addChangeHandler(handler); }
   public void addKeyWorkHandler(HDT_RecordType recordType, RelationChangeHandler handler)   { keyWorkHandlers.put(recordType, handler); }
   public void addCloseDBHandler(Runnable handler)                                           { dbCloseHandlers.add(handler); }
@@ -202,6 +220,7 @@ public final class HyperDB
   public void addDeleteHandler(Consumer<HDT_Record> handler)                                { recordDeleteHandlers.add(handler); }
   public void rebuildMentions()                                                             { if (loaded) mentionsIndex.startRebuild(); }
   public void updateMentioner(HDT_Record record)                                            { if (loaded) mentionsIndex.updateMentioner(record); }
+  void updateMentionsForKeyChange(HDT_Record record, Collection<String> changedKeywords)     { if (loaded) mentionsIndex.updateForKeywordChange(record, changedKeywords); }
   public boolean waitUntilRebuildIsDone()                                                   { return mentionsIndex.waitUntilRebuildIsDone(); }
 
   public boolean firstMentionsSecond(HDT_Record mentioner, HDT_Record target, boolean descOnly, MutableBoolean choseNotToWait) {
@@ -210,6 +229,8 @@ public final class HyperDB
     return mentionsIndex.getMentionerSet(target, descOnly, choseNotToWait); }
   public Set<HDT_Record> getMentionerSet(HDT_Record target, boolean descOnly) {
     return mentionsIndex.getMentionerSet(target, descOnly); }
+  public void forEachMentioner(HDT_Record target, boolean descOnly, MutableBoolean choseNotToWait, Consumer<HDT_Record> action) {
+    mentionsIndex.forEachMentioner(target, descOnly, choseNotToWait, action); }
 
 //---------------------------------------------------------------------------
 
@@ -328,6 +349,128 @@ public final class HyperDB
     resolveAgain = true;
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Marks the dataset for the given record type as needing to be written on the next save, along with every dataset
+  // whose XML might contain the name of a record of that type
+
+  public void markDirty(HDT_RecordType type)
+  {
+    nullSwitch(typeToDirtyTypes.get(type), dirtyTypes -> dirtyTypes.forEach(dirtyType -> datasets.get(dirtyType).setDirty(true)));
+  }
+
+  // Used when the change cannot affect the XML written for any other record, e.g., the view date changed
+
+  public void markDirtyNoDependents(HDT_RecordType type)
+  {
+    nullSwitch(datasets.get(type), dataset -> dataset.setDirty(true));
+  }
+
+  public void markKeyWorkHoldersDirty() { keyWorkHolderTypes.forEach(this::markDirtyNoDependents); }
+  public void markAllDirty()            { datasets.values().forEach(dataset -> dataset.setDirty(true)); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Record type A has to be rewritten when a record of type B changes if the XML for an A record
+  // can contain the name of a B record, or the name of a record whose name is derived from a B record
+
+  private void initDirtyTypes()
+  {
+    EnumMap<HDT_RecordType, EnumSet<HDT_RecordType>> typeToReferrers = new EnumMap<>(HDT_RecordType.class),
+                                                     typeToDerivedTypes = new EnumMap<>(HDT_RecordType.class);
+
+    datasets.keySet().forEach(type ->
+    {
+      typeToReferrers   .put(type, EnumSet.of(type));
+      typeToDerivedTypes.put(type, EnumSet.of(type));
+    });
+
+    datasets.forEach((type, dataset) -> dataset.getSchemas().forEach(schema ->
+    {
+      switch (schema.getCategory())
+      {
+        case hdcPointerSingle : case hdcPointerMulti : case hdcAuthors :
+
+          typeToReferrers.get(getObjType(schema.getRelType())).add(type);
+          break;
+
+        case hdcPath :
+
+          typeToReferrers.get(hdtFolder).add(type);
+          break;
+
+        case hdcConnector :
+
+          keyWorkHolderTypes.add(type);
+
+          if (schema.getTags().contains(tagHub))
+            typeToReferrers.get(hdtHub).add(type);
+
+          break;
+
+        case hdcHubSpokes :
+
+          EnumSet.of(hdtDebate, hdtPosition, hdtNote, hdtWorkLabel, hdtConcept).forEach(spokeType -> typeToReferrers.get(spokeType).add(hdtHub));
+          break;
+
+        default :
+          break;
+      }
+    }));
+
+    relationSets.values().forEach(relSet -> relSet.getNestedTags().forEach(tag ->
+    {
+      HDT_RecordType targetType = relSet.getTargetType(tag);
+
+      if (targetType != null)
+        typeToReferrers.get(targetType).add(relSet.getSubjType());
+    }));
+
+    // See HDT_Institution.getXMLObjectName and HDT_Concept.getExtendedName
+
+    typeToDerivedTypes.get(hdtInstitutionType).add(hdtInstitution);
+    typeToDerivedTypes.get(hdtTerm           ).add(hdtConcept);
+    typeToDerivedTypes.get(hdtGlossary       ).add(hdtConcept);
+
+    typeToDerivedTypes.forEach((type, derivedTypes) ->
+    {
+      EnumSet<HDT_RecordType> dirtyTypes = EnumSet.noneOf(HDT_RecordType.class);
+      derivedTypes.forEach(derivedType -> dirtyTypes.addAll(typeToReferrers.get(derivedType)));
+      typeToDirtyTypes.put(type, dirtyTypes);
+    });
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Snapshots store enum ordinals and rely on item maps being built in the same order on both ends,
+  // so a snapshot is only accepted if it was written under exactly the same schemas
+
+  private long computeSchemaFingerprint()
+  {
+    StringBuilder sb = new StringBuilder(RECORDS_XML_VERSION.toString());
+
+    sb.append(Arrays.toString(Tag.values()))
+      .append(Arrays.toString(HDT_RecordType.values()))
+      .append(Arrays.toString(Ternary.values()))
+      .append(Arrays.toString(DisplayItemType.values()));
+
+    datasets.forEach((type, dataset) -> dataset.getSchemas().forEach(schema ->
+      sb.append(type).append(schema.getCategory()).append(schema.getRelType()).append(schema.getTags())));
+
+    relationSets.forEach((relType, relSet) -> relSet.getSchemas().forEach(schema ->
+      sb.append(relType).append(schema.getCategory()).append(schema.getRelType()).append(schema.getTags())));
+
+    CRC32C crc = new CRC32C();
+    crc.update(sb.toString().getBytes(UTF_8));
+
+    return crc.getValue();
+  }
+
+  private boolean snapshotsEnabled() { return appPrefs.getBoolean(PREF_KEY_RECORD_SNAPSHOTS, true); }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -396,38 +539,80 @@ public final class HyperDB
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private void finalizeXMLFile(List<StringBuilder> xmlList, List<String> filenameList, String fileName)
+  // Each XML file and the record types it contains, in the order they are written
+
+  private static final Map<String, List<HDT_RecordType>> xmlFileToTypes = new LinkedHashMap<>();
+
+  static
+  {
+    xmlFileToTypes.put(OTHER_FILE_NAME, List.of(hdtPersonStatus,    hdtRank,            hdtField,
+                                                hdtSubfield,        hdtWorkType,        hdtFileType,
+                                                hdtCountry,         hdtRegion,          hdtPositionVerdict,
+                                                hdtArgumentVerdict, hdtInstitutionType, hdtPersonGroup));
+
+    xmlFileToTypes.put(PERSON_FILE_NAME       , List.of(hdtPerson));
+    xmlFileToTypes.put(INSTITUTION_FILE_NAME  , List.of(hdtInstitution));
+    xmlFileToTypes.put(INVESTIGATION_FILE_NAME, List.of(hdtInvestigation));
+    xmlFileToTypes.put(DEBATE_FILE_NAME       , List.of(hdtDebate));
+    xmlFileToTypes.put(ARGUMENT_FILE_NAME     , List.of(hdtArgument));
+    xmlFileToTypes.put(POSITION_FILE_NAME     , List.of(hdtPosition));
+    xmlFileToTypes.put(TERM_FILE_NAME         , List.of(hdtGlossary, hdtTerm, hdtConcept));
+    xmlFileToTypes.put(FILE_FILE_NAME         , List.of(hdtFolder, hdtMiscFile, hdtWorkFile));
+    xmlFileToTypes.put(WORK_FILE_NAME         , List.of(hdtWorkLabel, hdtWork));
+    xmlFileToTypes.put(NOTE_FILE_NAME         , List.of(hdtNote));
+    xmlFileToTypes.put(HUB_FILE_NAME          , List.of(hdtHub));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private int savedRecordCount(HDT_RecordType type)
   {
-    xmlList.get(xmlList.size() - 1).append(System.lineSeparator() + "</records>");
-    filenameList.add(fileName);
-    xmlList.add(new StringBuilder());
+    int count = records(type).size();
+
+    return EnumSet.of(hdtDebate, hdtNote, hdtPersonGroup, hdtWorkLabel, hdtGlossary).contains(type) ? count - 1 : count;
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private void writeDatasetToXML(List<StringBuilder> xmlList, HDT_RecordType type) throws HDB_InternalError, TerminateTaskException
+  private void writeDatasetToXML(Writer out, HDT_RecordType type) throws HDB_InternalError, TerminateTaskException, IOException
   {
-    StringBuilder xml = xmlList.get(xmlList.size() - 1);
+    datasets.get(type).writeToXML(out);
+
+    curTaskCount += savedRecordCount(type);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-    String recordsXmlVersion = RECORDS_XML_VERSION.toString();
+  // The old snapshot is deleted; a new one is written the next time the file is loaded from XML.
 
-    if (xml.length() == 0)
+  private void writeXMLFile(String fileName) throws HDB_InternalError, TerminateTaskException, IOException
+  {
+    FilePath filePath = xmlPath(fileName);
+
+    RecordsXMLFile.write(filePath, out ->
     {
-      xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + System.lineSeparator() + System.lineSeparator())
-         .append("<records version=\"" + recordsXmlVersion + "\" xmlns=\"org.hypernomicon\"")
+      for (HDT_RecordType type : xmlFileToTypes.get(fileName))
+        writeDatasetToXML(out, type);
+    });
 
-      //   .append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"org.hypernomicon http://hypernomicon.org/records.xsd\"")
+    if (snapshotsEnabled())
+      RecordSnapshot.delete(filePath);  // It would not be used anyway, since the file's size or checksum no longer matches
+  }
 
-         .append(">" + System.lineSeparator() + System.lineSeparator());
-    }
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-    datasets.get(type).writeToXML(xml);
+  // An XML file only needs to be regenerated if one of its datasets has changed since
+  // the last save or load, or if the file is missing
 
-    curTaskCount += records(type).size();
+  private boolean xmlFileNeedsSave(String fileName)
+  {
+    if (xmlPath(fileName).exists() == false) return true;
 
-    if (EnumSet.of(hdtDebate, hdtNote, hdtPersonGroup, hdtWorkLabel, hdtGlossary).contains(type))
-      curTaskCount--;
+    return xmlFileToTypes.get(fileName).stream().anyMatch(type -> datasets.get(type).isDirty());
   }
 
 //---------------------------------------------------------------------------
@@ -440,59 +625,24 @@ public final class HyperDB
     if (bibLibraryIsLinked())
       bibLibrary.saveToDisk();
 
-    List<String> filenameList = new ArrayList<>();
-    List<StringBuilder> xmlList = Lists.newArrayList(new StringBuilder());
+    List<String> filesToSave = xmlFileToTypes.keySet().stream().filter(this::xmlFileNeedsSave).collect(Collectors.toList());
 
     task = new HyperTask() { @Override protected Boolean call() throws Exception
     {
       updateMessage("Saving to XML files...");
 
       curTaskCount = 0; totalTaskCount = 0;
-      accessors.forEach((type, accessor) ->
-      {
-        switch (type)
-        {
-          case hdtNone :
-            break;
-
-          case hdtDebate : case hdtNote : case hdtPersonGroup : case hdtWorkLabel : case hdtGlossary :
-            totalTaskCount += accessor.size() - 1;
-            break;
 
-          default :
-            totalTaskCount += accessor.size();
-            break;
-        }
-      });
+      filesToSave.forEach(fileName -> xmlFileToTypes.get(fileName).forEach(type -> totalTaskCount += savedRecordCount(type)));
 
       try
       {
-        writeDatasetToXML(xmlList, hdtPersonStatus);    writeDatasetToXML(xmlList, hdtRank);            writeDatasetToXML(xmlList, hdtField);
-        writeDatasetToXML(xmlList, hdtSubfield);        writeDatasetToXML(xmlList, hdtWorkType);        writeDatasetToXML(xmlList, hdtFileType);
-        writeDatasetToXML(xmlList, hdtCountry);         writeDatasetToXML(xmlList, hdtRegion);          writeDatasetToXML(xmlList, hdtPositionVerdict);
-        writeDatasetToXML(xmlList, hdtArgumentVerdict); writeDatasetToXML(xmlList, hdtInstitutionType); writeDatasetToXML(xmlList, hdtPersonGroup);
-
-                                                        finalizeXMLFile(xmlList, filenameList, OTHER_FILE_NAME);
-
-        writeDatasetToXML(xmlList, hdtPerson);          finalizeXMLFile(xmlList, filenameList, PERSON_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtInstitution);     finalizeXMLFile(xmlList, filenameList, INSTITUTION_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtInvestigation);   finalizeXMLFile(xmlList, filenameList, INVESTIGATION_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtDebate);          finalizeXMLFile(xmlList, filenameList, DEBATE_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtArgument);        finalizeXMLFile(xmlList, filenameList, ARGUMENT_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtPosition);        finalizeXMLFile(xmlList, filenameList, POSITION_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtGlossary);
-        writeDatasetToXML(xmlList, hdtTerm);
-        writeDatasetToXML(xmlList, hdtConcept);         finalizeXMLFile(xmlList, filenameList, TERM_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtFolder);
-        writeDatasetToXML(xmlList, hdtMiscFile);
-        writeDatasetToXML(xmlList, hdtWorkFile);        finalizeXMLFile(xmlList, filenameList, FILE_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtWorkLabel);
-        writeDatasetToXML(xmlList, hdtWork);            finalizeXMLFile(xmlList, filenameList, WORK_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtNote);            finalizeXMLFile(xmlList, filenameList, NOTE_FILE_NAME);
-        writeDatasetToXML(xmlList, hdtHub);             finalizeXMLFile(xmlList, filenameList, HUB_FILE_NAME);
-
-        for (int ndx = 0; ndx < filenameList.size(); ndx++)
-          saveStringBuilderToFile(xmlList.get(ndx), xmlPath(filenameList.get(ndx)));
+        for (String fileName : filesToSave)
+        {
+          writeXMLFile(fileName);
+
+          xmlFileToTypes.get(fileName).forEach(type -> datasets.get(type).setDirty(false));
+        }
       }
       catch (IOException | HDB_InternalError e)
       {
@@ -503,7 +653,10 @@ public final class HyperDB
       return true;
     }};
 
-    if (!HyperTask.performTaskWithProgressDialog(task)) return false;
+    if (filesToSave.size() > 0)
+      if (!HyperTask.performTaskWithProgressDialog(task)) return false;
+
+    mentionsIndex.saveToFile(xmlPath(MENTIONS_INDEX_FILE_NAME), schemaFingerprint);
 
     try (FileOutputStream out = new FileOutputStream(xmlPath(SETTINGS_FILE_NAME).toFile()))
     {
@@ -529,6 +682,11 @@ public final class HyperDB
 //---------------------------------------------------------------------------
 
   public boolean loadAllFromDisk(HyperFavorites favorites) throws HDB_InternalError
+  {
+    return loadAllFromDisk(favorites, true);
+  }
+
+  private boolean loadAllFromDisk(HyperFavorites favorites, boolean allowSnapshots) throws HDB_InternalError
   {
     if ((initialized == false) || unableToLoad)
       return false;
@@ -566,6 +724,10 @@ public final class HyperDB
       xmlFileList.add(filePath);
     }
 
+    boolean useSnapshots = allowSnapshots && snapshotsEnabled();
+    List<FilePath> parsedFileList = new ArrayList<>();
+    MutableBoolean snapshotFailed = new MutableBoolean(false);
+
     task = new HyperTask() { @Override protected Boolean call() throws Exception
     {
       updateMessage("Loading database from folder " + rootFilePath + "...");
@@ -575,7 +737,22 @@ public final class HyperDB
 
       for (FilePath filePath : xmlFileList) totalTaskCount += filePath.size();
 
-      for (FilePath filePath : xmlFileList) loadFromXML(filePath);
+      List<FilePath> snapshotFileList = new ArrayList<>();
+
+      for (FilePath filePath : xmlFileList)
+      {
+        if (useSnapshots && RecordSnapshot.isCurrent(filePath, schemaFingerprint))
+          snapshotFileList.add(filePath);
+        else
+          parsedFileList.add(filePath);
+      }
+
+      for (FilePath filePath : snapshotFileList) loadFromSnapshot(filePath, snapshotFailed);
+
+      if ((Runtime.getRuntime().availableProcessors() > 1) && (parsedFileList.size() > 1))
+        loadFromXMLInParallel(parsedFileList, useSnapshots);
+      else
+        for (FilePath filePath : parsedFileList) loadFromXML(filePath, useSnapshots);
 
       return true;
     }};
@@ -583,7 +760,10 @@ public final class HyperDB
     if (!HyperTask.performTaskWithProgressDialog(task))
     {
       close(null);
-      return false;
+
+      // The records read from a damaged snapshot cannot be picked out, so the whole load is repeated from XML
+
+      return snapshotFailed.isTrue() ? loadAllFromDisk(favorites, false) : false;
     }
 
     totalTaskCount = 0;
@@ -602,6 +782,8 @@ public final class HyperDB
 
       bringAllRecordsOnline();
 
+      datasets.values().forEach(dataset -> dataset.setDirty(false)); // In-memory records now match the XML files
+
       return true;
     }};
 
@@ -690,7 +872,7 @@ public final class HyperDB
     folders.getByID(ROOT_FOLDER_ID).checkExists();
 
     loaded = true;
-    rebuildMentions();
+    mentionsIndex.loadFromFileAndStartRebuild(xmlPath(MENTIONS_INDEX_FILE_NAME), schemaFingerprint);
 
     lock();
 
@@ -830,13 +1012,54 @@ public final class HyperDB
 
   public void deleteRecord(HDT_RecordType type, int id)
   {
-    if (deletionInProgress == false)
-      startMentionsRebuildAfterDelete = false;
+    if (deletionInProgress)
+    {
+      nullSwitch(prepareToDelete(type, id), HDT_Record::expire);
+      return;
+    }
+
+    HDT_Record record = prepareToDelete(type, id);
+    if (record == null) return;
+
+    startDeletion();
+    record.expire();
+    finishDeletion();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
+  // Deletes all of the records in one pass, so that records pointing to more than one of them are only resolved once
+
+  public void deleteRecords(Collection<? extends HDT_Record> records)
+  {
+    if (deletionInProgress)
+    {
+      List.copyOf(records).forEach(record -> deleteRecord(record.getType(), record.getID()));
+      return;
+    }
+
+    startDeletion();
+
+    for (HDT_Record record : List.copyOf(records))
+    {
+      if (record.isExpired()) continue; // Already deleted along with an earlier record in the list
+
+      nullSwitch(prepareToDelete(record.getType(), record.getID()), HDT_Record::expire);
+    }
+
+    finishDeletion();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private HDT_Record prepareToDelete(HDT_RecordType type, int id)
+  {
     if (isProtectedRecord(id, type))
     {
       messageDialog("Unable to delete record.", mtError);
-      return;
+      return null;
     }
 
     HDT_Record record = records(type).getByID(id);
@@ -844,49 +1067,57 @@ public final class HyperDB
     if (record == null)
     {
       messageDialog("Unable to delete record.", mtError);
-      return;
+      return null;
     }
 
     if (record.isExpired())
     {
       messageDialog("The record has already been deleted.", mtError);
-      return;
+      return null;
     }
 
     if (record.isDummy() == false)
     {
-      if (mentionsIndex.isRebuilding())
-      {
-        startMentionsRebuildAfterDelete = true;
-        mentionsIndex.stopRebuild();
-      }
-      else
-        mentionsIndex.removeRecord(record);
+      // Clearing the search key re-indexes the records that mentioned this one. The record is removed from the
+      // index afterward, so that if that is done in the background, the removal is queued behind it. If the
+      // mentions index is already being rebuilt, both are queued until it finishes.
 
-      try { record.setSearchKey(""); } catch (SearchKeyException e) { noOp(); }
-    }
+      try { record.setSearchKey("", false, false); } catch (SearchKeyException e) { noOp(); }
 
-    if (deletionInProgress)
-    {
-      record.expire();
-      return;
+      mentionsIndex.removeRecord(record);
     }
 
+    recordTextIndex.remove(record);
+    return record;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void startDeletion()
+  {
     deletionInProgress = true;
     deleteFileAnswer = mrNone;
+    expiredRecordToID.clear();
+    referrersToResolve.clear();
+  }
 
-    record.expire();
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
+  private void finishDeletion()
+  {
     try
     {
-      resolvePointers();
-      cleanupRelations();
+      resolvePointersToExpiredRecords();
     }
     catch (HDB_InternalError e)
     {
       messageDialog(e.getMessage(), mtError);
     }
 
+    expiredRecordToID.clear();
+    referrersToResolve.clear();
     deletionInProgress = false;
     deleteFileAnswer = mrNone;
 
@@ -895,12 +1126,103 @@ public final class HyperDB
       folderTreeWatcher.enable();
       folderTreeWatcher.createNewWatcherAndStart();
     }
+  }
 
-    if (startMentionsRebuildAfterDelete == false)
-      return;
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Called by HDT_RecordBase.expire before the record's items are expired, while its links to other records are still in place.
+  // Outside of a deletion (i.e., during a full pointer resolution pass), HyperCore.resolvePointers removes expired records instead.
+
+  public void handleExpiringRecord(HDT_Record record)
+  {
+    if (deletionInProgress == false) return;
 
-    rebuildMentions();
-    startMentionsRebuildAfterDelete = false;
+    expiredRecordToID.put(record, record.getID());
+    addReferrers(record, referrersToResolve);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Stamps the record as changed. Cached text of the record, and of any record whose cached text includes its
+  // strings, is rebuilt when it is next searched.
+
+  public void invalidateRecordText(HDT_Record record) { recordTextIndex.recordChanged(record); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Adds every record that may hold a pointer to the target. Extra records are harmless; they just get their pointers resolved
+  // for nothing. Hubs point to their spokes and spokes to their hubs, so those links are followed in both directions.
+
+  private void addReferrers(HDT_Record target, Set<HDT_Record> referrers)
+  {
+    relationSets.values().forEach(relSet -> relSet.addReferrers(target, referrers));
+
+    if (target instanceof HDT_RecordWithConnector)
+    {
+      HDT_RecordWithConnector recordWC = (HDT_RecordWithConnector) target;
+
+      if (recordWC.isLinked())
+      {
+        referrers.add(recordWC.getHub());
+        recordWC.getLink().getSpokes().forEach(spoke -> referrers.add(spoke.getSpoke()));
+      }
+
+      getDisplayers(recordWC.getMainText()).forEach(displayer -> referrers.add(displayer.getRecord()));
+    }
+
+    if (target instanceof HDT_RecordWithPath)
+      nullSwitch(keyWorkIndex.get(target), referrers::addAll);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Instead of resolving the pointers of every record in the database, only the records that may point to an expired record
+  // are visited. Resolving a referrer can expire more records (e.g., a hub left with fewer than two spokes), whose referrers
+  // are then added to the queue.
+
+  private void resolvePointersToExpiredRecords() throws HDB_InternalError
+  {
+    if (pointerResolutionInProgress)
+      throw new HDB_InternalError(78382);
+
+    pointerResolutionInProgress = true;
+
+    try
+    {
+      while (referrersToResolve.isEmpty() == false)
+      {
+        Iterator<HDT_Record> it = referrersToResolve.iterator();
+        HDT_Record referrer = it.next();
+        it.remove();
+
+        if (referrer.isExpired()) continue;
+
+        if (referrer.getID() < 1)
+          throw new HDB_InternalError(88388);
+
+        markDirty(referrer.getType());
+        recordTextIndex.recordChanged(referrer);
+        referrer.resolvePointers();
+      }
+
+      for (Entry<HDT_Record, Integer> entry : expiredRecordToID.entrySet())
+      {
+        HDT_Record record = entry.getKey();
+
+        datasets.get(record.getType()).removeExpiredRecord(entry.getValue());
+        relationSets.values().forEach(relSet -> relSet.removeExpiredRecord(record));
+
+        markDirty(record.getType()); // Datasets whose XML may have contained the record's name
+      }
+    }
+    finally
+    {
+      pointerResolutionInProgress = false;
+    }
   }
 
 //---------------------------------------------------------------------------
@@ -932,8 +1254,6 @@ public final class HyperDB
     {
       for (HyperDataset<? extends HDT_Record> dataset : datasets.values()) // Folders must be brought online first. See HyperPath.assignNameInternal
         dataset.bringAllRecordsOnline();
-
-      addRootFolder();
     }
     catch (RelationCycleException | HDB_InternalError | SearchKeyException e)
     {
@@ -946,52 +1266,30 @@ public final class HyperDB
     }
   }
 
-//---------------------------------------------------------------------------
-//---------------------------------------------------------------------------
-
-  private void addRootFolder()
-  {
-    Set<HyperPath> set = filenameMap.get(rootFilePath.getNameOnly().toString());
-    if (set == null)
-    {
-      set = Sets.newConcurrentHashSet();
-      filenameMap.put(rootFilePath.getNameOnly().toString(), set);
-    }
-
-    set.add(folders.getByID(ROOT_FOLDER_ID).getPath());
-  }
-
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
   private static final String recordsTag = "records", versionAttr = "version";
 
-  private VersionNumber getVersionNumberFromXML(XMLEventReader eventReader) throws XMLStreamException
+  private VersionNumber getVersionNumberFromXML(XMLStreamReader reader) throws XMLStreamException
   {
-    while (eventReader.hasNext())
+    while (reader.hasNext())
     {
-      XMLEvent event = eventReader.nextEvent();
-
-      if (event.isStartElement() == false)
+      if (reader.next() != XMLStreamConstants.START_ELEMENT)
         continue;
 
-      StartElement startElement = event.asStartElement();
+      String localName = reader.getLocalName();
 
-      if (startElement.getName().getLocalPart().equals(tagToStr.get(tagRecord)))
+      if (localName.equals(tagToStr.get(tagRecord)))
         return null;
 
-      if (startElement.getName().getLocalPart().equals(recordsTag) == false)
+      if (localName.equals(recordsTag) == false)
         continue;
 
-      Iterator<Attribute> attributes = startElement.getAttributes();
-
-      while (attributes.hasNext())
-      {
-        Attribute attribute = attributes.next();
+      String version = reader.getAttributeValue(null, versionAttr);
 
-        if (attribute.getName().toString().equals(versionAttr))
-          return new VersionNumber(2, attribute.getValue());
-      }
+      if (version != null)
+        return new VersionNumber(2, version);
     }
 
     return new VersionNumber(2, 1);
@@ -1000,44 +1298,38 @@ public final class HyperDB
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private HDT_RecordState getNextRecordFromXML(XMLEventReader eventReader) throws XMLStreamException, HyperDataException
+  private HDT_RecordState getNextRecordFromXML(XMLStreamReader reader) throws XMLStreamException, HyperDataException
   {
-    while (eventReader.hasNext())
+    while (reader.hasNext())
     {
-      XMLEvent event = eventReader.nextEvent();
-
-      if (event.isStartElement() == false)
+      if (reader.next() != XMLStreamConstants.START_ELEMENT)
         continue;
 
-      StartElement startElement = event.asStartElement();
-      if (startElement.getName().getLocalPart().equals(tagToStr.get(tagRecord)) == false)
+      if (reader.getLocalName().equals(tagToStr.get(tagRecord)) == false)
         continue;
 
       int id = -1;
       HDT_RecordType type = hdtNone;
       String sortKeyAttr = "", listName = "", searchKey = "";
 
-      Iterator<Attribute> attributes = startElement.getAttributes();
-
-      while (attributes.hasNext())
+      for (int ndx = 0; ndx < reader.getAttributeCount(); ndx++)
       {
-        Attribute attribute = attributes.next();
-        Tag tag = tagToStr.inverse().get(attribute.getName().toString());
+        String value = reader.getAttributeValue(ndx);
 
-        switch (tag)
+        switch (tagToStr.inverse().getOrDefault(reader.getAttributeLocalName(ndx), tagNone))
         {
-          case tagID        : id = parseInt(attribute.getValue(), -1); break;
+          case tagID        : id = parseInt(value, -1); break;
           case tagType      :
 
-            type = typeToTagStr.inverse().getOrDefault(attribute.getValue(), hdtNone);
+            type = typeToTagStr.inverse().getOrDefault(value, hdtNone);
             if (type == hdtNone)
-              throw new HyperDataException("Invalid record type: " + attribute.getValue());
+              throw new HyperDataException("Invalid record type: " + value);
 
             break;
 
-          case tagSortKey   : sortKeyAttr = attribute.getValue(); break;
-          case tagSearchKey : searchKey   = attribute.getValue(); break;
-          case tagListName  : listName    = attribute.getValue(); break;
+          case tagSortKey   : sortKeyAttr = value; break;
+          case tagSearchKey : searchKey   = value; break;
+          case tagListName  : listName    = value; break;
           default           : break;
         }
       }
@@ -1081,98 +1373,342 @@ public final class HyperDB
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
+  // One instance is reused for every element in a file, so that reading an element does not allocate
+
   private class HDX_Element
   {
-    private final Tag tag;
-    private int objID;
-    private HDT_RecordType objType;
+    private Tag tag = tagNone;
+    private int objID = -1;
+    private HDT_RecordType objType = hdtNone;
 
   //---------------------------------------------------------------------------
 
-    private HDX_Element(StartElement startElement, HDT_RecordState xmlRecord) throws InvalidItemException
+    private void read(XMLStreamReader reader, HDT_RecordState xmlRecord) throws InvalidItemException
     {
-      tag = tagToStr.inverse().getOrDefault(startElement.getName().getLocalPart(), tagNone);
+      String localName = reader.getLocalName();
+
+      tag = tagToStr.inverse().getOrDefault(localName, tagNone);
 
       if (tag == tagNone)
-        throw new InvalidItemException(xmlRecord.id, xmlRecord.type, startElement.getName().getLocalPart());
+        throw new InvalidItemException(xmlRecord.id, xmlRecord.type, localName);
 
       objType = tagToObjType.getOrDefault(tag, hdtNone);
       objID = -1;
 
-      startElement.getAttributes().forEachRemaining(attribute ->
+      for (int ndx = 0; ndx < reader.getAttributeCount(); ndx++)
       {
-        switch (attribute.getName().toString())
+        switch (reader.getAttributeLocalName(ndx))
         {
           case "id" :
             if (objType != hdtNone)
-              objID = parseInt(attribute.getValue(), -1);
+              objID = parseInt(reader.getAttributeValue(ndx), -1);
             break;
 
           case "type" :
             if (objType == hdtAuxiliary) // this represents that the object type is not given away by the
                                          // tag name, and should be obtained from the "type" attribute
-              objType = typeToTagStr.inverse().getOrDefault(attribute.getValue(), hdtNone);
+              objType = typeToTagStr.inverse().getOrDefault(reader.getAttributeValue(ndx), hdtNone);
             break;
 
           default:
             break;
         }
+      }
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @FunctionalInterface interface RecordStateHandler
+  {
+    void handle(HDT_RecordState xmlRecord, long charOffset) throws HyperDataException, TerminateTaskException;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void loadFromXML(FilePath filePath, boolean writeSnapshot) throws HyperDataException, TerminateTaskException
+  {
+    readRecordsFromXML(filePath, writeSnapshot, (xmlRecord, charOffset) ->
+    {
+      ingestRecordState(xmlRecord);
+      task.updateProgress(curTaskCount + charOffset, totalTaskCount);
+    });
+
+    curTaskCount += filePath.size();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void loadFromSnapshot(FilePath xmlFilePath, MutableBoolean snapshotFailed) throws HyperDataException, TerminateTaskException
+  {
+    try
+    {
+      long xmlSize = xmlFilePath.size();
+
+      RecordSnapshot.readRecords(xmlFilePath, xmlSize, (recordState, offset) ->
+      {
+        if (task.isCancelled()) throw new TerminateTaskException();
+
+        ingestRecordState(recordState);
+        task.updateProgress(curTaskCount + offset, totalTaskCount);
       });
+
+      curTaskCount += xmlSize;
+    }
+    catch (IOException | RuntimeException e)
+    {
+      RecordSnapshot.delete(xmlFilePath);
+      snapshotFailed.setTrue();
+
+      throw new TerminateTaskException();
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void ingestRecordState(HDT_RecordState xmlRecord) throws HyperDataException
+  {
+    try
+    {
+      if (isUnstoredRecord(xmlRecord.id, xmlRecord.type) == false)
+        createNewRecordFromState(xmlRecord, false);
+    }
+    catch (RelationCycleException | HDB_InternalError | SearchKeyException e) { noOp(); }
+    catch (DuplicateRecordException e)
+    {
+      throw new HyperDataException(e);
+    }
+    catch (HubChangedException e)
+    {
+      throw new HyperDataException("Internal error #42837", e);
     }
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private void loadFromXML(FilePath filePath) throws HyperDataException, TerminateTaskException
+  private static final class ParsedRecord
   {
-    try (InputStream in = new FileInputStream(filePath.toFile()))
+    private final HDT_RecordState xmlRecord; // null means the end of a file was reached
+    private final long progress;
+    private final Throwable exception;
+
+    private ParsedRecord(HDT_RecordState xmlRecord, long progress, Throwable exception)
     {
-      XMLEventReader eventReader = XMLInputFactory.newInstance().createXMLEventReader(in);
+      this.xmlRecord = xmlRecord;
+      this.progress = progress;
+      this.exception = exception;
+    }
+  }
+
+  private static final int PARSED_RECORD_QUEUE_CAPACITY = 2000;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The files are parsed concurrently, but records are only created on the calling thread so that
+  // the datasets and relation sets continue to have a single writer
+
+  private void loadFromXMLInParallel(List<FilePath> xmlFileList, boolean writeSnapshots) throws HyperDataException, TerminateTaskException
+  {
+    BlockingQueue<ParsedRecord> queue = new ArrayBlockingQueue<>(PARSED_RECORD_QUEUE_CAPACITY);
 
-      VersionNumber versionNumber = getVersionNumberFromXML(eventReader);
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(Runtime.getRuntime().availableProcessors(), xmlFileList.size()), runnable ->
+    {
+      Thread thread = new Thread(runnable, "XML parser");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try
+    {
+      xmlFileList.forEach(filePath -> executor.execute(() -> parseXMLFileToQueue(filePath, writeSnapshots, queue)));
+      executor.shutdown();
+
+      int filesRemaining = xmlFileList.size();
+
+      while (filesRemaining > 0)
+      {
+        if (task.isCancelled()) throw new TerminateTaskException();
+
+        ParsedRecord parsedRecord = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (parsedRecord == null) continue;
+
+        if (parsedRecord.exception instanceof HyperDataException)     throw (HyperDataException) parsedRecord.exception;
+        if (parsedRecord.exception instanceof TerminateTaskException) throw (TerminateTaskException) parsedRecord.exception;
+        if (parsedRecord.exception instanceof RuntimeException)       throw (RuntimeException) parsedRecord.exception;
+        if (parsedRecord.exception instanceof Error)                  throw (Error) parsedRecord.exception;
+
+        if (parsedRecord.xmlRecord == null)
+          filesRemaining--;
+        else
+          ingestRecordState(parsedRecord.xmlRecord);
+
+        curTaskCount += parsedRecord.progress;
+        task.updateProgress(curTaskCount, totalTaskCount);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      throw new TerminateTaskException();
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void parseXMLFileToQueue(FilePath filePath, boolean writeSnapshot, BlockingQueue<ParsedRecord> queue)
+  {
+    MutableLong lastOffset = new MutableLong(0);
+    Throwable failure = null;
+    long remainingProgress = 0;
+
+    try
+    {
+      readRecordsFromXML(filePath, writeSnapshot, (xmlRecord, charOffset) ->
+      {
+        putParsedRecord(queue, new ParsedRecord(xmlRecord, charOffset - lastOffset.longValue(), null));
+        lastOffset.setValue(charOffset);
+      });
+
+      remainingProgress = filePath.size() - lastOffset.longValue();
+    }
+    catch (Throwable e)
+    {
+      failure = e;  // Including Errors, which are rethrown on the loading thread
+    }
+    finally
+    {
+      // The end marker is always sent; otherwise the loading thread would wait for this file forever
+
+      try { putParsedRecord(queue, new ParsedRecord(null, remainingProgress, failure)); }
+      catch (TerminateTaskException e) { noOp(); } // The load has already been stopped
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void putParsedRecord(BlockingQueue<ParsedRecord> queue, ParsedRecord parsedRecord) throws TerminateTaskException
+  {
+    try
+    {
+      queue.put(parsedRecord);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new TerminateTaskException();
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // If writeSnapshot is true, a snapshot of the file is written from the parsed record states as they are read. It is
+  // only put in place if the whole file was read successfully. The file's checksum is computed from the bytes as they
+  // are parsed, and its size and modification time are taken beforehand, so a change made during the load makes the
+  // snapshot stale rather than wrong.
+
+  private void readRecordsFromXML(FilePath filePath, boolean writeSnapshot, RecordStateHandler handler) throws HyperDataException, TerminateTaskException
+  {
+    if (writeSnapshot == false)
+    {
+      readRecordsFromXML(filePath, null, handler);
+      return;
+    }
+
+    SnapshotWriter snapshot = new SnapshotWriter(filePath);
+
+    try
+    {
+      long xmlSize = filePath.size(), xmlModified = filePath.lastModified().toEpochMilli();
+      CRC32C crc = new CRC32C();
+
+      readRecordsFromXML(filePath, crc, (xmlRecord, charOffset) ->
+      {
+        snapshot.add(xmlRecord);  // Before the handler, which may bring the record online and change its state
+        handler.handle(xmlRecord, charOffset);
+      });
+
+      snapshot.finish(xmlSize, xmlModified, crc.getValue(), schemaFingerprint);
+    }
+    catch (IOException e)
+    {
+      noOp();
+    }
+    finally
+    {
+      snapshot.discard();
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // If crc is not null, it is updated with every byte of the file
+
+  private void readRecordsFromXML(FilePath filePath, CRC32C crc, RecordStateHandler handler) throws HyperDataException, TerminateTaskException
+  {
+    try (InputStream in = crc == null ? new FileInputStream(filePath.toFile()) : new CheckedInputStream(new FileInputStream(filePath.toFile()), crc))
+    {
+      XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+
+      VersionNumber versionNumber = getVersionNumberFromXML(reader);
 
       if (versionNumber == null)
         throw new HyperDataException("XML record data version number not found.");
       else if (versionNumber.equals(RECORDS_XML_VERSION) == false)
         throw new HyperDataException("The XML record data is not compatible with this version of " + appTitle + ".");
 
-      HDT_RecordState xmlRecord = getNextRecordFromXML(eventReader);
+      HDX_Element hdxElement = new HDX_Element(), nestedElement = new HDX_Element();
+      StringBuilder nodeText = new StringBuilder(), nestedNodeText = new StringBuilder();
+
+      HDT_RecordState xmlRecord = getNextRecordFromXML(reader);
 
       while (xmlRecord != null)
       {
-        boolean notDoneReadingRecord = eventReader.hasNext(), noInnerTags = true, wasAlreadyInStartTag = false;
+        boolean notDoneReadingRecord = reader.hasNext(), noInnerTags = true, wasAlreadyInStartTag = false;
         Map<Tag, HDI_OfflineBase> nestedItems = null;
         HDT_RecordType objType = hdtNone;
-        XMLEvent event = null;
-        String nodeText = "";
         Tag tag = tagNone;
         int objID = -1;
 
+        nodeText.setLength(0);
+
         while (notDoneReadingRecord)
         {
-          if (task.isCancelled()) throw new TerminateTaskException();
+          if (task.isCancelled() || Thread.currentThread().isInterrupted()) throw new TerminateTaskException();
 
-          event = eventReader.nextEvent();
-          switch (event.getEventType())
+          switch (reader.next())
           {
             case XMLStreamConstants.START_ELEMENT :
 
-              HDX_Element hdxElement = new HDX_Element(event.asStartElement(), xmlRecord);
-
               if (wasAlreadyInStartTag)
               {
+                nestedElement.read(reader, xmlRecord);
+
                 if (nestedItems == null)
                   nestedItems = new LinkedHashMap<>();
 
-                readNestedItem(xmlRecord, nestedItems, getRelation(xmlRecord.type, objType), hdxElement, eventReader);
+                readNestedItem(xmlRecord, nestedItems, getRelation(xmlRecord.type, objType), nestedElement, reader, nestedNodeText);
               }
               else
               {
+                hdxElement.read(reader, xmlRecord);
+
                 objID = hdxElement.objID;
                 objType = hdxElement.objType;
                 tag = hdxElement.tag;
-                nodeText = "";
+                nodeText.setLength(0);
                 noInnerTags = false;
                 nestedItems = null;
               }
@@ -1183,7 +1719,7 @@ public final class HyperDB
             case XMLStreamConstants.END_ELEMENT :
 
               wasAlreadyInStartTag = false;
-              if (event.asEndElement().getName().getLocalPart().equals("record"))
+              if (reader.getLocalName().equals("record"))
                 notDoneReadingRecord = false;
               else
               {
@@ -1191,11 +1727,11 @@ public final class HyperDB
                 {
                   switch (tag)
                   {
-                    case tagCreationDate : xmlRecord.creationDate = parseIso8601offset(nodeText); break;
-                    case tagModifiedDate : xmlRecord.modifiedDate = parseIso8601offset(nodeText); break;
-                    case tagViewDate     : xmlRecord.viewDate =     parseIso8601offset(nodeText); break;
+                    case tagCreationDate : xmlRecord.creationDate = parseIso8601offset(nodeText.toString()); break;
+                    case tagModifiedDate : xmlRecord.modifiedDate = parseIso8601offset(nodeText.toString()); break;
+                    case tagViewDate     : xmlRecord.viewDate =     parseIso8601offset(nodeText.toString()); break;
 
-                    default              : xmlRecord.loadItemFromXML(tag, nodeText, objType, objID, nestedItems);
+                    default              : xmlRecord.loadItemFromXML(tag, nodeText.toString(), objType, objID, nestedItems);
                   }
                 }
                 catch (DateTimeParseException e)
@@ -1204,38 +1740,31 @@ public final class HyperDB
                 }
 
                 tag = tagNone;
-                nodeText = "";
+                nodeText.setLength(0);
                 objType = hdtNone;
                 objID = -1;
               }
 
               break;
 
-            case XMLStreamConstants.CHARACTERS   : nodeText = nodeText + event.asCharacters().getData(); break;
+            case XMLStreamConstants.CHARACTERS   : nodeText.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength()); break;
             case XMLStreamConstants.END_DOCUMENT : notDoneReadingRecord = false; break;
             default                              : break;
           }
         }
 
         if (noInnerTags)
-          xmlRecord.loadItemFromXML(tagNone, nodeText, hdtNone, -1, null);
-
-        try
-        {
-          if (isUnstoredRecord(xmlRecord.id, xmlRecord.type) == false)
-            createNewRecordFromState(xmlRecord, false);
-        }
-        catch (RelationCycleException | HDB_InternalError | SearchKeyException e) { noOp(); }
+          xmlRecord.loadItemFromXML(tagNone, nodeText.toString(), hdtNone, -1, null);
 
-        if (event != null)
-          task.updateProgress(curTaskCount + event.getLocation().getCharacterOffset(), totalTaskCount);
+        handler.handle(xmlRecord, reader.getLocation().getCharacterOffset());
 
-        xmlRecord = getNextRecordFromXML(eventReader);
+        xmlRecord = getNextRecordFromXML(reader);
       }
 
-      curTaskCount += filePath.size();
+      if (crc != null)
+        in.transferTo(OutputStream.nullOutputStream());  // The parser may stop before the end of the file
     }
-    catch (IOException | DuplicateRecordException | InvalidItemException e)
+    catch (IOException | InvalidItemException e)
     {
       throw new HyperDataException(e);
     }
@@ -1243,16 +1772,12 @@ public final class HyperDB
     {
       throw new HyperDataException("File: " + filePath + System.lineSeparator() + e.getMessage(), e);
     }
-    catch (HubChangedException e)
-    {
-      throw new HyperDataException("Internal error #42837", e);
-    }
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private void initNestedItems(HDT_RecordState xmlRecord, Map<Tag, HDI_OfflineBase> nestedItems, RelationType relation)
+  public void initNestedItems(HDT_RecordState xmlRecord, Map<Tag, HDI_OfflineBase> nestedItems, RelationType relation)
   {
     Collection<HDI_Schema> schemas = relationSets.get(relation).getSchemas();
     if (schemas == null) return;
@@ -1280,19 +1805,17 @@ public final class HyperDB
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private void readNestedItem(HDT_RecordState xmlRecord, Map<Tag, HDI_OfflineBase> nestedItems, RelationType relationType, HDX_Element hdxElement, XMLEventReader eventReader) throws XMLStreamException, HyperDataException, InvalidItemException
+  private void readNestedItem(HDT_RecordState xmlRecord, Map<Tag, HDI_OfflineBase> nestedItems, RelationType relationType, HDX_Element hdxElement, XMLStreamReader reader, StringBuilder nodeText) throws XMLStreamException, HyperDataException, InvalidItemException
   {
-    boolean notDone = eventReader.hasNext();
-    String nodeText = "";
+    boolean notDone = reader.hasNext();
+    nodeText.setLength(0);
 
     if (nestedItems.isEmpty())
       initNestedItems(xmlRecord, nestedItems, relationType);
 
     while (notDone)
     {
-      XMLEvent event = eventReader.nextEvent();
-
-      switch (event.getEventType())
+      switch (reader.next())
       {
         case XMLStreamConstants.START_ELEMENT :
 
@@ -1306,7 +1829,7 @@ public final class HyperDB
 
         case XMLStreamConstants.CHARACTERS :
 
-          nodeText = nodeText + event.asCharacters().getData();
+          nodeText.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
           break;
 
         case XMLStreamConstants.END_DOCUMENT :
@@ -1323,7 +1846,7 @@ public final class HyperDB
 
     if (item == null) throw new InvalidItemException(xmlRecord.id, xmlRecord.type, "(nested) " + getTagStr(hdxElement.tag));
 
-    item.setFromXml(hdxElement.tag, nodeText, hdxElement.objType, hdxElement.objID, null);
+    item.setFromXml(hdxElement.tag, nodeText.toString(), hdxElement.objType, hdxElement.objID, null);
   }
 
 //---------------------------------------------------------------------------
@@ -1428,16 +1951,18 @@ public final class HyperDB
     }
 
     mentionsIndex.stopRebuild();
+    recordTextIndex.clear();
     loaded = false;
     clearAllDataSets(datasetsToKeep);
     cleanupRelations();
 
     initialNavList   .clear();
-    filenameMap      .clear();
     keyWorkIndex     .clear();
     displayedAtIndex .clear();
     bibEntryKeyToWork.clear();
 
+    HyperPath.clearIndex();
+
     if (bibLibrary != null)
     {
       bibLibrary = null;
@@ -1509,6 +2034,7 @@ public final class HyperDB
       datasetsToKeep = EnumSet.noneOf(HDT_RecordType.class);
 
     close(datasetsToKeep);
+    markAllDirty();
 
     dbCreationDate = Instant.now();
     prefs.put(PREF_KEY_DB_CREATION_DATE, dateTimeToIso8601offset(dbCreationDate));
@@ -1519,8 +2045,6 @@ public final class HyperDB
 
     folders.forEach(prefs::put);
 
-    addRootFolder();
-
     HDT_RecordBase.setRootRecordDates();
 
     try
@@ -1917,6 +2441,9 @@ public final class HyperDB
       addHubSpokesItem();
       addConnectorItem(hdtHub, tagDescription, tagDisplayRecord, tagKeyWork);
 
+      initDirtyTypes();
+      schemaFingerprint = computeSchemaFingerprint();
+
       initialized = true;
     }
     catch (HDB_InternalError e)
@@ -2031,7 +2558,8 @@ public final class HyperDB
     TERM_FILE_NAME = "Terms.xml",
     FILE_FILE_NAME = "Files.xml",
     NOTE_FILE_NAME = "Notes.xml",
-    HUB_FILE_NAME = "Hubs.xml";
+    HUB_FILE_NAME = "Hubs.xml",
+    MENTIONS_INDEX_FILE_NAME = "Mentions.index";
 
   public static enum Tag
   {
@@ -2232,20 +2760,7 @@ public final class HyperDB
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  public void unmapFilePath(FilePath filePath)
-  {
-    if (FilePath.isEmpty(filePath)) return;
-
-    String name = filePath.getNameOnly().toString();
-    Set<HyperPath> paths = filenameMap.get(name);
-
-    if (paths == null) return;
-
-    paths.removeIf(path -> filePath.equals(path.filePath()));
-
-    if (paths.isEmpty())
-      filenameMap.remove(name);
-  }
+  public void unmapFilePath(FilePath filePath) { HyperPath.unmapFilePath(filePath); }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
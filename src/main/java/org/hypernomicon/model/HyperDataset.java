@@ -26,6 +26,8 @@ import org.hypernomicon.model.HyperDB.Tag;
 import org.hypernomicon.model.records.*;
 import org.hypernomicon.model.relations.RelationSet;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -34,7 +36,7 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -79,11 +81,10 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
 
   private final class CoreIterator implements Iterator<HDT_DT>
   {
-    private final CoreAccessor coreAccessor;
-    private int nextNdx = 0;
-    private final boolean byKey;
+    private final HyperCore<HDT_DT> core;
+    private final PrimitiveIterator.OfInt ids;
 
-    @Override public boolean hasNext() { return nextNdx < coreAccessor.size(); }
+    @Override public boolean hasNext() { return ids.hasNext(); }
     @Override public void remove()     { throw new UnsupportedOperationException("Internal error: A 'remove' call was made to a core iterator."); }
 
     //---------------------------------------------------------------------------
@@ -91,8 +92,8 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
 
     private CoreIterator(CoreAccessor coreAccessor, boolean byKey)
     {
-      this.coreAccessor = coreAccessor;
-      this.byKey = byKey;
+      core = coreAccessor.core;
+      ids = byKey ? core.idIteratorByKey() : core.idIterator();
     }
 
   //---------------------------------------------------------------------------
@@ -100,9 +101,7 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
 
     @Override public HDT_DT next()
     {
-      if (!hasNext()) throw new NoSuchElementException();
-
-      return byKey ? coreAccessor.getByKeyNdx(nextNdx++) : coreAccessor.getByIDNdx(nextNdx++);
+      return core.getRecordByID(ids.nextInt());
     }
   }
 
@@ -113,9 +112,19 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
   private final HDT_RecordType type;
   private final List<HDT_DT> needIDs = new ArrayList<>();
   private final Map<Tag, HDI_Schema> tagToSchema = new LinkedHashMap<>();
-  private boolean online = false;
+  private boolean online = false, dirty = true;
   private HDT_Record recordToAssign = null;
   private int idToAssign = -1;
+  private volatile int nameModCount = 0; // Incremented whenever a record is added, removed, or renamed, or its search key or authors change
+
+  // The records whose names changed, in order, starting with the change that brought nameModCount to nameLogStart + 1.
+  // The log is reset when it fills up or when a change cannot be pinned to a single record, so nameModCount is always
+  // nameLogStart + nameChangeLog.size().
+
+  private static final int MAX_NAME_CHANGE_LOG_SIZE = 10000;
+
+  private final List<HDT_Record> nameChangeLog = new ArrayList<>();
+  private int nameLogStart = 0;
 
 //---------------------------------------------------------------------------
 
@@ -125,7 +134,7 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
   }
 
   // This should ONLY ever be called by HDT_RecordBase.updateSortKey!!!
-  public void updateSortKey(String newKey, int id) { core.setKey(id, newKey); }
+  public void updateSortKey(String newKey, int id) { core.setKey(id, newKey); nameChanged(core.getRecordByID(id)); }
 
   HDT_RecordType getType()                         { return type; }
   int getNextID()                                  { int id = 0; while (true) if (idAvailable(++id)) return id; }
@@ -133,10 +142,14 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
   Collection<HDI_Schema> getSchemas()              { return tagToSchema.values(); }
   Set<Tag> getTags()                               { return tagToSchema.keySet(); }
   void resolvePointers() throws HDB_InternalError  { core.resolvePointers(); }
+  void removeExpiredRecord(int id)                 { HDT_DT record = core.getRecordByID(id); if (nullSwitch(record, false, HDT_Record::isExpired)) { core.remove(id); nameChanged(record); } }
   CoreAccessor getAccessor()                       { return new CoreAccessor(core); }
   boolean idAvailable(int id)                      { return isUnstoredRecord(id, type) ? false : core.containsID(id) == false; }
+  boolean isDirty()                                { return dirty; }
+  void setDirty(boolean dirty)                     { this.dirty = dirty; }
+  int getNameModCount()                            { return nameModCount; }
 
-  public void changeRecordID(int oldID, int newID) { core.changeRecordID(oldID, newID); }
+  public void changeRecordID(int oldID, int newID) { core.changeRecordID(oldID, newID); nameChanged(null); }
   public String getKeyByID(int id)                 { return core.getKeyByID(id); }
 
 //---------------------------------------------------------------------------
@@ -162,6 +175,43 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
     needIDs.clear();
     core.clear();
     online = leaveOnline;
+    setDirty(true);
+    nameChanged(null);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Pass null if more than one record may have changed
+
+  void nameChanged(HDT_Record record)
+  {
+    synchronized (nameChangeLog)
+    {
+      if ((record == null) || (nameChangeLog.size() == MAX_NAME_CHANGE_LOG_SIZE))
+      {
+        nameChangeLog.clear();
+        nameLogStart = nameModCount + 1;
+      }
+      else
+        nameChangeLog.add(record);
+
+      nameModCount++;
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Returns the records whose names changed after the name mod count was modCount, or null if that is no longer
+  // known. The mod count after those changes is modCount plus the size of the returned list.
+
+  List<HDT_Record> getNameChangesSince(int modCount)
+  {
+    synchronized (nameChangeLog)
+    {
+      return modCount < nameLogStart ? null : new ArrayList<>(nameChangeLog.subList(modCount - nameLogStart, nameChangeLog.size()));
+    }
   }
 
 //---------------------------------------------------------------------------
@@ -218,6 +268,8 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
 
     core.add(id, record.makeSortKey(), record);
     RelationSet.addOrphanToAll(record);
+    setDirty(true);
+    nameChanged(record);
   }
 
 //---------------------------------------------------------------------------
@@ -279,10 +331,14 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  void writeToXML(StringBuilder xml) throws HDB_InternalError, TerminateTaskException
+  // Each record is serialized into a reusable buffer which is then handed to the writer, so
+  // memory use during a save is bounded by the size of the largest record, not the dataset
+
+  void writeToXML(Writer out) throws HDB_InternalError, TerminateTaskException, IOException
   {
     if (core.size() == 0) return;
 
+    StringBuilder xml = new StringBuilder();
     int ndx = 0;
 
     for (HDT_DT record : getAccessor())
@@ -301,13 +357,15 @@ public final class HyperDataset<HDT_DT extends HDT_Record>
       {
         record.saveToStoredState();
         record.writeStoredStateToXML(xml);
+        out.append(xml);
+        xml.setLength(0);
         db.task.updateProgress(db.curTaskCount + ndx, db.totalTaskCount);
       }
 
       if (db.task.isCancelled()) throw new TerminateTaskException();
     }
 
-    xml.append(System.lineSeparator())
+    out.append(System.lineSeparator())
        .append(System.lineSeparator())
        .append(System.lineSeparator());
   }
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.hypernomicon.model.SearchKeys.SearchKeyword;
+
+//---------------------------------------------------------------------------
+
+// Aho-Corasick automaton over the text of a set of search keywords. Characters are compared the same way
+// String.equalsIgnoreCase compares them. Instances are immutable once built, so one automaton can be used
+// by the mentions indexing thread and the FX thread at the same time.
+
+final class KeywordAutomaton
+{
+
+//---------------------------------------------------------------------------
+
+  @FunctionalInterface interface MatchHandler { void handle(int start, SearchKeyword keyword); }
+
+//---------------------------------------------------------------------------
+
+  private static final int ROOT = 0, NONE = -1;
+
+  private final SearchKeyword[] nodeKeyword;  // Keyword whose text ends at the node, if any
+  private final int[] failLink,
+                      outputLink,   // Nearest node along the failure chain that has a keyword
+                      transValues;
+  private final long[] transKeys;   // Open-addressing hash table of (node, char) -> node
+  private final int transMask;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  KeywordAutomaton(Collection<SearchKeyword> keywords)
+  {
+    int maxNodes = 1;
+    for (SearchKeyword keyword : keywords)
+      maxNodes += keyword.text.length();
+
+    int tableSize = Integer.highestOneBit(Math.max(maxNodes, 8) * 2) * 2;
+
+    transMask = tableSize - 1;
+    transKeys = new long[tableSize];
+    transValues = new int[tableSize];
+    Arrays.fill(transValues, NONE);
+
+    List<SearchKeyword> keywordList = new ArrayList<>(maxNodes);
+    keywordList.add(null);
+
+    int[] parentChar = new int[maxNodes], parent = new int[maxNodes];
+    int nodeCount = 1;
+
+  // Build the trie
+  // --------------
+    for (SearchKeyword keyword : keywords)
+    {
+      if (keyword.text.isEmpty()) continue;
+
+      int node = ROOT;
+
+      for (int ndx = 0; ndx < keyword.text.length(); ndx++)
+      {
+        char c = fold(keyword.text.charAt(ndx));
+        int next = getTransition(node, c);
+
+        if (next == NONE)
+        {
+          next = nodeCount++;
+          putTransition(node, c, next);
+          parent[next] = node;
+          parentChar[next] = c;
+          keywordList.add(null);
+        }
+
+        node = next;
+      }
+
+      if (keywordList.get(node) == null)
+        keywordList.set(node, keyword);
+    }
+
+    nodeKeyword = keywordList.toArray(new SearchKeyword[nodeCount]);
+    failLink = new int[nodeCount];
+    outputLink = new int[nodeCount];
+
+  // Nodes are numbered in insertion order, not depth order, so find the depth of each node
+  // and process them breadth-first when computing failure links
+  // ----------------------------------------------------------------------------------------
+    int[] depth = new int[nodeCount], order = new int[nodeCount], depthCount = new int[maxDepth(nodeCount, parent, depth) + 2];
+
+    for (int node = 0; node < nodeCount; node++) depthCount[depth[node] + 1]++;
+    for (int ndx = 1; ndx < depthCount.length; ndx++) depthCount[ndx] += depthCount[ndx - 1];
+    for (int node = 0; node < nodeCount; node++) order[depthCount[depth[node]]++] = node;
+
+    outputLink[ROOT] = NONE;
+
+    for (int ndx = 1; ndx < nodeCount; ndx++)
+    {
+      int node = order[ndx], fail = NONE;
+
+      if (parent[node] != ROOT)
+      {
+        char c = (char) parentChar[node];
+
+        for (int state = failLink[parent[node]]; fail == NONE; state = failLink[state])
+        {
+          fail = getTransition(state, c);
+          if (state == ROOT) break;
+        }
+      }
+
+      failLink[node] = fail == NONE ? ROOT : fail;
+      outputLink[node] = nodeKeyword[failLink[node]] != null ? failLink[node] : outputLink[failLink[node]];
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static int maxDepth(int nodeCount, int[] parent, int[] depth)
+  {
+    int max = 0;
+
+    for (int node = 1; node < nodeCount; node++) // A child is always created after its parent
+    {
+      depth[node] = depth[parent[node]] + 1;
+      max = Math.max(max, depth[node]);
+    }
+
+    return max;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Same equivalence as String.equalsIgnoreCase
+
+  private static char fold(char c) { return Character.toLowerCase(Character.toUpperCase(c)); }
+
+  private static long transKey(int node, char c) { return ((long) node << 16) | c; }
+
+  private int slot(int node, char c)
+  {
+    int hash = (node * 0x9E3779B1) + c;
+    return (hash ^ (hash >>> 15)) & transMask;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private int getTransition(int node, char c)
+  {
+    long key = transKey(node, c);
+
+    for (int ndx = slot(node, c); transValues[ndx] != NONE; ndx = (ndx + 1) & transMask)
+      if (transKeys[ndx] == key)
+        return transValues[ndx];
+
+    return NONE;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void putTransition(int node, char c, int next)
+  {
+    int ndx = slot(node, c);
+
+    while (transValues[ndx] != NONE)
+      ndx = (ndx + 1) & transMask;
+
+    transKeys[ndx] = transKey(node, c);
+    transValues[ndx] = next;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Reports every occurrence of every keyword in one pass over the text, including overlapping ones
+
+  void forEachMatch(String text, MatchHandler handler)
+  {
+    int state = ROOT;
+
+    for (int ndx = 0; ndx < text.length(); ndx++)
+    {
+      char c = fold(text.charAt(ndx));
+      int next = getTransition(state, c);
+
+      while ((next == NONE) && (state != ROOT))
+      {
+        state = failLink[state];
+        next = getTransition(state, c);
+      }
+
+      state = next == NONE ? ROOT : next;
+
+      for (int node = nodeKeyword[state] != null ? state : outputLink[state]; node > ROOT; node = outputLink[node])
+      {
+        SearchKeyword keyword = nodeKeyword[node];
+        handler.handle(ndx + 1 - keyword.text.length(), keyword);
+      }
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -75,6 +75,8 @@ public final class KeywordLinkList
         checkPeriods = true;
     }
 
+    SearchKeyword[] longestMatches = checkPeriods ? null : findLongestMatches(text, overrideSet ? searchKeysToUse.getAutomaton() : db.getKeywordAutomaton());
+
     int ndx = 0;
 
     while (ndx < text.length())
@@ -90,58 +92,37 @@ public final class KeywordLinkList
         continue;
       }
 
-      String prefix = safeSubstring(text, ndx, ndx + 3);
-
-      if (checkPeriods) // This happens less than 1 percent of the time
-        prefix = safeSubstring(prefix.replace(".", ". ").replaceAll("  ", " "), 0, 3);
-
       SearchKeyword curKey = null;
-      List<SearchKeyword> keys;
       int curMatchLen = 0;
 
-      keys = overrideSet ? searchKeysToUse.getKeywordsByPrefix(prefix) : db.getKeysByPrefix(prefix);
-
-      for (SearchKeyword key : keys)
+      if (checkPeriods) // This happens less than 1 percent of the time
       {
-        int matchLen;
-        String focusStr = safeSubstring(text, ndx, ndx + key.text.length());
+        String prefix = safeSubstring(safeSubstring(text, ndx, ndx + 3).replace(".", ". ").replaceAll("  ", " "), 0, 3);
 
-        if (checkPeriods) // This happens less than 1 percent of the time
+        List<SearchKeyword> keys = overrideSet ? searchKeysToUse.getKeywordsByPrefix(prefix) : db.getKeysByPrefix(prefix);
+
+        for (SearchKeyword key : keys)
         {
-          matchLen = focusStr.length();
+          String focusStr = safeSubstring(text, ndx, ndx + key.text.length());
+          int matchLen = focusStr.length();
+
           focusStr = focusStr.replace(".", ". ").replaceAll("  ", " ");
 
           matchLen = key.text.length() - (focusStr.length() - matchLen);
           focusStr = safeSubstring(focusStr, 0, key.text.length());
-        }
-        else
-          matchLen = key.text.length();
-
-        if (focusStr.equalsIgnoreCase(key.text))
-        {
-          boolean addOK = true;
 
-          if (key.startOnly && (ndx > 0))
-          {
-            char c = text.charAt(ndx - 1);
-            if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')))
-              addOK = false;
-          }
-
-          if (key.endOnly && ((ndx + matchLen) < text.length()))
-          {
-            char c = text.charAt(ndx + matchLen);
-            if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')))
-              addOK = false;
-          }
-
-          if (addOK && ((curKey == null) || (matchLen > curKey.text.length())))
+          if (focusStr.equalsIgnoreCase(key.text) && keywordFits(text, ndx, matchLen, key) && ((curKey == null) || (matchLen > curKey.text.length())))
           {
             curKey = key;
             curMatchLen = matchLen;
           }
         }
       }
+      else if (longestMatches[ndx] != null)
+      {
+        curKey = longestMatches[ndx];
+        curMatchLen = curKey.text.length();
+      }
 
       if (curKey != null)
         ndx = add(text, ndx, curMatchLen, curKey, posMap);
@@ -150,6 +131,49 @@ public final class KeywordLinkList
     }
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Finds, for each position in the text, the longest keyword that starts there and satisfies its
+  // start-only and end-only rules, in a single pass over the text
+
+  private static SearchKeyword[] findLongestMatches(String text, KeywordAutomaton automaton)
+  {
+    SearchKeyword[] longestMatches = new SearchKeyword[text.length()];
+
+    automaton.forEachMatch(text, (start, key) ->
+    {
+      int matchLen = key.text.length();
+
+      if (keywordFits(text, start, matchLen, key) && ((longestMatches[start] == null) || (matchLen > longestMatches[start].text.length())))
+        longestMatches[start] = key;
+    });
+
+    return longestMatches;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static boolean keywordFits(String text, int ndx, int matchLen, SearchKeyword key)
+  {
+    if (key.startOnly && (ndx > 0))
+    {
+      char c = text.charAt(ndx - 1);
+      if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')))
+        return false;
+    }
+
+    if (key.endOnly && ((ndx + matchLen) < text.length()))
+    {
+      char c = text.charAt(ndx + matchLen);
+      if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')))
+        return false;
+    }
+
+    return true;
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
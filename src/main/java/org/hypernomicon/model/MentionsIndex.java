@@ -17,10 +17,34 @@
 
 package org.hypernomicon.model;
 
+import static java.nio.charset.StandardCharsets.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
 
 import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.lang3.mutable.MutableInt;
@@ -30,14 +54,19 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 
 import org.hypernomicon.HyperTask;
+import org.hypernomicon.model.SearchKeys.SearchKeyword;
+import org.hypernomicon.model.items.KeyWork;
 import org.hypernomicon.model.items.MainText;
+import org.hypernomicon.model.items.MainText.DisplayItem;
 import org.hypernomicon.model.items.StrongLink;
+import org.hypernomicon.model.records.HDT_Hub;
 import org.hypernomicon.model.records.HDT_MiscFile;
 import org.hypernomicon.model.records.HDT_Record;
 import org.hypernomicon.model.records.HDT_RecordType;
 import org.hypernomicon.model.records.HDT_RecordWithConnector;
 import org.hypernomicon.model.records.SimpleRecordTypes.HDT_RecordWithPath;
 import org.hypernomicon.util.BidiOneToManyRecordMap;
+import org.hypernomicon.util.filePath.FilePath;
 import org.hypernomicon.view.mainText.MainTextUtil;
 import org.jsoup.nodes.Element;
 
@@ -55,11 +84,28 @@ class MentionsIndex
   private final KeywordLinkList linkList = new KeywordLinkList();
   private final EnumSet<HDT_RecordType> types;
   private final List<String> strList = new ArrayList<>();
+  private final Map<HDT_Record, Long> contentHashes = new HashMap<>();        // Hash of what each mentioner was last indexed from
+  private final CRC32C crc = new CRC32C();
 
   private RebuildThread thread = null;
   private HyperTask task = null;
   private double ctr, total;
-  private boolean stopRequested = false;
+  private final Map<HDT_Record, Boolean> queuedChanges = new LinkedHashMap<>(); // Value is true if the record was deleted
+  private final Map<HDT_Record, Set<String>> queuedKeywordChanges = new LinkedHashMap<>(); // Guarded by queuedChanges
+  private boolean queueChanges = false;                                         // Guarded by queuedChanges
+  private volatile int restartsAvoided = 0;                                     // Number of changes queued instead of restarting a rebuild
+  private volatile boolean stopRequested = false, modifiedSinceSave = true,
+                           verifying = false;                                 // True while the pass started by loadFromFileAndStartRebuild runs
+  private final Object verifyLock = new Object();                             // Held while that pass changes the index, and by queries made during it
+
+  private static final int MAGIC = 0x48594d49,  // "HYMI"
+                           FORMAT_VERSION = 2,
+                           BUFFER_SIZE = 65536;
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final int SHARDS_PER_WORKER = 4,  // More shards than workers so that a slow shard does not leave the other workers idle
+                           PROGRESS_INTERVAL_MS = 100;
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
@@ -77,14 +123,20 @@ class MentionsIndex
 
   void removeRecord(HDT_Record record)
   {
-    if ((thread != null) && thread.isAlive())
-    {
-      startRebuild();
-      return;
-    }
+    if (queueChange(record, true)) return;
+
+    applyRemoval(record);
+  }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void applyRemoval(HDT_Record record)
+  {
     mentionedInDescToMentioners.removeRecord(record);
     mentionedAnywhereToMentioners.removeRecord(record);
+    contentHashes.remove(record);
+    modifiedSinceSave = true;
   }
 
 //---------------------------------------------------------------------------
@@ -92,12 +144,16 @@ class MentionsIndex
 
   void updateMentioner(HDT_Record record)
   {
-    if ((thread != null) && thread.isAlive())
-    {
-      startRebuild();
-      return;
-    }
+    if (queueChange(record, false)) return;
+
+    applyUpdate(record);
+  }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void applyUpdate(HDT_Record record)
+  {
     if (record.isUnitable())
     {
       HDT_RecordWithConnector uRecord = (HDT_RecordWithConnector) record;
@@ -117,6 +173,221 @@ class MentionsIndex
     reindexMentioner(record);
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // While a rebuild is running, changes are queued and replayed against the finished index instead of
+  // restarting the rebuild. Only the latest change for each record is kept, so a record that is edited
+  // and then deleted is just removed.
+
+  private boolean queueChange(HDT_Record record, boolean removed)
+  {
+    synchronized (queuedChanges)
+    {
+      if (queueChanges == false) return false;
+
+      queuedChanges.remove(record);
+      queuedChanges.put(record, removed);
+      restartsAvoided++;
+
+      return true;
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Runs on the rebuild thread after the shards have been merged. Queueing stops only once the queue is
+  // empty, so changes made while this runs are either replayed here or applied directly afterward.
+
+  private void replayQueuedChanges()
+  {
+    while (true)
+    {
+      Entry<HDT_Record, Boolean> change;
+
+      synchronized (queuedChanges)
+      {
+        Iterator<Entry<HDT_Record, Boolean>> it = queuedChanges.entrySet().iterator();
+
+        if (it.hasNext() == false)
+        {
+          queueChanges = false;
+          return;
+        }
+
+        change = it.next();
+        it.remove();
+      }
+
+      if (change.getValue())
+        applyRemoval(change.getKey());
+      else
+        applyUpdate(change.getKey());
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Called after the keywords of keyRecord have changed. Starts a background pass that only re-indexes
+  // mentioners whose current text contains one of the added or removed keywords, plus the records that
+  // currently link to keyRecord (a longer keyword that disappears can expose a shorter one) and keyRecord
+  // itself, whose strings include its keys. The text is read from the records during the pass rather than
+  // cached, so it includes the current names of linked records.
+  //
+  // If a pass is already running, the change is queued and a pass for all of the queued changes starts
+  // once it finishes. This is what happens when several records are deleted at once: each one's keys are
+  // cleared, and its removal from the index is queued and replayed before the next pass.
+
+  void updateForKeywordChange(HDT_Record keyRecord, Collection<String> changedKeywords)
+  {
+    synchronized (queuedChanges)
+    {
+      if (queueChanges)
+      {
+        queuedKeywordChanges.computeIfAbsent(keyRecord, record -> new HashSet<>()).addAll(changedKeywords);
+        restartsAvoided++;
+        return;
+      }
+    }
+
+    startKeywordPass(Map.of(keyRecord, changedKeywords));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Runs on the FX thread after a pass has finished. If another pass has started in the meantime, the
+  // changes stay queued until that one finishes.
+
+  private void startQueuedKeywordPass()
+  {
+    Map<HDT_Record, Set<String>> changes;
+
+    synchronized (queuedChanges)
+    {
+      if (queueChanges || queuedKeywordChanges.isEmpty()) return;
+
+      changes = new LinkedHashMap<>(queuedKeywordChanges);
+      queuedKeywordChanges.clear();
+    }
+
+    startKeywordPass(changes);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Rather than reading the text of every record, the pass first checks each record's trigram signature in
+  // the record text index, which is kept between passes and shared with searches. Only the records that may
+  // contain one of the keywords are read.
+
+  private void startKeywordPass(Map<HDT_Record, ? extends Collection<String>> keyRecordToChangedKeywords)
+  {
+    List<String> patterns = new ArrayList<>();
+    Set<HDT_Record> mentioners = new HashSet<>();
+
+    keyRecordToChangedKeywords.forEach((keyRecord, changedKeywords) ->
+    {
+      changedKeywords.forEach(keyword -> addPattern(patterns, keyword));
+      addMentionersAndSelf(keyRecord, mentioners);
+    });
+
+    if (patterns.isEmpty())  // No other record can be affected, so there is no need to scan
+    {
+      mentioners.forEach(record -> { if (record.isExpired() == false) reindexMentioner(record); });
+      return;
+    }
+
+    RecordTextIndex textIndex = db.getRecordTextIndex();
+    List<RecordTextIndex.Grams> patternGrams = new ArrayList<>();
+    patterns.forEach(pattern -> patternGrams.add(RecordTextIndex.getGramsWithinWords(pattern)));
+
+    startRebuild(() -> (record, strList) ->
+    {
+      if (mentioners.contains(record)) return true;
+
+      if (patternGrams.stream().noneMatch(grams -> textIndex.mayContain(record, grams)))
+        return false;
+
+      strList.clear();
+      record.getAllStrings(strList, true);
+
+      return containsAny(strList, patterns);
+    }, false);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void addMentionersAndSelf(HDT_Record keyRecord, Set<HDT_Record> mentioners)
+  {
+    mentionedAnywhereToMentioners.forEachForward(keyRecord, mentioners::add);
+    mentionedInDescToMentioners  .forEachForward(keyRecord, mentioners::add);
+    mentioners.add(keyRecord);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void addPattern(List<String> patterns, String keyword)
+  {
+    String pattern = searchableText(List.of(keyword)).trim();
+    if (pattern.length() > 0) patterns.add(pattern);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static boolean containsAny(List<String> strs, List<String> patterns)
+  {
+    String text = searchableText(strs);
+    return patterns.stream().anyMatch(text::contains);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Lower case, English characters only, a space after every period, and runs of whitespace collapsed to
+  // one space. A keyword that the linker would find in a string is then a plain substring of the result,
+  // including where the linker's period handling matches "j.s. mill" against a keyword like "j. s. mill".
+
+  private static String searchableText(List<String> strs)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (String str : strs)
+    {
+      String text = convertToEnglishChars(str).toLowerCase();
+
+      for (int ndx = 0; ndx < text.length(); ndx++)
+      {
+        char c = text.charAt(ndx);
+
+        if (Character.isWhitespace(c))
+        {
+          if ((sb.length() > 0) && (sb.charAt(sb.length() - 1) != ' '))
+            sb.append(' ');
+        }
+        else if (c == '.')
+          sb.append(". ");
+        else
+          sb.append(c);
+      }
+
+      if ((sb.length() > 0) && (sb.charAt(sb.length() - 1) != ' '))
+        sb.append(' ');
+    }
+
+    return sb.toString();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  int getRestartsAvoided() { return restartsAvoided; }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -124,17 +395,34 @@ class MentionsIndex
   {
     if (record == null) return;
 
-    strList.clear();
-
-    record.getAllStrings(strList, true);
+    modifiedSinceSave = true;
 
     mentionedAnywhereToMentioners.removeReverseKey(record);
     mentionedInDescToMentioners.removeReverseKey(record);
 
+    findMentions(record, linkList, strList, target -> mentionedAnywhereToMentioners.addForward(target, record),
+                                            target -> mentionedInDescToMentioners  .addForward(target, record));
+
+    contentHashes.put(record, hashContent(record, strList, crc));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Only reads from the record and the database, so it can run on several threads at once as long as
+  // each thread has its own link list and string list. Afterward, strList holds the record's strings.
+
+  private static void findMentions(HDT_Record record, KeywordLinkList linkList, List<String> strList,
+                                   Consumer<HDT_Record> anywhereHandler, Consumer<HDT_Record> descHandler)
+  {
+    strList.clear();
+
+    record.getAllStrings(strList, true);
+
     strList.forEach(str ->
     {
       linkList.generate(str.toLowerCase());
-      linkList.getLinks().forEach(link -> mentionedAnywhereToMentioners.addForward(link.key.record, record));
+      linkList.getLinks().forEach(link -> anywhereHandler.accept(link.key.record));
     });
 
     if (record.hasMainText())
@@ -148,8 +436,8 @@ class MentionsIndex
 
       while (miscFile != null)
       {
-        mentionedAnywhereToMentioners.addForward(miscFile, record);
-        mentionedInDescToMentioners.addForward(miscFile, record);
+        anywhereHandler.accept(miscFile);
+        descHandler.accept(miscFile);
 
         startNdx.add(1);
         miscFile = MainTextUtil.getNextEmbeddedMiscFile(mainText.getHtml(), startNdx, endNdx, elementProp);
@@ -160,15 +448,15 @@ class MentionsIndex
       if (plainText.length() > 0)
       {
         linkList.generate(plainText);
-        linkList.getLinks().forEach(link -> mentionedInDescToMentioners.addForward(link.key.record, record));
+        linkList.getLinks().forEach(link -> descHandler.accept(link.key.record));
       }
 
       mainText.getDisplayItemsUnmod().forEach(displayItem ->
       {
         if (displayItem.type == diRecord)
         {
-          mentionedAnywhereToMentioners.addForward(displayItem.record, record);
-          mentionedInDescToMentioners.addForward(displayItem.record, record);
+          anywhereHandler.accept(displayItem.record);
+          descHandler.accept(displayItem.record);
         }
         else if (displayItem.type == diKeyWorks)
         {
@@ -176,14 +464,89 @@ class MentionsIndex
           {
             HDT_RecordWithPath keyWorkRecord = keyWork.getRecord();
 
-            mentionedAnywhereToMentioners.addForward(keyWorkRecord, record);
-            mentionedInDescToMentioners.addForward(keyWorkRecord, record);
+            anywhereHandler.accept(keyWorkRecord);
+            descHandler.accept(keyWorkRecord);
           });
         }
       });
     }
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // A contiguous slice of the records being re-indexed. Each shard collects its results in its own maps,
+  // which are merged into the shared maps on the rebuild thread once every shard has finished. If there is
+  // a filter, records it rejects are left as they are in the index.
+
+  private final class Shard implements Runnable
+  {
+    private final List<HDT_Record> records;
+    private final BiPredicate<HDT_Record, List<String>> filter;
+    private final AtomicInteger indexedCount;
+    private final KeywordLinkList shardLinkList = new KeywordLinkList();
+    private final List<String> shardStrList = new ArrayList<>();
+    private final CRC32C shardCRC = new CRC32C();
+    private final Map<HDT_Record, List<HDT_Record>> mentionerToAnywhereTargets = new HashMap<>(),
+                                                    mentionerToDescTargets     = new HashMap<>();
+    private final Map<HDT_Record, Long> mentionerToContentHash = new HashMap<>();
+
+    private Shard(List<HDT_Record> records, BiPredicate<HDT_Record, List<String>> filter, AtomicInteger indexedCount)
+    {
+      this.records = records;
+      this.filter = filter;
+      this.indexedCount = indexedCount;
+    }
+
+  //---------------------------------------------------------------------------
+
+    @Override public void run()
+    {
+      for (HDT_Record record : records)
+      {
+        if (stopRequested) return;
+
+        if ((filter != null) && (filter.test(record, shardStrList) == false))
+        {
+          indexedCount.incrementAndGet();
+          continue;
+        }
+
+        List<HDT_Record> anywhereTargets = new ArrayList<>(), descTargets = new ArrayList<>();
+
+        findMentions(record, shardLinkList, shardStrList, anywhereTargets::add, descTargets::add);
+
+        mentionerToAnywhereTargets.put(record, anywhereTargets);
+        mentionerToDescTargets    .put(record, descTargets);
+        mentionerToContentHash    .put(record, hashContent(record, shardStrList, shardCRC));
+
+        indexedCount.incrementAndGet();
+      }
+    }
+
+  //---------------------------------------------------------------------------
+
+    private void merge()
+    {
+      if (mentionerToAnywhereTargets.isEmpty() == false)
+        modifiedSinceSave = true;
+
+      mentionerToAnywhereTargets.forEach((record, targets) ->
+      {
+        mentionedAnywhereToMentioners.removeReverseKey(record);
+        targets.forEach(target -> mentionedAnywhereToMentioners.addForward(target, record));
+      });
+
+      mentionerToDescTargets.forEach((record, targets) ->
+      {
+        mentionedInDescToMentioners.removeReverseKey(record);
+        targets.forEach(target -> mentionedInDescToMentioners.addForward(target, record));
+      });
+
+      contentHashes.putAll(mentionerToContentHash);
+    }
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -222,9 +585,27 @@ class MentionsIndex
 //---------------------------------------------------------------------------
 
   boolean startRebuild()
+  {
+    return startRebuild(null, false);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Without a filter, the index is cleared and every record is re-indexed. Otherwise, the filter is created
+  // on the rebuild thread and then called on the worker threads, with a scratch list for the record's strings,
+  // to pick the records to re-index.
+  //
+  // If verify is true, the index already holds what was restored from the file, and queries are answered
+  // from it while the pass runs instead of waiting for the pass to finish.
+
+  private boolean startRebuild(Supplier<BiPredicate<HDT_Record, List<String>>> filterSupplier, boolean verify)
   {
     stopRebuild();
 
+    stopRequested = false;  // The previous rebuild may have finished before it saw the request
+    verifying = verify;
+
     task = new HyperTask()
     {
       @Override protected void done()
@@ -232,10 +613,21 @@ class MentionsIndex
         Thread oldThread = getThread();
         super.done();
 
+        verifying = false;
+
+        // If the rebuild was stopped or failed, anything still queued is replayed after the next one
+
+        synchronized (queuedChanges) { queueChanges = false; }
+
         Platform.runLater(() ->
         {
           try { oldThread.join(); } catch (InterruptedException e) { noOp(); }
 
+          if (app.debugging())
+            System.out.println("Mentions index: rebuild finished, restarts avoided so far: " + restartsAvoided);
+
+          startQueuedKeywordPass();
+
           ndxCompleteHandlers.forEach(Runnable::run);
         });
       }
@@ -244,36 +636,76 @@ class MentionsIndex
       {
         updateMessage("The requested operation will be performed after indexing has completed...");
 
-        mentionedInDescToMentioners.clear();
-        mentionedAnywhereToMentioners.clear();
+        BiPredicate<HDT_Record, List<String>> filter = filterSupplier == null ? null : filterSupplier.get();
 
-        ctr = -1.0; total = 0.0;
-        types.forEach(type -> total += db.records(type).size());
+        if (filter == null)
+        {
+          mentionedInDescToMentioners.clear();
+          mentionedAnywhereToMentioners.clear();
+          contentHashes.clear();
+          modifiedSinceSave = true;
+        }
 
+        List<HDT_Record> records = new ArrayList<>();
         for (HDT_RecordType type : types) for (HDT_Record record : db.records(type))
+          records.add(record);
+
+        ctr = 0.0; total = records.size();
+
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors()),
+            shardSize = (records.size() / (parallelism * SHARDS_PER_WORKER)) + 1;
+
+        AtomicInteger indexedCount = new AtomicInteger(0);
+        List<Shard> shards = new ArrayList<>();
+        List<ForkJoinTask<?>> shardTasks = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try
         {
-          if ((((int)ctr++) % 50) == 0)
+          for (int ndx = 0; ndx < records.size(); ndx += shardSize)
           {
-            if (stopRequested)
-            {
-              updateProgress(total, total);
-              stopRequested = false;
-              return true;
-            }
+            Shard shard = new Shard(records.subList(ndx, Math.min(ndx + shardSize, records.size())), filter, indexedCount);
 
-            updateProgress(ctr, total);
+            shards.add(shard);
+            shardTasks.add(pool.submit(shard));
           }
 
-          try
+          while (shardTasks.stream().allMatch(ForkJoinTask::isDone) == false)
           {
-            reindexMentioner(record);
+            ctr = indexedCount.get();
+            updateProgress(ctr, total);
+
+            Thread.sleep(PROGRESS_INTERVAL_MS);
           }
-          catch (Exception e)
+
+          for (ForkJoinTask<?> shardTask : shardTasks)
           {
-            e.printStackTrace();
-            throw(e);
+            try
+            {
+              shardTask.join();
+            }
+            catch (Exception e)
+            {
+              e.printStackTrace();
+              throw(e);
+            }
           }
         }
+        finally
+        {
+          pool.shutdownNow();
+        }
+
+        // A stop can arrive at any point, so it is checked again before each step that changes the index
+
+        synchronized (verifyLock)
+        {
+          if (stopRequested == false)
+            shards.forEach(Shard::merge);
+
+          if (stopRequested == false)
+            replayQueuedChanges();
+        }
 
         updateProgress(total, total);
         return true;
@@ -288,6 +720,8 @@ class MentionsIndex
         Platform.runLater(() -> ui.updateProgress("Indexing:", ctr / total));
     });
 
+    synchronized (queuedChanges) { queueChanges = true; }
+
     thread = new RebuildThread(task);
     return true;
   }
@@ -314,14 +748,42 @@ class MentionsIndex
 
   Set<HDT_Record> getMentionerSet(HDT_Record target, boolean descOnly, MutableBoolean choseNotToWait)
   {
+    if (verifying) synchronized (verifyLock)
+    {
+      choseNotToWait.setFalse();
+      return mentionerMap(descOnly).getForwardSet(target);
+    }
+
     choseNotToWait.setValue(!waitUntilRebuildIsDone());
     if (choseNotToWait.isTrue())
       return null;
 
-    if (descOnly)
-      return mentionedInDescToMentioners.getForwardSet(target);
+    return mentionerMap(descOnly).getForwardSet(target);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Same as getMentionerSet, but passes the mentioners to the action instead of copying them into a set.
+  // If the user chose not to wait for a rebuild, the action is not called.
+
+  void forEachMentioner(HDT_Record target, boolean descOnly, MutableBoolean choseNotToWait, Consumer<HDT_Record> action)
+  {
+    if (verifying) synchronized (verifyLock)
+    {
+      choseNotToWait.setFalse();
+      mentionerMap(descOnly).forEachForward(target, action);
+      return;
+    }
 
-    return mentionedAnywhereToMentioners.getForwardSet(target);
+    choseNotToWait.setValue(!waitUntilRebuildIsDone());
+    if (choseNotToWait.isFalse())
+      mentionerMap(descOnly).forEachForward(target, action);
+  }
+
+  private BidiOneToManyRecordMap mentionerMap(boolean descOnly)
+  {
+    return descOnly ? mentionedInDescToMentioners : mentionedAnywhereToMentioners;
   }
 
 //---------------------------------------------------------------------------
@@ -329,14 +791,361 @@ class MentionsIndex
 
   boolean firstMentionsSecond(HDT_Record mentioner, HDT_Record target, boolean descOnly, MutableBoolean choseNotToWait)
   {
+    if (verifying) synchronized (verifyLock)
+    {
+      choseNotToWait.setFalse();
+      return descOnly ? mentionedInDescToMentioners.containsForward(target, mentioner) : mentionedAnywhereToMentioners.containsForward(target, mentioner);
+    }
+
     choseNotToWait.setValue(!waitUntilRebuildIsDone());
     if (choseNotToWait.isTrue())
       return false;
 
     if (descOnly)
-      return mentionedInDescToMentioners.getForwardSet(target).contains(mentioner);
+      return mentionedInDescToMentioners.containsForward(target, mentioner);
+
+    return mentionedAnywhereToMentioners.containsForward(target, mentioner);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The index file has two sections. The first holds a hash of the search keys of each record that has any,
+  // along with hub links, because mappings to or from a hub are expanded to the records linked through it.
+  // The second holds, for each mentioner, a hash of everything reindexMentioner looks at along with the
+  // records it was found to mention. That hash is the one stored when the record was last indexed, so
+  // saving does not read the text of every record again.
+
+  boolean saveToFile(FilePath filePath, long schemaFingerprint)
+  {
+    if (isRebuilding()) return false;
+    if ((modifiedSinceSave == false) && filePath.exists()) return true;
+
+    FilePath tempFilePath = new FilePath(filePath + TEMP_FILE_SUFFIX);
+
+    try
+    {
+      try (FileOutputStream fos = new FileOutputStream(tempFilePath.toFile());
+           DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE)))
+      {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(schemaFingerprint);
+
+        for (Entry<HDT_Record, Long> entry : keyHashes().entrySet())
+        {
+          out.writeBoolean(true);
+          RecordSnapshot.writeType(out, entry.getKey().getType());
+          out.writeInt(entry.getKey().getID());
+          out.writeLong(entry.getValue());
+        }
+
+        out.writeBoolean(false);
+
+        for (HDT_RecordType type : types) for (HDT_Record record : db.records(type))
+        {
+          out.writeBoolean(true);
+          RecordSnapshot.writeType(out, type);
+          out.writeInt(record.getID());
+          Long hash = contentHashes.get(record);
+          out.writeLong(hash == null ? contentHash(record, strList, crc) : hash);
+
+          writeTargets(out, mentionedInDescToMentioners.getReverseSet(record));
+          writeTargets(out, mentionedAnywhereToMentioners.getReverseSet(record));
+        }
+
+        out.writeBoolean(false);
+        out.flush();
+        fos.getFD().sync();
+      }
+
+      replaceFileAtomically(tempFilePath, filePath);
+      modifiedSinceSave = false;
+      return true;
+    }
+    catch (IOException e)
+    {
+      try { Files.deleteIfExists(tempFilePath.toPath()); }
+      catch (IOException e1) { noOp(); }
+
+      return false;
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void writeTargets(DataOutputStream out, Set<HDT_Record> targets) throws IOException
+  {
+    out.writeInt(targets.size());
+
+    for (HDT_Record target : targets)
+    {
+      RecordSnapshot.writeType(out, target.getType());
+      out.writeInt(target.getID());
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Restores the index from the file synchronously. Nothing is hashed here; the hashes are compared in a
+  // background pass that re-indexes only the mentioners that are missing from the file or have changed,
+  // and those affected by search keys that have changed. Queries made while that pass runs are answered
+  // from the restored index, and edits are queued and replayed after it as with any other pass.
+  // Falls back to a full rebuild if the file is missing, unreadable, or out of date.
+
+  void loadFromFileAndStartRebuild(FilePath filePath, long schemaFingerprint)
+  {
+    stopRebuild();
+
+    synchronized (queuedChanges)
+    {
+      queuedChanges.clear();
+      queuedKeywordChanges.clear();
+    }
+
+    mentionedInDescToMentioners.clear();
+    mentionedAnywhereToMentioners.clear();
+    contentHashes.clear();
+
+    if (filePath.exists() == false)
+    {
+      startRebuild();
+      return;
+    }
+
+    Map<HDT_Record, Long> savedKeyHashes = new HashMap<>(), savedContentHashes = new HashMap<>();
+    List<HDT_Record> descTargets = new ArrayList<>(), anywhereTargets = new ArrayList<>();
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath.toFile()), BUFFER_SIZE)))
+    {
+      if ((in.readInt () != MAGIC            ) ||
+          (in.readInt () != FORMAT_VERSION   ) ||
+          (in.readLong() != schemaFingerprint))
+      {
+        startRebuild();
+        return;
+      }
+
+      while (in.readBoolean())
+      {
+        HDT_Record record = db.records(RecordSnapshot.readType(in)).getByID(in.readInt());
+        long hash = in.readLong();
+
+        if (record != null)  // Records that mentioned a deleted record are re-indexed because their targets are missing
+          savedKeyHashes.put(record, hash);
+      }
+
+      while (in.readBoolean())
+      {
+        HDT_Record record = db.records(RecordSnapshot.readType(in)).getByID(in.readInt());
+        long hash = in.readLong();
+
+        boolean targetsFound = readTargets(in, descTargets) & readTargets(in, anywhereTargets);
+
+        if ((record == null) || (targetsFound == false))
+          continue;
+
+        descTargets    .forEach(target -> mentionedInDescToMentioners  .addForward(target, record));
+        anywhereTargets.forEach(target -> mentionedAnywhereToMentioners.addForward(target, record));
+
+        savedContentHashes.put(record, hash);
+      }
+    }
+    catch (IOException | RuntimeException e)
+    {
+      mentionedInDescToMentioners.clear();
+      mentionedAnywhereToMentioners.clear();
+      contentHashes.clear();
+
+      startRebuild();
+      return;
+    }
+
+    contentHashes.putAll(savedContentHashes);  // Records that turn out to have changed get a new hash when they are re-indexed
+    modifiedSinceSave = false;
+
+    startRebuild(() -> changedSinceSaveFilter(savedKeyHashes, savedContentHashes), true);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Runs on the rebuild thread. A record whose search keys have changed affects the records that mentioned
+  // it, which are in the restored index, and any record whose text contains one of its current keywords.
+
+  private BiPredicate<HDT_Record, List<String>> changedSinceSaveFilter(Map<HDT_Record, Long> savedKeyHashes, Map<HDT_Record, Long> savedContentHashes)
+  {
+    Map<HDT_Record, Long> keyHashes = keyHashes();
+    Set<HDT_Record> changedKeyRecords = new HashSet<>(), mentioners = new HashSet<>();
+    List<String> patterns = new ArrayList<>();
+
+    keyHashes.forEach((record, hash) -> { if (hash.equals(savedKeyHashes.get(record)) == false) changedKeyRecords.add(record); });
+    savedKeyHashes.keySet().forEach(record -> { if (keyHashes.containsKey(record) == false) changedKeyRecords.add(record); });
+
+    changedKeyRecords.forEach(keyRecord ->
+    {
+      addMentionersAndSelf(keyRecord, mentioners);
+      db.getKeysByRecord(keyRecord).forEach(key -> addPattern(patterns, key.text));
+    });
+
+    return (record, strList) ->
+    {
+      Long hash = savedContentHashes.get(record);
+
+      if ((hash == null) || mentioners.contains(record)) return true;
+
+      if (hash != contentHash(record, strList, new CRC32C()))
+        return true;
+
+      return (patterns.isEmpty() == false) && containsAny(strList, patterns);
+    };
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Returns false if any of the targets no longer exist
+
+  private static boolean readTargets(DataInputStream in, List<HDT_Record> targets) throws IOException
+  {
+    boolean allFound = true;
+    targets.clear();
+
+    for (int ndx = in.readInt(); ndx > 0; ndx--)
+    {
+      HDT_Record target = db.records(RecordSnapshot.readType(in)).getByID(in.readInt());
+
+      if (target == null)
+        allFound = false;
+      else
+        targets.add(target);
+    }
+
+    return allFound;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Covers everything reindexMentioner reads from the record itself. Afterward, list holds the record's strings.
+
+  private static long contentHash(HDT_Record record, List<String> list, CRC32C crc)
+  {
+    list.clear();
+    record.getAllStrings(list, true);
+
+    return hashContent(record, list, crc);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // strs must hold the record's strings. The upper half holds the total length of the hashed text so
+  // that two different versions of a record are unlikely to collide.
+
+  private static long hashContent(HDT_Record record, List<String> strs, CRC32C crc)
+  {
+    long length = 0;
+
+    crc.reset();
+
+    for (String str : strs)
+    {
+      crc.update(str.getBytes(UTF_8));
+      crc.update(0);
+      length += str.length();
+    }
+
+    if (record.hasMainText())
+    {
+      MainText mainText = ((HDT_RecordWithConnector)record).getMainText();
+      String html = mainText.getHtml();
+
+      crc.update(html.getBytes(UTF_8));
+      length += html.length();
+
+      for (DisplayItem displayItem : mainText.getDisplayItemsUnmod())
+      {
+        crc.update(displayItem.type.ordinal());
+        if (displayItem.type == diRecord)
+          updateCRC(crc, displayItem.record);
+      }
+
+      for (KeyWork keyWork : mainText.getKeyWorks())
+        updateCRC(crc, keyWork.getRecord());
+    }
+
+    return (length << 32) | crc.getValue();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // A hash of the search keys of every record that has any, and of the hub links of every hub and of
+  // every record linked to one, so that a record joining or leaving a hub is seen as changed too.
+  // The upper half holds the total length of the keys.
+
+  private static Map<HDT_Record, Long> keyHashes()
+  {
+    Map<HDT_Record, Long> recordToHash = new HashMap<>();
+    CRC32C crc = new CRC32C();
+
+    for (HDT_RecordType type : EnumSet.complementOf(EnumSet.of(hdtNone, hdtAuxiliary))) for (HDT_Record record : db.records(type))
+    {
+      List<SearchKeyword> keys = db.getKeysByRecord(record);
+      HDT_Hub hub = record.isUnitable() ? ((HDT_RecordWithConnector) record).getHub() : null;
+
+      if (keys.isEmpty() && (type != hdtHub) && (hub == null)) continue;
+
+      long length = 0;
+
+      crc.reset();
+
+      for (SearchKeyword key : keys)
+      {
+        String str = key.toString().toLowerCase();
+
+        crc.update(str.getBytes(UTF_8));
+        crc.update(0);
+        length += str.length();
+      }
+
+      if (type == hdtHub)
+      {
+        StrongLink link = ((HDT_Hub) record).getLink();
+
+        updateCRC(crc, link.getNote    ());
+        updateCRC(crc, link.getLabel   ());
+        updateCRC(crc, link.getDebate  ());
+        updateCRC(crc, link.getPosition());
+        updateCRC(crc, link.getConcept ());
+      }
+      else
+        updateCRC(crc, hub);
+
+      recordToHash.put(record, (length << 32) | crc.getValue());
+    }
+
+    return recordToHash;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void updateCRC(CRC32C crc, HDT_Record record)
+  {
+    if (record == null)
+    {
+      crc.update(0xff);
+      return;
+    }
+
+    int id = record.getID();
 
-    return mentionedAnywhereToMentioners.getForwardSet(target).contains(mentioner);
+    crc.update(record.getType().ordinal());
+    crc.update(id >>> 24); crc.update(id >>> 16); crc.update(id >>> 8); crc.update(id);
   }
 
 //---------------------------------------------------------------------------
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+//---------------------------------------------------------------------------
+
+// Treap ordered by (key, id) where each node knows the size of its subtree, so that finding the
+// position of an entry and the entry at a position are both O(log n). The ID index is one of these
+// with every key set to the empty string.
+
+final class OrderStatisticTree
+{
+  private static final class Node
+  {
+    private final String key;
+    private final int id, priority;
+    private int size = 1;
+    private Node left = null, right = null;
+
+    private Node(String key, int id, int priority) { this.key = key; this.id = id; this.priority = priority; }
+  }
+
+  private Node root = null;
+  private int seed = 0x2545F491, modCount = 0;
+
+  private static int size(Node node)    { return node == null ? 0 : node.size; }
+  private static void update(Node node) { node.size = 1 + size(node.left) + size(node.right); }
+  int size()                            { return size(root); }
+  void clear()                          { root = null; modCount++; }
+
+//---------------------------------------------------------------------------
+
+  private static int compare(String key1, int id1, Node node)
+  {
+    int result = key1.compareTo(node.key);
+    return result != 0 ? result : Integer.compare(id1, node.id);
+  }
+
+//---------------------------------------------------------------------------
+
+  private int nextPriority() // xorshift
+  {
+    seed ^= seed << 13;
+    seed ^= seed >>> 17;
+    seed ^= seed << 5;
+    return seed;
+  }
+
+//---------------------------------------------------------------------------
+
+  void insert(String key, int id) { root = insert(root, new Node(key, id, nextPriority())); modCount++; }
+
+  private static Node insert(Node node, Node newNode)
+  {
+    if (node == null) return newNode;
+
+    if (compare(newNode.key, newNode.id, node) < 0)
+    {
+      node.left = insert(node.left, newNode);
+
+      if (node.left.priority > node.priority)
+      {
+        Node child = node.left;
+        node.left = child.right;
+        child.right = node;
+        update(node);
+        update(child);
+        return child;
+      }
+    }
+    else
+    {
+      node.right = insert(node.right, newNode);
+
+      if (node.right.priority > node.priority)
+      {
+        Node child = node.right;
+        node.right = child.left;
+        child.left = node;
+        update(node);
+        update(child);
+        return child;
+      }
+    }
+
+    update(node);
+    return node;
+  }
+
+//---------------------------------------------------------------------------
+
+  void remove(String key, int id) { root = remove(root, key, id); modCount++; }
+
+  private static Node remove(Node node, String key, int id)
+  {
+    if (node == null) return null;
+
+    int result = compare(key, id, node);
+
+    if (result == 0)
+      return merge(node.left, node.right);
+
+    if (result < 0)
+      node.left = remove(node.left, key, id);
+    else
+      node.right = remove(node.right, key, id);
+
+    update(node);
+    return node;
+  }
+
+//---------------------------------------------------------------------------
+
+  private static Node merge(Node left, Node right)
+  {
+    if (left == null) return right;
+    if (right == null) return left;
+
+    if (left.priority > right.priority)
+    {
+      left.right = merge(left.right, right);
+      update(left);
+      return left;
+    }
+
+    right.left = merge(left, right.left);
+    update(right);
+    return right;
+  }
+
+//---------------------------------------------------------------------------
+
+  // Returns -1 if the entry is not in the tree
+
+  int indexOf(String key, int id)
+  {
+    int ndx = 0;
+
+    for (Node node = root; node != null; )
+    {
+      int result = compare(key, id, node);
+
+      if (result == 0)
+        return ndx + size(node.left);
+
+      if (result < 0)
+        node = node.left;
+      else
+      {
+        ndx += size(node.left) + 1;
+        node = node.right;
+      }
+    }
+
+    return -1;
+  }
+
+//---------------------------------------------------------------------------
+
+  int getID(int ndx)
+  {
+    if ((ndx < 0) || (ndx >= size())) throw new IndexOutOfBoundsException("Index: " + ndx + ", Size: " + size());
+
+    Node node = root;
+
+    while (true)
+    {
+      int leftSize = size(node.left);
+
+      if (ndx == leftSize) return node.id;
+
+      if (ndx < leftSize)
+        node = node.left;
+      else
+      {
+        ndx -= leftSize + 1;
+        node = node.right;
+      }
+    }
+  }
+
+//---------------------------------------------------------------------------
+
+  void forEachID(IntConsumer consumer) { forEachID(root, consumer); }
+
+  private static void forEachID(Node node, IntConsumer consumer)
+  {
+    while (node != null)
+    {
+      forEachID(node.left, consumer);
+      consumer.accept(node.id);
+      node = node.right;
+    }
+  }
+
+//---------------------------------------------------------------------------
+
+  PrimitiveIterator.OfInt idIterator() { return new Cursor(); }
+
+  // Walks the tree in order, keeping a stack of the nodes whose turn has not come yet, so a full pass is O(n)
+  // instead of O(n log n). Iterating by position used to tolerate records being added or removed along the
+  // way, so if the tree changes, the cursor carries on from the same position using getID instead.
+
+  private final class Cursor implements PrimitiveIterator.OfInt
+  {
+    private final Deque<Node> stack = new ArrayDeque<>();
+    private final int expectedModCount = modCount;
+    private int ndx = 0;
+
+    private Cursor() { pushLeft(root); }
+
+    private void pushLeft(Node node)
+    {
+      for (; node != null; node = node.left)
+        stack.push(node);
+    }
+
+    @Override public boolean hasNext() { return ndx < size(); }
+
+    @Override public int nextInt()
+    {
+      if (hasNext() == false) throw new NoSuchElementException();
+
+      if (modCount != expectedModCount)
+        return getID(ndx++);
+
+      Node node = stack.pop();
+      pushLeft(node.right);
+      ndx++;
+
+      return node.id;
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -23,8 +23,6 @@ import static org.hypernomicon.model.records.HDT_RecordType.*;
 import static org.hypernomicon.util.Util.MessageDialogType.*;
 import static org.hypernomicon.util.Util.*;
 
-import java.util.Set;
-
 import org.hypernomicon.model.items.HyperPath;
 import org.hypernomicon.model.records.*;
 import org.hypernomicon.util.filePath.FilePath;
@@ -56,6 +54,19 @@ public class PathInfo
 
   @Override public String toString()  { return filePath.toString(); }
 
+//---------------------------------------------------------------------------
+
+  // For a path whose kind is already known and that has no record; nothing is looked up in the database
+
+  public PathInfo(FilePath filePath, FileKind fileKind)
+  {
+    this.filePath = filePath;
+    this.fileKind = fileKind;
+
+    parentFolder = null;
+    hyperPath = null;
+  }
+
 //---------------------------------------------------------------------------
 
   public PathInfo(FilePath filePath)
@@ -74,9 +85,7 @@ public class PathInfo
     {
       parentFolder = getParentFolderOfPath(filePath);
 
-      Set<HyperPath> set = db.filenameMap.get(filePath.getNameOnly().toString());
-
-      if (set != null) for (HyperPath setHyperPath : set)
+      for (HyperPath setHyperPath : HyperPath.getHyperPathSetForFilePath(filePath))
       {
         if (parentFolder == setHyperPath.parentFolder())
         {
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import static org.hypernomicon.util.Util.*;
+
+import static java.nio.charset.StandardCharsets.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.zip.CRC32C;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import org.hypernomicon.model.Exceptions.*;
+import org.hypernomicon.model.HyperDB.RecordStateHandler;
+import org.hypernomicon.model.records.HDT_RecordState;
+import org.hypernomicon.model.records.HDT_RecordType;
+import org.hypernomicon.util.filePath.FilePath;
+
+//---------------------------------------------------------------------------
+
+// A snapshot is a binary copy of the record states stored in one XML file. It is kept in the XML folder
+// next to that file and is only used if the size, modification time, and checksum of the XML file recorded
+// in its header still match, so editing or replacing an XML file by hand simply causes the XML to be loaded
+// instead.
+//
+// Snapshots are only ever written from record states that were parsed from the XML file, never from the
+// in-memory records, so that loading a snapshot gives exactly the records that parsing the XML would give
+// (the XML round trip normalizes line breaks, drops invalid characters, and so on).
+
+public final class RecordSnapshot
+{
+
+//---------------------------------------------------------------------------
+
+  private static final int MAGIC = 0x48595053,  // "HYPS"
+                           FORMAT_VERSION = 2,
+                           HEADER_LENGTH = 40,
+                           BUFFER_SIZE = 65536;
+
+  private static final String SNAPSHOT_FILE_SUFFIX = ".snapshot",
+                              TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final HDT_RecordType[] recordTypes = HDT_RecordType.values();
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static FilePath snapshotPath(FilePath xmlFilePath) { return new FilePath(xmlFilePath + SNAPSHOT_FILE_SUFFIX); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static long checksum(FilePath filePath) throws IOException
+  {
+    CRC32C crc = new CRC32C();
+    byte[] buf = new byte[BUFFER_SIZE];
+
+    try (InputStream in = new FileInputStream(filePath.toFile()))
+    {
+      for (int len = in.read(buf); len >= 0; len = in.read(buf))
+        crc.update(buf, 0, len);
+    }
+
+    return crc.getValue();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The XML file is only read to compute its checksum if its size and modification time match the header,
+  // so a file that has visibly changed costs nothing to rule out.
+
+  static boolean isCurrent(FilePath xmlFilePath, long schemaFingerprint)
+  {
+    FilePath filePath = snapshotPath(xmlFilePath);
+
+    if (filePath.exists() == false) return false;
+
+    long xmlChecksum;
+
+    try (DataInputStream in = new DataInputStream(new FileInputStream(filePath.toFile())))
+    {
+      if ((in.readInt () != MAGIC                                    ) ||
+          (in.readInt () != FORMAT_VERSION                           ) ||
+          (in.readLong() != schemaFingerprint                        ) ||
+          (in.readLong() != xmlFilePath.size()                       ) ||
+          (in.readLong() != xmlFilePath.lastModified().toEpochMilli()))
+        return false;
+
+      xmlChecksum = in.readLong();
+    }
+    catch (IOException e)
+    {
+      return false;
+    }
+
+    try
+    {
+      return checksum(xmlFilePath) == xmlChecksum;
+    }
+    catch (IOException e)
+    {
+      return false; // The error will be reported when the XML file is read
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The offset passed to the handler is scaled to the size of the XML file so that progress is
+  // reported the same way regardless of which format a file was loaded from
+
+  static void readRecords(FilePath xmlFilePath, long xmlSize, RecordStateHandler handler) throws IOException, HyperDataException, TerminateTaskException
+  {
+    FilePath filePath = snapshotPath(xmlFilePath);
+    long snapshotSize = Math.max(filePath.size(), 1);
+
+    try (CountingInputStream counter = new CountingInputStream(new FileInputStream(filePath.toFile()));
+         DataInputStream in = new DataInputStream(new BufferedInputStream(counter, BUFFER_SIZE)))
+    {
+      in.readFully(new byte[HEADER_LENGTH]);
+
+      while (in.readBoolean())
+      {
+        HDT_RecordState recordState = HDT_RecordState.readFromSnapshot(in);
+        handler.handle(recordState, counter.getByteCount() * xmlSize / snapshotSize);
+      }
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static void delete(FilePath xmlFilePath)
+  {
+    try { Files.deleteIfExists(snapshotPath(xmlFilePath).toPath()); }
+    catch (IOException e) { noOp(); }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void writeString(DataOutput out, String str) throws IOException
+  {
+    byte[] bytes = safeStr(str).getBytes(UTF_8);
+
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  public static String readString(DataInput in) throws IOException
+  {
+    int len = in.readInt();
+    if (len == 0) return "";
+
+    byte[] bytes = new byte[len];
+    in.readFully(bytes);
+
+    return new String(bytes, UTF_8);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void writeInstant(DataOutput out, Instant instant) throws IOException
+  {
+    out.writeBoolean(instant != null);
+    if (instant == null) return;
+
+    out.writeLong(instant.getEpochSecond());
+    out.writeInt(instant.getNano());
+  }
+
+  public static Instant readInstant(DataInput in) throws IOException
+  {
+    return in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void writeType(DataOutput out, HDT_RecordType type) throws IOException { out.writeShort(type.ordinal()); }
+  public static HDT_RecordType readType(DataInput in) throws IOException               { return recordTypes[in.readShort()]; }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Snapshot writing is best-effort: if anything goes wrong the snapshot is discarded and the
+  // XML file is loaded next time instead
+
+  static final class SnapshotWriter
+  {
+    private final FilePath filePath, tempFilePath;
+    private FileOutputStream fos = null;
+    private DataOutputStream out = null;
+
+  //---------------------------------------------------------------------------
+
+    SnapshotWriter(FilePath xmlFilePath)
+    {
+      filePath = snapshotPath(xmlFilePath);
+      tempFilePath = new FilePath(filePath + TEMP_FILE_SUFFIX);
+
+      try
+      {
+        fos = new FileOutputStream(tempFilePath.toFile());
+        out = new DataOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE));
+
+        out.write(new byte[HEADER_LENGTH]); // Filled in by finish, once the XML checksum is known
+      }
+      catch (IOException e)
+      {
+        discard();
+      }
+    }
+
+  //---------------------------------------------------------------------------
+
+    void add(HDT_RecordState recordState)
+    {
+      if (out == null) return;
+
+      try
+      {
+        out.writeBoolean(true);
+        recordState.writeToSnapshot(out);
+      }
+      catch (IOException e)
+      {
+        discard();
+      }
+    }
+
+  //---------------------------------------------------------------------------
+
+    void finish(long xmlSize, long xmlModified, long xmlChecksum, long schemaFingerprint)
+    {
+      if (out == null) return;
+
+      try
+      {
+        out.writeBoolean(false);
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(schemaFingerprint).putLong(xmlSize).putLong(xmlModified).putLong(xmlChecksum).flip();
+
+        FileChannel channel = fos.getChannel();
+
+        while (header.hasRemaining())
+          channel.write(header, header.position());
+
+        fos.getFD().sync();
+        out.close();
+        out = null;
+
+        replaceFileAtomically(tempFilePath, filePath);
+      }
+      catch (IOException e)
+      {
+        noOp();
+      }
+      finally
+      {
+        discard();
+      }
+    }
+
+  //---------------------------------------------------------------------------
+
+    void discard()
+    {
+      if (out != null)
+      {
+        try { out.close(); }
+        catch (IOException e) { noOp(); }
+
+        out = null;
+      }
+
+      try { Files.deleteIfExists(tempFilePath.toPath()); }
+      catch (IOException e) { noOp(); }
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
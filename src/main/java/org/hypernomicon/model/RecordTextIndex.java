@@ -0,0 +1,356 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hypernomicon.model.records.HDT_Record;
+import org.hypernomicon.util.Trigrams;
+
+import static org.hypernomicon.util.Util.*;
+
+//---------------------------------------------------------------------------
+
+// Cached text of each record for substring queries. For every record that has been searched, this keeps its
+// list name in upper case and a trigram signature of all its strings: the strings from getAllStrings, including
+// those of linked records, in lower case, both as they are and converted to English characters. The signature is
+// a small Bloom filter with one bit per trigram, sized at about four bits per trigram in the text. If any trigram
+// of a query is missing from the signature, the record cannot contain the query, so only the remaining records
+// have to be checked against their actual strings.
+//
+// Entries are invalidated lazily. HyperDB stamps a record with a new version whenever it is modified, which is
+// all that happens at edit time. An entry remembers the version counter from when it was built and the records
+// it links to, and it is rebuilt the next time it is used if the record or any of those linked records has been
+// stamped since then or deleted. Entries can be created on several threads at once. If the signatures grow past
+// a fixed size, the least recently used ones are dropped (see evictSignatures) and rebuilt if those records are
+// searched again.
+
+public final class RecordTextIndex
+{
+  private static final int BITS_PER_GRAM = 4;
+  private static final long DEFAULT_MAX_SIGNATURE_WORDS = 1 << 21; // 16 MB
+
+  private final Map<HDT_Record, Entry> recordToEntry = new ConcurrentHashMap<>();
+  private final Map<HDT_Record, Long> recordToVersion = new ConcurrentHashMap<>();
+  private final AtomicLong versionCounter = new AtomicLong(), signatureWords = new AtomicLong();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+  private final long maxSignatureWords;
+
+//---------------------------------------------------------------------------
+
+  RecordTextIndex()                        { this(DEFAULT_MAX_SIGNATURE_WORDS); }
+  RecordTextIndex(long maxSignatureWords)  { this.maxSignatureWords = maxSignatureWords; }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static final class Entry
+  {
+    private final long builtAt;
+    private final HDT_Record[] linkedRecords;
+    private volatile String listNameUC = null;
+    private volatile long[] signature = null;
+    private volatile boolean used = false;  // Set whenever the signature is checked; see evictSignatures
+
+    private Entry(long builtAt, HDT_Record[] linkedRecords)
+    {
+      this.builtAt = builtAt;
+      this.linkedRecords = linkedRecords;
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The trigram hashes of a query string, already in the case used for the signatures (lower)
+
+  public static final class Grams
+  {
+    private final long[] hashes;
+
+    private Grams(long[] hashes) { this.hashes = hashes; }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  void recordChanged(HDT_Record record) { recordToVersion.put(record, versionCounter.incrementAndGet()); }
+  private long getVersion(HDT_Record record) { return recordToVersion.getOrDefault(record, 0L); }
+  long getSignatureWords()                   { return signatureWords.get(); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  void clear()
+  {
+    recordToEntry.clear();
+    recordToVersion.clear();
+    signatureWords.set(0);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The record's own entry is dropped, and the records linking to it will see that it is expired
+
+  void remove(HDT_Record record)
+  {
+    Entry entry = recordToEntry.remove(record);
+    recordToVersion.remove(record);
+
+    if (entry != null)
+      released(entry);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void released(Entry entry)
+  {
+    long[] signature = entry.signature;
+
+    if (signature != null)
+      signatureWords.addAndGet(-signature.length);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private boolean isCurrent(HDT_Record record, Entry entry)
+  {
+    if (getVersion(record) > entry.builtAt) return false;
+
+    for (HDT_Record linkedRecord : entry.linkedRecords)
+      if (linkedRecord.isExpired() || (getVersion(linkedRecord) > entry.builtAt))
+        return false;
+
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private Entry getEntry(HDT_Record record)
+  {
+    Entry entry = recordToEntry.get(record);
+
+    if ((entry != null) && isCurrent(record, entry))
+      return entry;
+
+    long builtAt = versionCounter.get();  // Read before the record, so a change made while building makes the entry stale
+
+    List<HDT_Record> linkedRecords = new ArrayList<>();
+    record.getAllLinkedRecords(linkedRecords);
+
+    Entry newEntry = new Entry(builtAt, linkedRecords.toArray(new HDT_Record[0]));
+
+    if (entry == null)
+      recordToEntry.putIfAbsent(record, newEntry);
+    else if (recordToEntry.replace(record, entry, newEntry))
+      released(entry);
+
+    return recordToEntry.getOrDefault(record, newEntry);  // Another thread may have stored a new entry first
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public String getListNameUpperCase(HDT_Record record)
+  {
+    Entry entry = getEntry(record);
+    String listNameUC = entry.listNameUC;
+
+    if (listNameUC == null)
+      entry.listNameUC = listNameUC = record.listName().toUpperCase();
+
+    return listNameUC;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static Grams getGrams(String strLC)
+  {
+    int count = Trigrams.count(strLC);
+    long[] hashes = new long[count];
+
+    for (int pos = 0; pos < count; pos++)
+      hashes[pos] = Trigrams.hash(strLC, pos);
+
+    return new Grams(hashes);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The trigrams of text that lie within a word, i.e., that include no whitespace or period. For the mentions
+  // index, whose keyword patterns are in lower case and English characters, with spacing that may differ from
+  // the record's strings.
+
+  static Grams getGramsWithinWords(String text)
+  {
+    long[] hashes = new long[Trigrams.count(text)];
+    int count = 0;
+
+    for (int pos = 0; pos < hashes.length; pos++)
+    {
+      boolean withinWord = true;
+
+      for (int ndx = pos; ndx < pos + Trigrams.LENGTH; ndx++)
+      {
+        char c = text.charAt(ndx);
+        if (Character.isWhitespace(c) || (c == '.'))
+          withinWord = false;
+      }
+
+      if (withinWord)
+        hashes[count++] = Trigrams.hash(text, pos);
+    }
+
+    return new Grams(Arrays.copyOf(hashes, count));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Returns false only if the record's strings, as returned by getAllStrings(list, true) and converted to lower case,
+  // cannot contain the query, either as they are or converted to English characters. A query shorter than a trigram
+  // matches every record.
+
+  public boolean mayContain(HDT_Record record, Grams grams)
+  {
+    if (grams.hashes.length == 0) return true;
+
+    Entry entry = getEntry(record);
+    long[] signature = entry.signature;
+
+    entry.used = true;
+
+    if (signature == null)
+    {
+      entry.signature = signature = createSignature(record);
+
+      if (signatureWords.addAndGet(signature.length) > maxSignatureWords)
+        evictSignatures();
+    }
+
+    int mask = (signature.length << 6) - 1;
+
+    for (long hash : grams.hashes)
+    {
+      int bit = (int) hash & mask;
+
+      if ((signature[bit >>> 6] & (1L << bit)) == 0)
+        return false;
+    }
+
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Drops signatures until they take up no more than three quarters of the maximum, approximating least recently
+  // used order the way a clock does: a sweep clears the used flag of each entry it passes, and drops the signature
+  // of any entry whose flag was already clear. Only the signatures are dropped, so a query in progress carries on;
+  // a record whose signature was dropped just gets a new one the next time it is checked. One thread evicts at a
+  // time, and the others do not wait for it.
+
+  private void evictSignatures()
+  {
+    if (evicting.compareAndSet(false, true) == false) return;
+
+    long target = maxSignatureWords / 4 * 3;
+
+    try
+    {
+      for (int sweep = 0; sweep < 2; sweep++)
+        for (Entry entry : recordToEntry.values())
+        {
+          if (signatureWords.get() <= target) return;
+
+          if (entry.used)
+          {
+            entry.used = false;
+            continue;
+          }
+
+          long[] signature = entry.signature;
+
+          if (signature != null)
+          {
+            entry.signature = null;
+            signatureWords.addAndGet(-signature.length);
+          }
+        }
+    }
+    finally
+    {
+      evicting.set(false);
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static long[] createSignature(HDT_Record record)
+  {
+    List<String> strs = new ArrayList<>();
+    record.getAllStrings(strs, true);
+
+    List<String> strsLC = new ArrayList<>(strs.size());
+    int gramCount = 0;
+
+    for (String str : strs)
+    {
+      String strLC = str.toLowerCase(), englishLC = convertToEnglishChars(str).toLowerCase();
+
+      strsLC.add(strLC);
+      gramCount += Trigrams.count(strLC);
+
+      if (englishLC.equals(strLC) == false)  // Usually the same, so there is nothing to add
+      {
+        strsLC.add(englishLC);
+        gramCount += Trigrams.count(englishLC);
+      }
+    }
+
+    int words = Math.max(1, Integer.highestOneBit(Math.max(1, (gramCount * BITS_PER_GRAM) >>> 6)) << 1);
+    long[] signature = new long[words];
+    int mask = (words << 6) - 1;
+
+    for (String strLC : strsLC)
+      for (int pos = 0, count = Trigrams.count(strLC); pos < count; pos++)
+      {
+        int bit = (int) Trigrams.hash(strLC, pos) & mask;
+        signature[bit >>> 6] |= 1L << bit;
+      }
+
+    return signature;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
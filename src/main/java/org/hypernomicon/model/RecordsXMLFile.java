@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hypernomicon.Const.*;
+import static org.hypernomicon.util.Util.*;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import org.hypernomicon.model.Exceptions.HDB_InternalError;
+import org.hypernomicon.model.Exceptions.TerminateTaskException;
+import org.hypernomicon.util.filePath.FilePath;
+
+//---------------------------------------------------------------------------
+
+// Writes one of the database's records XML files. The file is streamed to a temporary file in the same
+// folder, synced to disk, and then moved over the old file, so an interrupted save leaves the previous
+// version of the file intact.
+
+final class RecordsXMLFile
+{
+  @FunctionalInterface interface RecordsWriter { void write(Writer out) throws HDB_InternalError, TerminateTaskException, IOException; }
+
+  static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final int WRITE_BUFFER_SIZE = 65536;
+
+  private RecordsXMLFile() { throw new UnsupportedOperationException(); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static void write(FilePath filePath, RecordsWriter recordsWriter) throws HDB_InternalError, TerminateTaskException, IOException
+  {
+    FilePath tempFilePath = new FilePath(filePath + TEMP_FILE_SUFFIX);
+    boolean replaced = false;
+
+    try
+    {
+      try (FileOutputStream fos = new FileOutputStream(tempFilePath.toFile());
+           Writer out = new BufferedWriter(new OutputStreamWriter(fos, UTF_8), WRITE_BUFFER_SIZE))
+      {
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + System.lineSeparator() + System.lineSeparator())
+           .append("<records version=\"" + RECORDS_XML_VERSION + "\" xmlns=\"org.hypernomicon\"")
+
+        //   .append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"org.hypernomicon http://hypernomicon.org/records.xsd\"")
+
+           .append(">" + System.lineSeparator() + System.lineSeparator());
+
+        recordsWriter.write(out);
+
+        out.append(System.lineSeparator() + "</records>");
+
+        out.flush();
+        fos.getFD().sync();
+      }
+
+      replaceFileAtomically(tempFilePath, filePath);
+      replaced = true;
+    }
+    finally
+    {
+      if (replaced == false)
+        Files.deleteIfExists(tempFilePath.toPath());
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
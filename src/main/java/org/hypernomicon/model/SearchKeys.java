@@ -91,6 +91,7 @@ public final class SearchKeys
 
   private final Map<String, Map<String, SearchKeyword>> prefixStrToKeywordStrToKeywordObj;
   private final Map<HDT_Record, Map<String, SearchKeyword>> recordToKeywordStrToKeywordObj;
+  private volatile KeywordAutomaton automaton = null;
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
@@ -108,6 +109,7 @@ public final class SearchKeys
   {
     prefixStrToKeywordStrToKeywordObj.clear();
     recordToKeywordStrToKeywordObj.clear();
+    invalidateAutomaton();
   }
 
 //---------------------------------------------------------------------------
@@ -118,6 +120,38 @@ public final class SearchKeys
     return nullSwitch(prefixStrToKeywordStrToKeywordObj.get(prefix.toLowerCase()), new ArrayList<>(), map -> new ArrayList<>(map.values()));
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The automaton is rebuilt lazily the first time it is needed after a change, so that setting all of the
+  // keys during a load does not rebuild it once per record. Invalidating takes the same lock as building, so
+  // an automaton built from keys that changed during the build is discarded rather than kept.
+
+  KeywordAutomaton getAutomaton()
+  {
+    KeywordAutomaton result = automaton;
+    if (result != null) return result;
+
+    synchronized (this)
+    {
+      if (automaton == null)
+      {
+        List<SearchKeyword> keywords = new ArrayList<>();
+
+        synchronized (prefixStrToKeywordStrToKeywordObj)
+        {
+          prefixStrToKeywordStrToKeywordObj.values().forEach(map -> { synchronized (map) { keywords.addAll(map.values()); }});
+        }
+
+        automaton = new KeywordAutomaton(keywords);
+      }
+
+      return automaton;
+    }
+  }
+
+  private synchronized void invalidateAutomaton() { automaton = null; }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -173,11 +207,33 @@ public final class SearchKeys
       addKeyword(keyword);
     }
 
+    db.markDirtyNoDependents(record.getType());
+
     if (noMod == false)
       record.modifyNow();
 
     if (dontRebuildMentions == false)
-      db.rebuildMentions();
+      db.updateMentionsForKeyChange(record, changedKeywords(oldKeywordObjs, getKeysByRecord(record)));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Text of the keywords that were added or removed, or whose start-only or end-only setting changed
+
+  private static List<String> changedKeywords(Collection<SearchKeyword> oldKeywords, Collection<SearchKeyword> newKeywords)
+  {
+    Map<String, SearchKeyword> oldMap = new LinkedHashMap<>(), newMap = new LinkedHashMap<>();
+
+    oldKeywords.forEach(keyword -> oldMap.put(keyword.toString().toLowerCase(), keyword));
+    newKeywords.forEach(keyword -> newMap.put(keyword.toString().toLowerCase(), keyword));
+
+    List<String> changed = new ArrayList<>();
+
+    oldMap.forEach((str, keyword) -> { if (newMap.containsKey(str) == false) changed.add(keyword.text); });
+    newMap.forEach((str, keyword) -> { if (oldMap.containsKey(str) == false) changed.add(keyword.text); });
+
+    return changed;
   }
 
 //---------------------------------------------------------------------------
@@ -253,6 +309,8 @@ public final class SearchKeys
     }
 
     keywordStrToKeywordObj.put(keyword.text.toLowerCase(), keyword);
+
+    invalidateAutomaton();
   }
 
 //---------------------------------------------------------------------------
@@ -287,6 +345,9 @@ public final class SearchKeys
       return true;
     }); }});
 
+    if (oldKeywordObjs.isEmpty() == false)
+      invalidateAutomaton();
+
     return oldKeywordObjs;
   }
 
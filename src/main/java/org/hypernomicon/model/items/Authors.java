@@ -186,6 +186,7 @@ public final class Authors implements Iterable<Author>
     {
       authorList.clear();
       work.modifyNow();
+      db.nameChanged(work);
     }
 
     allRecords = true;
@@ -223,6 +224,8 @@ public final class Authors implements Iterable<Author>
 
     if (allRecords == false)
       setListFromObjectGroups(authorList, objGroups, work);
+
+    db.nameChanged(work);
   }
 
   //---------------------------------------------------------------------------
@@ -243,6 +246,7 @@ public final class Authors implements Iterable<Author>
     authorList.set(ndx, newAuthor);
 
     work.modifyNow();
+    db.nameChanged(work);
   }
 
   //---------------------------------------------------------------------------
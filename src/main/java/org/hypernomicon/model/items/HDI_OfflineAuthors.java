@@ -17,12 +17,16 @@
 
 package org.hypernomicon.model.items;
 
+import static org.hypernomicon.model.RecordSnapshot.*;
 import static org.hypernomicon.model.HyperDB.*;
 import static org.hypernomicon.model.records.HDT_RecordState.*;
 import static org.hypernomicon.model.records.HDT_RecordType.*;
 
 import static org.hypernomicon.util.Util.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -93,6 +97,32 @@ public class HDI_OfflineAuthors extends HDI_OfflineBase
     });
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException
+  {
+    out.writeInt(authors.size());
+
+    for (OfflineAuthor author : authors)
+    {
+      out.writeInt(author.personID);
+      writeString(out, author.personID > 0 ? "" : author.name.getLastFirst());
+      writeNestedItemsToSnapshot(out, author.nestedItems);
+    }
+  }
+
+  @Override public void readFromSnapshot(DataInput in) throws IOException
+  {
+    for (int ndx = in.readInt(); ndx > 0; ndx--)
+    {
+      int personID = in.readInt();
+      String name = readString(in);
+
+      setFromXml(schema.getTag(), name, hdtPerson, personID, readNestedItemsFromSnapshot(in, schema.getRelType()));
+    }
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
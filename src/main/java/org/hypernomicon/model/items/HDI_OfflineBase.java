@@ -17,12 +17,23 @@
 
 package org.hypernomicon.model.items;
 
+import static org.hypernomicon.model.HyperDB.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import org.hypernomicon.model.HDI_Schema;
 import org.hypernomicon.model.HyperDB.Tag;
 import org.hypernomicon.model.records.HDT_RecordState;
 import org.hypernomicon.model.records.HDT_RecordType;
+import org.hypernomicon.model.relations.RelationSet.RelationType;
 
 public abstract class HDI_OfflineBase extends HDI_Base
 {
@@ -37,4 +48,55 @@ public abstract class HDI_OfflineBase extends HDI_Base
   public abstract void setFromXml(Tag tag, String nodeText, HDT_RecordType objType, int objID, Map<Tag, HDI_OfflineBase> nestedItems);
 
   public abstract void writeToXml(Tag tag, StringBuilder xml);
+
+  public abstract void writeToSnapshot(DataOutput out) throws IOException;
+
+  public abstract void readFromSnapshot(DataInput in) throws IOException;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // An item that is shared by more than one tag is only written once. Reading has to visit the items
+  // in the same order, which holds because the item maps are always built from the same schemas.
+
+  public static void writeItemsToSnapshot(DataOutput out, Map<Tag, HDI_OfflineBase> items, Tag tagToSkip) throws IOException
+  {
+    Set<HDI_OfflineBase> written = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    for (Entry<Tag, HDI_OfflineBase> entry : items.entrySet())
+      if ((entry.getKey() != tagToSkip) && written.add(entry.getValue()))
+        entry.getValue().writeToSnapshot(out);
+  }
+
+  public static void readItemsFromSnapshot(DataInput in, Map<Tag, HDI_OfflineBase> items, Tag tagToSkip) throws IOException
+  {
+    Set<HDI_OfflineBase> read = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    for (Entry<Tag, HDI_OfflineBase> entry : items.entrySet())
+      if ((entry.getKey() != tagToSkip) && read.add(entry.getValue()))
+        entry.getValue().readFromSnapshot(in);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static void writeNestedItemsToSnapshot(DataOutput out, Map<Tag, HDI_OfflineBase> nestedItems) throws IOException
+  {
+    out.writeBoolean(nestedItems != null);
+
+    if (nestedItems != null)
+      writeItemsToSnapshot(out, nestedItems, Tag.tagNone);
+  }
+
+  Map<Tag, HDI_OfflineBase> readNestedItemsFromSnapshot(DataInput in, RelationType relType) throws IOException
+  {
+    if (in.readBoolean() == false) return null;
+
+    Map<Tag, HDI_OfflineBase> nestedItems = new LinkedHashMap<>();
+
+    db.initNestedItems(recordState, nestedItems, relType);
+    readItemsFromSnapshot(in, nestedItems, Tag.tagNone);
+
+    return nestedItems;
+  }
 }
@@ -24,6 +24,9 @@ import org.hypernomicon.model.records.HDT_RecordType;
 import static org.hypernomicon.model.records.HDT_RecordState.*;
 import static org.hypernomicon.util.Util.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 public class HDI_OfflineBoolean extends HDI_OfflineBase
@@ -54,6 +57,12 @@ public class HDI_OfflineBoolean extends HDI_OfflineBase
     writeBooleanTag(xml, tag, boolValue);
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException { out.writeBoolean(boolValue); }
+  @Override public void readFromSnapshot(DataInput in) throws IOException  { boolValue = in.readBoolean(); }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
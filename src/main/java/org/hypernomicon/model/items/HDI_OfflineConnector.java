@@ -22,12 +22,16 @@ import org.hypernomicon.model.HyperDB.Tag;
 import org.hypernomicon.model.items.MainText.DisplayItemType;
 import org.hypernomicon.model.records.HDT_RecordState;
 import org.hypernomicon.model.records.HDT_RecordType;
+import static org.hypernomicon.model.RecordSnapshot.*;
 import static org.hypernomicon.model.records.HDT_RecordState.*;
 import static org.hypernomicon.model.records.HDT_RecordType.*;
 import static org.hypernomicon.model.items.MainText.DisplayItemType.*;
 import static org.hypernomicon.model.HyperDB.*;
 import static org.hypernomicon.model.HyperDB.Tag.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -67,7 +71,7 @@ public class HDI_OfflineConnector extends HDI_OfflineBase
   final List<KeyWork> keyWorks;
   final Map<HDT_RecordType, Set<Integer>> usedKeyWorks;
 
-  private static Map<String, DisplayItemType> strToItemType = null;
+  private static volatile Map<String, DisplayItemType> strToItemType = null; // XML files may be parsed on more than one thread
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
@@ -93,11 +97,13 @@ public class HDI_OfflineConnector extends HDI_OfflineBase
 
   static private void initMap()
   {
-    strToItemType = new HashMap<>();
+    Map<String, DisplayItemType> map = new HashMap<>();
 
-    strToItemType.put(DI_TYPE_DESC, diDescription);
-    strToItemType.put(DI_TYPE_RECORD, diRecord);
-    strToItemType.put(DI_TYPE_KEY_WORKS, diKeyWorks);
+    map.put(DI_TYPE_DESC, diDescription);
+    map.put(DI_TYPE_RECORD, diRecord);
+    map.put(DI_TYPE_KEY_WORKS, diKeyWorks);
+
+    strToItemType = map;
   }
 
 //---------------------------------------------------------------------------
@@ -214,6 +220,65 @@ public class HDI_OfflineConnector extends HDI_OfflineBase
     }
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Mirrors writeToXml: when the record is linked to a hub, the rest of the data is stored in the hub's record
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException
+  {
+    out.writeInt(hubID);
+    if (hubID > 0) return;
+
+    writeString(out, htmlText);
+
+    out.writeInt(displayItems.size());
+
+    for (DisplayItem displayItem : displayItems)
+    {
+      out.writeByte(displayItem.type.ordinal());
+      out.writeInt(displayItem.recordID);
+      writeType(out, displayItem.recordType);
+    }
+
+    out.writeInt(keyWorks.size());
+
+    for (KeyWork keyWork : keyWorks)
+    {
+      out.writeInt(keyWork.getRecordID());
+      writeType(out, keyWork.getRecordType());
+      writeString(out, keyWork.getSearchKey(false));
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void readFromSnapshot(DataInput in) throws IOException
+  {
+    hubID = in.readInt();
+    if (hubID > 0) return;
+
+    htmlText = readString(in);
+
+    for (int ndx = in.readInt(); ndx > 0; ndx--)
+    {
+      DisplayItemType itemType = DisplayItemType.values()[in.readByte()];
+      int recordID = in.readInt();
+      HDT_RecordType recordType = readType(in);
+
+      displayItems.add(itemType == diRecord ? new DisplayItem(recordID, recordType) : new DisplayItem(itemType));
+    }
+
+    for (int ndx = in.readInt(); ndx > 0; ndx--)
+    {
+      int recordID = in.readInt();
+      HDT_RecordType recordType = readType(in);
+
+      setFromXml(tagKeyWork, readString(in), recordType, recordID, null);
+    }
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -22,6 +22,9 @@ import static org.hypernomicon.model.HyperDB.Tag.*;
 import static org.hypernomicon.model.records.HDT_RecordState.*;
 import static org.hypernomicon.model.records.HDT_RecordType.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import org.hypernomicon.model.HDI_Schema;
@@ -81,6 +84,27 @@ public class HDI_OfflineHubSpokes extends HDI_OfflineBase
     writeTag(noteID,     hdtNote     , xml);
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException
+  {
+    out.writeInt(debateID);
+    out.writeInt(conceptID);
+    out.writeInt(labelID);
+    out.writeInt(positionID);
+    out.writeInt(noteID);
+  }
+
+  @Override public void readFromSnapshot(DataInput in) throws IOException
+  {
+    debateID   = in.readInt();
+    conceptID  = in.readInt();
+    labelID    = in.readInt();
+    positionID = in.readInt();
+    noteID     = in.readInt();
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
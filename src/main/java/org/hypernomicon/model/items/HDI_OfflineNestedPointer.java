@@ -22,6 +22,9 @@ import static org.hypernomicon.model.records.HDT_RecordType.*;
 import static org.hypernomicon.model.records.HDT_RecordState.writePointerTag;
 
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import org.hypernomicon.model.HDI_Schema;
@@ -67,4 +70,10 @@ public class HDI_OfflineNestedPointer extends HDI_OfflineBase
   //---------------------------------------------------------------------------
   //---------------------------------------------------------------------------
 
+  @Override public void writeToSnapshot(DataOutput out) throws IOException { out.writeInt(objID); }
+  @Override public void readFromSnapshot(DataInput in) throws IOException  { objID = in.readInt(); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
 }
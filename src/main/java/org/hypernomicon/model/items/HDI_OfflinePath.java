@@ -24,8 +24,12 @@ import org.hypernomicon.model.records.HDT_RecordState;
 import org.hypernomicon.model.records.HDT_RecordType;
 import org.hypernomicon.model.relations.RelationSet.RelationType;
 
+import static org.hypernomicon.model.RecordSnapshot.*;
 import static org.hypernomicon.model.records.HDT_RecordState.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import static org.hypernomicon.model.records.HDT_RecordType.*;
@@ -81,6 +85,21 @@ public class HDI_OfflinePath extends HDI_OfflineBase
     }
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException
+  {
+    out.writeInt(folderID);
+    writeString(out, fileName);
+  }
+
+  @Override public void readFromSnapshot(DataInput in) throws IOException
+  {
+    folderID = in.readInt();
+    fileName = readString(in);
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -22,10 +22,14 @@ import org.hypernomicon.model.records.HDT_RecordState;
 import org.hypernomicon.model.records.HDT_RecordType;
 import org.hypernomicon.model.HyperDB.Tag;
 
+import static org.hypernomicon.model.RecordSnapshot.*;
 import static org.hypernomicon.model.records.HDT_RecordState.*;
 import static org.hypernomicon.util.Util.*;
 import static org.hypernomicon.model.HyperDB.Tag.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 public class HDI_OfflinePersonName extends HDI_OfflineBase
@@ -58,6 +62,21 @@ public class HDI_OfflinePersonName extends HDI_OfflineBase
     else if (tag == tagLastName)  writeStringTag(xml, tag, lastName);
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException
+  {
+    writeString(out, firstName);
+    writeString(out, lastName);
+  }
+
+  @Override public void readFromSnapshot(DataInput in) throws IOException
+  {
+    firstName = readString(in);
+    lastName  = readString(in);
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -17,6 +17,9 @@
 
 package org.hypernomicon.model.items;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -72,6 +75,34 @@ public class HDI_OfflinePointerMulti extends HDI_OfflineBase
     });
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException
+  {
+    out.writeInt(objIDs.size());
+
+    for (Integer objID : objIDs)
+    {
+      out.writeInt(objID);
+      writeNestedItemsToSnapshot(out, objIDtoMaps.get(objID));
+    }
+  }
+
+  @Override public void readFromSnapshot(DataInput in) throws IOException
+  {
+    for (int ndx = in.readInt(); ndx > 0; ndx--)
+    {
+      int objID = in.readInt();
+      Map<Tag, HDI_OfflineBase> nestedItems = readNestedItemsFromSnapshot(in, relType);
+
+      objIDs.add(objID);
+
+      if (nestedItems != null)
+        objIDtoMaps.put(objID, nestedItems);
+    }
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
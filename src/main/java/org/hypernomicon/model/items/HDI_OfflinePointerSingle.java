@@ -27,6 +27,9 @@ import static org.hypernomicon.model.records.HDT_RecordState.*;
 import static org.hypernomicon.model.records.HDT_RecordType.*;
 import static org.hypernomicon.util.Util.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import static org.hypernomicon.model.HyperDB.*;
@@ -75,6 +78,25 @@ public class HDI_OfflinePointerSingle extends HDI_OfflineBase
       writePointerTag(xml, tag, objID, hdtNone, db.records(objType).getByID(objID).getXMLObjectName());
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException
+  {
+    out.writeInt(objID);
+
+    if (objID > 0)
+      writeNestedItemsToSnapshot(out, collEmpty(tagToNestedItem) ? null : tagToNestedItem);
+  }
+
+  @Override public void readFromSnapshot(DataInput in) throws IOException
+  {
+    objID = in.readInt();
+
+    if (objID > 0)
+      tagToNestedItem = readNestedItemsFromSnapshot(in, relType);
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
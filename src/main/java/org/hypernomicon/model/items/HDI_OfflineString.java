@@ -21,8 +21,12 @@ import org.hypernomicon.model.HDI_Schema;
 import org.hypernomicon.model.HyperDB.Tag;
 import org.hypernomicon.model.records.HDT_RecordState;
 import org.hypernomicon.model.records.HDT_RecordType;
+import static org.hypernomicon.model.RecordSnapshot.*;
 import static org.hypernomicon.model.records.HDT_RecordState.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 public class HDI_OfflineString extends HDI_OfflineBase
@@ -63,6 +67,12 @@ public class HDI_OfflineString extends HDI_OfflineBase
     writeStringTag(xml, tag, strValue);
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException { writeString(out, strValue); }
+  @Override public void readFromSnapshot(DataInput in) throws IOException  { strValue = readString(in); }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -21,6 +21,9 @@ import static org.hypernomicon.model.records.HDT_RecordState.*;
 import static org.hypernomicon.util.Util.*;
 import static org.hypernomicon.model.items.HDI_OfflineTernary.Ternary.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import org.hypernomicon.model.HDI_Schema;
@@ -82,6 +85,12 @@ public class HDI_OfflineTernary extends HDI_OfflineBase
     return value;
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void writeToSnapshot(DataOutput out) throws IOException { out.writeByte(value.ordinal()); }
+  @Override public void readFromSnapshot(DataInput in) throws IOException  { value = Ternary.values()[in.readByte()]; }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
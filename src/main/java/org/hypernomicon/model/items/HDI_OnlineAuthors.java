@@ -31,6 +31,7 @@ import org.hypernomicon.model.HyperDB.Tag;
 import org.hypernomicon.model.items.HDI_OfflineAuthors.OfflineAuthor;
 import org.hypernomicon.model.items.HDI_OfflineTernary.Ternary;
 import org.hypernomicon.model.records.HDT_Person;
+import org.hypernomicon.model.records.HDT_Record;
 import org.hypernomicon.model.records.HDT_Work;
 import org.hypernomicon.model.relations.NestedValue;
 
@@ -137,6 +138,13 @@ public class HDI_OnlineAuthors extends HDI_OnlineBase<HDI_OfflineAuthors>
       authors.forEach(author -> list.add(author.getNameLastFirst()));
   }
 
+  @Override public void getLinkedRecords(List<HDT_Record> list)
+  {
+    for (Author author : authors)
+      if (author.getPerson() != null)
+        list.add(author.getPerson());
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -48,5 +48,9 @@ public abstract class HDI_OnlineBase<HDI_Derived extends HDI_OfflineBase> extend
 
   public abstract void getStrings(List<String> list, Tag tag, boolean searchLinkedRecords);
 
+  // Adds the records whose strings getStrings includes when searchLinkedRecords is true
+
+  public void getLinkedRecords(List<HDT_Record> list) { return; }
+
   public abstract String getResultTextForTag(Tag tag);
 }
@@ -215,6 +215,11 @@ public class HDI_OnlineConnector extends HDI_OnlineBase<HDI_OfflineConnector>
     list.add(connector.getMainText().getPlainForDisplay());  // Important: this needs to call the function, not access the member directly
   }
 
+  @Override public void getLinkedRecords(List<HDT_Record> list)
+  {
+    connector.getMainText().getKeyWorks().forEach(keyWork -> nullSwitch(keyWork.getRecord(), list::add));
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
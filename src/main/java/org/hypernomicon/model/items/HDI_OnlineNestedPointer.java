@@ -87,6 +87,12 @@ public class HDI_OnlineNestedPointer extends HDI_OnlineBase<HDI_OfflineNestedPoi
       list.add(target.listName());
   }
 
+  @Override public void getLinkedRecords(List<HDT_Record> list)
+  {
+    if (target != null)
+      list.add(target);
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -87,6 +87,9 @@ public class HDI_OnlinePath extends HDI_OnlineBase<HDI_OfflinePath>
           }
         }
 
+        if (hyperPath != null)
+          hyperPath.parentFolderChanged();
+
         break;
 
       default :
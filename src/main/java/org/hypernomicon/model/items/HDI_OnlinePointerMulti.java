@@ -111,6 +111,8 @@ public class HDI_OnlinePointerMulti extends HDI_OnlineBase<HDI_OfflinePointerMul
       db.getObjectList(relType, record, false).forEach(objRecord -> list.add(objRecord.listName()));
   }
 
+  @Override public void getLinkedRecords(List<HDT_Record> list) { list.addAll(db.getObjectList(relType, record, false)); }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -95,6 +95,8 @@ public class HDI_OnlinePointerSingle extends HDI_OnlineBase<HDI_OfflinePointerSi
       db.getObjectList(relType, record, false).forEach(objRecord -> list.add(objRecord.listName()));
   }
 
+  @Override public void getLinkedRecords(List<HDT_Record> list) { list.addAll(db.getObjectList(relType, record, false)); }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
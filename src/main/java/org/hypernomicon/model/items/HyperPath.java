@@ -24,11 +24,14 @@ import static org.hypernomicon.model.records.HDT_RecordType.*;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.Sets;
 
@@ -39,6 +42,7 @@ import org.hypernomicon.model.records.HDT_RecordState;
 import org.hypernomicon.model.records.HDT_RecordType;
 import org.hypernomicon.model.records.SimpleRecordTypes.HDT_RecordWithPath;
 import org.hypernomicon.model.relations.HyperObjPointer;
+import org.hypernomicon.util.FilenameMap;
 import org.hypernomicon.util.filePath.FilePath;
 
 public class HyperPath
@@ -49,6 +53,32 @@ public class HyperPath
   private HDT_Folder folder = null;
   private FilePath fileName = null;
 
+  // Index of paths by parent folder and then by file name. Entries are only added by assignNameInternal and
+  // parentFolderChanged, so an entry whose parent folder has since changed some other way, or whose name
+  // has been cleared, is skipped when it is looked up.
+
+  private static final Map<HDT_Folder, FilenameMap<Set<HyperPath>>> folderToChildren = new ConcurrentHashMap<>();
+  private HDT_Folder indexedFolder = null;
+  private String indexedName = null;
+
+  // Incremented whenever any path's folder or name changes, which invalidates every memoized file path
+
+  private static final AtomicInteger pathGeneration = new AtomicInteger();
+  private volatile MemoizedFilePath memoizedFilePath = null;
+
+  private static final class MemoizedFilePath
+  {
+    private final FilePath filePath, rootFilePath;
+    private final int generation;
+
+    private MemoizedFilePath(FilePath filePath, FilePath rootFilePath, int generation)
+    {
+      this.filePath = filePath;
+      this.rootFilePath = rootFilePath;
+      this.generation = generation;
+    }
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -79,7 +109,7 @@ public class HyperPath
     if (FilePath.isEmpty(filePath))
       return;
 
-    if (db.getRootPath().isSubpath(filePath) == false)
+    if (relativeToRoot(filePath) == null)
     {
       messageDialog("Internal error: Hyperpath not in database folder tree", mtError);
       return;
@@ -134,6 +164,7 @@ public class HyperPath
       folder = null;
 
     fileName = null;
+    pathGeneration.incrementAndGet();
 
     if (FilePath.isEmpty(filePath)   ||
         (filePath.exists() == false) ||
@@ -148,8 +179,94 @@ public class HyperPath
 
   public static Set<HyperPath> getHyperPathSetForFilePath(FilePath filePath)
   {
-    return nullSwitch(db.filenameMap.get(filePath.getNameOnly().toString()), new HashSet<>(),
-                      paths -> paths.stream().filter(path -> filePath.equals(path.filePath())).collect(Collectors.toSet()));
+    Set<HyperPath> set = new HashSet<>();
+
+    Path relativePath = relativeToRoot(filePath);
+    if (relativePath == null) return set;
+
+    HDT_Folder folder = db.folders.getByID(ROOT_FOLDER_ID);
+    if (folder == null) return set;
+
+    if (relativePath.toString().isEmpty())
+    {
+      set.add(folder.getPath());
+      return set;
+    }
+
+    int lastNdx = relativePath.getNameCount() - 1;
+
+    for (int ndx = 0; ndx < lastNdx; ndx++)
+    {
+      HDT_Folder parentFolder = folder;
+
+      folder = (HDT_Folder) findFirst(getIndexedChildren(parentFolder, relativePath.getName(ndx).toString()),
+                                      hyperPath -> hyperPath.getRecordType() == hdtFolder,
+                                      HyperPath::getRecord);
+      if (folder == null) return set;
+    }
+
+    set.addAll(getIndexedChildren(folder, relativePath.getName(lastNdx).toString()));
+    return set;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Returns the path relative to the database root folder, the empty path for the root folder itself, or null
+  // if the path is not in the database folder tree. Canonical paths are tried first so that the result agrees
+  // with FilePath.equals; the lexical path is the fallback for files reached through a link inside the tree.
+
+  private static Path relativeToRoot(FilePath filePath)
+  {
+    FilePath rootFilePath = db.getRootPath();
+    if (FilePath.isEmpty(rootFilePath) || FilePath.isEmpty(filePath)) return null;
+
+    Path rootPath = rootFilePath.toCanonicalPath(), path = filePath.toCanonicalPath();
+
+    if (path.startsWith(rootPath) == false)
+    {
+      rootPath = rootFilePath.toPath().toAbsolutePath().normalize();
+      path = filePath.toPath().toAbsolutePath().normalize();
+
+      if (path.startsWith(rootPath) == false) return null;
+    }
+
+    return rootPath.relativize(path);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static Set<HyperPath> getIndexedChildren(HDT_Folder parentFolder, String name)
+  {
+    Set<HyperPath> set = new HashSet<>();
+
+    nullSwitch(folderToChildren.get(parentFolder), children -> nullSwitch(children.get(name), indexed -> indexed.forEach(hyperPath ->
+    {
+      if ((hyperPath.parentFolder() == parentFolder) && (FilePath.isEmpty(hyperPath.fileName) == false))
+        set.add(hyperPath);
+    })));
+
+    return set;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void unmapFilePath(FilePath filePath)
+  {
+    if (FilePath.isEmpty(filePath)) return;
+
+    getHyperPathSetForFilePath(filePath).forEach(HyperPath::removeFromIndex);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void clearIndex()
+  {
+    folderToChildren.clear();
+    pathGeneration.incrementAndGet();
   }
 
 //---------------------------------------------------------------------------
@@ -162,8 +279,18 @@ public class HyperPath
 
     if (FilePath.isEmpty(fileName)) return null;
 
-    return nullSwitch(parentFolder()   , fileName, folder   ->
-           nullSwitch(folder.filePath(), fileName, folderFP -> folderFP.resolve(fileName)));
+    int generation = pathGeneration.get();
+    FilePath rootFilePath = db.getRootPath();
+    MemoizedFilePath memoized = memoizedFilePath;
+
+    if ((memoized != null) && (memoized.generation == generation) && (memoized.rootFilePath == rootFilePath))
+      return memoized.filePath;
+
+    FilePath filePath = nullSwitch(parentFolder()   , fileName, folder   ->
+                        nullSwitch(folder.filePath(), fileName, folderFP -> folderFP.resolve(fileName)));
+
+    memoizedFilePath = new MemoizedFilePath(filePath, rootFilePath, generation);
+    return filePath;
   }
 
 //---------------------------------------------------------------------------
@@ -173,7 +300,7 @@ public class HyperPath
   {
     dirFilePath = dirFilePath.getDirOnly();
 
-    if (db.getRootPath().isSubpath(dirFilePath) == false)  // the path is not in the database folder tree
+    if (relativeToRoot(dirFilePath) == null)  // the path is not in the database folder tree
       return null;
 
     Set<HyperPath> set = getHyperPathSetForFilePath(dirFilePath);
@@ -325,38 +452,78 @@ public class HyperPath
 
   void assignNameInternal(FilePath newFileName)
   {
-    if (FilePath.isEmpty(fileName) == false)
-      nullSwitch(db.filenameMap.get(fileName.toString()), set -> set.remove(this));
-
-    if (FilePath.isEmpty(newFileName) == false)
-    {
-      newFileName = newFileName.getNameOnly();
-      Set<HyperPath> set = db.filenameMap.get(newFileName.toString());
-      if (set == null)
-      {
-        set = Sets.newConcurrentHashSet();
-        db.filenameMap.put(newFileName.toString(), set);
-      }
-
-      set.add(this);
-    }
+    removeFromIndex();
 
-    fileName = newFileName;
+    fileName = FilePath.isEmpty(newFileName) ? newFileName : newFileName.getNameOnly();
+    pathGeneration.incrementAndGet();
 
     if (record != null)
       record.updateSortKey();
 
-    if (FilePath.isEmpty(fileName))
+    addToIndex();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Called when the parent folder pointer was changed directly through the relation instead of by assignInternal
+
+  void parentFolderChanged()
+  {
+    removeFromIndex();
+    pathGeneration.incrementAndGet();
+    addToIndex();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void addToIndex()
+  {
+    HDT_Folder parentFolder = parentFolder();
+
+    if (FilePath.isEmpty(fileName) || (parentFolder == null))  // The root folder is found without the index
       return;
 
-    // now remove duplicates
+    String name = fileName.toString();
+    FilenameMap<Set<HyperPath>> children = folderToChildren.computeIfAbsent(parentFolder, key -> new FilenameMap<>());
 
-    db.filenameMap.get(fileName.getNameOnly().toString()).removeIf(path ->
+    Set<HyperPath> set = children.get(name);
+    if (set == null)
     {
-      return (path.isNotEmpty() &&
-              path.filePath().equals(filePath()) && // for this to work, folder records have to be brought online first
-              (path != this));
-    });
+      set = Sets.newConcurrentHashSet();
+      children.put(name, set);
+    }
+
+    set.clear(); // Any other path indexed under the same folder and name is a duplicate of this one
+    set.add(this);
+
+    indexedFolder = parentFolder;
+    indexedName = name;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void removeFromIndex()
+  {
+    if (indexedFolder == null) return;
+
+    FilenameMap<Set<HyperPath>> children = folderToChildren.get(indexedFolder);
+
+    if (children != null)
+    {
+      Set<HyperPath> set = children.get(indexedName);
+
+      if ((set != null) && set.remove(this) && set.isEmpty())
+        children.remove(indexedName);
+
+      if (children.isEmpty())
+        folderToChildren.remove(indexedFolder);
+    }
+
+    indexedFolder = null;
+    indexedName = null;
   }
 
 //---------------------------------------------------------------------------
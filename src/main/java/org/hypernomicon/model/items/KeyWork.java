@@ -209,6 +209,22 @@ public class KeyWork implements Comparable<KeyWork>
   //---------------------------------------------------------------------------
 
   private boolean updateSearchKeyAndCheckIfActive()
+  {
+    boolean wasInitialized = searchKeyInitialized;
+    String oldSearchKey = searchKey;
+
+    boolean active = updateSearchKey();
+
+    if (wasInitialized && (oldSearchKey.equals(searchKey) == false))
+      db.markKeyWorkHoldersDirty(); // The key work's search key is written to the XML of the record that has it as a key work
+
+    return active;
+  }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+  private boolean updateSearchKey()
   {
     searchKeyInitialized = true;
 
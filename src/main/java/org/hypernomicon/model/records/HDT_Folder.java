@@ -27,6 +27,7 @@ import static org.hypernomicon.model.HyperDB.*;
 import static org.hypernomicon.Const.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.hypernomicon.model.HyperDataset;
@@ -184,17 +185,31 @@ public class HDT_Folder extends HDT_RecordBase implements HDT_RecordWithPath
 //---------------------------------------------------------------------------
 
   public static void deleteFolderRecordTree(HDT_Folder folder)
+  {
+    List<HDT_Folder> folders = new ArrayList<>();
+    List<FilePath> filePaths = new ArrayList<>();
+
+    addFolderRecordTree(folder, folders, filePaths);
+
+    db.deleteRecords(folders);
+    filePaths.forEach(db::unmapFilePath);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Subfolders come before their parent, in the order they used to be deleted one at a time
+
+  private static void addFolderRecordTree(HDT_Folder folder, List<HDT_Folder> folders, List<FilePath> filePaths)
   {
     FilePath filePath = folder.filePath();
 
-    if (folder.childFolders.isEmpty() == false)
-      folder.childFolders.forEach(HDT_Folder::deleteFolderRecordTree);
+    folder.childFolders.forEach(childFolder -> addFolderRecordTree(childFolder, folders, filePaths));
 
-    int folderID = folder.getID();
-    if (folderID > 0)
-      db.deleteRecord(hdtFolder, folderID);
+    if (folder.getID() > 0)
+      folders.add(folder);
 
-    db.unmapFilePath(filePath);
+    filePaths.add(filePath);
   }
 
 //---------------------------------------------------------------------------
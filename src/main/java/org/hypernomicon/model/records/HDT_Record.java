@@ -68,6 +68,7 @@ public interface HDT_Record
   boolean changeID(int newID);
 
   void getAllStrings(List<String> list, boolean searchLinkedRecords);
+  void getAllLinkedRecords(List<HDT_Record> list);
   String name();
   Tag getNameTag();
   void setName(String str);
@@ -85,14 +85,14 @@ public abstract class HDT_RecordBase implements HDT_Record
   @Override public final boolean hasMainText()          { return this instanceof HDT_RecordWithConnector; }
   @Override public final boolean hasDesc()              { return this instanceof HDT_RecordWithDescription; }
   @Override public final int getID()                    { return id; }
-  @Override public final void viewNow()                 { if (db.viewTestingInProgress == false) viewDate = Instant.now(); }
+  @Override public final void viewNow()                 { if (db.viewTestingInProgress == false) { viewDate = Instant.now(); db.markDirtyNoDependents(type); } }
   @Override public final String getSortKeyAttr()        { return sortKeyAttr; }
   @Override public final String getSortKey()            { return dataset.getKeyByID(id); }
   @Override public final boolean isExpired()            { return expired; }
   @Override public final Set<Tag> getAllTags()          { return items.keySet().isEmpty() ? EnumSet.noneOf(Tag.class) : EnumSet.copyOf(items.keySet()); }
   @Override public final boolean getTagBoolean(Tag tag) { return HDI_OnlineBoolean.class.cast(items.get(tag)).get(); }
   @Override public final boolean hasStoredState()       { return xmlState.stored; }
-  @Override public final void updateSortKey()           { dataset.updateSortKey(makeSortKey(), id); }
+  @Override public final void updateSortKey()           { dataset.updateSortKey(makeSortKey(), id); db.invalidateRecordText(this); }
   @Override public final HDI_Schema getSchema(Tag tag)  { return nullSwitch(items.get(tag), null, HDI_Base::getSchema); }
   @Override public final HDT_RecordType getType()       { return type; }
 
@@ -214,6 +214,8 @@ public abstract class HDT_RecordBase implements HDT_Record
     if (dummyFlag == false)
       db.getRecordDeleteHandlers().forEach(handler -> handler.accept(this));
 
+    db.handleExpiringRecord(this);
+
     items.values().forEach(HDI_OnlineBase::expire);
 
     id = -1;
@@ -227,12 +229,16 @@ public abstract class HDT_RecordBase implements HDT_Record
 
   @Override public void modifyNow()
   {
+    db.markDirty(getType());
+
     if (db.runningConversion == false)
     {
       modifiedDate = Instant.now();
       //System.out.println("Modified: " + db.getTypeName(getType()) + " " + getID() + " " + dateTimeToUserReadableStr(modifiedDate));
     }
 
+    db.invalidateRecordText(this);
+
     if (online && (getType() != hdtFolder))
       db.updateMentioner(this);
   }
@@ -252,6 +258,7 @@ public abstract class HDT_RecordBase implements HDT_Record
     int oldID = id;
     id = newID;
     dataset.changeRecordID(oldID, newID);
+    db.markAllDirty(); // Other records refer to this one by ID
 
     return true;
   }
@@ -283,6 +290,7 @@ public abstract class HDT_RecordBase implements HDT_Record
     }
 
     online = true;
+    db.markDirty(getType());
 
     if (getType().getDisregardDates() == false)
     {
@@ -378,6 +386,8 @@ public abstract class HDT_RecordBase implements HDT_Record
     val = safeStr(val);
     if (dest.replace("\r", "").equalsIgnoreCase(val.replace("\r", "")) == false)
       modifyNow();
+    else if (dest.equals(val) == false)
+      db.markDirty(getType()); // A change in case only still has to be saved
 
     return val;
   }
@@ -388,6 +398,7 @@ public abstract class HDT_RecordBase implements HDT_Record
   protected final void updateBibEntryKey(String val) // No need to change modified date for record
   {
     HDI_OnlineBibEntryKey.class.cast(items.get(tagBibEntryKey)).set(val);
+    db.markDirtyNoDependents(type);
   }
 
 //---------------------------------------------------------------------------
@@ -572,6 +583,14 @@ public abstract class HDT_RecordBase implements HDT_Record
     });
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public void getAllLinkedRecords(List<HDT_Record> list)
+  {
+    items.values().forEach(item -> item.getLinkedRecords(list));
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -18,11 +18,15 @@
 package org.hypernomicon.model.records;
 
 import static org.hypernomicon.model.HyperDB.*;
+import static org.hypernomicon.model.RecordSnapshot.*;
 import static org.hypernomicon.model.HyperDB.Tag.*;
 import static org.hypernomicon.model.records.HDT_RecordType.*;
 import static org.hypernomicon.util.Util.*;
 import static org.hypernomicon.util.Util.MessageDialogType.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -166,6 +170,54 @@ public class HDT_RecordState
     stored = true;
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The name of a folder is not written to XML and the name of a hub is ignored when it is read back,
+  // so those items are left out of the snapshot as well, keeping the two formats equivalent
+
+  private Tag snapshotTagToSkip() { return (type == hdtFolder) || (type == hdtHub) ? tagName : tagNone; }
+
+  public final void writeToSnapshot(DataOutput out) throws IOException
+  {
+    writeType(out, type);
+    out.writeInt(id);
+
+    writeString(out, sortKeyAttr);
+    writeString(out, searchKey);
+    writeString(out, listName);
+    writeString(out, simpleName);
+
+    writeInstant(out, creationDate);
+    writeInstant(out, modifiedDate);
+    writeInstant(out, viewDate);
+
+    HDI_OfflineBase.writeItemsToSnapshot(out, items, snapshotTagToSkip());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static HDT_RecordState readFromSnapshot(DataInput in) throws IOException
+  {
+    HDT_RecordType type = readType(in);
+    int id = in.readInt();
+
+    String sortKeyAttr = readString(in), searchKey = readString(in), listName = readString(in), simpleName = readString(in);
+
+    HDT_RecordState recordState = new HDT_RecordState(type, id, sortKeyAttr, simpleName, searchKey, listName);
+
+    recordState.creationDate = readInstant(in);
+    recordState.modifiedDate = readInstant(in);
+    recordState.viewDate     = readInstant(in);
+
+    HDI_OfflineBase.readItemsFromSnapshot(in, recordState.items, recordState.snapshotTagToSkip());
+
+    recordState.stored = true;
+
+    return recordState;
+  }
+
   private static Escaper xmlContentEscaper = xmlContentEscaper(), xmlAttributeEscaper = xmlAttributeEscaper();
 
 //---------------------------------------------------------------------------
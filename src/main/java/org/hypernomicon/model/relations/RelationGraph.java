@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model.relations;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+//---------------------------------------------------------------------------
+
+// Walks over the subject-to-object links of a relation, where the objects of a record are its successors
+
+final class RelationGraph
+{
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Returns true if target can be reached from start by following successors. The walk is iterative and
+  // visits each node once, so shared ancestors are not re-walked once per path and deep hierarchies cannot
+  // overflow the stack.
+
+  static <T> boolean reaches(T start, T target, Function<T, ? extends Iterable<? extends T>> successors)
+  {
+    Set<T> visited = new HashSet<>();
+    Deque<T> toVisit = new ArrayDeque<>();
+
+    visited.add(start);
+    toVisit.push(start);
+
+    while (toVisit.isEmpty() == false)
+    {
+      for (T next : successors.apply(toVisit.pop()))
+      {
+        if (next.equals(target))
+          return true;
+
+        if (visited.add(next))
+          toVisit.push(next);
+      }
+    }
+
+    return false;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -46,6 +46,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Table.Cell;
 
@@ -67,6 +68,7 @@ public final class RelationSet<HDT_Subj extends HDT_Record, HDT_Obj extends HDT_
   private ArrayListMultimap<HDT_Obj, HDT_Subj> objToSubjList = ArrayListMultimap.create();
   private ArrayListMultimap<HDT_Subj, HDT_Obj> subjToObjList = ArrayListMultimap.create();
   private final HashBasedTable<HDT_Subj, HDT_Obj, Map<Tag, HDI_OnlineBase<? extends HDI_OfflineBase>>> objectGroups = HashBasedTable.create();
+  private final HashMultimap<HDT_Record, HDT_Subj> nestedTargetToSubj = HashMultimap.create(); // May contain subjects that no longer point to the target
   private final Map<Tag, HDI_Schema> tagToSchema = new LinkedHashMap<>();
   private final Map<Tag, HDT_RecordType> tagToTargetType = new EnumMap<>(Tag.class);
   private final List<RelationChangeHandler> changeHandlers = new ArrayList<>();
@@ -307,7 +309,12 @@ public final class RelationSet<HDT_Subj extends HDT_Record, HDT_Obj extends HDT_
     }
 
     HDI_OnlineBase<HDI_Offline> item = getNestedItem(subj, obj, tag, isEmpty);
-    if (item != null) item.setFromOfflineValue(value, tag);
+    if (item == null) return;
+
+    item.setFromOfflineValue(value, tag);
+
+    if (item.getCategory() == hdcNestedPointer)
+      nullSwitch(HDI_OnlineNestedPointer.class.cast(item).get(), target -> nestedTargetToSubj.put(target, subj));
   }
 
 //---------------------------------------------------------------------------
@@ -388,6 +395,10 @@ public final class RelationSet<HDT_Subj extends HDT_Record, HDT_Obj extends HDT_
     if ((item == null) || (item.get() == target)) return false;
 
     item.set(target);
+
+    if (target != null)
+      nestedTargetToSubj.put(target, subj);
+
     return true;
   }
 
@@ -572,6 +583,8 @@ public final class RelationSet<HDT_Subj extends HDT_Record, HDT_Obj extends HDT_
       else           objList.add(ndx, obj);
 
       objToSubjList.put(obj, subj);
+      markDirty(subj);
+      invalidateRecordText(subj, obj);
 
       orphans.remove(subj);
 
@@ -586,6 +599,9 @@ public final class RelationSet<HDT_Subj extends HDT_Record, HDT_Obj extends HDT_
       if (ndx == -1) objList.remove(obj); // removes first occurrence
       else           objList.remove(ndx);
 
+      markDirty(subj);
+      invalidateRecordText(subj, obj);
+
       if (objList.contains(obj) == false)
       {
         objToSubjList.remove(obj, subj);
@@ -612,16 +628,38 @@ public final class RelationSet<HDT_Subj extends HDT_Record, HDT_Obj extends HDT_
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
+  // The subject's XML lists the objects. The object's dataset is marked too because whether a folder gets
+  // saved depends on what records are in it; see HDT_Folder.hasNoNonFolderRecordDependencies. Author changes
+  // also count as name changes, because works and misc. files can be looked up by author name.
+
+  private void markDirty(HDT_Subj subj)
+  {
+    db.markDirty(subjType);
+    db.markDirtyNoDependents(objType);
+
+    if ((type == rtAuthorOfWork) || (type == rtAuthorOfFile))
+      db.nameChanged(subj);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void invalidateRecordText(HDT_Subj subj, HDT_Obj obj)
+  {
+    db.invalidateRecordText(subj);
+    db.invalidateRecordText(obj);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Making obj an object of subj closes a cycle if subj can already be reached from obj
+
   @SuppressWarnings("unchecked")
   private void cycleCheck(HDT_Subj subj, HDT_Subj obj, HDT_Obj origObj) throws RelationCycleException
   {
-    for (HDT_Obj nextObj : subjToObjList.get(obj))
-    {
-      if (nextObj == subj)
-        throw new RelationCycleException(subj, origObj);
-
-      cycleCheck(subj, (HDT_Subj) nextObj, origObj);
-    }
+    if (RelationGraph.reaches((HDT_Record) obj, subj, record -> subjToObjList.get((HDT_Subj) record)))
+      throw new RelationCycleException(subj, origObj);
   }
 
 //---------------------------------------------------------------------------
@@ -672,6 +710,8 @@ public final class RelationSet<HDT_Subj extends HDT_Record, HDT_Obj extends HDT_
       if (HDT_Record.isEmptyThrowsException(orphanIt.next())) orphanIt.remove();
     }
 
+    nestedTargetToSubj.clear();
+
     if (hasNestedItems == false) return;
 
     Iterator<Cell<HDT_Subj, HDT_Obj, Map<Tag, HDI_OnlineBase<? extends HDI_OfflineBase>>>> cellIt = objectGroups.cellSet().iterator();
@@ -691,12 +731,73 @@ public final class RelationSet<HDT_Subj extends HDT_Record, HDT_Obj extends HDT_
           HDI_OnlineBase<? extends HDI_OfflineBase> item = targetIt.next().getValue();
 
           if (item.getCategory() == hdcNestedPointer)
-            if (HDT_Record.isEmptyThrowsException(HDI_OnlineNestedPointer.class.cast(item).get())) targetIt.remove();
+          {
+            HDT_Record target = HDI_OnlineNestedPointer.class.cast(item).get();
+
+            if (HDT_Record.isEmptyThrowsException(target)) targetIt.remove();
+            else                                          nestedTargetToSubj.put(target, cell.getRowKey());
+          }
         }
       }
     }
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Adds the records that may hold a pointer to the target through this relation: subjects that have the target as an object,
+  // and subjects with a nested pointer to it
+
+  @SuppressWarnings("unchecked")
+  public void addReferrers(HDT_Record target, Collection<HDT_Record> referrers)
+  {
+    if (target.getType() == objType)
+      referrers.addAll(objToSubjList.get((HDT_Obj) target));
+
+    referrers.addAll(nestedTargetToSubj.get(target));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Does what cleanup does, but only for entries involving one record that has been deleted. The pointers
+  // of the records returned by addReferrers have to be resolved first.
+
+  @SuppressWarnings("unchecked")
+  public void removeExpiredRecord(HDT_Record record)
+  {
+    nestedTargetToSubj.removeAll(record);
+
+    if (record.getType() == subjType)
+    {
+      HDT_Subj subj = (HDT_Subj) record;
+
+      subjToObjList.removeAll(subj).forEach(obj -> objToSubjList.remove(obj, subj));
+      orphans.remove(subj);
+
+      if (hasNestedItems)
+      {
+        objectGroups.row(subj).values().forEach(items -> items.values().forEach(item ->
+        {
+          if (item.getCategory() == hdcNestedPointer)
+            nullSwitch(HDI_OnlineNestedPointer.class.cast(item).get(), target -> nestedTargetToSubj.remove(target, subj));
+        }));
+
+        objectGroups.row(subj).clear();
+      }
+    }
+
+    if (record.getType() == objType)
+    {
+      HDT_Obj obj = (HDT_Obj) record;
+
+      objToSubjList.removeAll(obj).forEach(subj -> subjToObjList.get(subj).removeIf(curObj -> curObj == obj));
+
+      if (hasNestedItems)
+        objectGroups.column(obj).clear();
+    }
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -845,7 +946,7 @@ public final class RelationSet<HDT_Subj extends HDT_Record, HDT_Obj extends HDT_
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  void reorderObjects (HDT_Subj subj, List<HDT_Obj>  newObjList)  { reorderList(subj, newObjList,  subjToObjList); }
+  void reorderObjects (HDT_Subj subj, List<HDT_Obj>  newObjList)  { reorderList(subj, newObjList,  subjToObjList); db.markDirtyNoDependents(subjType); }
   void reorderSubjects(HDT_Obj   obj, List<HDT_Subj> newSubjList) { reorderList(obj,  newSubjList, objToSubjList); }
 
   private <HDT_Key extends HDT_Record, HDT_Value extends HDT_Record> void reorderList(HDT_Key key, List<HDT_Value> newValueList, ArrayListMultimap<HDT_Key, HDT_Value> map)
@@ -110,14 +110,6 @@ public class AllQueryEngine extends QueryEngine<HDT_Record>
     }
   }
 
-//---------------------------------------------------------------------------
-//---------------------------------------------------------------------------
-
-  @Override public void cancelled()
-  {
-    cleanupSearchDummy();
-  }
-
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -134,86 +126,98 @@ public class AllQueryEngine extends QueryEngine<HDT_Record>
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  @Override public boolean evaluate(HDT_Record record, boolean firstCall, boolean lastCall)
+  @Override public QueryPredicate compile(int query, HyperTableCell op1, HyperTableCell op2, HyperTableCell op3)
   {
-    boolean add = false;
-
-    switch (curQuery)
+    switch (query)
     {
       case QUERY_RECORD_TYPE :
-        return record.getType() == HyperTableCell.getCellType(param1);
+
+        HDT_RecordType specifiedType = getCellType(op1);
+        return record -> record.getType() == specifiedType;
 
       case QUERY_RECORD_EQUALS :
       case QUERY_MATCHING_RECORD :
       case QUERY_ASSOCIATED_WITH_PHRASE :
+      case QUERY_DUPLICATE_FOLDERS :
 
-        return true;
+        return QueryPredicate.ALL;
 
       case QUERY_MATCHING_STRING :
 
-        if (firstCall)
+        String searchKey = getCellText(op1);
+
+        return QueryPredicate.singleThreaded(new QueryPredicate()  // Shares linkList and the dummy search keys
         {
-          dummySearchKeys.removeAll();
+          private final List<String> list = new ArrayList<>();
 
-          HDT_RecordState recordState = new HDT_RecordState(hdtPerson, -1, "", "", "", "", true);
+          @Override public void start()
+          {
+            dummySearchKeys.removeAll();
 
-          try { searchDummy = db.createNewRecordFromState(recordState, true); } catch (Exception e) { noOp(); }
+            HDT_RecordState recordState = new HDT_RecordState(hdtPerson, -1, "", "", "", "", true);
 
-          try
-          {
-            dummySearchKeys.setSearchKey(searchDummy, getCellText(param1), true, true);
-          }
-          catch (SearchKeyException e)
-          {
-            messageDialog(e.getMessage(), mtError);
-            cleanupSearchDummy();
-            return false;
+            try { searchDummy = db.createNewRecordFromState(recordState, true); } catch (Exception e) { noOp(); }
+
+            try
+            {
+              dummySearchKeys.setSearchKey(searchDummy, searchKey, true, true);
+            }
+            catch (SearchKeyException e)
+            {
+              messageDialog(e.getMessage(), mtError);
+              cleanupSearchDummy();
+            }
           }
-        }
 
-        if (searchDummy == null) return false;
+          @Override public boolean test(HDT_Record record)
+          {
+            if (searchDummy == null) return false;
 
-        List<String> list = new ArrayList<>();
-        record.getAllStrings(list, true);
+            list.clear();
+            record.getAllStrings(list, true);
 
-        for (String str : list)
-        {
-          linkList.generate(str.toLowerCase(), true, dummySearchKeys);
-          if (linkList.getLinks().size() > 0) add = true;
-        }
+            for (String str : list)
+            {
+              linkList.generate(str.toLowerCase(), true, dummySearchKeys);
+              if (linkList.getLinks().size() > 0) return true;
+            }
 
-        if (lastCall)
-          cleanupSearchDummy();
+            return false;
+          }
 
-        return add;
+          @Override public void finish(boolean cancelled)
+          {
+            cleanupSearchDummy();
+          }
+        });
 
       case QUERY_LINKING_TO_RECORD : case QUERY_MENTIONED_BY :
 
-        HDT_Record specifiedRecord = HyperTableCell.getRecord(param2);
-        if (HDT_Record.isEmpty(specifiedRecord)) return false;
+        HDT_Record specifiedRecord = HyperTableCell.getRecord(op2);
+        if (HDT_Record.isEmpty(specifiedRecord)) return QueryPredicate.NONE;
 
-        boolean result;
+        boolean linking = query == QUERY_LINKING_TO_RECORD;
 
-        if (curQuery == QUERY_LINKING_TO_RECORD)
-          result = db.firstMentionsSecond(record, specifiedRecord, true, choseNotToWait);
-        else
-          result = db.firstMentionsSecond(specifiedRecord, record, true, choseNotToWait);
-
-        if (choseNotToWait.isTrue()) // Mentions index rebuild should never be running here
+        return QueryPredicate.singleThreaded(record ->
         {
-          messageDialog("Internal error #54681", mtError);
-          task.cancel();
-        }
+          boolean result;
 
-        return result;
+          if (linking)
+            result = db.firstMentionsSecond(record, specifiedRecord, true, choseNotToWait);
+          else
+            result = db.firstMentionsSecond(specifiedRecord, record, true, choseNotToWait);
 
-      case QUERY_DUPLICATE_FOLDERS :
-
-        return true;
+          if (choseNotToWait.isTrue()) // Mentions index rebuild should never be running here
+          {
+            messageDialog("Internal error #54681", mtError);
+            task.cancel();
+          }
 
+          return result;
+        });
     }
 
-    return add;
+    return QueryPredicate.NONE;
   }
 
 //---------------------------------------------------------------------------
@@ -277,7 +281,7 @@ public class AllQueryEngine extends QueryEngine<HDT_Record>
             if (HDT_Record.isEmpty(specifiedRecord)) return;
 
             MutableBoolean choseNotToWait = new MutableBoolean();
-            list.addAll(db.getMentionerSet(specifiedRecord, false, choseNotToWait));
+            db.forEachMentioner(specifiedRecord, false, choseNotToWait, list::add);
 
             list.removeIf(specifiedRecord::equals);
 
@@ -25,7 +25,6 @@ import org.hypernomicon.view.wrappers.HyperTableCell;
 import org.hypernomicon.view.wrappers.HyperTableRow;
 
 import static org.hypernomicon.model.records.HDT_RecordType.*;
-import static org.hypernomicon.view.tabs.QueryTabCtrlr.*;
 
 import org.hypernomicon.model.records.HDT_Argument;
 
@@ -49,14 +48,14 @@ public class ArgumentQueryEngine extends QueryEngine<HDT_Argument>
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  @Override public boolean evaluate(HDT_Argument record, boolean firstCall, boolean lastCall)
+  @Override public QueryPredicate compile(int query, HyperTableCell op1, HyperTableCell op2, HyperTableCell op3)
   {
-    switch (curQuery)
+    switch (query)
     {
 
     }
 
-    return false;
+    return QueryPredicate.NONE;
   }
 
 //---------------------------------------------------------------------------
@@ -18,7 +18,6 @@
 package org.hypernomicon.queryEngines;
 
 import static org.hypernomicon.model.records.HDT_RecordType.*;
-import static org.hypernomicon.view.tabs.QueryTabCtrlr.*;
 
 import org.hypernomicon.model.records.HDT_Concept;
 import org.hypernomicon.querySources.DatasetQuerySource;
@@ -61,14 +60,14 @@ public class ConceptQueryEngine extends QueryEngine<HDT_Concept>
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  @Override public boolean evaluate(HDT_Concept concept, boolean firstCall, boolean lastCall)
+  @Override public QueryPredicate compile(int query, HyperTableCell op1, HyperTableCell op2, HyperTableCell op3)
   {
-    switch (curQuery)
+    switch (query)
     {
 
     }
 
-    return false;
+    return QueryPredicate.NONE;
   }
 
 //---------------------------------------------------------------------------
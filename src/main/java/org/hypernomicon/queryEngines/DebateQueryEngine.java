@@ -25,7 +25,6 @@ import org.hypernomicon.view.wrappers.HyperTableCell;
 import org.hypernomicon.view.wrappers.HyperTableRow;
 
 import static org.hypernomicon.model.records.HDT_RecordType.*;
-import static org.hypernomicon.view.tabs.QueryTabCtrlr.*;
 
 import org.hypernomicon.model.records.HDT_Debate;
 
@@ -50,14 +49,14 @@ public class DebateQueryEngine extends QueryEngine<HDT_Debate>
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  @Override public boolean evaluate(HDT_Debate record, boolean firstCall, boolean lastCall)
+  @Override public QueryPredicate compile(int query, HyperTableCell op1, HyperTableCell op2, HyperTableCell op3)
   {
-    switch (curQuery)
+    switch (query)
     {
 
     }
 
-    return false;
+    return QueryPredicate.NONE;
   }
 
 //---------------------------------------------------------------------------
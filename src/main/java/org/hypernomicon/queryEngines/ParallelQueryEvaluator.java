@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.queryEngines;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import org.hypernomicon.model.records.HDT_Record;
+
+//---------------------------------------------------------------------------
+
+// Tests a list of records against a thread-safe predicate on all cores. The list is split into ranges, and
+// each range records its matches by position, so the matches come back in the same order as the records
+// regardless of which range finished first.
+
+public final class ParallelQueryEvaluator extends RecursiveAction
+{
+  private static final long serialVersionUID = 1L;
+
+  public static final int MIN_RECORDS = 2000;  // For fewer records than this, the caller should just test them in a loop
+  private static final int MIN_RANGE = 256;
+
+  private static ForkJoinPool pool = null;
+
+  private final List<HDT_Record> records;
+  private final QueryPredicate predicate;
+  private final boolean[] matches;
+  private final BooleanSupplier isCancelled;
+  private final IntConsumer progressHndlr;
+  private final AtomicInteger testedCount;
+  private final int start, end;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private ParallelQueryEvaluator(List<HDT_Record> records, QueryPredicate predicate, boolean[] matches, BooleanSupplier isCancelled,
+                                 IntConsumer progressHndlr, AtomicInteger testedCount, int start, int end)
+  {
+    this.records = records;
+    this.predicate = predicate;
+    this.matches = matches;
+    this.isCancelled = isCancelled;
+    this.progressHndlr = progressHndlr;
+    this.testedCount = testedCount;
+    this.start = start;
+    this.end = end;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static synchronized ForkJoinPool evaluatorPool()
+  {
+    if (pool == null)
+      pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    return pool;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Returns the records that match, in their original order. If isCancelled returns true, stops early and returns
+  // whatever matches were found up to that point; the caller is expected to check for cancellation afterwards.
+  // progressHndlr is called from the pool threads with the number of records tested so far.
+
+  public static List<HDT_Record> evaluate(List<HDT_Record> records, QueryPredicate predicate, BooleanSupplier isCancelled, IntConsumer progressHndlr)
+  {
+    return evaluate(records, predicate, isCancelled, progressHndlr, evaluatorPool());
+  }
+
+  // Same as above, but on the given pool, so that scaling with the number of threads can be measured
+
+  static List<HDT_Record> evaluate(List<HDT_Record> records, QueryPredicate predicate, BooleanSupplier isCancelled, IntConsumer progressHndlr, ForkJoinPool pool)
+  {
+    if (predicate.isThreadSafe() == false)
+      throw new IllegalArgumentException("Predicate is not thread-safe");
+
+    boolean[] matches = new boolean[records.size()];
+
+    pool.invoke(new ParallelQueryEvaluator(records, predicate, matches, isCancelled, progressHndlr, new AtomicInteger(), 0, records.size()));
+
+    List<HDT_Record> result = new ArrayList<>();
+
+    for (int ndx = 0; ndx < matches.length; ndx++)
+      if (matches[ndx])
+        result.add(records.get(ndx));
+
+    return result;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override protected void compute()
+  {
+    if ((end - start) > MIN_RANGE)
+    {
+      int mid = (start + end) >>> 1;
+
+      invokeAll(new ParallelQueryEvaluator(records, predicate, matches, isCancelled, progressHndlr, testedCount, start, mid),
+                new ParallelQueryEvaluator(records, predicate, matches, isCancelled, progressHndlr, testedCount, mid, end));
+      return;
+    }
+
+    for (int ndx = start; ndx < end; ndx++)
+    {
+      if (isCancelled.getAsBoolean()) return;
+
+      matches[ndx] = predicate.test(records.get(ndx));
+    }
+
+    progressHndlr.accept(testedCount.addAndGet(end - start));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
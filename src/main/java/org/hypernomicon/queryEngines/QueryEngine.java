@@ -114,9 +114,10 @@ public abstract class QueryEngine<HDT_T extends HDT_Record>
 
   public abstract void queryChange(int query, HyperTableRow row, VariablePopulator vp1, VariablePopulator vp2, VariablePopulator vp3);
 
-  public abstract boolean evaluate(HDT_T record, boolean firstCall, boolean lastCall);
+  // Returns the predicate for one of this engine's own queries, with the operands already resolved. Called once
+  // per query row each time the query is executed.
 
-  public void cancelled() { }
+  public abstract QueryPredicate compile(int query, HyperTableCell op1, HyperTableCell op2, HyperTableCell op3);
 
   public void op1Change(int query, HyperTableCell op1, HyperTableRow row, VariablePopulator vp1, VariablePopulator vp2, VariablePopulator vp3) { }
 
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.queryEngines;
+
+import org.hypernomicon.model.records.HDT_Record;
+import org.hypernomicon.querySources.QuerySource;
+
+//---------------------------------------------------------------------------
+
+// A query row compiled together with its operands. Operand values are looked up and normalized once, when
+// the predicate is created, instead of once per record.
+//
+// start is called once before the first record is tested, and finish once after the last record has been
+// tested or the query was cancelled. A predicate is not guaranteed to see every record, because the rows of
+// a query are connected with short-circuiting AND/OR.
+//
+// Unless isThreadSafe returns false, test may be called for different records on several threads at once.
+// Predicates that keep mutable state, or that call code that does, should be wrapped with singleThreaded.
+
+@FunctionalInterface
+public interface QueryPredicate
+{
+  boolean test(HDT_Record record);
+
+  default void start()                    { return; }
+  default void finish(boolean cancelled)  { return; }
+  default boolean isThreadSafe()          { return true; }
+
+  static final QueryPredicate NONE = record -> false,
+                              ALL  = record -> true;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static QueryPredicate singleThreaded(QueryPredicate predicate)
+  {
+    return new QueryPredicate()
+    {
+      @Override public boolean test(HDT_Record record) { return predicate.test(record); }
+      @Override public void start()                    { predicate.start(); }
+      @Override public void finish(boolean cancelled)  { predicate.finish(cancelled); }
+      @Override public boolean isThreadSafe()          { return false; }
+    };
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The first row of a query only applies to records from its own source
+
+  static QueryPredicate firstRow(QuerySource source, QueryPredicate row)
+  {
+    return new Connective(null, source, row, false);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Rows are combined strictly left to right, so A AND B OR C means (A AND B) OR C. A record that is not in
+  // a row's source skips that row and keeps the result of the rows before it.
+
+  static QueryPredicate connect(QueryPredicate left, QuerySource source, QueryPredicate row, boolean or)
+  {
+    return new Connective(left, source, row, or);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static final class Connective implements QueryPredicate
+  {
+    private final QueryPredicate left, row;
+    private final QuerySource source;
+    private final boolean or;
+
+    private Connective(QueryPredicate left, QuerySource source, QueryPredicate row, boolean or)
+    {
+      this.left = left;
+      this.source = source;
+      this.row = row;
+      this.or = or;
+    }
+
+  //---------------------------------------------------------------------------
+
+    @Override public boolean test(HDT_Record record)
+    {
+      if (left == null)
+        return source.containsRecord(record) && row.test(record);
+
+      if (source.containsRecord(record) == false)
+        return left.test(record);
+
+      return or ? left.test(record) || row.test(record) : left.test(record) && row.test(record);
+    }
+
+  //---------------------------------------------------------------------------
+
+    @Override public void start()
+    {
+      if (left != null) left.start();
+      row.start();
+    }
+
+  //---------------------------------------------------------------------------
+
+    @Override public void finish(boolean cancelled)
+    {
+      if (left != null) left.finish(cancelled);
+      row.finish(cancelled);
+    }
+
+  //---------------------------------------------------------------------------
+
+    @Override public boolean isThreadSafe()
+    {
+      return ((left == null) || left.isThreadSafe()) && row.isThreadSafe();
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
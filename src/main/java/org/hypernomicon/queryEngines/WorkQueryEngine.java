@@ -39,6 +39,7 @@ import org.apache.commons.io.FileUtils;
 
 import org.hypernomicon.bib.data.PDFBibData;
 import org.hypernomicon.model.records.HDT_Person;
+import org.hypernomicon.model.records.HDT_Record;
 import org.hypernomicon.model.records.HDT_Work;
 import org.hypernomicon.model.records.SimpleRecordTypes.WorkTypeEnum;
 
@@ -80,58 +81,66 @@ public class WorkQueryEngine extends QueryEngine<HDT_Work>
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  @Override public boolean evaluate(HDT_Work work, boolean firstCall, boolean lastCall)
+  @Override public QueryPredicate compile(int query, HyperTableCell op1, HyperTableCell op2, HyperTableCell op3)
   {
-    switch (curQuery)
+    switch (query)
     {
       case QUERY_LIKELY_EDITED_VOLS :
 
-        if (work.authorRecords.isEmpty()) return false;
-        if (work.getWorkTypeEnum() == WorkTypeEnum.wtPaper) return false;
-
-        if (work.authorRecords.stream().allMatch(author -> work.personIsEditor(author) || work.personIsTranslator(author)))
-          return false;
-
-        for (HDT_Work subWork : work.subWorks)
-          for (HDT_Person subAuthor : subWork.authorRecords)
-            if (work.authorRecords.contains(subAuthor) == false)
-            {
-//              for (HDT_Person author : work.authors)
-//                work.setPersonAsEditor(author, true);
-
-              return true;
-            }
-
-        break;
+        return record -> isLikelyEditedVolume((HDT_Work) record);
 
       case QUERY_4_OR_MORE_AUTHORS :
 
-        return work.authorRecords.size() >= 4;
+        return record -> ((HDT_Work) record).authorRecords.size() >= 4;
 
       case QUERY_ANALYZE_METADATA :
 
-        if (firstCall)
+        return QueryPredicate.singleThreaded(new QueryPredicate()
         {
-          FilePath filePath = getHomeDir().resolve("data.csv");
-          if (filePath.exists()) try
+          @Override public void start()
           {
-            Files.delete(filePath.toPath());
+            FilePath filePath = getHomeDir().resolve("data.csv");
+            if (filePath.exists()) try
+            {
+              Files.delete(filePath.toPath());
+            }
+            catch (IOException e)
+            {
+              e.printStackTrace();
+            }
+
+            csvFile = new ArrayList<>();
           }
-          catch (IOException e)
+
+          @Override public boolean test(HDT_Record record)
           {
-            e.printStackTrace();
+            ((HDT_Work) record).workFiles.forEach(workFile ->
+            {
+              if (workFile.pathNotEmpty() && workFile.filePath().exists() && getMediaType(workFile.filePath()).toString().contains("pdf"))
+              {
+                try
+                {
+                  new PDFBibData(workFile.filePath()).addCsvLines(csvFile);
+                }
+                catch (IOException e)
+                {
+                  e.printStackTrace();
+                }
+              }
+            });
+
+            return true;
           }
 
-          csvFile = new ArrayList<>();
-        }
-
-        work.workFiles.forEach(workFile ->
-        {
-          if (workFile.pathNotEmpty() && workFile.filePath().exists() && getMediaType(workFile.filePath()).toString().contains("pdf"))
+          @Override public void finish(boolean cancelled)
           {
+            if (cancelled) return;
+
+            FilePath filePath = getHomeDir().resolve("data.csv");
+
             try
             {
-              new PDFBibData(workFile.filePath()).addCsvLines(csvFile);
+              FileUtils.writeLines(filePath.toFile(), csvFile);
             }
             catch (IOException e)
             {
@@ -139,24 +148,32 @@ public class WorkQueryEngine extends QueryEngine<HDT_Work>
             }
           }
         });
+    }
+
+    return QueryPredicate.NONE;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-        if (lastCall)
+  private static boolean isLikelyEditedVolume(HDT_Work work)
+  {
+    if (work.authorRecords.isEmpty()) return false;
+    if (work.getWorkTypeEnum() == WorkTypeEnum.wtPaper) return false;
+
+    if (work.authorRecords.stream().allMatch(author -> work.personIsEditor(author) || work.personIsTranslator(author)))
+      return false;
+
+    for (HDT_Work subWork : work.subWorks)
+      for (HDT_Person subAuthor : subWork.authorRecords)
+        if (work.authorRecords.contains(subAuthor) == false)
         {
-          FilePath filePath = getHomeDir().resolve("data.csv");
+//          for (HDT_Person author : work.authors)
+//            work.setPersonAsEditor(author, true);
 
-          try
-          {
-            FileUtils.writeLines(filePath.toFile(), csvFile);
-          }
-          catch (IOException e)
-          {
-            e.printStackTrace();
-          }
+          return true;
         }
 
-        return true;
-    }
-
     return false;
   }
 
@@ -18,6 +18,7 @@
 package org.hypernomicon.querySources;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -30,6 +31,7 @@ import org.hypernomicon.queryEngines.QueryEngine.QueryType;
 public abstract class FilteredQuerySource implements QuerySource
 {
   protected final List<HDT_Record> list = new ArrayList<>();
+  private final Set<HDT_Record> listSet = new HashSet<>();
   private Iterator<HDT_Record> it;
   protected final HyperTableCell op1, op2, op3;
   protected final int query;
@@ -60,14 +62,14 @@ public abstract class FilteredQuerySource implements QuerySource
   @Override public boolean hasNext()                         { ensureGenerated(); return it.hasNext(); }
   @Override public HDT_Record next()                         { ensureGenerated(); return it.next(); }
   @Override public QuerySourceType sourceType()              { return QuerySourceType.QST_filteredRecords; }
-  @Override public boolean containsRecord(HDT_Record record) { ensureGenerated(); return list.contains(record); }
+  @Override public boolean containsRecord(HDT_Record record) { ensureGenerated(); return listSet.contains(record); }
 
   protected abstract void runFilter();
 
   public HDT_RecordType recordType()                    { return queryType.getRecordType(); }
-  public boolean containsCell(HyperTableCell cell)      { ensureGenerated(); return list.contains(HyperTableCell.getRecord(cell)); }
+  public boolean containsCell(HyperTableCell cell)      { ensureGenerated(); return listSet.contains(HyperTableCell.getRecord(cell)); }
   public void addAllTo(Set<HDT_Record> filteredRecords) { ensureGenerated(); filteredRecords.addAll(list); }
-  protected void ensureGenerated()                      { if (!generated) { runFilter(); it = list.iterator(); generated = true; }}
+  protected void ensureGenerated()                      { if (!generated) { runFilter(); listSet.addAll(list); it = list.iterator(); generated = true; }}
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
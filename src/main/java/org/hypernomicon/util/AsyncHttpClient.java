@@ -26,7 +26,6 @@ import java.util.function.Consumer;
 
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.impl.client.CloseableHttpClient;
 
 public class AsyncHttpClient
 {
@@ -55,9 +54,9 @@ public class AsyncHttpClient
     {
       cancelledByUser = false;
 
-      try (CloseableHttpClient httpclient = getHTTPClient())
+      try
       {
-        httpclient.execute(request, responseHandler);
+        getHTTPClient().execute(request, responseHandler);
       }
       catch (IOException e)
       {
@@ -20,7 +20,6 @@ package org.hypernomicon.util;
 import static org.hypernomicon.model.records.HDT_RecordType.*;
 import static org.hypernomicon.util.Util.*;
 
-import java.util.Collections;
 import java.util.Map;
 
 import org.hypernomicon.model.records.HDT_Hub;
@@ -29,30 +28,156 @@ import org.hypernomicon.model.records.HDT_Record;
 
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
 
 public class BidiOneToManyRecordMap
 {
-  private final Map<HDT_Record, Set<HDT_Record>> forwardMap = new ConcurrentHashMap<>(),
-                                                 reverseMap = new ConcurrentHashMap<>();
+  private final Map<HDT_Record, RecordSet> forwardMap = new ConcurrentHashMap<>(),
+                                           reverseMap = new ConcurrentHashMap<>();
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Compact identity-hashed set of records, stored in a single open-addressing array instead of a
+  // concurrent hash set per head. Changes are made inside ConcurrentHashMap.compute on the owning map,
+  // so they are atomic with respect to adding and dropping the set. Readers get an immutable copy, which
+  // is built on each call rather than kept, so that each set is only stored once, or walk the set in place
+  // with forEach when a copy is not needed.
+
+  private static final class RecordSet
+  {
+    private HDT_Record[] table = new HDT_Record[2];
+    private int size = 0;
+
+  //---------------------------------------------------------------------------
+
+    private int slot(HDT_Record record) { return System.identityHashCode(record) & (table.length - 1); }
+
+    private int find(HDT_Record record)
+    {
+      int ndx = slot(record);
+
+      while ((table[ndx] != null) && (table[ndx] != record))
+        ndx = (ndx + 1) & (table.length - 1);
+
+      return ndx;
+    }
+
+  //---------------------------------------------------------------------------
+
+    private synchronized boolean isEmpty()                  { return size == 0; }
+    private synchronized boolean contains(HDT_Record record) { return table[find(record)] != null; }
+
+  //---------------------------------------------------------------------------
+
+    private synchronized void add(HDT_Record record)
+    {
+      int ndx = find(record);
+      if (table[ndx] != null) return;
+
+      table[ndx] = record;
+
+      if (++size > ((table.length * 3) >> 2))
+      {
+        HDT_Record[] oldTable = table;
+        table = new HDT_Record[oldTable.length << 1];
+
+        for (HDT_Record oldRecord : oldTable)
+          if (oldRecord != null)
+            table[find(oldRecord)] = oldRecord;
+      }
+    }
+
+  //---------------------------------------------------------------------------
+
+    private synchronized void remove(HDT_Record record)
+    {
+      int ndx = find(record), mask = table.length - 1;
+      if (table[ndx] == null) return;
+
+      size--;
+
+      for (int next = (ndx + 1) & mask; table[next] != null; next = (next + 1) & mask)
+      {
+        if (((next - slot(table[next])) & mask) >= ((next - ndx) & mask))
+        {
+          table[ndx] = table[next];
+          ndx = next;
+        }
+      }
+
+      table[ndx] = null;
+    }
+
+  //---------------------------------------------------------------------------
+
+    private synchronized void forEach(Consumer<? super HDT_Record> action)
+    {
+      for (HDT_Record record : table)
+        if (record != null)
+          action.accept(record);
+    }
+
+  //---------------------------------------------------------------------------
+
+    private synchronized ImmutableSet<HDT_Record> snapshot()
+    {
+      ImmutableSet.Builder<HDT_Record> builder = ImmutableSet.builderWithExpectedSize(size);
+
+      for (HDT_Record record : table)
+        if (record != null)
+          builder.add(record);
+
+      return builder.build();
+    }
+  }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
   public void clear() { forwardMap.clear(); reverseMap.clear(); }
 
+  // The returned sets are snapshots; they do not change if the map is changed afterward
+
   @SuppressWarnings("unchecked")
   public <HDT_T extends HDT_Record> Set<HDT_T> getForwardSet(HDT_Record fromRecord)
   {
-    return (Set<HDT_T>) Collections.unmodifiableSet(getSet(forwardMap, fromRecord));
+    return (Set<HDT_T>) getSnapshot(forwardMap, fromRecord);
   }
 
   @SuppressWarnings("unchecked")
   public <HDT_T extends HDT_Record> Set<HDT_T> getReverseSet(HDT_Record fromRecord)
   {
-    return (Set<HDT_T>) Collections.unmodifiableSet(getSet(reverseMap, fromRecord));
+    return (Set<HDT_T>) getSnapshot(reverseMap, fromRecord);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Calls the action for each record the given record maps to, without copying the set. The set is locked
+  // while the action runs, so the action must not change this map.
+
+  public void forEachForward(HDT_Record fromRecord, Consumer<? super HDT_Record> action)
+  {
+    nullSwitch(forwardMap.get(fromRecord), set -> set.forEach(action));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static ImmutableSet<HDT_Record> getSnapshot(Map<HDT_Record, RecordSet> map, HDT_Record record)
+  {
+    return nullSwitch(map.get(record), ImmutableSet.of(), RecordSet::snapshot);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public boolean containsForward(HDT_Record fromRecord, HDT_Record toRecord)
+  {
+    return nullSwitch(forwardMap.get(fromRecord), false, set -> set.contains(toRecord));
   }
 
 //---------------------------------------------------------------------------
@@ -89,8 +214,8 @@ public class BidiOneToManyRecordMap
 
   private void addForwardMapping(HDT_Record fromRecord, HDT_Record toRecord)
   {
-    getSet(forwardMap, fromRecord).add(toRecord);
-    getSet(reverseMap, toRecord).add(fromRecord);
+    addToSet(forwardMap, fromRecord, toRecord);
+    addToSet(reverseMap, toRecord, fromRecord);
   }
 
 //---------------------------------------------------------------------------
@@ -98,21 +223,35 @@ public class BidiOneToManyRecordMap
 
   public void removeForward(HDT_Record fromRecord, HDT_Record toRecord)
   {
-    getSet(forwardMap, fromRecord).remove(toRecord);
-    getSet(reverseMap, toRecord).remove(fromRecord);
+    removeFromSet(forwardMap, fromRecord, toRecord);
+    removeFromSet(reverseMap, toRecord, fromRecord);
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private Set<HDT_Record> getSet(Map<HDT_Record, Set<HDT_Record>> map1, HDT_Record record1)
+  private static void addToSet(Map<HDT_Record, RecordSet> map, HDT_Record key, HDT_Record value)
   {
-    if (map1.containsKey(record1)) return map1.get(record1);
+    map.compute(key, (k, set) ->
+    {
+      if (set == null) set = new RecordSet();
+      set.add(value);
+      return set;
+    });
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-    Set<HDT_Record> set = Sets.newConcurrentHashSet();
+  // Empty sets are dropped so that records that no longer map to anything take up no space
 
-    map1.put(record1, set);
-    return set;
+  private static void removeFromSet(Map<HDT_Record, RecordSet> map, HDT_Record key, HDT_Record value)
+  {
+    map.computeIfPresent(key, (k, set) ->
+    {
+      set.remove(value);
+      return set.isEmpty() ? null : set;
+    });
   }
 
 //---------------------------------------------------------------------------
@@ -129,13 +268,10 @@ public class BidiOneToManyRecordMap
 
   private void removeForwardKey(HDT_Record key)
   {
-    if (forwardMap.containsKey(key) == false) return;
+    RecordSet set = forwardMap.remove(key);
+    if (set == null) return;
 
-    forwardMap.get(key).removeIf(target ->
-    {
-      getSet(reverseMap, target).remove(key);
-      return true;
-    });
+    set.snapshot().forEach(target -> removeFromSet(reverseMap, target, key));
   }
 
 //---------------------------------------------------------------------------
@@ -143,13 +279,10 @@ public class BidiOneToManyRecordMap
 
   public void removeReverseKey(HDT_Record key)
   {
-    if (reverseMap.containsKey(key) == false) return;
+    RecordSet set = reverseMap.remove(key);
+    if (set == null) return;
 
-    reverseMap.get(key).removeIf(target ->
-    {
-      getSet(forwardMap, target).remove(key);
-      return true;
-    });
+    set.snapshot().forEach(target -> removeFromSet(forwardMap, target, key));
   }
 
 //---------------------------------------------------------------------------
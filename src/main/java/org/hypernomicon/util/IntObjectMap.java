@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.util;
+
+import java.util.Arrays;
+
+//---------------------------------------------------------------------------
+
+// Open-addressing hash map from int to object that does not box its keys. Null values are not allowed;
+// get returns null for a missing key.
+
+public final class IntObjectMap<V>
+{
+  private static final int MIN_CAPACITY = 16;
+
+  private int[] keys;
+  private Object[] values;
+  private int size = 0, mask;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public IntObjectMap() { allocate(MIN_CAPACITY); }
+
+  public int size()                   { return size; }
+  public boolean isEmpty()            { return size == 0; }
+  public boolean containsKey(int key) { return values[find(key)] != null; }
+
+  @SuppressWarnings("unchecked")
+  public V get(int key)               { return (V) values[find(key)]; }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void allocate(int capacity)
+  {
+    keys = new int[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private int slot(int key)
+  {
+    int hash = key * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Returns the slot holding the key, or the empty slot where it would go
+
+  private int find(int key)
+  {
+    int ndx = slot(key);
+
+    while ((values[ndx] != null) && (keys[ndx] != key))
+      ndx = (ndx + 1) & mask;
+
+    return ndx;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value)
+  {
+    if (value == null) throw new NullPointerException();
+
+    int ndx = find(key);
+    V oldValue = (V) values[ndx];
+
+    keys[ndx] = key;
+    values[ndx] = value;
+
+    if ((oldValue == null) && (++size > (values.length >> 1)))
+      resize(values.length << 1);
+
+    return oldValue;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void resize(int capacity)
+  {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+
+    allocate(capacity);
+
+    for (int ndx = 0; ndx < oldValues.length; ndx++)
+    {
+      if (oldValues[ndx] == null) continue;
+
+      int newNdx = find(oldKeys[ndx]);
+      keys[newNdx] = oldKeys[ndx];
+      values[newNdx] = oldValues[ndx];
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Uses backward-shift deletion so that no tombstones are needed
+
+  @SuppressWarnings("unchecked")
+  public V remove(int key)
+  {
+    int ndx = find(key);
+    V oldValue = (V) values[ndx];
+
+    if (oldValue == null) return null;
+
+    size--;
+
+    for (int next = (ndx + 1) & mask; values[next] != null; next = (next + 1) & mask)
+    {
+      int home = slot(keys[next]);
+
+      // Move the entry at next into the gap unless its home slot lies cyclically within (ndx, next]
+
+      if (((next - home) & mask) >= ((next - ndx) & mask))
+      {
+        keys[ndx] = keys[next];
+        values[ndx] = values[next];
+        ndx = next;
+      }
+    }
+
+    values[ndx] = null;
+    return oldValue;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public void clear()
+  {
+    if (values.length > MIN_CAPACITY)
+      allocate(MIN_CAPACITY);
+    else
+      Arrays.fill(values, null);
+
+    size = 0;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -33,7 +33,6 @@ import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.impl.client.CloseableHttpClient;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
@@ -144,10 +143,7 @@ public class JsonHttpClient
     lastUrl = request.getURI().toURL().toString();
     ResponseHandler<Boolean> responseHndlr = getResponseHndlr(null, null);
 
-    try (CloseableHttpClient httpclient = getHTTPClient())
-    {
-      rc = httpclient.execute(request, responseHndlr);
-    }
+    rc = getHTTPClient().execute(request, responseHndlr);
 
     if (lastException instanceof ParseException)
     {
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.util;
+
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+//---------------------------------------------------------------------------
+
+// One pooled client used for every HTTP request, so that connections to the bibliographic and metadata
+// services are kept alive and reused instead of being opened with a new TLS handshake for each request.
+// Response compression is on by default in HttpClientBuilder.
+
+final class SharedHttpClient
+{
+  private static final int MAX_CONNECTIONS = 20,
+                           MAX_CONNECTIONS_PER_HOST = 6,
+                           VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+  private static final long MAX_KEEP_ALIVE_MS = 30000,
+                            MAX_IDLE_SEC = 60;
+
+  private static final String START_TIME_ATTR = "org.hypernomicon.requestStartTime";
+
+  private static volatile SharedHttpClient instance = null;
+
+  private final PoolingHttpClientConnectionManager connManager;
+  private final CloseableHttpClient client;
+  private final AtomicLong requestCount = new AtomicLong(),
+                           responseCount = new AtomicLong(),
+                           totalResponseMillis = new AtomicLong();
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  CloseableHttpClient getClient()  { return client; }
+  long getRequestCount()           { return requestCount.get(); }
+  long getResponseCount()          { return responseCount.get(); }
+  long getTotalResponseMillis()    { return totalResponseMillis.get(); }
+  PoolStats getPoolStats()         { return connManager.getTotalStats(); }
+
+  @Override public String toString()
+  {
+    long responses = responseCount.get();
+
+    return "Requests: " + requestCount.get() + ", responses: " + responses +
+           ", mean response time: " + (responses == 0 ? 0 : totalResponseMillis.get() / responses) + " ms, pool: " + getPoolStats();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static SharedHttpClient get()
+  {
+    if (instance == null)
+    {
+      synchronized (SharedHttpClient.class)
+      {
+        if (instance == null)
+          instance = new SharedHttpClient(MAX_CONNECTIONS, MAX_CONNECTIONS_PER_HOST);
+      }
+    }
+
+    return instance;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Replaces the shared client, e.g. with one that has smaller pool limits for a test
+
+  static void setInstance(SharedHttpClient newInstance)
+  {
+    synchronized (SharedHttpClient.class)
+    {
+      instance = newInstance;
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  SharedHttpClient(int maxConnections, int maxConnectionsPerHost)
+  {
+    SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(createSSLContext(), (hostname, session) -> true);
+
+    Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+      .register("http" , PlainConnectionSocketFactory.getSocketFactory())
+      .register("https", sslSocketFactory)
+      .build();
+
+    connManager = new PoolingHttpClientConnectionManager(registry);
+    connManager.setMaxTotal(maxConnections);
+    connManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+    connManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+    HttpRequestInterceptor requestMetrics = (request, context) ->
+    {
+      requestCount.incrementAndGet();
+      context.setAttribute(START_TIME_ATTR, System.currentTimeMillis());
+    };
+
+    HttpResponseInterceptor responseMetrics = (response, context) ->
+    {
+      responseCount.incrementAndGet();
+
+      Object startTime = context.getAttribute(START_TIME_ATTR);
+      if (startTime instanceof Long)
+        totalResponseMillis.addAndGet(System.currentTimeMillis() - (Long) startTime);
+    };
+
+    client = HttpClientBuilder.create()
+      .setConnectionManager(connManager)
+      .setKeepAliveStrategy((response, context) ->
+      {
+        long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return ((keepAlive < 0) || (keepAlive > MAX_KEEP_ALIVE_MS)) ? MAX_KEEP_ALIVE_MS : keepAlive;
+      })
+      .evictExpiredConnections()
+      .evictIdleConnections(MAX_IDLE_SEC, TimeUnit.SECONDS)
+      .addInterceptorFirst(requestMetrics)
+      .addInterceptorLast(responseMetrics)
+      .build();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static SSLContext createSSLContext()
+  {
+    try
+    {
+      SSLContext sc = SSLContext.getInstance("TLS");
+
+      X509TrustManager trustMgr = new X509TrustManager()
+      {
+        @Override public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException { return; }
+        @Override public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException { return; }
+        @Override public X509Certificate[] getAcceptedIssuers()                                                        { return null; }
+      };
+
+      sc.init(null, new TrustManager[] { trustMgr }, new SecureRandom());
+      return sc;
+    }
+    catch (Exception e)
+    {
+      throw new RuntimeException("Error while creating SSLContext", e);
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
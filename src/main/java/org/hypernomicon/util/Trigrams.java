@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.hypernomicon.util;
+
+//---------------------------------------------------------------------------
+
+// Trigrams for the substring indexes: the record text signatures in RecordTextIndex and the OmniFinder's
+// posting lists. A trigram is packed into a long, one char per 16 bits, so different trigrams never have
+// the same value. The hash spreads those bits for use as a bit position in a signature.
+
+public final class Trigrams
+{
+  public static final int LENGTH = 3;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static int count(String str) { return Math.max(0, str.length() - LENGTH + 1); }
+
+  public static long gram(String str, int pos)
+  {
+    return ((long) str.charAt(pos) << 32) | ((long) str.charAt(pos + 1) << 16) | str.charAt(pos + 2);
+  }
+
+  public static long hash(String str, int pos)
+  {
+    long hash = gram(str, pos) * 0x9e3779b97f4a7c15L;
+    return hash ^ (hash >>> 31);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
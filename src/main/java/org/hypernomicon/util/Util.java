@@ -45,6 +45,7 @@ import java.io.Reader;
 import java.lang.reflect.Constructor;
 
 import static java.nio.charset.StandardCharsets.*;
+import static java.nio.file.StandardCopyOption.*;
 import static java.util.Collections.binarySearch;
 
 import java.net.InetAddress;
@@ -53,9 +54,8 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
-import java.security.SecureRandom;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.text.NumberFormat;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -65,7 +65,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -76,6 +75,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -85,9 +85,6 @@ import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import javax.swing.filechooser.FileSystemView;
 
 import javafx.animation.KeyFrame;
@@ -131,7 +128,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
@@ -719,6 +715,24 @@ public final class Util
     }
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Moves source over dest in one step where the file system supports it, so that a reader of
+  // dest never sees a partially written file
+
+  public static void replaceFileAtomically(FilePath source, FilePath dest) throws IOException
+  {
+    try
+    {
+      Files.move(source.toPath(), dest.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+    catch (AtomicMoveNotSupportedException e)
+    {
+      Files.move(source.toPath(), dest.toPath(), REPLACE_EXISTING);
+    }
+  }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -1090,30 +1104,11 @@ public final class Util
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  static CloseableHttpClient getHTTPClient()
-  {
-    SSLContext sc = null;
-
-    try
-    {
-      sc = SSLContext.getInstance("TLS");
+  // Shared by all requests; do not close it
 
-      X509TrustManager trustMgr = new X509TrustManager()
-      {
-        @Override public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException { return; }
-        @Override public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException { return; }
-        @Override public X509Certificate[] getAcceptedIssuers()                                                        { return null; }
-      };
+  static CloseableHttpClient getHTTPClient() { return SharedHttpClient.get().getClient(); }
 
-      sc.init(null, new TrustManager[] { trustMgr }, new SecureRandom());
-    }
-    catch (Exception e)
-    {
-      throw new RuntimeException("Error while creating SSLContext", e);
-    }
-
-    return HttpClientBuilder.create().setSSLContext(sc).setSSLHostnameVerifier((hostname, session) -> true).build();
-  }
+  public static String getHttpClientStats()  { return SharedHttpClient.get().toString(); }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
@@ -1198,7 +1193,7 @@ public final class Util
   private static final String NORMALIZE_ID = "NFD; [:Nonspacing Mark:] Remove; NFC";
   private static final Transliterator transliterator1 = Transliterator.getInstance("NFD; Any-Latin; NFC; " + NORMALIZE_ID),
                                       transliterator2 = Transliterator.getInstance("NFD; Latin-ASCII; NFC; " + NORMALIZE_ID);
-  private static final Map<Character, String> charMap = new HashMap<>();
+  private static final Map<Character, String> charMap = new ConcurrentHashMap<>();  // Used by the mentions index worker threads
 
   public static String convertToEnglishChars(String input)
   {
@@ -61,6 +61,7 @@ public class FilePath implements Comparable<FilePath>
 
   public File toFile()                  { return innerVal.getFile(); }
   public Path toPath()                  { return innerVal.getPath(); }
+  public Path toCanonicalPath()         { return innerVal.getCanonicalPath(); }
   public URI toURI()                    { return nullSwitch(innerVal.getFile(), null, File::toURI); }
   public boolean exists()               { return innerVal.getFile().exists(); }
   public long size() throws IOException { return Files.size(innerVal.getPath()); }
@@ -95,6 +96,11 @@ public class FilePath implements Comparable<FilePath>
 
   public static boolean isEmpty(FilePath filePath) { return (filePath == null) || safeStr(filePath.toString()).isEmpty(); }
 
+  // Equality and hashing use a cached real path, so the cache is cleared whenever files may have been
+  // moved, renamed, created, or deleted
+
+  public static void clearIdentityCache() { InnerFilePath.clearCanonicalPathCache(); }
+
   @Override public int hashCode()            { return innerVal.hashCode(); }
   @Override public String toString()         { return innerVal.getPathStr(); }
   @Override public int compareTo(FilePath o) { return toPath().compareTo(o.toPath()); }
@@ -131,6 +137,7 @@ public class FilePath implements Comparable<FilePath>
     boolean startWatcher = folderTreeWatcher.stop();
 
     Files.delete(toPath());
+    clearIdentityCache();
 
     fileManagerDlg.setNeedRefresh();
 
@@ -177,6 +184,13 @@ public class FilePath implements Comparable<FilePath>
     return true;
   }
 
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Unlike equals, this is also true if the two paths are hard links to the same file
+
+  public boolean isSameFile(FilePath otherFilePath) { return innerVal.isSameFile(otherFilePath.innerVal); }
+
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
@@ -200,7 +214,7 @@ public class FilePath implements Comparable<FilePath>
 
   private boolean moveOrCopy(FilePath destFilePath, boolean confirmOverwrite, boolean move) throws IOException
   {
-    if (equals(destFilePath))
+    if (isSameFile(destFilePath))  // Files.move and Files.copy would silently do nothing for a hard link to the source
       return falseWithErrorMessage("Source file is the same as the destination file.");
 
     boolean startWatcher = folderTreeWatcher.stop();
@@ -228,6 +242,8 @@ public class FilePath implements Comparable<FilePath>
     }
     finally
     {
+      clearIdentityCache();
+
       if (startWatcher)
         folderTreeWatcher.createNewWatcherAndStart();
 
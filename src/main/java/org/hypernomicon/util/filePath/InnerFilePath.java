@@ -20,15 +20,42 @@ package org.hypernomicon.util.filePath;
 import static org.hypernomicon.util.Util.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class InnerFilePath
 {
   private String pathStr = null;
   private File file = null;
   private Path path = null;
+  private volatile Identity identity = null;
+
+  // Absolute, normalized path -> real path and file key. Equal inputs get the same Identity instance back,
+  // so comparisons between FilePaths usually succeed on reference equality.
+
+  private static final Map<Path, Identity> identityCache = new ConcurrentHashMap<>();
+  private static final AtomicInteger identityGeneration = new AtomicInteger();
+  private static final int MAX_IDENTITY_CACHE_SIZE = 100000;
+
+  private static final class Identity
+  {
+    private final Path realPath;
+    private final Object fileKey;  // Null if the file does not exist or the file system has no file keys
+    private final int generation;
+
+    private Identity(Path realPath, Object fileKey, int generation)
+    {
+      this.realPath = realPath;
+      this.fileKey = fileKey;
+      this.generation = generation;
+    }
+  }
 
 //---------------------------------------------------------------------------
 
@@ -40,7 +67,12 @@ class InnerFilePath
 //---------------------------------------------------------------------------
 
   @Override public String toString() { return getPathStr(); }
-  @Override public int hashCode()    { return getPath().hashCode(); }
+
+  // Every InnerFilePath checks the generation before using its identity, so clearing the cache
+  // also makes existing FilePaths look at the file system again. A path whose real path changes as
+  // a result (e.g., a link that now points elsewhere) also gets a new hash code.
+
+  static void clearCanonicalPathCache() { identityGeneration.incrementAndGet(); identityCache.clear(); }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
@@ -84,19 +116,79 @@ class InnerFilePath
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
+  // Equality and hashing both use only the real path. Hard links to the same file are different paths;
+  // callers that need to treat them as the same file use isSameFile.
+
   @Override public boolean equals(Object other)
   {
+    if (this == other) return true;
     if ((other instanceof InnerFilePath) == false) return false;
 
-    InnerFilePath otherFilePath = (InnerFilePath)other;
+    Identity thisIdentity = getIdentity(), otherIdentity = ((InnerFilePath)other).getIdentity();
+
+    return (thisIdentity == otherIdentity) || thisIdentity.realPath.equals(otherIdentity.realPath);
+  }
+
+  @Override public int hashCode() { return getIdentity().realPath.hashCode(); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // True if the paths are equal or are hard links to the same file
+
+  boolean isSameFile(InnerFilePath other)
+  {
+    if (equals(other)) return true;
+
+    Identity thisIdentity = getIdentity(), otherIdentity = other.getIdentity();
+
+    return (thisIdentity.fileKey != null) && thisIdentity.fileKey.equals(otherIdentity.fileKey);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  Path getCanonicalPath() { return getIdentity().realPath; }
+
+  private Identity getIdentity()
+  {
+    int generation = identityGeneration.get();
+    Identity curIdentity = identity;
+
+    if ((curIdentity != null) && (curIdentity.generation == generation)) return curIdentity;
+
+    if (identityCache.size() > MAX_IDENTITY_CACHE_SIZE)
+      identityCache.clear();
+
+    // An entry added while the cache was being cleared may be from the previous generation
+
+    curIdentity = identityCache.compute(getPath().toAbsolutePath().normalize(), (absPath, cached) ->
+      (cached != null) && (cached.generation == generation) ? cached : readIdentity(absPath, generation));
+
+    identity = curIdentity;
+    return curIdentity;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Resolves links and, on case-insensitive file systems, the actual case of the names. If the file does
+  // not exist, the nearest existing ancestor is resolved and the rest of the path is appended.
+
+  private static Identity readIdentity(Path absPath, int generation)
+  {
+    Object fileKey = null;
 
-    try { return Files.isSameFile(getPath(), otherFilePath.getPath()); }
-    catch (Exception e) { noOp(); }
+    try { fileKey = Files.readAttributes(absPath, BasicFileAttributes.class).fileKey(); }
+    catch (IOException | SecurityException | UnsupportedOperationException e) { noOp(); }
 
-    try { return getFile().getCanonicalFile().equals(otherFilePath.getFile().getCanonicalFile()); }
-    catch (Exception e) { noOp(); }
+    for (Path ancestor = absPath; ancestor != null; ancestor = ancestor.getParent())
+    {
+      try { return new Identity(ancestor.toRealPath().resolve(ancestor.relativize(absPath)).normalize(), fileKey, generation); }
+      catch (IOException | SecurityException e) { noOp(); }
+    }
 
-    return getPath().normalize().equals(otherFilePath.getPath().normalize());
+    return new Identity(absPath, fileKey, generation);
   }
 
 //---------------------------------------------------------------------------
@@ -19,6 +19,8 @@ package org.hypernomicon.util.json;
 
 import static org.hypernomicon.util.Util.*;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Set;
 
 import org.json.simple.JSONArray;
@@ -57,7 +59,9 @@ public class JsonObj implements Cloneable
   @SuppressWarnings("unchecked") public void put(String key, Long value)       { jObj.put(key, value); }
   @SuppressWarnings("unchecked") public Set<String> keySet()                   { return jObj.keySet(); }
 
-  @Override public String toString() { return jObj.toJSONString(); }
+  @Override public String toString()                    { return jObj.toJSONString(); }
+  public void writeTo(Writer out) throws IOException    { jObj.writeJSONString(out); }
+  public JsonObj shallowCopy()                          { return new JsonObj(new JSONObject(jObj)); }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
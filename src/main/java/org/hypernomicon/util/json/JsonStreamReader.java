@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.util.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.BiConsumer;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+// Reads a document of the form { "node1" : [ {...}, {...} ], "node2" : [ ... ] } one array element at a time,
+// so that only the element currently being parsed has to be held in memory. Top-level values that are not
+// arrays, and array elements that are not objects, are skipped.
+
+public final class JsonStreamReader implements ContentHandler
+{
+  private static final int TOP_LEVEL = 1, NODE_ARRAY_LEVEL = 2, ELEMENT_LEVEL = 3;
+
+  private final BiConsumer<String, JsonObj> handler;
+  private final Deque<Object> containers = new ArrayDeque<>();
+  private final Deque<String> keys = new ArrayDeque<>();
+
+  private String nodeName = null;
+  private boolean inNodeArray = false;
+  private int level = 0;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private JsonStreamReader(BiConsumer<String, JsonObj> handler) { this.handler = handler; }
+
+  public static void readObjArrays(Reader in, BiConsumer<String, JsonObj> handler) throws IOException, ParseException
+  {
+    new JSONParser().parse(in, new JsonStreamReader(handler));
+  }
+
+  @Override public void startJSON()         { return; }
+  @Override public void endJSON()           { return; }
+  @Override public boolean endObjectEntry() { return true; }
+
+  private boolean building()                { return inNodeArray && (level >= ELEMENT_LEVEL); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public boolean startObject()
+  {
+    level++;
+
+    if (level == NODE_ARRAY_LEVEL)
+      inNodeArray = false;
+    else if (building())
+      containers.push(new JSONObject());
+
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public boolean startArray()
+  {
+    level++;
+
+    if (level == NODE_ARRAY_LEVEL)
+      inNodeArray = true;
+    else if (building())
+      containers.push(new JSONArray());
+
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public boolean endObject() { return endContainer(); }
+  @Override public boolean endArray()  { return endContainer(); }
+
+  private boolean endContainer()
+  {
+    if (building())
+    {
+      Object container = containers.pop();
+
+      if (level > ELEMENT_LEVEL)
+        addValue(container);
+      else if (container instanceof JSONObject)
+        handler.accept(nodeName, new JsonObj((JSONObject) container));
+    }
+    else if (level == NODE_ARRAY_LEVEL)
+      inNodeArray = false;
+
+    level--;
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public boolean startObjectEntry(String key)
+  {
+    if (level == TOP_LEVEL)
+      nodeName = key;
+    else if (building())
+      keys.push(key);
+
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Override public boolean primitive(Object value)
+  {
+    if (building())
+      addValue(value);
+
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @SuppressWarnings("unchecked")
+  private void addValue(Object value)
+  {
+    Object parent = containers.peek();
+
+    if (parent instanceof JSONArray)
+      ((JSONArray) parent).add(value);
+    else
+      ((JSONObject) parent).put(keys.pop(), value);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
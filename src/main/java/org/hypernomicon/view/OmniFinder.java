@@ -24,16 +24,20 @@ import static org.hypernomicon.util.Util.*;
 import static org.hypernomicon.view.wrappers.HyperTableCell.HyperCellSortMethod.*;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.hypernomicon.model.KeywordLinkList.KeywordLink;
 import org.hypernomicon.model.SearchKeys.SearchKeyword;
-import org.hypernomicon.model.items.Author;
 import org.hypernomicon.model.items.StrongLink;
 import org.hypernomicon.model.records.*;
 import org.hypernomicon.queryEngines.AllQueryEngine;
@@ -51,20 +55,17 @@ import javafx.scene.text.Text;
 public class OmniFinder
 {
   private final HyperTable htFind;
-  private final List<ObservableList<HyperTableCell>> cellLists = new ArrayList<>();
-  private final List<HyperTableRow> rows = new ArrayList<>();
   private final EnumSet<TierEnum> tierSet;
   private final EnumMap<TierEnum, ImmutableSet<HDT_RecordType>> tierToTypeSet = new EnumMap<>(TierEnum.class);
-  private final Set<HDT_Record> records = new HashSet<>();
+  private final BlockingQueue<FinderJob> jobQueue = new LinkedBlockingQueue<>();
 
-  private String query = "";
-  private Iterator<HDT_Record> source = null;
-  private FinderThread finderThread = null;
-  private boolean stopRequested = false, stopped = true, showingMore = false, incremental = true;
+  private volatile FinderJob curJob = null;
+  private Thread workerThread = null;  // Guarded by jobQueue
+  private boolean incremental = true;
   private HDT_RecordType typeFilter;
   public Runnable doneHndlr = null;
 
-  public boolean noResults() { return collEmpty(records); }
+  public boolean noResults() { return nullSwitch(curJob, true, job -> collEmpty(job.records)); }
 
   protected enum TierEnum
   {
@@ -80,7 +81,7 @@ public class OmniFinder
     tierKeywordContains
   }
 
-  private static final int ROWS_TO_SHOW = 25;
+  private static final int ROWS_TO_SHOW = 25, WORKER_IDLE_SEC = 30;
 
   public OmniFinder(HyperTable htFind) { this(htFind, hdtNone, true); }
 
@@ -113,283 +114,149 @@ public class OmniFinder
     tierToTypeSet.put(tierAuthorContains  , authoredSet);
 
     tierSet = EnumSet.allOf(TierEnum.class);
-
-    for (int ndx = 0; ndx < ROWS_TO_SHOW; ndx++)
-    {
-      ObservableList<HyperTableCell> oList = FXCollections.observableArrayList(new HyperTableCell(-1, "", hdtWork),
-                                                                               new HyperTableCell(-1, "", hdtWork),
-                                                                               new HyperTableCell(-1, "", hdtWork, hsmNumeric),
-                                                                               new HyperTableCell(-1, "", hdtPerson, hsmTextSimple));
-      cellLists.add(oList);
-      rows.add(new HyperTableRow(oList, htFind));
-    }
   }
 
   //---------------------------------------------------------------------------
   //---------------------------------------------------------------------------
 
-  private class FinderThread extends Thread
+  // One search. Starting a new search cancels the previous one; the worker thread checks the cancelled flag
+  // between records, and table updates posted to the FX thread by a cancelled search are discarded.
+
+  private final class FinderJob
   {
-    private final HyperTable htFind;
+    private final String query;
+    private final Iterator<HDT_Record> source;
+    private final boolean showingMore;
     private final List<HDT_Record> buffer = new ArrayList<>();
+    private final Set<HDT_Record> records = new HashSet<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
 
-    private TierEnum curTier;
-    private boolean done = false, lastShowingMore, firstBuffer = true;
-    private String lastQuery = "", queryLC;
-    private Iterator<TierEnum> tierIt;
-    private Iterator<? extends HDT_Record> recordIt;
-    private Iterator<HDT_RecordType> typeIt;
-    int rowNdx = 0, runLaters = 0;
-    long startTime, nextInterval;
+    private volatile boolean cancelled = false;
+    private boolean firstBuffer = true;
+    private String queryLC;
+    private int rowNdx = 0;
+    private long startTime, nextInterval = 250;
 
-    FinderThread(HyperTable htFind)
+    private FinderJob(String query, Iterator<HDT_Record> source, boolean showingMore)
     {
-      super();
-
-      setDaemon(true);
-      this.htFind = htFind;
-
-      start();
+      this.query = query;
+      this.source = source;
+      this.showingMore = showingMore;
     }
 
+    private boolean isRunning() { return finished.getCount() > 0; }
+
     //---------------------------------------------------------------------------
     //---------------------------------------------------------------------------
 
-    private void startOver()
+    private HDT_Record getResultRecord(HDT_Record input)
     {
-      lastQuery = query;
-      queryLC = convertToEnglishChars(query).toLowerCase().trim();
-      lastShowingMore = showingMore;
-      buffer.clear();
-      firstBuffer = true;
-
-      AllQueryEngine.linkList.generate(query);
-
-      tierIt = tierSet.iterator();
-      curTier = tierIt.next();
-      typeIt = tierToTypeSet.get(curTier).iterator();
-      recordIt = db.records(typeIt.next()).iterator();
-      records.clear();
-
-      done = false;
+      if (input.getType() != hdtHub)
+        return input;
 
-      while (runLaters > 0)
-        sleepForMillis(5);
+      StrongLink link = HDT_Hub.class.cast(input).getLink();
 
-      rowNdx = 0;
-      startTime = System.currentTimeMillis();
-      nextInterval = 250;
+      if (link.getDebate  () != null) return link.getDebate  ();
+      if (link.getPosition() != null) return link.getPosition();
+      if (link.getNote    () != null) return link.getNote    ();
+      return link.getConcept();
     }
 
     //---------------------------------------------------------------------------
     //---------------------------------------------------------------------------
 
-    private HDT_Record nextRecord()
+    private HDT_Record getKeywordStartRecord()
     {
-      if (source != null)
-      {
-        if (source.hasNext()) return source.next();
-        done = true;
-        return null;
-      }
+      List<SearchKeyword> keys = db.getKeysByPrefix(safeSubstring(query, 0, 3).toLowerCase());
 
-      if (curTier == tierKeywordStart)
+      for (SearchKeyword key : keys)
       {
-        curTier = tierIt.next();
-        typeIt = tierToTypeSet.get(curTier).iterator();
-        recordIt = db.records(typeIt.next()).iterator();
-      }
-
-      while (recordIt.hasNext() == false)
-      {
-        while (typeIt.hasNext() == false)
+        if (key.endOnly)
         {
-          if (tierIt.hasNext() == false)
-          {
-            done = true;
-            return null;
-          }
-
-          curTier = tierIt.next();
-
-          if (curTier == tierKeywordStart)
-          {
-            List<SearchKeyword> keys = db.getKeysByPrefix(safeSubstring(query, 0, 3).toLowerCase());
-
-            for (SearchKeyword key : keys)
-            {
-              if (key.endOnly)
-              {
-                if (key.text.equalsIgnoreCase(query))
-                  return getResultRecord(key.record);
-              }
-              else
-              {
-                if (query.toLowerCase().startsWith(key.text.toLowerCase()))
-                  return getResultRecord(key.record);
-              }
-            }
-
-            curTier = tierIt.next();  // Start of query did not match a keyword
-          }
-
-          typeIt = tierToTypeSet.get(curTier).iterator();
+          if (key.text.equalsIgnoreCase(query))
+            return getResultRecord(key.record);
+        }
+        else
+        {
+          if (query.toLowerCase().startsWith(key.text.toLowerCase()))
+            return getResultRecord(key.record);
         }
-
-        recordIt = db.records(typeIt.next()).iterator();
       }
 
-      return recordIt.next();
+      return null;  // Start of query did not match a keyword
     }
 
     //---------------------------------------------------------------------------
     //---------------------------------------------------------------------------
 
-    private HDT_Record getResultRecord(HDT_Record input)
-    {
-      if (input.getType() != hdtHub)
-        return input;
-
-      StrongLink link = HDT_Hub.class.cast(input).getLink();
-
-      if (link.getDebate  () != null) return link.getDebate  ();
-      if (link.getPosition() != null) return link.getPosition();
-      if (link.getNote    () != null) return link.getNote    ();
-      return link.getConcept();
-    }
+    // Returns true if no more results should be added
 
-  //---------------------------------------------------------------------------
-  //---------------------------------------------------------------------------
-
-    private boolean authorMatch(Author author, HDT_Person person, String queryLC, TierEnum tier)
+    private boolean runTier(TierEnum tier)
     {
-      String listName, fullName = "";
-
-      if (author != null) listName = author.getNameLastFirst(true).toLowerCase().trim();
-      else                listName = person.getNameLastFirst(true).toLowerCase().trim();
+      if (tier == tierKeywordStart)
+        return nullSwitch(getKeywordStartRecord(), false, this::addIfMatch);
 
-      switch (tier)
+      for (HDT_RecordType type : tierToTypeSet.get(tier))
       {
-        case tierAuthorContains:
-
-          if (listName.contains(queryLC)) return true;
-          break;
-
-        case tierAuthorExact:
-
-          if (listName.equals(queryLC)) return true;
+        if ((typeFilter != hdtNone) && (type != typeFilter)) continue;
 
-          if (author != null) fullName = author.getFullName(true).toLowerCase().trim();
-          else                fullName = person.getFullName(true).toLowerCase().trim();
-
-          if (removeFirstParenthetical(fullName).equals(queryLC)) return true;
+        if (tier == tierKeyword)
+        {
+          List<HDT_Record> linked = new ArrayList<>();
 
-          break;
+          for (KeywordLink keyLink : AllQueryEngine.linkList.getLinks())
+            if ((keyLink.key.record.getType() == type) && (linked.contains(keyLink.key.record) == false))
+              linked.add(keyLink.key.record);
 
-        case tierAuthorKeyword:
+          linked.sort((record1, record2) -> Integer.compare(record1.getID(), record2.getID()));
 
-          if (AllQueryEngine.linkList.getLinks().size() > 0)
-          {
-            if (person == null)
-              person = author.getPerson();
+          for (HDT_Record record : linked)
+            if (cancelled || addIfMatch(record)) return true;
 
-            if (person != null)
-              for (KeywordLink keyLink : AllQueryEngine.linkList.getLinks())
-                if (keyLink.key.record == person)
-                  return true;
-          }
-          break;
-
-        case tierAuthorStartExact:
+          continue;
+        }
 
-          if (listName.startsWith(queryLC)) return true;
+        OmniFinderIndex index = OmniFinderIndex.get(type, () -> cancelled);
+        if (index == null) return true;  // Cancelled while building the index
 
-          if (author != null) fullName = author.getFullName(true).toLowerCase().trim();
-          else                fullName = person.getFullName(true).toLowerCase().trim();
+        BitSet matches;
 
-          if (fullName.startsWith(queryLC)) return true;
+        if (tier == tierAuthorKeyword)
+        {
+          matches = new BitSet();
 
-          break;
+          for (KeywordLink keyLink : AllQueryEngine.linkList.getLinks())
+            if (keyLink.key.record.getType() == hdtPerson)
+              matches.or(index.getOwnersOf((HDT_Person) keyLink.key.record));
+        }
+        else
+          matches = index.getMatches(tier, queryLC);
 
-        default: break;
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1))
+        {
+          HDT_Record record = index.getRecord(id);  // Null if another search removed it from the index since the matches were found
+          if (cancelled || ((record != null) && addIfMatch(record))) return true;
+        }
       }
 
       return false;
     }
 
-  //---------------------------------------------------------------------------
-  //---------------------------------------------------------------------------
+    //---------------------------------------------------------------------------
+    //---------------------------------------------------------------------------
 
     // Similar to HyperCB.cbOnAction
 
-    private boolean isMatch(HDT_Record record)
+    private boolean addIfMatch(HDT_Record record)
     {
-      if (source != null) return true;
       if ((typeFilter != hdtNone) && (record.getType() != typeFilter)) return false;
+      if (records.contains(record) || record.isExpired()) return false;
 
-      if (records.contains(record)) return false;
-
-      switch (curTier)
-      {
-        case tierKeywordStart:
-
-          return true;
-
-        case tierAuthorContains: case tierAuthorExact: case tierAuthorKeyword: case tierAuthorStartExact:
-
-          if (record.getType() == hdtWork)
-          {
-            for (Author author : HDT_Work.class.cast(record).getAuthors())
-              if (authorMatch(author, null, queryLC, curTier)) return true;
-          }
-          else if (record.getType() == hdtMiscFile)
-          {
-            for (HDT_Person author : HDT_MiscFile.class.cast(record).authors)
-              if (authorMatch(null, author, queryLC, curTier)) return true;
-          }
-          return false;
-
-        case tierExactName:
-
-          if (record.getType() == hdtPerson)
-            return authorMatch(null, HDT_Person.class.cast(record), queryLC, tierAuthorExact);
-
-          return record.getNameEngChar().toLowerCase().equals(queryLC);
-
-        case tierKeyword:
-
-          if (AllQueryEngine.linkList.getLinks().size() > 0)
-          {
-            for (KeywordLink keyLink : AllQueryEngine.linkList.getLinks())
-              if (keyLink.key.record == record)
-                return true;
-          }
-          return false;
-
-        case tierKeywordContains:
-
-          return record.getSearchKey().toLowerCase().contains(queryLC);
-
-        case tierNameContains:
-
-          if (record.getType() == hdtPerson)
-            return authorMatch(null, HDT_Person.class.cast(record), queryLC, tierAuthorContains);
-
-          return record.getNameEngChar().toLowerCase().contains(queryLC);
-
-        case tierNameStartExact:
-
-          if (record.getType() == hdtPerson)
-            return authorMatch(null, HDT_Person.class.cast(record), queryLC, tierAuthorStartExact);
-
-          return record.getNameEngChar().toLowerCase().startsWith(queryLC);
-
-        default: return false;
-      }
+      return addRecord(record);
     }
 
-  //---------------------------------------------------------------------------
-  //---------------------------------------------------------------------------
+    //---------------------------------------------------------------------------
+    //---------------------------------------------------------------------------
 
     private boolean addRecord(HDT_Record record)
     {
@@ -398,8 +265,16 @@ public class OmniFinder
 
       if (showingMore == false)
       {
-        if ((buffer.size() + rowNdx) >= ROWS_TO_SHOW) // rowNdx should be the number of rows currently in the
-          return true;                                // table if the buffer has already been purged at least once
+        if ((buffer.size() + rowNdx) >= ROWS_TO_SHOW) // rowNdx is the number of rows already posted to the table
+          return true;
+      }
+
+      if ((System.currentTimeMillis() - startTime) > nextInterval)
+      {
+        purgeBuffer();
+
+        startTime = System.currentTimeMillis();
+        nextInterval = 100;
       }
 
       return false;
@@ -410,121 +285,42 @@ public class OmniFinder
 
     private void purgeBuffer()
     {
-      boolean add;
-
       if (buffer.isEmpty()) return;
 
       List<HyperTableRow> curRows = new ArrayList<>();
-      ObservableList<HyperTableCell> cells;
 
       for (HDT_Record record : buffer)
       {
-        if (showingMore)
-          cells = FXCollections.observableArrayList(new HyperTableCell(-1, "", hdtWork),
-                                                    new HyperTableCell(-1, "", hdtWork),
-                                                    new HyperTableCell(-1, "", hdtWork, hsmNumeric),
-                                                    new HyperTableCell(-1, "", hdtPerson, hsmTextSimple));
-        else
-          cells = cellLists.get(rowNdx);
+        ObservableList<HyperTableCell> cells = makeCells(record);
 
-        add = true;
-
-        cells.set(0, new HyperTableCell(record.getID(), "", record.getType()));
-        cells.set(1, new HyperTableCell(record.getID(), record.listName(), record.getType()));
-
-        switch (record.getType())
+        if ((showingMore == false) && (rowNdx == (ROWS_TO_SHOW - 1)))  // This will be the "show more" row
         {
-          case hdtWork :
-
-            HDT_Work work = (HDT_Work) record;
-
-            cells.set(2, new HyperTableCell(work.getID(), work.getYear(), hdtWork, hsmNumeric));
-
-            if (work.authorRecords.isEmpty())
-              cells.set(3, new HyperTableCell(work.getID(), work.getShortAuthorsStr(true), hdtWork, hsmTextSimple));
-            else if ((work.getAuthors().size() == 1) && (work.authorRecords.size() == 1))
-            {
-              HDT_Person author = work.authorRecords.get(0);
-              cells.set(3, new HyperTableCell(author.getID(), author.getCBText(), hdtPerson, hsmTextSimple));
-            }
-            else
-              cells.set(3, new HyperTableCell(work.authorRecords.get(0).getID(), work.getShortAuthorsStr(true), hdtPerson, hsmTextSimple));
-
-            break;
-
-          case hdtMiscFile :
-
-            HDT_MiscFile miscFile = (HDT_MiscFile) record;
-
-            cells.set(2, new HyperTableCell(miscFile.getID(), "", hdtMiscFile, hsmNumeric));
-
-            if (miscFile.authors.isEmpty())
-              cells.set(3, new HyperTableCell(-1, "", hdtPerson, hsmTextSimple));
-            else if (miscFile.authors.size() == 1)
-            {
-              HDT_Person author = miscFile.authors.get(0);
-              cells.set(3, new HyperTableCell(author.getID(), author.getCBText(), hdtPerson, hsmTextSimple));
-            }
-            else
-              cells.set(3, new HyperTableCell(miscFile.authors.get(0).getID(), miscFile.getShortAuthorsStr(true), hdtPerson, hsmTextSimple));
-
-            break;
-
-          case hdtWorkLabel :
-
-            HDT_WorkLabel label = (HDT_WorkLabel) record;
-
-            cells.set(2, new HyperTableCell(label.getID(), "", hdtWorkLabel, hsmNumeric));
-            cells.set(3, new HyperTableCell(label.getID(), label.getExtendedText(), hdtWorkLabel));
-
-            break;
-
-          default :
-
-            cells.set(2, new HyperTableCell(record.getID(), "", record.getType(), hsmNumeric));
-            cells.set(3, new HyperTableCell(record.getID(), "", record.getType(), hsmTextSimple));
-
-            break;
+          cells.set(0, new HyperTableCell(-1, "", hdtNone, hsmLast));
+          cells.set(1, new HyperTableCell(-1, "", hdtAuxiliary, hsmLast));
+          cells.set(2, new HyperTableCell(-1, "", hdtNone, hsmLast));
+          cells.set(3, new HyperTableCell(-1, "", hdtNone, hsmLast));
         }
 
-        if (add)
-        {
-          if (showingMore)
-            curRows.add(new HyperTableRow(cells, htFind));
-          else
-          {
-            if (rowNdx == (ROWS_TO_SHOW - 1))  // This will be the "show more" row
-            {
-              cells.set(0, new HyperTableCell(-1, "", hdtNone, hsmLast));
-              cells.set(1, new HyperTableCell(-1, "", hdtAuxiliary, hsmLast));
-              cells.set(2, new HyperTableCell(-1, "", hdtNone, hsmLast));
-              cells.set(3, new HyperTableCell(-1, "", hdtNone, hsmLast));
-            }
-
-            curRows.add(rows.get(rowNdx));
-          }
-
-          rowNdx++;
-        }
+        curRows.add(new HyperTableRow(cells, htFind));
+        rowNdx++;
       }
 
       buffer.clear();
 
-      runLaters++;
-
-      final boolean finalShowingMore = showingMore,
-                    finalFirstBuffer = firstBuffer;
+      final boolean finalFirstBuffer = firstBuffer;
 
       firstBuffer = false;
 
       Platform.runLater(() ->
       {
+        if (cancelled) return;
+
         if (finalFirstBuffer == false)
           htFind.addDataRows(curRows);
         else
           htFind.setDataRows(curRows);
 
-        if (finalShowingMore && incremental)
+        if (showingMore && incremental)
         {
           htFind.selectRow(ROWS_TO_SHOW - 1);
           htFind.refresh();
@@ -532,103 +328,209 @@ public class OmniFinder
         }
         else if (finalFirstBuffer)
           htFind.selectRow(0);
-
-        runLaters--;
       });
     }
 
     //---------------------------------------------------------------------------
     //---------------------------------------------------------------------------
 
-    @Override public void run()
+    private void run()
     {
-      HDT_Record record = null;
+      startTime = System.currentTimeMillis();
+
+      if (source != null)
+      {
+        while (source.hasNext() && (cancelled == false))
+          if (addRecord(source.next())) break;
+      }
+      else
+      {
+        queryLC = convertToEnglishChars(query).toLowerCase().trim();
+
+        AllQueryEngine.linkList.generate(query);
+
+        for (TierEnum tier : tierSet)
+          if (cancelled || runTier(tier)) break;
+      }
 
-      startOver();
+      if (cancelled) return;
 
-      while (true)
+      purgeBuffer();
+
+      final boolean noRows = rowNdx == 0;
+
+      Platform.runLater(() ->
       {
-        if (stopRequested)
+        if (cancelled) return;
+
+        if (noRows)
+          htFind.clear();
+
+        if (doneHndlr != null)
+          doneHndlr.run();
+        else
+          htFind.getTV().setPlaceholder(new Text("No results."));
+      });
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static ObservableList<HyperTableCell> makeCells(HDT_Record record)
+  {
+    ObservableList<HyperTableCell> cells = FXCollections.observableArrayList(new HyperTableCell(-1, "", hdtWork),
+                                                                             new HyperTableCell(-1, "", hdtWork),
+                                                                             new HyperTableCell(-1, "", hdtWork, hsmNumeric),
+                                                                             new HyperTableCell(-1, "", hdtPerson, hsmTextSimple));
+
+    cells.set(0, new HyperTableCell(record.getID(), "", record.getType()));
+    cells.set(1, new HyperTableCell(record.getID(), record.listName(), record.getType()));
+
+    switch (record.getType())
+    {
+      case hdtWork :
+
+        HDT_Work work = (HDT_Work) record;
+
+        cells.set(2, new HyperTableCell(work.getID(), work.getYear(), hdtWork, hsmNumeric));
+
+        if (work.authorRecords.isEmpty())
+          cells.set(3, new HyperTableCell(work.getID(), work.getShortAuthorsStr(true), hdtWork, hsmTextSimple));
+        else if ((work.getAuthors().size() == 1) && (work.authorRecords.size() == 1))
         {
-          stopRequested = false;
-          return;
+          HDT_Person author = work.authorRecords.get(0);
+          cells.set(3, new HyperTableCell(author.getID(), author.getCBText(), hdtPerson, hsmTextSimple));
         }
+        else
+          cells.set(3, new HyperTableCell(work.authorRecords.get(0).getID(), work.getShortAuthorsStr(true), hdtPerson, hsmTextSimple));
 
-        if ((query.equals(lastQuery) == false) || (showingMore != lastShowingMore))
-          startOver();
+        break;
 
-        if (!done)
-          record = nextRecord();
+      case hdtMiscFile :
 
-        if ((System.currentTimeMillis() - startTime) > nextInterval)
+        HDT_MiscFile miscFile = (HDT_MiscFile) record;
+
+        cells.set(2, new HyperTableCell(miscFile.getID(), "", hdtMiscFile, hsmNumeric));
+
+        if (miscFile.authors.isEmpty())
+          cells.set(3, new HyperTableCell(-1, "", hdtPerson, hsmTextSimple));
+        else if (miscFile.authors.size() == 1)
         {
-          purgeBuffer();
+          HDT_Person author = miscFile.authors.get(0);
+          cells.set(3, new HyperTableCell(author.getID(), author.getCBText(), hdtPerson, hsmTextSimple));
+        }
+        else
+          cells.set(3, new HyperTableCell(miscFile.authors.get(0).getID(), miscFile.getShortAuthorsStr(true), hdtPerson, hsmTextSimple));
 
-          if (done)
-          {
-            Platform.runLater(() ->
-            {
-              if (doneHndlr != null)
-                doneHndlr.run();
-              else
-                htFind.getTV().setPlaceholder(new Text("No results."));
-            });
+        break;
 
-            return;
-          }
+      case hdtWorkLabel :
 
-          startTime = System.currentTimeMillis();
-          nextInterval = 100;
-        }
+        HDT_WorkLabel label = (HDT_WorkLabel) record;
 
-        if (!done && isMatch(record))
-          done = addRecord(record);
-      }
+        cells.set(2, new HyperTableCell(label.getID(), "", hdtWorkLabel, hsmNumeric));
+        cells.set(3, new HyperTableCell(label.getID(), label.getExtendedText(), hdtWorkLabel));
+
+        break;
+
+      default :
+
+        cells.set(2, new HyperTableCell(record.getID(), "", record.getType(), hsmNumeric));
+        cells.set(3, new HyperTableCell(record.getID(), "", record.getType(), hsmTextSimple));
+
+        break;
     }
+
+    return cells;
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  public void setSourceAndStart(Iterator<HDT_Record> source, boolean showingMore)
+  // The worker thread blocks on the queue while there is nothing to search for, and exits after it has been
+  // idle for WORKER_IDLE_SEC; the next search starts a new one.
+
+  private void submit(FinderJob job)
   {
-    if (finderThread != null)
-      stop();
+    nullSwitch(curJob, prevJob -> prevJob.cancelled = true);
+    curJob = job;
 
-    this.query = "";
-    this.source = source;
-    this.showingMore = showingMore;
+    synchronized (jobQueue)
+    {
+      jobQueue.add(job);
 
-    finderThread = new FinderThread(htFind);
+      if (workerThread != null) return;
 
-    stopped = false;
+      workerThread = new Thread(this::workerLoop, "OmniFinder");
+      workerThread.setDaemon(true);
+      workerThread.start();
+    }
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  public void setQueryAndStart(String query, boolean showingMore)
+  private void workerLoop()
   {
-    boolean newThread = false;
-
-    if (finderThread == null)
+    while (true)
     {
-      newThread = true;
+      FinderJob job = null;
+
+      try { job = jobQueue.poll(WORKER_IDLE_SEC, TimeUnit.SECONDS); } catch (InterruptedException e) { noOp(); }
+
+      if (job == null)
+      {
+        synchronized (jobQueue)
+        {
+          if (jobQueue.isEmpty())
+          {
+            workerThread = null;
+            return;
+          }
+        }
+
+        continue;
+      }
+
+      try
+      {
+        if (job.cancelled == false)
+          job.run();
+      }
+      catch (RuntimeException e)
+      {
+        e.printStackTrace();
+      }
+      finally
+      {
+        job.finished.countDown();
+      }
     }
-    else if (finderThread.isAlive() == false)
-    {
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public void setSourceAndStart(Iterator<HDT_Record> source, boolean showingMore)
+  {
+    if (curJob != null)
       stop();
-      newThread = true;
-    }
 
-    this.query = query;
-    this.source = null;
-    this.showingMore = showingMore;
+    submit(new FinderJob("", source, showingMore));
+  }
 
-    if (newThread)
-      finderThread = new FinderThread(htFind);
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-    stopped = false;
+  public void setQueryAndStart(String query, boolean showingMore)
+  {
+    FinderJob job = curJob;
+
+    if ((job != null) && job.isRunning() && (job.source == null) && job.query.equals(query) && (job.showingMore == showingMore))
+      return;
+
+    submit(new FinderJob(query, null, showingMore));
   }
 
 //---------------------------------------------------------------------------
@@ -636,25 +538,24 @@ public class OmniFinder
 
   private boolean isRunning()
   {
-    if (stopped == true) return false;
-    return nullSwitch(finderThread, false, FinderThread::isAlive);
+    return nullSwitch(curJob, false, FinderJob::isRunning);
   }
 
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
+  // Does not wait for the worker thread; a cancelled job stops at its next check and anything it has already
+  // posted to the FX thread is discarded.
+
   boolean stop()
   {
+    FinderJob job = curJob;
     boolean wasRunning = isRunning();
 
-    if ((finderThread != null) && finderThread.isAlive())
-    {
-      stopRequested = true;
-
-      try { finderThread.join(); } catch (InterruptedException e) { noOp(); }
-    }
+    if (job != null)
+      job.cancelled = true;
 
-    finderThread = null;
+    curJob = null;
     runInFXThread(htFind::clear);
 
     return wasRunning;
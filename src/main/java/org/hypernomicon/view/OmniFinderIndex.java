@@ -0,0 +1,489 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.view;
+
+import static org.hypernomicon.model.HyperDB.*;
+import static org.hypernomicon.model.records.HDT_RecordType.*;
+import static org.hypernomicon.util.Util.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import org.hypernomicon.model.items.Author;
+import org.hypernomicon.model.records.HDT_MiscFile;
+import org.hypernomicon.model.records.HDT_Person;
+import org.hypernomicon.model.records.HDT_Record;
+import org.hypernomicon.model.records.HDT_RecordType;
+import org.hypernomicon.model.records.HDT_Work;
+import org.hypernomicon.util.IntObjectMap;
+import org.hypernomicon.util.Trigrams;
+import org.hypernomicon.view.OmniFinder.TierEnum;
+
+//---------------------------------------------------------------------------
+
+// Lookup tables for the OmniFinder name and search key tiers. Each record type gets its own index, built the
+// first time that type is searched. After that, each search first reindexes just the records that have been
+// added, removed, or renamed, or have had their search key or authors changed, since the last search (for works
+// and misc. files, also the records authored by any person who has been renamed, since author names come from
+// person records). The index is only rebuilt if the dataset no longer has a log of those changes. Viewing or
+// otherwise modifying records does not affect the index.
+//
+// Matches are returned as sets of record IDs, so iterating them in ascending order gives the same result order
+// as iterating the records themselves.
+
+final class OmniFinderIndex
+{
+  private static final Map<HDT_RecordType, OmniFinderIndex> typeToIndex = new EnumMap<>(HDT_RecordType.class);
+
+  private final HDT_RecordType type;
+  private final IntObjectMap<HDT_Record> idToRecord = new IntObjectMap<>();
+  private final Map<HDT_Record, Integer> recordToID = new HashMap<>();
+  private final Map<HDT_Record, Postings> personToOwners = new HashMap<>();
+  private final Map<Integer, List<HDT_Person>> ownerToPersons = new HashMap<>();
+  private final EnumMap<TierEnum, StringIndex> tierToIndex = new EnumMap<>(TierEnum.class);
+
+  private int modCount, personModCount;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  synchronized HDT_Record getRecord(int id)             { return idToRecord.get(id); }
+  synchronized BitSet getOwnersOf(HDT_Person person)    { BitSet owners = new BitSet(); nullSwitch(personToOwners.get(person), postings -> postings.setBits(owners)); return owners; }
+
+  private static boolean isAuthoredType(HDT_RecordType type) { return (type == hdtWork) || (type == hdtMiscFile); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Returns null if isCancelled returned true while the index was being built. A partially built index is
+  // discarded, so the next search builds it from the beginning.
+
+  static OmniFinderIndex get(HDT_RecordType type, BooleanSupplier isCancelled)
+  {
+    synchronized (typeToIndex)
+    {
+      OmniFinderIndex index = typeToIndex.get(type);
+
+      if ((index != null) && index.update())
+        return index;
+
+      typeToIndex.remove(type);
+
+      index = new OmniFinderIndex(type);
+      if (index.build(isCancelled) == false) return null;
+
+      typeToIndex.put(type, index);
+      return index;
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private OmniFinderIndex(HDT_RecordType type)
+  {
+    this.type = type;
+
+    tierToIndex.put(TierEnum.tierExactName      , new StringIndex(false));
+    tierToIndex.put(TierEnum.tierNameStartExact , new StringIndex(false));
+    tierToIndex.put(TierEnum.tierNameContains   , new StringIndex(true ));
+    tierToIndex.put(TierEnum.tierKeywordContains, new StringIndex(true ));
+
+    if (isAuthoredType(type) == false) return;
+
+    tierToIndex.put(TierEnum.tierAuthorExact     , new StringIndex(false));
+    tierToIndex.put(TierEnum.tierAuthorStartExact, new StringIndex(false));
+    tierToIndex.put(TierEnum.tierAuthorContains  , new StringIndex(true ));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private synchronized boolean build(BooleanSupplier isCancelled)
+  {
+    // Changes made while the index is being built get replayed by the next update
+
+    modCount = db.getNameModCount(type);
+    personModCount = db.getNameModCount(hdtPerson);
+
+    for (HDT_Record record : db.records(type))
+    {
+      if (isCancelled.getAsBoolean()) return false;
+
+      add(record);
+    }
+
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Reindexes the records whose names changed since the last update. Returns false if those changes are no
+  // longer known, in which case the index has to be rebuilt.
+
+  private synchronized boolean update()
+  {
+    List<HDT_Record> changed = db.getNameChangesSince(type, modCount),
+                     changedPersons = isAuthoredType(type) ? db.getNameChangesSince(hdtPerson, personModCount) : List.of();
+
+    if ((changed == null) || (changedPersons == null)) return false;
+
+    modCount += changed.size();
+    personModCount += changedPersons.size();
+
+    Set<HDT_Record> toReindex = new LinkedHashSet<>(changed);
+
+    for (HDT_Record person : changedPersons)
+      nullSwitch(personToOwners.get(person), owners -> owners.forEach(id -> toReindex.add(idToRecord.get(id))));
+
+    toReindex.forEach(this::reindex);
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void reindex(HDT_Record record)
+  {
+    Integer oldID = recordToID.remove(record);
+
+    if (oldID != null)
+    {
+      int id = oldID;
+
+      idToRecord.remove(id);
+      tierToIndex.values().forEach(index -> index.remove(id));
+
+      nullSwitch(ownerToPersons.remove(id), persons -> persons.forEach(person -> removeOwner(personToOwners, person, id)));
+    }
+
+    if ((record.isExpired() == false) && (db.records(type).getByID(record.getID()) == record))
+      add(record);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void add(HDT_Record record)
+  {
+    int id = record.getID();
+
+    idToRecord.put(id, record);
+    recordToID.put(record, id);
+
+    if (type == hdtPerson)
+    {
+      HDT_Person person = (HDT_Person) record;
+      String listName = person.getNameLastFirst(true).toLowerCase().trim(),
+             fullName = person.getFullName(true).toLowerCase().trim();
+
+      tierToIndex.get(TierEnum.tierExactName     ).put(id, listName, removeFirstParenthetical(fullName));
+      tierToIndex.get(TierEnum.tierNameStartExact).put(id, listName, fullName);
+      tierToIndex.get(TierEnum.tierNameContains  ).put(id, listName);
+    }
+    else
+    {
+      String name = record.getNameEngChar().toLowerCase();
+
+      tierToIndex.get(TierEnum.tierExactName     ).put(id, name);
+      tierToIndex.get(TierEnum.tierNameStartExact).put(id, name);
+      tierToIndex.get(TierEnum.tierNameContains  ).put(id, name);
+    }
+
+    tierToIndex.get(TierEnum.tierKeywordContains).put(id, record.getSearchKey().toLowerCase());
+
+    if (isAuthoredType(type) == false) return;
+
+    List<String> authorExact = new ArrayList<>(), authorStart = new ArrayList<>(), authorContains = new ArrayList<>();
+    List<HDT_Person> persons = new ArrayList<>();
+
+    if (type == hdtWork)
+    {
+      for (Author author : ((HDT_Work) record).getAuthors())
+        addAuthor(author.getNameLastFirst(true), author.getFullName(true), author.getPerson(), persons, authorExact, authorStart, authorContains);
+    }
+    else
+    {
+      for (HDT_Person author : ((HDT_MiscFile) record).authors)
+        addAuthor(author.getNameLastFirst(true), author.getFullName(true), author, persons, authorExact, authorStart, authorContains);
+    }
+
+    tierToIndex.get(TierEnum.tierAuthorExact     ).put(id, authorExact   .toArray(new String[0]));
+    tierToIndex.get(TierEnum.tierAuthorStartExact).put(id, authorStart   .toArray(new String[0]));
+    tierToIndex.get(TierEnum.tierAuthorContains  ).put(id, authorContains.toArray(new String[0]));
+
+    if (persons.isEmpty()) return;
+
+    ownerToPersons.put(id, persons);
+    persons.forEach(person -> personToOwners.computeIfAbsent(person, p -> new Postings()).add(id));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void addAuthor(String listName, String fullName, HDT_Person person, List<HDT_Person> persons, List<String> authorExact,
+                                List<String> authorStart, List<String> authorContains)
+  {
+    listName = listName.toLowerCase().trim();
+    fullName = fullName.toLowerCase().trim();
+
+    authorExact.add(listName);
+    authorExact.add(removeFirstParenthetical(fullName));
+    authorStart.add(listName);
+    authorStart.add(fullName);
+    authorContains.add(listName);
+
+    if (person != null)
+      persons.add(person);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // queryLC should already be converted to English characters, lowercased, and trimmed
+
+  synchronized BitSet getMatches(TierEnum tier, String queryLC)
+  {
+    StringIndex index = tierToIndex.get(tier);
+    if (index == null) return new BitSet();
+
+    switch (tier)
+    {
+      case tierExactName: case tierAuthorExact:
+
+        return index.equalTo(queryLC);
+
+      case tierNameStartExact: case tierAuthorStartExact:
+
+        return index.startingWith(queryLC);
+
+      default:
+
+        return index.containing(queryLC);
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static <K> void removeOwner(Map<K, Postings> keyToOwners, K key, int owner)
+  {
+    Postings owners = keyToOwners.get(key);
+    owners.remove(owner);
+
+    if (owners.size == 0)
+      keyToOwners.remove(key);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // An unordered list of record IDs. An ID is added once for each time the key it is listed under occurs in that
+  // record, and removed the same number of times.
+
+  private static final class Postings
+  {
+    private int[] ids = new int[1];
+    private int size = 0;
+
+    private void add(int id)
+    {
+      if (size == ids.length)
+        ids = Arrays.copyOf(ids, size * 2);
+
+      ids[size++] = id;
+    }
+
+    private void remove(int id)
+    {
+      for (int ndx = 0; ndx < size; ndx++)
+        if (ids[ndx] == id)
+        {
+          ids[ndx] = ids[--size];
+          return;
+        }
+    }
+
+    private void forEach(IntConsumer action) { for (int ndx = 0; ndx < size; ndx++) action.accept(ids[ndx]); }
+    private void setBits(BitSet bits)        { forEach(bits::set); }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Strings, each set belonging to an owner (a record ID). For exact and prefix lookups, each distinct string
+  // is kept in sorted order with the IDs of its owners; for substring lookups, each trigram is kept with the IDs
+  // of the owners that have it, and a query only has to check the owners under its rarest trigram.
+
+  static final class StringIndex
+  {
+    private final Map<Integer, String[]> ownerToTexts = new HashMap<>();
+    private final NavigableMap<String, Postings> textToOwners;
+    private final Map<Long, Postings> gramToOwners;
+
+  //---------------------------------------------------------------------------
+
+    StringIndex(boolean forContains)
+    {
+      textToOwners = forContains ? null : new TreeMap<>();
+      gramToOwners = forContains ? new HashMap<>() : null;
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    void put(int owner, String... texts)
+    {
+      ownerToTexts.put(owner, texts);
+
+      if (textToOwners != null)
+        new HashSet<>(Arrays.asList(texts)).forEach(text -> textToOwners.computeIfAbsent(text, t -> new Postings()).add(owner));
+      else
+        getGrams(texts).forEach(gram -> gramToOwners.computeIfAbsent(gram, g -> new Postings()).add(owner));
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    void remove(int owner)
+    {
+      String[] texts = ownerToTexts.remove(owner);
+      if (texts == null) return;
+
+      if (textToOwners != null)
+        new HashSet<>(Arrays.asList(texts)).forEach(text -> removeOwner(textToOwners, text, owner));
+      else
+        getGrams(texts).forEach(gram -> removeOwner(gramToOwners, gram, owner));
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    private static Set<Long> getGrams(String[] texts)
+    {
+      Set<Long> grams = new HashSet<>();
+
+      for (String text : texts)
+        for (int pos = 0, count = Trigrams.count(text); pos < count; pos++)
+          grams.add(Trigrams.gram(text, pos));
+
+      return grams;
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    private static boolean anyContains(String[] texts, String str)
+    {
+      for (String text : texts)
+        if (text.contains(str))
+          return true;
+
+      return false;
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    BitSet equalTo(String str)
+    {
+      BitSet result = new BitSet();
+
+      nullSwitch(textToOwners.get(str), owners -> owners.setBits(result));
+
+      return result;
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    BitSet startingWith(String str)
+    {
+      BitSet result = new BitSet();
+
+      for (Entry<String, Postings> entry : textToOwners.tailMap(str, true).entrySet())
+      {
+        if (entry.getKey().startsWith(str) == false) break;
+
+        entry.getValue().setBits(result);
+      }
+
+      return result;
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+    BitSet containing(String str)
+    {
+      BitSet result = new BitSet();
+
+      if (str.length() < Trigrams.LENGTH)
+      {
+        ownerToTexts.forEach((owner, texts) ->
+        {
+          if (anyContains(texts, str))
+            result.set(owner);
+        });
+
+        return result;
+      }
+
+      Postings candidates = null;
+
+      for (int pos = 0, count = Trigrams.count(str); pos < count; pos++)
+      {
+        Postings owners = gramToOwners.get(Trigrams.gram(str, pos));
+        if (owners == null) return result;
+
+        if ((candidates == null) || (owners.size < candidates.size))
+          candidates = owners;
+      }
+
+      candidates.forEach(owner ->
+      {
+        if (anyContains(ownerToTexts.get(owner), str))
+          result.set(owner);
+      });
+
+      return result;
+    }
+
+  //---------------------------------------------------------------------------
+  //---------------------------------------------------------------------------
+
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
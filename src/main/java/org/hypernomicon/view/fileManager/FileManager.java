@@ -571,7 +571,7 @@ public class FileManager extends HyperDlg
 
         FilePath destFilePath = destRow.getFilePath().resolve(baseDir.relativize(srcFilePath));
 
-        if (srcFilePath.equals(destFilePath))
+        if (srcFilePath.isSameFile(destFilePath))  // Including a hard link to the source, which the paste would leave as it is
           throw new TerminateTaskException("Source and destination are the same.");
 
         if ((copying == false) && srcFilePath.isDirectory() && srcFilePath.isSubpath(destFilePath))
@@ -1045,7 +1045,11 @@ public class FileManager extends HyperDlg
 
     suppressNeedRefresh = true;
 
-    rowInfoList.stream().allMatch(this::deleteRow); // Deletes rows until deleteRow returns false
+    List<HDT_RecordWithPath> recordsToDelete = new ArrayList<>();
+
+    rowInfoList.stream().allMatch(rowInfo -> deleteRow(rowInfo, recordsToDelete)); // Deletes rows until deleteRow returns false
+
+    db.deleteRecords(recordsToDelete); // Also deletes the records of the files that were deleted before a failure
 
     folderTree.prune();
 
@@ -1062,7 +1066,10 @@ public class FileManager extends HyperDlg
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  private boolean deleteRow(MarkedRowInfo rowInfo)
+  // Records associated with deleted files are added to recordsToDelete rather than deleted here, so that
+  // all of them can be deleted in one pass
+
+  private boolean deleteRow(MarkedRowInfo rowInfo, List<HDT_RecordWithPath> recordsToDelete)
   {
     HyperPath hyperPath = rowInfo.row.getHyperPath();
     HDT_RecordWithPath fileRecord = hyperPath.getRecord();
@@ -1096,7 +1103,7 @@ public class FileManager extends HyperDlg
         setPath.filePath().delete(true);
         db.unmapFilePath(setPath.filePath());
         if (setPath.getRecordType() != hdtNone)
-          db.deleteRecord(setPath.getRecord().getType(), setPath.getRecord().getID());
+          recordsToDelete.add(setPath.getRecord());
       }
       catch (IOException e)
       {
@@ -17,6 +17,7 @@
 
 package org.hypernomicon.view.settings;
 
+import static org.hypernomicon.App.*;
 import static org.hypernomicon.model.HyperDB.db;
 import static org.hypernomicon.util.Util.*;
 import static org.hypernomicon.util.Util.MessageDialogType.*;
@@ -66,6 +67,9 @@ public class SyncBibDlgCtrlr extends HyperDlg
               messageDialog(ex.getMessage(), mtError);
           }
 
+          if (app.debugging())
+            System.out.println("HTTP client: " + getHttpClientStats());
+
           getStage().close();
         }
       });
@@ -321,6 +321,8 @@ public class InstTabCtrlr extends HyperTab<HDT_Institution, HDT_Institution>
     curInst.instType.setID(hcbType.selectedID());
     curInst.parentInst.setID(hcbParentInst.selectedID());
 
+    List<HDT_Institution> emptySubInsts = new ArrayList<>();
+
     htSubInst.getDataRows().forEach(row ->
     {
       int subInstID = row.getID(0);
@@ -338,10 +340,12 @@ public class InstTabCtrlr extends HyperTab<HDT_Institution, HDT_Institution>
         if ((subInst.name()  .isEmpty()) &&
             (subInst.getURL().isEmpty()) &&
             (subInst.persons .isEmpty()))
-          db.deleteRecord(hdtInstitution, subInstID);
+          emptySubInsts.add(subInst);
       }
     });
 
+    db.deleteRecords(emptySubInsts);
+
     if (locationChanged == false) return true;
 
     if (hasSubInstWithDifferentLocation(curInst, curInst))
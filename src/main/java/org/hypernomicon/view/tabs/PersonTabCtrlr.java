@@ -578,11 +578,10 @@ public class PersonTabCtrlr extends HyperTab<HDT_Person, HDT_Person>
     // Now delete the unused investigations
     // ------------------------------------
 
-    new ArrayList<>(curPerson.investigations).forEach(inv ->
-    {
-      if (invViews.stream().noneMatch(iV -> iV.id == inv.getID()))
-        db.deleteRecord(hdtInvestigation, inv.getID());
-    });
+    List<HDT_Investigation> unusedInvs = new ArrayList<>(curPerson.investigations);
+    unusedInvs.removeIf(inv -> invViews.stream().anyMatch(iV -> iV.id == inv.getID()));
+
+    db.deleteRecords(unusedInvs);
 
     // End of save investigations
     // ----------------------------------------------------------------------------------------------------
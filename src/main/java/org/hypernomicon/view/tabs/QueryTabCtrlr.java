@@ -61,6 +61,7 @@ import org.hypernomicon.App;
 import org.hypernomicon.model.Exceptions.*;
 import org.hypernomicon.model.HDI_Schema;
 import org.hypernomicon.model.HyperDB.Tag;
+import org.hypernomicon.model.RecordTextIndex;
 import org.hypernomicon.model.records.*;
 import org.hypernomicon.model.records.HDT_RecordBase.HyperDataCategory;
 import org.hypernomicon.model.records.SimpleRecordTypes.HDT_RecordWithDescription;
@@ -745,12 +746,32 @@ public class QueryTabCtrlr extends HyperTab<HDT_Record, HDT_Record>
       boolean searchLinkedRecords = (singleType != null) && (singleType != hdtNone);
       int total = combinedSource.count();
 
+      // Compile the rows into one predicate. Rows are connected left to right, as they appear in the table.
+
+      QueryPredicate rowsPredicate = QueryPredicate.NONE;
+      boolean lastConnectiveWasOr = false, firstRow = true;
+
+      for (Entry<HyperTableRow, QuerySource> entry : sources.entrySet())
+      {
+        HyperTableRow row = entry.getKey();
+        QueryPredicate rowPredicate = compileRow(row, searchLinkedRecords);
+
+        if (firstRow)
+          rowsPredicate = QueryPredicate.firstRow(entry.getValue(), rowPredicate);
+        else
+          rowsPredicate = QueryPredicate.connect(rowsPredicate, entry.getValue(), rowPredicate, lastConnectiveWasOr);
+
+        lastConnectiveWasOr = row.getID(5) == OR_CONNECTIVE_ID;
+        firstRow = false;
+      }
+
+      QueryPredicate plan = rowsPredicate;
+
       // Evaluate record queries
 
       task = new HyperTask() { @Override protected Boolean call() throws Exception
       {
-        boolean firstCall = true;
-        HDT_Record record;
+        boolean cancelled = true;
 
         recordTypeToColumnGroupItems = LinkedHashMultimap.create();
         resultsBackingList.clear();
@@ -758,52 +779,48 @@ public class QueryTabCtrlr extends HyperTab<HDT_Record, HDT_Record>
         updateMessage("Running query...");
         updateProgress(0, 1);
 
-        for (int recordNdx = 0; combinedSource.hasNext(); recordNdx++)
+        try
         {
-          if (isCancelled())
+          plan.start();
+
+          if (plan.isThreadSafe() && (total >= ParallelQueryEvaluator.MIN_RECORDS))
           {
-            sources.keySet().forEach(row -> typeToEngine.get(curQV.getQueryType(row)).cancelled());
-            throw new TerminateTaskException();
-          }
+            // Filtered sources generate their record lists on first use; make sure that happens on this thread
 
-          if ((recordNdx % 50) == 0)
-            updateProgress(recordNdx, total);
+            sources.values().forEach(QuerySource::count);
 
-          record = combinedSource.next();
+            List<HDT_Record> records = new ArrayList<>(total);
+            combinedSource.forEachRemaining(records::add);
 
-          boolean lastConnectiveWasOr = false, firstRow = true, add = false;
+            List<HDT_Record> matches = ParallelQueryEvaluator.evaluate(records, plan, this::isCancelled, testedCount -> updateProgress(testedCount, total));
 
-          for (Entry<HyperTableRow, QuerySource> entry : sources.entrySet())
-          {
-            HyperTableRow row = entry.getKey();
-            QuerySource source = entry.getValue();
+            if (isCancelled())
+              throw new TerminateTaskException();
 
-            if (source.containsRecord(record))
+            matches.forEach(record -> addRecord(record, false));
+          }
+          else
+          {
+            for (int recordNdx = 0; combinedSource.hasNext(); recordNdx++)
             {
-              curQuery = row.getID(1);
-              boolean result = false;
+              if (isCancelled())
+                throw new TerminateTaskException();
 
-              if (curQuery > -1)
-              {
-                param1 = row.getCell(2);
-                param2 = row.getCell(3);
-                param3 = row.getCell(4);
+              if ((recordNdx % 50) == 0)
+                updateProgress(recordNdx, total);
 
-                result = evaluate(record, row, searchLinkedRecords, firstCall, recordNdx == (total - 1));
-                firstCall = false;
-              }
+              HDT_Record record = combinedSource.next();
 
-              if      (firstRow)            add = result;
-              else if (lastConnectiveWasOr) add = add || result;
-              else                          add = add && result;
+              if (plan.test(record))
+                addRecord(record, false);
             }
-
-            lastConnectiveWasOr = row.getID(5) == OR_CONNECTIVE_ID;
-            firstRow = false;
           }
 
-          if (add)
-            addRecord(record, false);
+          cancelled = false;
+        }
+        finally
+        {
+          plan.finish(cancelled);
         }
 
         return true;
@@ -1310,7 +1327,6 @@ public class QueryTabCtrlr extends HyperTab<HDT_Record, HDT_Record>
 
   public static HyperTask task;
   public static int curQuery;
-  public static HyperTableCell param1, param2, param3;
   public final List<QueryView> queryViews = new ArrayList<>();
 
   public void setCB(ComboBox<ResultsRow> cb)        { this.cb = cb; updateCB(); }
@@ -1549,143 +1565,210 @@ public class QueryTabCtrlr extends HyperTab<HDT_Record, HDT_Record>
 //---------------------------------------------------------------------------
 //---------------------------------------------------------------------------
 
-  @SuppressWarnings("unchecked")
-  private <HDT_T extends HDT_Record> boolean evaluate(HDT_T record, HyperTableRow row, boolean searchLinkedRecords, boolean firstCall, boolean lastCall)
+  // Turns a query row into a predicate, looking up and normalizing the operands once instead of once per record
+
+  private QueryPredicate compileRow(HyperTableRow row, boolean searchLinkedRecords)
   {
-    switch (curQuery)
+    int query = row.getID(1);
+    HyperTableCell op1 = row.getCell(2), op2 = row.getCell(3), op3 = row.getCell(4);
+
+    if (query < 0) return QueryPredicate.NONE;
+
+    switch (query)
     {
       case QUERY_WITH_NAME_CONTAINING :
 
-        return record.listName().toUpperCase().indexOf(getCellText(param1).toUpperCase()) >= 0;
+        String nameUC = getCellText(op1).toUpperCase();
+
+        return record -> db.getRecordTextIndex().getListNameUpperCase(record).indexOf(nameUC) >= 0;
 
       case QUERY_ANY_FIELD_CONTAINS :
 
-        List<String> list = new ArrayList<>();
-        record.getAllStrings(list, searchLinkedRecords);
+        String valLC = getCellText(op1).toLowerCase();
+        RecordTextIndex textIndex = db.getRecordTextIndex();
+        RecordTextIndex.Grams grams = RecordTextIndex.getGrams(valLC);
+        ThreadLocal<List<String>> threadList = ThreadLocal.withInitial(ArrayList::new);
 
-        String val1 = getCellText(param1).toLowerCase();
+        return record ->
+        {
+          if (textIndex.mayContain(record, grams) == false) return false;
+
+          List<String> list = threadList.get();
+          list.clear();
+          record.getAllStrings(list, searchLinkedRecords);
 
-        return list.stream().anyMatch(str -> str.toLowerCase().indexOf(val1) >= 0);
+          for (String str : list)
+            if (str.toLowerCase().indexOf(valLC) >= 0) return true;
+
+          return false;
+        };
 
       case QUERY_LIST_ALL :
 
-        return true;
+        return QueryPredicate.ALL;
 
       case QUERY_WHERE_RELATIVE :
 
-        RelationType relType = RelationType.codeToVal(getCellID(param1));
-        if (record.getType() != db.getObjType(relType)) return false;
+        return compileWhereRelative(op1, op2, op3);
 
-        int opID = getCellID(param2);
+      case QUERY_WHERE_FIELD :
 
-        HyperSubjList<HDT_Record, HDT_Record> subjList = db.getSubjectList(relType, record);
-        int subjCount = subjList.size();
+        return compileWhereField(row, op1, op2, op3);
 
-        if ((opID == IS_EMPTY_OPERAND_ID) || (opID == IS_NOT_EMPTY_OPERAND_ID))
-          return (subjCount == 0) == (opID == IS_EMPTY_OPERAND_ID);
+      default :
 
-        for (HDT_Record subjRecord : subjList)
-        {
-          switch (opID)
-          {
-            case EQUAL_TO_OPERAND_ID : case NOT_EQUAL_TO_OPERAND_ID :
+        return typeToEngine.get(curQV.getQueryType(row)).compile(query, op1, op2, op3);
+    }
+  }
 
-              if (subjRecord.getID() == getCellID(param3))
-                return opID == EQUAL_TO_OPERAND_ID;
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-            case CONTAINS_OPERAND_ID : case DOES_NOT_CONTAIN_OPERAND_ID :
+  private static QueryPredicate compileWhereRelative(HyperTableCell op1, HyperTableCell op2, HyperTableCell op3)
+  {
+    RelationType relType = RelationType.codeToVal(getCellID(op1));
+    if ((relType == null) || (relType == rtNone) || (relType == rtUnited)) return QueryPredicate.NONE;
 
-              if (subjRecord.listName().toLowerCase().contains(getCellText(param3).toLowerCase()))
-                return opID == CONTAINS_OPERAND_ID;
+    HDT_RecordType objType = db.getObjType(relType);
+    int opID = getCellID(op2), id3 = getCellID(op3);
+    String text3LC = getCellText(op3).toLowerCase();
 
-            default :
-              break;
-          }
-        }
+    return record ->
+    {
+      if (record.getType() != objType) return false;
+
+      HyperSubjList<HDT_Record, HDT_Record> subjList = db.getSubjectList(relType, record);
+      int subjCount = subjList.size();
 
+      if ((opID == IS_EMPTY_OPERAND_ID) || (opID == IS_NOT_EMPTY_OPERAND_ID))
+        return (subjCount == 0) == (opID == IS_EMPTY_OPERAND_ID);
+
+      for (HDT_Record subjRecord : subjList)
+      {
         switch (opID)
         {
           case EQUAL_TO_OPERAND_ID : case NOT_EQUAL_TO_OPERAND_ID :
-            return opID == NOT_EQUAL_TO_OPERAND_ID;
+
+            if (subjRecord.getID() == id3)
+              return opID == EQUAL_TO_OPERAND_ID;
 
           case CONTAINS_OPERAND_ID : case DOES_NOT_CONTAIN_OPERAND_ID :
-            return opID == DOES_NOT_CONTAIN_OPERAND_ID;
+
+            if (subjRecord.listName().toLowerCase().contains(text3LC))
+              return opID == CONTAINS_OPERAND_ID;
 
           default :
-            return false;
+            break;
         }
+      }
 
-      case QUERY_WHERE_FIELD :
+      switch (opID)
+      {
+        case EQUAL_TO_OPERAND_ID : case NOT_EQUAL_TO_OPERAND_ID :
+          return opID == NOT_EQUAL_TO_OPERAND_ID;
 
-        Tag tag = Tag.getTagByNum(getCellID(param1));
-        HDI_Schema schema = record.getSchema(tag);
+        case CONTAINS_OPERAND_ID : case DOES_NOT_CONTAIN_OPERAND_ID :
+          return opID == DOES_NOT_CONTAIN_OPERAND_ID;
 
-        if (schema == null) return false;
+        default :
+          return false;
+      }
+    };
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
 
-        VariablePopulator vp3 = curQV.htFields.getPopulator(4);
-        CellValueType valueType = nullSwitch(vp3.getPopulator(row), cvtVaries, Populator::getValueType);
+  private QueryPredicate compileWhereField(HyperTableRow row, HyperTableCell op1, HyperTableCell op2, HyperTableCell op3)
+  {
+    Tag tag = Tag.getTagByNum(getCellID(op1));
+    int opID = getCellID(op2), id3 = getCellID(op3);
+    HDT_RecordType type3 = getCellType(op3);
+    String text3 = getCellText(op3).trim();
 
-        switch (getCellID(param2))
+    VariablePopulator vp3 = curQV.htFields.getPopulator(4);
+    CellValueType valueType = nullSwitch(vp3.getPopulator(row), cvtVaries, Populator::getValueType);
+
+    switch (opID)
+    {
+      case EQUAL_TO_OPERAND_ID : case NOT_EQUAL_TO_OPERAND_ID :
+
+        boolean isEqualTo = opID == EQUAL_TO_OPERAND_ID;
+
+        switch (valueType)
         {
-          case EQUAL_TO_OPERAND_ID : case NOT_EQUAL_TO_OPERAND_ID :
+          case cvtRecord :
 
-            switch (valueType)
+            return record ->
             {
-              case cvtRecord :
+              HDI_Schema schema = record.getSchema(tag);
+              if (schema == null) return false;
 
-                for (HDT_Record objRecord : db.getObjectList(schema.getRelType(), record, true))
-                {
-                  if ((objRecord.getID() == getCellID(param3)) && (objRecord.getType() == getCellType(param3)))
-                    return getCellID(param2) == EQUAL_TO_OPERAND_ID;
-                }
+              for (HDT_Record objRecord : db.getObjectList(schema.getRelType(), record, true))
+              {
+                if ((objRecord.getID() == id3) && (objRecord.getType() == type3))
+                  return isEqualTo;
+              }
 
-                return getCellID(param2) == NOT_EQUAL_TO_OPERAND_ID;
+              return isEqualTo == false;
+            };
 
-              case cvtBoolean :
+          case cvtBoolean :
 
-                if ((getCellID(param3) != TRUE_BOOLEAN_ID) && (getCellID(param3) != FALSE_BOOLEAN_ID)) return false;
+            if ((id3 != TRUE_BOOLEAN_ID) && (id3 != FALSE_BOOLEAN_ID)) return QueryPredicate.NONE;
 
-                return (record.getTagBoolean(tag) == (getCellID(param3) == TRUE_BOOLEAN_ID)) == (getCellID(param2) == EQUAL_TO_OPERAND_ID);
+            boolean boolVal = id3 == TRUE_BOOLEAN_ID;
 
-              default :
+            return record -> (record.getSchema(tag) != null) && ((record.getTagBoolean(tag) == boolVal) == isEqualTo);
 
-                String tagStrVal = record.getResultTextForTag(tag);
-                if (tagStrVal.isEmpty()) return false;
+          default :
 
-                return tagStrVal.trim().equalsIgnoreCase(getCellText(param3).trim()) == (getCellID(param2) == EQUAL_TO_OPERAND_ID);
-            }
+            return record ->
+            {
+              if (record.getSchema(tag) == null) return false;
 
-          case CONTAINS_OPERAND_ID : case DOES_NOT_CONTAIN_OPERAND_ID :
+              String tagStrVal = record.getResultTextForTag(tag);
+              if (tagStrVal.isEmpty()) return false;
 
-            String val3 = getCellText(param3).trim();
-            if (val3.isEmpty()) return false;
+              return tagStrVal.trim().equalsIgnoreCase(text3) == isEqualTo;
+            };
+        }
 
-            String tagStrVal = record.getResultTextForTag(tag).toLowerCase().trim();
+      case CONTAINS_OPERAND_ID : case DOES_NOT_CONTAIN_OPERAND_ID :
 
-            return tagStrVal.contains(val3.toLowerCase()) == (getCellID(param2) == CONTAINS_OPERAND_ID);
+        if (text3.isEmpty()) return QueryPredicate.NONE;
 
-          case IS_EMPTY_OPERAND_ID : case IS_NOT_EMPTY_OPERAND_ID :
+        String text3LC = text3.toLowerCase();
+        boolean contains = opID == CONTAINS_OPERAND_ID;
 
-            switch (valueType)
-            {
-              case cvtRecord :
+        return record -> (record.getSchema(tag) != null) && (record.getResultTextForTag(tag).toLowerCase().trim().contains(text3LC) == contains);
+
+      case IS_EMPTY_OPERAND_ID : case IS_NOT_EMPTY_OPERAND_ID :
+
+        boolean notEmpty = opID == IS_NOT_EMPTY_OPERAND_ID;
 
-                return (db.getObjectList(schema.getRelType(), record, true).size() > 0) == (getCellID(param2) == IS_NOT_EMPTY_OPERAND_ID);
+        switch (valueType)
+        {
+          case cvtRecord :
 
-              case cvtBoolean :
+            return record ->
+            {
+              HDI_Schema schema = record.getSchema(tag);
+              return (schema != null) && ((db.getObjectList(schema.getRelType(), record, true).size() > 0) == notEmpty);
+            };
 
-                return getCellID(param2) == IS_EMPTY_OPERAND_ID;
+          case cvtBoolean :
 
-              default :
+            return record -> (record.getSchema(tag) != null) && (notEmpty == false);
 
-                tagStrVal = record.getResultTextForTag(tag);
-                return (tagStrVal.length() > 0) == (getCellID(param2) == IS_NOT_EMPTY_OPERAND_ID);
-            }
+          default :
+
+            return record -> (record.getSchema(tag) != null) && ((record.getResultTextForTag(tag).length() > 0) == notEmpty);
         }
 
       default :
 
-        return ((QueryEngine<HDT_T>) typeToEngine.get(curQV.getQueryType(row))).evaluate(record, firstCall, lastCall);
+        return QueryPredicate.NONE;
     }
   }
 
@@ -151,7 +151,7 @@ public class TreeModel<RowType extends AbstractTreeRow<? extends HDT_Record, Row
 
   private void unassignParent(HDT_Record child, HDT_Record parent)
   {
-    if (parentToChildren.getForwardSet(parent).contains(child) == false) return;
+    if (parentToChildren.containsForward(parent, child) == false) return;
 
     new ArrayList<>(recordToRows.getRowsForRecord(parent)).forEach(row -> row.treeItem.getChildren().removeIf(childItem ->
     {
@@ -189,7 +189,7 @@ public class TreeModel<RowType extends AbstractTreeRow<? extends HDT_Record, Row
 
   private void assignParent(HDT_Record child, HDT_Record parent)
   {
-    if (parentToChildren.getForwardSet(parent).contains(child)) return;
+    if (parentToChildren.containsForward(parent, child)) return;
 
     parentToChildren.addForward(parent, child);
 
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.hypernomicon;
+
+import static org.hypernomicon.FolderTreeWatcher.WatcherEvent.WatcherEventKind.*;
+import static org.hypernomicon.model.PathInfo.FileKind.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import org.hypernomicon.FolderTreeWatcher.EventWindow;
+import org.hypernomicon.FolderTreeWatcher.WatcherEvent;
+import org.hypernomicon.FolderTreeWatcher.WatcherEvent.WatcherEventKind;
+import org.hypernomicon.model.PathInfo;
+import org.hypernomicon.model.PathInfo.FileKind;
+import org.hypernomicon.util.filePath.FilePath;
+
+//---------------------------------------------------------------------------
+
+public class FolderTreeWatcherTest
+{
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static PathInfo pathInfo(String pathStr, FileKind fileKind)
+  {
+    return new PathInfo(new FilePath("/watched/" + pathStr), fileKind);
+  }
+
+  private static WatcherEvent create(String pathStr, FileKind fileKind) { return new WatcherEvent(wekCreate, null, pathInfo(pathStr, fileKind)); }
+  private static WatcherEvent delete(String pathStr, FileKind fileKind) { return new WatcherEvent(wekDelete, pathInfo(pathStr, fileKind), null); }
+
+  private static WatcherEvent modify(String pathStr)
+  {
+    PathInfo pathInfo = pathInfo(pathStr, fkFile);
+    return new WatcherEvent(wekModify, pathInfo, pathInfo);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void assertEvent(WatcherEvent event, WatcherEventKind kind, String oldPathStr, String newPathStr)
+  {
+    assertEquals(kind, event.getKind());
+
+    if (oldPathStr == null) assertNull(event.getOldPathInfo());
+    else                    assertEquals(new FilePath("/watched/" + oldPathStr), event.getOldPathInfo().getFilePath());
+
+    if (newPathStr == null) assertNull(event.getNewPathInfo());
+    else                    assertEquals(new FilePath("/watched/" + newPathStr), event.getNewPathInfo().getFilePath());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test
+  public void createThenDeleteReportsNothing()
+  {
+    EventWindow window = new EventWindow();
+
+    window.add(create("a/temp.tmp", fkFile));
+    window.add(modify("a/temp.tmp"));
+    window.add(delete("a/temp.tmp", fkUnknown));
+
+    assertTrue(window.isEmpty());
+    assertTrue(window.close().isEmpty());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test
+  public void createThenModifyIsCreate()
+  {
+    EventWindow window = new EventWindow();
+
+    window.add(create("a/new.pdf", fkFile));
+    window.add(modify("a/new.pdf"));
+
+    List<WatcherEvent> events = window.close();
+
+    assertEquals(1, events.size());
+    assertEvent(events.get(0), wekCreate, null, "a/new.pdf");
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test
+  public void deleteThenCreateOfFileIsModify()
+  {
+    EventWindow window = new EventWindow();
+
+    window.add(delete("a/paper.pdf", fkUnknown));
+    window.add(create("a/paper.pdf", fkFile));
+
+    List<WatcherEvent> events = window.close();
+
+    assertEquals(1, events.size());
+    assertEvent(events.get(0), wekModify, "a/paper.pdf", "a/paper.pdf");
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // A replaced directory is reported as a delete and then a create, never paired with another event
+
+  @Test
+  public void deleteThenCreateOfDirectoryIsDeleteThenCreate()
+  {
+    EventWindow window = new EventWindow();
+
+    window.add(delete("a/sub", fkFolderRecord));
+    window.add(create("a/sub", fkFolder));
+    window.add(delete("a/other.pdf", fkUnknown));
+
+    List<WatcherEvent> events = window.close();
+
+    assertEquals(3, events.size());
+    assertEvent(events.get(0), wekDelete, "a/sub", null);
+    assertEvent(events.get(1), wekCreate, null, "a/sub");
+    assertEvent(events.get(2), wekDelete, "a/other.pdf", null);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test
+  public void replacedDirectoryDeletedAgainIsDelete()
+  {
+    EventWindow window = new EventWindow();
+
+    window.add(delete("a/sub", fkFolderRecord));
+    window.add(create("a/sub", fkFolder));
+    window.add(delete("a/sub", fkUnknown));
+
+    List<WatcherEvent> events = window.close();
+
+    assertEquals(1, events.size());
+    assertEvent(events.get(0), wekDelete, "a/sub", null);
+    assertTrue(window.close().isEmpty());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The two halves of a rename can arrive in different WatchKey batches, with other events in between
+
+  @Test
+  public void deleteAndCreateAcrossBatchesPairIntoRename()
+  {
+    EventWindow window = new EventWindow();
+
+    window.add(delete("a/old name.pdf", fkUnknown));  // First batch
+    window.add(modify("b/unrelated.txt"));
+
+    window.add(create("a/new name.pdf", fkFile));     // Second batch
+
+    List<WatcherEvent> events = window.close();
+
+    assertEquals(2, events.size());
+    assertEvent(events.get(0), wekRename, "a/old name.pdf", "a/new name.pdf");
+    assertEvent(events.get(1), wekModify, "b/unrelated.txt", "b/unrelated.txt");
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Which old name became which new one is unknown, and a delete and a create in different folders are a move,
+  // not a rename
+
+  @Test
+  public void ambiguousDeletesAndCreatesAreNotPaired()
+  {
+    EventWindow window = new EventWindow();
+
+    window.add(delete("a/one.pdf", fkUnknown));
+    window.add(delete("a/two.pdf", fkUnknown));
+    window.add(create("a/three.pdf", fkFile));
+    window.add(delete("b/four.pdf", fkUnknown));
+    window.add(create("c/four.pdf", fkFile));
+
+    List<WatcherEvent> events = window.close();
+
+    assertEquals(5, events.size());
+    events.forEach(event -> assertNotEquals(wekRename, event.getKind()));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.hypernomicon.bib.zotero;
+
+import static java.nio.charset.StandardCharsets.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.hypernomicon.bib.zotero.ZoteroWrapper.ZoteroCmd;
+import org.hypernomicon.util.SharedHttpClient;
+
+//---------------------------------------------------------------------------
+
+// Runs the download half of a sync against a local stand-in for the Zotero API that replays
+// recorded responses, including a 429 with a Retry-After header for the first batch request.
+
+public class ZoteroWrapperTest
+{
+  private static final String USER_ID = "1234567";
+
+  private static final String COLL_VERSIONS = "{\"QN4ZDJ7P\":12,\"8XHB2WSM\":14}",
+
+                              COLLECTIONS = "[" +
+    "{\"key\":\"QN4ZDJ7P\",\"version\":12,\"library\":{\"type\":\"user\",\"id\":1234567}," +
+     "\"data\":{\"key\":\"QN4ZDJ7P\",\"version\":12,\"name\":\"Metaphysics\",\"parentCollection\":false,\"relations\":{}}}," +
+    "{\"key\":\"8XHB2WSM\",\"version\":14,\"library\":{\"type\":\"user\",\"id\":1234567}," +
+     "\"data\":{\"key\":\"8XHB2WSM\",\"version\":14,\"name\":\"Modality\",\"parentCollection\":\"QN4ZDJ7P\",\"relations\":{}}}]";
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private String apiUrl;
+
+  private final AtomicInteger batchRequests = new AtomicInteger();
+  private final List<Long> batchRequestTimes = new CopyOnWriteArrayList<>();
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Before public void startServer() throws IOException
+  {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+
+    server.createContext("/users/" + USER_ID + "/collections", this::respond);
+
+    server.start();
+    apiUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @After public void stopServer()
+  {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+    SharedHttpClient.setInstance(null);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void respond(HttpExchange exchange) throws IOException
+  {
+    String query = exchange.getRequestURI().getQuery();
+
+    if ((query != null) && query.contains("format=versions"))
+    {
+      send(exchange, 200, COLL_VERSIONS);
+      return;
+    }
+
+    batchRequestTimes.add(System.nanoTime());
+
+    if (batchRequests.incrementAndGet() == 1)
+    {
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      send(exchange, 429, "Too many requests");
+      return;
+    }
+
+    send(exchange, 200, COLLECTIONS);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void send(HttpExchange exchange, int statusCode, String body) throws IOException
+  {
+    byte[] bytes = body.getBytes(UTF_8);
+
+    exchange.getResponseHeaders().set("Content-Type", statusCode == 200 ? "application/json" : "text/plain");
+    exchange.getResponseHeaders().set("Zotero-API-Version", "3");
+    exchange.getResponseHeaders().set("Last-Modified-Version", "14");
+    exchange.sendResponseHeaders(statusCode, bytes.length);
+
+    try (OutputStream out = exchange.getResponseBody()) { out.write(bytes); }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void retriesRateLimitedBatch() throws Exception
+  {
+    ZoteroWrapper wrapper = new ZoteroWrapper("apikey", USER_ID, apiUrl);
+    Map<String, ZoteroCollection> keyToColl = new HashMap<>();
+
+    assertTrue(wrapper.getRemoteUpdates(ZoteroCmd.readChangedCollVersions, ZoteroCmd.readCollections, keyToColl));
+
+    assertEquals(2, batchRequests.get());  // The 429 was retried once instead of failing the sync
+
+    long waitMillis = (batchRequestTimes.get(1) - batchRequestTimes.get(0)) / 1_000_000;
+    assertTrue("Retry came after " + waitMillis + " ms", waitMillis >= 900);  // Retry-After was honored
+
+    assertEquals(2, keyToColl.size());
+    assertEquals("Metaphysics", keyToColl.get("QN4ZDJ7P").getName());
+    assertNull(keyToColl.get("QN4ZDJ7P").getParentKey());
+    assertEquals("QN4ZDJ7P", keyToColl.get("8XHB2WSM").getParentKey());
+    assertEquals(14, keyToColl.get("8XHB2WSM").getVersion());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
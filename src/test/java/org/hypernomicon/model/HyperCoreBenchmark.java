@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import java.lang.reflect.Proxy;
+import java.util.Random;
+
+import org.hypernomicon.model.records.HDT_Record;
+
+//---------------------------------------------------------------------------
+
+// Times bulk loading and sort key churn in HyperCore at 10k, 100k and 1M records. This is not run by
+// the test suite; run it with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.model.HyperCoreBenchmark
+
+public final class HyperCoreBenchmark
+{
+  private static final int[] SIZES = { 10000, 100000, 1000000 };
+  private static final int ROUNDS = 3;
+
+  private static final HDT_Record RECORD = (HDT_Record) Proxy.newProxyInstance(HDT_Record.class.getClassLoader(), new Class<?>[] { HDT_Record.class }, (proxy, method, args) -> null);
+
+  private static volatile int sink;  // Keeps the lookups from being optimized away
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args)
+  {
+    run(SIZES[0], false);  // Warm-up
+
+    for (int size : SIZES)
+      run(size, true);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void run(int size, boolean print)
+  {
+    Random random = new Random(size);
+    String[] keys = new String[size], newKeys = new String[size];
+
+    for (int ndx = 0; ndx < size; ndx++)
+    {
+      keys[ndx] = "key " + random.nextInt(size);
+      newKeys[ndx] = "key " + random.nextInt(size);
+    }
+
+    long loadNanos = Long.MAX_VALUE, churnNanos = Long.MAX_VALUE;
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      HyperCore<HDT_Record> core = new HyperCore<>();
+
+      long start = System.nanoTime();
+
+      for (int id = 1; id <= size; id++)
+        core.add(id, keys[id - 1], RECORD);
+
+      loadNanos = Math.min(loadNanos, System.nanoTime() - start);
+
+    // Each change of a sort key is followed by the lookups a table refresh would do
+    // ------------------------------------------------------------------------------
+      start = System.nanoTime();
+      int checksum = 0;
+
+      for (int ndx = 0; ndx < size; ndx++)
+      {
+        int id = 1 + random.nextInt(size);
+
+        core.setKey(id, newKeys[ndx]);
+        checksum += core.getKeyNdxByID(id) + core.getIDbyKeyNdx(ndx) + core.getIDNdxByID(id);
+      }
+
+      churnNanos = Math.min(churnNanos, System.nanoTime() - start);
+      sink = checksum;
+    }
+
+    if (print)
+      System.out.printf("%,9d records: bulk load %,7d ms, setKey churn %,7d ms%n", size, loadNanos / 1000000, churnNanos / 1000000);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
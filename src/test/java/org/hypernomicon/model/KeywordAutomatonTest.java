@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.hypernomicon.model.SearchKeys.SearchKeyword;
+
+//---------------------------------------------------------------------------
+
+public class KeywordAutomatonTest
+{
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static List<SearchKeyword> keywords(String... texts)
+  {
+    List<SearchKeyword> list = new ArrayList<>();
+
+    for (String text : texts)
+      list.add(new SearchKeyword(text, null));
+
+    return list;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static List<String> matches(KeywordAutomaton automaton, String text)
+  {
+    List<String> list = new ArrayList<>();
+    automaton.forEachMatch(text, (start, keyword) -> list.add(start + ":" + keyword.text));
+    return list;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Every occurrence of every keyword, in the order Aho-Corasick reports them: by end position, then longest first
+
+  private static List<String> bruteForceMatches(List<SearchKeyword> keywords, String text)
+  {
+    List<String> list = new ArrayList<>();
+
+    for (int end = 1; end <= text.length(); end++)
+    {
+      List<SearchKeyword> seen = new ArrayList<>();
+
+      for (SearchKeyword keyword : keywords)
+      {
+        int len = keyword.text.length(), start = end - len;
+
+        if ((len == 0) || (start < 0) || (text.regionMatches(true, start, keyword.text, 0, len) == false)) continue;
+        if (seen.stream().anyMatch(other -> other.text.equalsIgnoreCase(keyword.text))) continue;
+
+        seen.add(keyword);
+      }
+
+      seen.sort((k1, k2) -> k2.text.length() - k1.text.length());
+
+      for (SearchKeyword keyword : seen)
+        list.add((end - keyword.text.length()) + ":" + keyword.text);
+    }
+
+    return list;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void reportsOverlappingMatches()
+  {
+    KeywordAutomaton automaton = new KeywordAutomaton(keywords("he", "she", "his", "hers"));
+
+    assertEquals(List.of("1:she", "2:he", "2:hers"), matches(automaton, "ushers"));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void ignoresCase()
+  {
+    KeywordAutomaton automaton = new KeywordAutomaton(keywords("Kant"));
+
+    assertEquals(List.of("0:Kant", "9:Kant"), matches(automaton, "KANT and kant"));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void skipsEmptyAndDuplicateKeywords()
+  {
+    List<SearchKeyword> list = keywords("", "mind", "MIND");
+    KeywordAutomaton automaton = new KeywordAutomaton(list);
+
+    List<SearchKeyword> found = new ArrayList<>();
+    automaton.forEachMatch("philosophy of mind", (start, keyword) -> found.add(keyword));
+
+    assertEquals(1, found.size());
+    assertSame(list.get(1), found.get(0));
+    assertTrue(matches(new KeywordAutomaton(keywords()), "anything").isEmpty());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void agreesWithBruteForceOnRandomText()
+  {
+    Random random = new Random(42);
+
+    for (int round = 0; round < 200; round++)
+    {
+      List<String> texts = new ArrayList<>();
+
+      for (int ndx = random.nextInt(30); ndx >= 0; ndx--)
+        texts.add(randomString(random, 1 + random.nextInt(5)));
+
+      List<SearchKeyword> list = keywords(texts.toArray(new String[0]));
+      String text = randomString(random, random.nextInt(200));
+
+      assertEquals(bruteForceMatches(list, text), matches(new KeywordAutomaton(list), text));
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static String randomString(Random random, int length)
+  {
+    StringBuilder sb = new StringBuilder(length);
+
+    for (int ndx = 0; ndx < length; ndx++)
+      sb.append("abAB c".charAt(random.nextInt(6)));
+
+    return sb.toString();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.hypernomicon.model.SearchKeys.SearchKeyword;
+
+//---------------------------------------------------------------------------
+
+// Compares how KeywordLinkList finds keyword links now, with one KeywordAutomaton pass per text (findLongestMatches),
+// with how it did before: a getKeywordsByPrefix lookup at every position of the text, checking each keyword with
+// that prefix. The repository has no database of notes, so the texts are the prose of README.md and LICENSE.html,
+// cut into note-sized pieces. Half of the 20k keywords are phrases taken from that prose and the rest are names
+// that never occur, so there are both hits and misses. Both linkers must find the same links. This is not run by
+// the test suite; run it from the project folder with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.model.KeywordLinkBenchmark
+
+public final class KeywordLinkBenchmark
+{
+  private static final int KEYWORD_COUNT = 20000, NOTE_LENGTH = 2000, ROUNDS = 5;
+
+  private static volatile int sink;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args) throws IOException
+  {
+    String prose = new String(Files.readAllBytes(Paths.get("README.md")), StandardCharsets.UTF_8) + ' ' +
+                   new String(Files.readAllBytes(Paths.get("LICENSE.html")), StandardCharsets.UTF_8).replaceAll("<[^>]*>", " ").replaceAll("&[a-z]+;", " ");
+
+    prose = prose.replaceAll("\\s+", " ");
+
+    List<String> notes = new ArrayList<>();
+
+    for (int start = 0; start < prose.length(); start += NOTE_LENGTH)
+      notes.add(prose.substring(start, Math.min(prose.length(), start + NOTE_LENGTH)));
+
+    List<SearchKeyword> keywords = createKeywords(prose.split(" "), new Random(1));
+    Map<String, Map<String, SearchKeyword>> prefixMap = new HashMap<>();
+
+    for (SearchKeyword keyword : keywords)
+      prefixMap.computeIfAbsent(keyword.getPrefix(), prefix -> new LinkedHashMap<>()).put(keyword.text.toLowerCase(), keyword);
+
+    long start = System.nanoTime();
+    KeywordAutomaton automaton = new KeywordAutomaton(keywords);
+    long buildNanos = System.nanoTime() - start;
+
+    int linkCount = 0;
+
+    for (String note : notes)
+    {
+      List<String> oldLinks = linkByPrefix(note, prefixMap), newLinks = linkByAutomaton(note, automaton);
+
+      if (oldLinks.equals(newLinks) == false)
+        throw new AssertionError("The linkers found different links in: " + note);
+
+      linkCount += newLinks.size();
+    }
+
+    long oldNanos = time(() -> notes.forEach(note -> sink += linkByPrefix(note, prefixMap).size())),
+         newNanos = time(() -> notes.forEach(note -> sink += linkByAutomaton(note, automaton).size()));
+
+    System.out.printf("%,d notes, %,d characters, %,d keywords, %,d links%n", notes.size(), prose.length(), keywords.size(), linkCount);
+    System.out.printf("Prefix lookups (old): %8.2f ms%n", oldNanos / 1e6);
+    System.out.printf("Automaton (new):      %8.2f ms (built in %.1f ms)%n", newNanos / 1e6, buildNanos / 1e6);
+    System.out.printf("Speedup:              %8.1fx%n", (double) oldNanos / newNanos);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static long time(Runnable runnable)
+  {
+    for (int round = 0; round < ROUNDS; round++)  // Warm-up
+      runnable.run();
+
+    long best = Long.MAX_VALUE;
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      long start = System.nanoTime();
+      runnable.run();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+
+    return best;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static List<SearchKeyword> createKeywords(String[] words, Random random)
+  {
+    Map<String, SearchKeyword> keywords = new LinkedHashMap<>();
+
+    while (keywords.size() < KEYWORD_COUNT / 2)
+    {
+      int first = random.nextInt(words.length - 3);
+      String text = String.join(" ", List.of(words).subList(first, first + 1 + random.nextInt(3))).replaceAll("[^A-Za-z -]", "");
+
+      if (text.length() >= 3)
+        add(keywords, (random.nextInt(4) == 0 ? "^" : "") + text + (random.nextInt(4) == 0 ? "$" : ""));
+    }
+
+    while (keywords.size() < KEYWORD_COUNT)
+    {
+      StringBuilder name = new StringBuilder().append((char) ('A' + random.nextInt(26)));
+
+      for (int len = 3 + random.nextInt(8); name.length() < len; )
+        name.append((char) ('a' + random.nextInt(26)));
+
+      add(keywords, "^" + name + "$");
+    }
+
+    return new ArrayList<>(keywords.values());
+  }
+
+  private static void add(Map<String, SearchKeyword> keywords, String str)
+  {
+    SearchKeyword keyword = new SearchKeyword(str, null);
+    keywords.putIfAbsent(keyword.text.toLowerCase(), keyword);  // Keyword text is unique, ignoring case, as in SearchKeys
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The loop from KeywordLinkList.generate, reduced to where links start and which keyword they use: after a link,
+  // the search carries on after its end
+
+  private static List<String> linkByPrefix(String text, Map<String, Map<String, SearchKeyword>> prefixMap)
+  {
+    List<String> links = new ArrayList<>();
+
+    for (int ndx = 0; ndx < text.length(); ndx++)
+    {
+      Map<String, SearchKeyword> map = prefixMap.get(text.substring(ndx, Math.min(text.length(), ndx + 3)).toLowerCase());
+      List<SearchKeyword> keys = map == null ? new ArrayList<>() : new ArrayList<>(map.values());  // As getKeywordsByPrefix returns them
+      SearchKeyword curKey = null;
+
+      for (SearchKeyword key : keys)
+      {
+        int matchLen = key.text.length();
+
+        if ((ndx + matchLen <= text.length()) && text.regionMatches(true, ndx, key.text, 0, matchLen) && keywordFits(text, ndx, matchLen, key) &&
+            ((curKey == null) || (matchLen > curKey.text.length())))
+          curKey = key;
+      }
+
+      if (curKey != null)
+      {
+        links.add(ndx + ":" + curKey.text);
+        ndx += curKey.text.length() - 1;
+      }
+    }
+
+    return links;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static List<String> linkByAutomaton(String text, KeywordAutomaton automaton)
+  {
+    SearchKeyword[] longestMatches = new SearchKeyword[text.length()];
+
+    automaton.forEachMatch(text, (start, key) ->
+    {
+      int matchLen = key.text.length();
+
+      if (keywordFits(text, start, matchLen, key) && ((longestMatches[start] == null) || (matchLen > longestMatches[start].text.length())))
+        longestMatches[start] = key;
+    });
+
+    List<String> links = new ArrayList<>();
+
+    for (int ndx = 0; ndx < text.length(); ndx++)
+      if (longestMatches[ndx] != null)
+      {
+        links.add(ndx + ":" + longestMatches[ndx].text);
+        ndx += longestMatches[ndx].text.length() - 1;
+      }
+
+    return links;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static boolean keywordFits(String text, int ndx, int matchLen, SearchKeyword key)
+  {
+    if (key.startOnly && (ndx > 0))
+    {
+      char c = text.charAt(ndx - 1);
+      if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')))
+        return false;
+    }
+
+    if (key.endOnly && ((ndx + matchLen) < text.length()))
+    {
+      char c = text.charAt(ndx + matchLen);
+      if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')))
+        return false;
+    }
+
+    return true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
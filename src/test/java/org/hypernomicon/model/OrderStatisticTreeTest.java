@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+//---------------------------------------------------------------------------
+
+public class OrderStatisticTreeTest
+{
+  private static final class Entry
+  {
+    private final String key;
+    private final int id;
+
+    private Entry(String key, int id) { this.key = key; this.id = id; }
+  }
+
+  private static final Comparator<Entry> ORDER = Comparator.<Entry, String>comparing(entry -> entry.key).thenComparingInt(entry -> entry.id);
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void assertSameOrder(TreeSet<Entry> expected, OrderStatisticTree tree)
+  {
+    assertEquals(expected.size(), tree.size());
+
+    List<Integer> ids = new ArrayList<>();
+    tree.forEachID(ids::add);
+
+    int ndx = 0;
+    PrimitiveIterator.OfInt it = tree.idIterator();
+
+    for (Entry entry : expected)
+    {
+      assertEquals(entry.id, tree.getID(ndx));
+      assertEquals(ndx, tree.indexOf(entry.key, entry.id));
+      assertEquals(entry.id, ids.get(ndx).intValue());
+      assertEquals(entry.id, it.nextInt());
+      ndx++;
+    }
+
+    assertFalse(it.hasNext());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void agreesWithTreeSet()
+  {
+    OrderStatisticTree tree = new OrderStatisticTree();
+    TreeSet<Entry> expected = new TreeSet<>(ORDER);
+    List<Entry> entries = new ArrayList<>();
+    Random random = new Random(11);
+
+    for (int round = 0; round < 20; round++)
+    {
+      for (int ndx = 0; ndx < 500; ndx++)
+      {
+        Entry entry = new Entry("key" + random.nextInt(100), random.nextInt(100000));
+        if (expected.add(entry) == false) continue;
+
+        tree.insert(entry.key, entry.id);
+        entries.add(entry);
+      }
+
+      for (int ndx = 0; ndx < 200; ndx++)
+      {
+        Entry entry = entries.remove(random.nextInt(entries.size()));
+
+        expected.remove(entry);
+        tree.remove(entry.key, entry.id);
+        assertEquals(-1, tree.indexOf(entry.key, entry.id));
+      }
+
+      assertSameOrder(expected, tree);
+    }
+
+    tree.clear();
+    assertEquals(0, tree.size());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void getIDRejectsBadIndex()
+  {
+    OrderStatisticTree tree = new OrderStatisticTree();
+    tree.insert("", 1);
+    tree.getID(1);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Once the tree changes during iteration, the cursor continues by position, as iterating by index used to
+
+  @Test public void iteratorContinuesByPositionAfterChange()
+  {
+    OrderStatisticTree tree = new OrderStatisticTree();
+
+    for (int id = 1; id <= 5; id++)
+      tree.insert("", id);
+
+    PrimitiveIterator.OfInt it = tree.idIterator();
+
+    assertEquals(1, it.nextInt());
+    assertEquals(2, it.nextInt());
+
+    tree.remove("", 1);
+    tree.insert("", 6);
+
+    assertEquals(4, it.nextInt());
+    assertEquals(5, it.nextInt());
+    assertEquals(6, it.nextInt());
+    assertFalse(it.hasNext());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test(expected = NoSuchElementException.class)
+  public void iteratorThrowsPastTheEnd()
+  {
+    new OrderStatisticTree().idIterator().nextInt();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
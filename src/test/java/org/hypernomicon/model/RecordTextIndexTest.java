@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.hypernomicon.model;
+
+import static org.hypernomicon.util.Util.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.hypernomicon.model.RecordTextIndex.Grams;
+import org.hypernomicon.model.records.HDT_Record;
+
+//---------------------------------------------------------------------------
+
+public class RecordTextIndexTest
+{
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // A stand-in record whose strings and links can be changed. Like a real record, its getAllStrings includes
+  // the strings of the records it links to when searchLinkedRecords is true.
+
+  private static final class TestRecord
+  {
+    private final List<String> strs = new ArrayList<>();
+    private final List<TestRecord> linked = new ArrayList<>();
+    private final HDT_Record record = (HDT_Record) Proxy.newProxyInstance(HDT_Record.class.getClassLoader(), new Class<?>[] { HDT_Record.class }, this::invoke);
+
+    private TestRecord(String... strs) { this.strs.addAll(List.of(strs)); }
+
+    @SuppressWarnings("unchecked")
+    private Object invoke(Object proxy, Method method, Object[] args)
+    {
+      switch (method.getName())
+      {
+        case "getAllStrings":
+
+          ((List<String>) args[0]).addAll(strs);
+
+          if ((Boolean) args[1])
+            linked.forEach(linkedRecord -> ((List<String>) args[0]).addAll(linkedRecord.strs));
+
+          return null;
+
+        case "getAllLinkedRecords":
+
+          linked.forEach(linkedRecord -> ((List<HDT_Record>) args[0]).add(linkedRecord.record));
+          return null;
+
+        case "isExpired" : return false;
+        case "listName"  : return strs.isEmpty() ? "" : strs.get(0);
+        case "hashCode"  : return System.identityHashCode(proxy);
+        case "equals"    : return proxy == args[0];
+        case "toString"  : return String.join("; ", strs);
+        default          : return null;
+      }
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static boolean mayContain(RecordTextIndex index, TestRecord record, String query)
+  {
+    return index.mayContain(record.record, RecordTextIndex.getGrams(query.toLowerCase()));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static String randomString(Random random)
+  {
+    String chars = "abcdeABCDE éÉöÖüÜçÇß.-'";
+    StringBuilder sb = new StringBuilder();
+
+    for (int len = 1 + random.nextInt(30); len > 0; len--)
+      sb.append(chars.charAt(random.nextInt(chars.length())));
+
+    return sb.toString();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Every substring of a record's strings, lowercased, must get through the filter, both as it is and converted
+  // to English characters
+
+  private static void assertAllSubstringsMayMatch(RecordTextIndex index, TestRecord record, String str)
+  {
+    for (String text : List.of(str.toLowerCase(), convertToEnglishChars(str).toLowerCase()))
+      for (int start = 0; start < text.length(); start++)
+        for (int end = start + 1; end <= text.length(); end++)
+        {
+          String query = text.substring(start, end);
+          assertTrue(record + " / " + query, index.mayContain(record.record, RecordTextIndex.getGrams(query)));
+        }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test
+  public void everySubstringMayMatch()
+  {
+    RecordTextIndex index = new RecordTextIndex();
+    Random random = new Random(1);
+
+    for (int ndx = 0; ndx < 300; ndx++)
+    {
+      TestRecord record = new TestRecord();
+
+      for (int strNdx = random.nextInt(4); strNdx >= 0; strNdx--)
+        record.strs.add(randomString(random));
+
+      for (String str : record.strs)
+        assertAllSubstringsMayMatch(index, record, str);
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test
+  public void queriesAreMatchedAfterCaseFolding()
+  {
+    RecordTextIndex index = new RecordTextIndex();
+    TestRecord record = new TestRecord("Kritik der reinen Vernunft", "Ästhetik");
+
+    assertTrue (mayContain(index, record, "KRITIK DER REINEN"));
+    assertTrue (mayContain(index, record, "Reinen Vernunft"));
+    assertTrue (mayContain(index, record, "ÄSTHETIK"));
+    assertTrue (mayContain(index, record, "asthetik"));  // Converted to English characters
+    assertFalse(mayContain(index, record, "xyzqwv"));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test
+  public void changesToLinkedRecordsAreSeen()
+  {
+    RecordTextIndex index = new RecordTextIndex();
+    TestRecord work = new TestRecord("Groundwork of the Metaphysics of Morals"),
+               author = new TestRecord("Immanuel Kant");
+
+    work.linked.add(author);
+
+    assertTrue (mayContain(index, work, "kant"));
+    assertFalse(mayContain(index, work, "hume"));
+
+    author.strs.set(0, "David Hume");
+    index.recordChanged(author.record);
+
+    assertTrue (mayContain(index, work, "hume"));
+    assertTrue (mayContain(index, work, "metaphysics"));
+
+    TestRecord translator = new TestRecord("Mary Gregor");  // Newly linked; the work itself is stamped, as HyperDB does for relation changes
+    work.linked.add(translator);
+    index.recordChanged(work.record);
+
+    assertTrue(mayContain(index, work, "gregor"));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test
+  public void gramsWithinWordsIgnoreSpacingAndPeriods()
+  {
+    RecordTextIndex index = new RecordTextIndex();
+    TestRecord record = new TestRecord("Imperative, categorical", "J.S.  Mill");
+
+    assertTrue (index.mayContain(record.record, RecordTextIndex.getGramsWithinWords("categorical imperative")));
+    assertTrue (index.mayContain(record.record, RecordTextIndex.getGramsWithinWords("j. s. mill")));
+    assertFalse(index.mayContain(record.record, RecordTextIndex.getGrams("categorical imperative")));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Two passes over more records than the signatures have room for. No record may be filtered out, and the
+  // signatures must stay within the limit without being dropped all at once.
+
+  @Test
+  public void evictionNeverFiltersOutAMatch()
+  {
+    long maxWords = 256;
+    RecordTextIndex index = new RecordTextIndex(maxWords);
+    Random random = new Random(2);
+    List<TestRecord> records = new ArrayList<>();
+
+    for (int ndx = 0; ndx < 500; ndx++)
+      records.add(new TestRecord(randomString(random) + ' ' + randomString(random)));
+
+    for (int pass = 0; pass < 2; pass++)
+      for (TestRecord record : records)
+      {
+        String str = record.strs.get(0).toLowerCase();
+        int start = random.nextInt(str.length());
+        Grams grams = RecordTextIndex.getGrams(str.substring(start, start + 1 + random.nextInt(str.length() - start)));
+
+        assertTrue(record.toString(), index.mayContain(record.record, grams));
+        assertTrue(index.getSignatureWords() <= maxWords);
+        assertTrue(index.getSignatureWords() > 0);
+      }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
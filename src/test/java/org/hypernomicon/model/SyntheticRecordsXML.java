@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import java.util.Random;
+
+//---------------------------------------------------------------------------
+
+// Generates records in the same form HDT_RecordState writes them to the XML files, for the save and load
+// benchmarks. The content of a record is determined by its type, ID and version, so a record can be edited
+// by bumping its version, and the same record always comes out byte for byte the same.
+
+final class SyntheticRecordsXML
+{
+  // About 100k records spread over the XML files the way they are in a large database
+
+  static final String[] FILE_NAMES  = { "Other.xml", "People.xml", "Institutions.xml", "Investigations.xml", "Debates.xml", "Arguments.xml",
+                                        "Positions.xml", "Terms.xml", "Files.xml", "Works.xml", "Notes.xml", "Hubs.xml" };
+  static final String[] TYPE_TAGS   = { "field", "person", "institution", "investigation", "debate", "argument",
+                                        "position", "term", "work_file", "work", "note", "hub" };
+  static final int[]    FILE_COUNTS = { 2000, 15000, 4000, 1000, 1000, 5000, 5000, 8000, 15000, 30000, 12000, 2000 };
+
+  private static final String[] WORDS = { "argument", "knowledge", "perception", "justification", "modal", "realism", "content",
+                                          "belief", "reasons", "normativity", "causation", "mind", "semantic", "externalism",
+                                          "Schrödinger", "Gödel", "naïve", "consciousness", "inference", "truth", "evidence" };
+
+  private static final String DATE = "2019-04-12T15:31:07.104-04:00";
+
+  private SyntheticRecordsXML() { throw new UnsupportedOperationException(); }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static int totalCount()
+  {
+    int count = 0;
+
+    for (int fileCount : FILE_COUNTS)
+      count += fileCount;
+
+    return count;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  static void appendRecord(StringBuilder xml, String typeTag, int id, int version)
+  {
+    Random random = new Random(id * 31L + version);
+    String name = words(random, 2 + random.nextInt(4)), nl = System.lineSeparator();
+
+    xml.append("<record type=\"").append(typeTag).append("\" id=\"").append(id).append("\" sort_key=\"").append(name.toLowerCase())
+       .append("\" search_key=\"").append(name).append("\">").append(nl)
+       .append("  <creation_date>").append(DATE).append("</creation_date>").append(nl)
+       .append("  <modified_date>").append(DATE).append("</modified_date>").append(nl)
+       .append("  <view_date>").append(DATE).append("</view_date>").append(nl)
+       .append("  <name>").append(name).append("</name>").append(nl);
+
+    if (id > 1)
+      xml.append("  <parent type=\"").append(typeTag).append("\" id=\"").append(1 + random.nextInt(id - 1)).append("\"></parent>").append(nl);
+
+    xml.append("  <description>&lt;html&gt;&lt;body&gt;&lt;p&gt;");
+
+    for (int paragraph = random.nextInt(3); paragraph >= 0; paragraph--)
+      xml.append(words(random, 5 + random.nextInt(40))).append("&lt;/p&gt;&lt;p&gt;");
+
+    xml.append("&lt;/p&gt;&lt;/body&gt;&lt;/html&gt;</description>").append(nl)
+       .append("</record>").append(nl).append(nl);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static String words(Random random, int count)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (int ndx = 0; ndx < count; ndx++)
+      sb.append(ndx == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+
+    return sb.toString();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
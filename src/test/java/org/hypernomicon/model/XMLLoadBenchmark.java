@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import static org.hypernomicon.model.SyntheticRecordsXML.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+//---------------------------------------------------------------------------
+
+// Compares the record loader before and after it was switched from XMLEventReader to XMLStreamReader, reporting
+// records per second and bytes allocated per record over 100k synthetic records. Each loader is a reduced copy
+// of the parsing loop in HyperDB.loadFromXML as it was then, with building the record state replaced by folding
+// each item into a checksum, so both have to see the same items. The records are parsed from memory, so disk
+// reads are not counted. This is not run by the test suite; run it with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.model.XMLLoadBenchmark
+
+public final class XMLLoadBenchmark
+{
+  private static final int ROUNDS = 5;
+
+  private static final Map<String, Integer> tagToNdx = Map.of("record", 0, "creation_date", 1, "modified_date", 2, "view_date", 3,
+                                                              "name", 4, "parent", 5, "description", 6);
+
+  private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+  private static final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private static volatile long sink;
+
+  @FunctionalInterface private interface Loader { long load(InputStream in) throws XMLStreamException; }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args) throws XMLStreamException
+  {
+    byte[] xml = createXML();
+    int count = totalCount();
+
+    long oldChecksum = loadOld(new ByteArrayInputStream(xml)), newChecksum = loadNew(new ByteArrayInputStream(xml));
+
+    if (oldChecksum != newChecksum)
+      throw new AssertionError("The loaders read different items");
+
+    System.out.printf("%,d records, %,d bytes of XML%n", count, xml.length);
+
+    run("XMLEventReader (old)", XMLLoadBenchmark::loadOld, xml, count);
+    run("XMLStreamReader (new)", XMLLoadBenchmark::loadNew, xml, count);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static byte[] createXML()
+  {
+    String nl = System.lineSeparator();
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + nl + nl + "<records version=\"2.1\" xmlns=\"org.hypernomicon\">" + nl + nl);
+
+    for (int fileNdx = 0; fileNdx < FILE_NAMES.length; fileNdx++)
+      for (int id = 1; id <= FILE_COUNTS[fileNdx]; id++)
+        appendRecord(xml, TYPE_TAGS[fileNdx], id, 0);
+
+    return xml.append(nl).append("</records>").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void run(String name, Loader loader, byte[] xml, int count) throws XMLStreamException
+  {
+    for (int round = 0; round < ROUNDS; round++)  // Warm-up
+      sink += loader.load(new ByteArrayInputStream(xml));
+
+    long bestNanos = Long.MAX_VALUE, bestBytes = Long.MAX_VALUE;
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      long bytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()), start = System.nanoTime();
+
+      sink += loader.load(new ByteArrayInputStream(xml));
+
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+      bestBytes = Math.min(bestBytes, threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes);
+    }
+
+    System.out.printf("%-22s %,10.0f records/s %,8d bytes allocated/record%n", name, count / (bestNanos / 1e9), bestBytes / count);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static long item(long checksum, int tag, int objID, String text)
+  {
+    return (checksum * 31 + tag) * 31 + objID + text.hashCode();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The old loop: an event object for every node, an element object for every start tag, attributes through an
+  // iterator, and text joined by string concatenation
+
+  private static final class OldElement
+  {
+    private final int tag;
+    private int objID = -1;
+
+    private OldElement(StartElement startElement)
+    {
+      tag = tagToNdx.getOrDefault(startElement.getName().getLocalPart(), -1);
+
+      startElement.getAttributes().forEachRemaining(attribute ->
+      {
+        if (attribute.getName().toString().equals("id"))
+          objID = Integer.parseInt(attribute.getValue());
+      });
+    }
+  }
+
+  private static long loadOld(InputStream in) throws XMLStreamException
+  {
+    XMLEventReader eventReader = factory.createXMLEventReader(in);
+    long checksum = 0;
+
+    while (eventReader.hasNext())
+    {
+      XMLEvent event = eventReader.nextEvent();
+
+      if ((event.isStartElement() == false) || (event.asStartElement().getName().getLocalPart().equals("record") == false))
+        continue;
+
+      Iterator<Attribute> attributes = event.asStartElement().getAttributes();
+
+      while (attributes.hasNext())
+      {
+        Attribute attribute = attributes.next();
+        checksum += attribute.getValue().hashCode();  // A sum, since the order of the attributes is not given
+      }
+
+      boolean notDoneReadingRecord = true;
+      String nodeText = "";
+      int tag = -1, objID = -1;
+
+      while (notDoneReadingRecord)
+      {
+        event = eventReader.nextEvent();
+
+        switch (event.getEventType())
+        {
+          case XMLStreamConstants.START_ELEMENT :
+
+            OldElement element = new OldElement(event.asStartElement());
+            tag = element.tag;
+            objID = element.objID;
+            nodeText = "";
+            break;
+
+          case XMLStreamConstants.END_ELEMENT :
+
+            if (event.asEndElement().getName().getLocalPart().equals("record"))
+              notDoneReadingRecord = false;
+            else
+              checksum = item(checksum, tag, objID, nodeText);
+
+            nodeText = "";
+            break;
+
+          case XMLStreamConstants.CHARACTERS : nodeText = nodeText + event.asCharacters().getData(); break;
+          default                            : break;
+        }
+      }
+    }
+
+    return checksum;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The new loop: a cursor over the stream, one element object reused for the whole file, attributes read by
+  // index, and text appended to a reused buffer straight from the reader's character array
+
+  private static final class NewElement
+  {
+    private int tag = -1, objID = -1;
+
+    private void read(XMLStreamReader reader)
+    {
+      tag = tagToNdx.getOrDefault(reader.getLocalName(), -1);
+      objID = -1;
+
+      for (int ndx = 0; ndx < reader.getAttributeCount(); ndx++)
+        if (reader.getAttributeLocalName(ndx).equals("id"))
+          objID = Integer.parseInt(reader.getAttributeValue(ndx));
+    }
+  }
+
+  private static long loadNew(InputStream in) throws XMLStreamException
+  {
+    XMLStreamReader reader = factory.createXMLStreamReader(in);
+    NewElement element = new NewElement();
+    StringBuilder nodeText = new StringBuilder();
+    long checksum = 0;
+
+    while (reader.hasNext())
+    {
+      if ((reader.next() != XMLStreamConstants.START_ELEMENT) || (reader.getLocalName().equals("record") == false))
+        continue;
+
+      for (int ndx = 0; ndx < reader.getAttributeCount(); ndx++)
+        checksum += reader.getAttributeValue(ndx).hashCode();
+
+      boolean notDoneReadingRecord = true;
+      nodeText.setLength(0);
+
+      while (notDoneReadingRecord)
+      {
+        switch (reader.next())
+        {
+          case XMLStreamConstants.START_ELEMENT :
+
+            element.read(reader);
+            nodeText.setLength(0);
+            break;
+
+          case XMLStreamConstants.END_ELEMENT :
+
+            if (reader.getLocalName().equals("record"))
+              notDoneReadingRecord = false;
+            else
+              checksum = item(checksum, element.tag, element.objID, nodeText.toString());
+
+            nodeText.setLength(0);
+            break;
+
+          case XMLStreamConstants.CHARACTERS : nodeText.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength()); break;
+          default                            : break;
+        }
+      }
+    }
+
+    return checksum;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model;
+
+import static org.hypernomicon.model.SyntheticRecordsXML.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.hypernomicon.model.Exceptions.HDB_InternalError;
+import org.hypernomicon.model.Exceptions.TerminateTaskException;
+import org.hypernomicon.util.filePath.FilePath;
+
+//---------------------------------------------------------------------------
+
+// Compares saving every XML file with saving only the files whose records changed, over about 100k synthetic
+// records, each save editing one note. Both write the files through RecordsXMLFile the way HyperDB.saveAllToDisk
+// does. Building a loaded HyperDB needs the JavaFX UI, so the records come from SyntheticRecordsXML and a file is
+// treated as dirty the way xmlFileNeedsSave treats it: one of its records changed, or the file is missing.
+// Afterwards the incrementally saved files are checked to be byte-identical to a full save of the same records.
+// This is not run by the test suite; run it with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.model.XMLSaveBenchmark
+
+public final class XMLSaveBenchmark
+{
+  private static final int ROUNDS = 5;
+  private static final int NOTE_FILE = 10;
+
+  private static final int[][] versions = new int[FILE_NAMES.length][];
+  private static final boolean[] dirty = new boolean[FILE_NAMES.length];
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args) throws Exception
+  {
+    for (int fileNdx = 0; fileNdx < FILE_NAMES.length; fileNdx++)
+      versions[fileNdx] = new int[FILE_COUNTS[fileNdx]];
+
+    Path dir = Files.createTempDirectory("xmlSaveBenchmark"), fullDir = dir.resolve("full"), incDir = dir.resolve("incremental");
+    Random random = new Random(1);
+
+    try
+    {
+      Files.createDirectory(fullDir);
+      Files.createDirectory(incDir);
+
+      save(incDir, false);  // Every file is missing, so this writes them all
+      save(fullDir, true);  // Warm-up
+
+      long bestFull = Long.MAX_VALUE, bestInc = Long.MAX_VALUE;
+
+      for (int round = 0; round < ROUNDS; round++)
+      {
+        editNote(random);
+
+        long start = System.nanoTime();
+        save(fullDir, true);
+        bestFull = Math.min(bestFull, System.nanoTime() - start);
+
+        editNote(random);
+
+        start = System.nanoTime();
+        save(incDir, false);
+        bestInc = Math.min(bestInc, System.nanoTime() - start);
+      }
+
+      save(fullDir, true);
+
+      long fullBytes = 0;
+
+      for (String fileName : FILE_NAMES)
+      {
+        if (Files.mismatch(fullDir.resolve(fileName), incDir.resolve(fileName)) != -1L)
+          throw new AssertionError(fileName + " differs between the full and incremental saves");
+
+        fullBytes += Files.size(fullDir.resolve(fileName));
+      }
+
+      try (Stream<Path> files = Files.list(incDir))
+      {
+        if (files.count() != FILE_NAMES.length)
+          throw new AssertionError("A temporary file was left behind");
+      }
+
+      System.out.printf("%,d records in %d files, %,d bytes%n", totalCount(), FILE_NAMES.length, fullBytes);
+      System.out.printf("Full save:        %8.1f ms%n", bestFull / 1e6);
+      System.out.printf("Incremental save: %8.1f ms (%s only, %,d bytes)%n", bestInc / 1e6, FILE_NAMES[NOTE_FILE], Files.size(incDir.resolve(FILE_NAMES[NOTE_FILE])));
+      System.out.printf("Speedup:          %8.1fx%n", (double) bestFull / bestInc);
+      System.out.println("Incrementally saved files are byte-identical to a full save");
+    }
+    finally
+    {
+      try (Stream<Path> paths = Files.walk(dir))
+      {
+        paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void editNote(Random random)
+  {
+    versions[NOTE_FILE][random.nextInt(FILE_COUNTS[NOTE_FILE])]++;
+    dirty[NOTE_FILE] = true;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void save(Path dir, boolean all) throws HDB_InternalError, TerminateTaskException, IOException
+  {
+    for (int fileNdx = 0; fileNdx < FILE_NAMES.length; fileNdx++)
+    {
+      Path path = dir.resolve(FILE_NAMES[fileNdx]);
+
+      if (all || dirty[fileNdx] || (Files.exists(path) == false))
+        writeFile(path, fileNdx);
+    }
+
+    if (all == false)
+      Arrays.fill(dirty, false);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void writeFile(Path path, int fileNdx) throws HDB_InternalError, TerminateTaskException, IOException
+  {
+    String typeTag = TYPE_TAGS[fileNdx];
+    int[] fileVersions = versions[fileNdx];
+
+    RecordsXMLFile.write(new FilePath(path), out ->
+    {
+      StringBuilder xml = new StringBuilder();
+
+      for (int ndx = 0; ndx < fileVersions.length; ndx++)
+      {
+        appendRecord(xml, typeTag, ndx + 1, fileVersions[ndx]);
+        out.append(xml);
+        xml.setLength(0);
+      }
+    });
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
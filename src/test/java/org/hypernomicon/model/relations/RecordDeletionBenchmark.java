@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model.relations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.google.common.collect.ArrayListMultimap;
+
+//---------------------------------------------------------------------------
+
+// Times deleting 1, 100 and 10k records out of 100k, where every record is the subject of three objects in each
+// of four relations. The relations are kept in ArrayListMultimaps the way RelationSet keeps them. Building a loaded
+// HyperDB needs the JavaFX UI, so the records are stand-ins with just an ID and an expired flag, and the two ways of
+// deleting are copies of what HyperDB did:
+//
+// Before: each record was deleted on its own, and each deletion resolved the pointers of every record in the
+// database (HyperCore.resolvePointers) and then rebuilt both multimaps of every relation (RelationSet.cleanup).
+//
+// Now: HyperDB.deleteRecords expires all of the records first, collecting the subjects that point to them
+// (RelationSet.addReferrers), resolves the pointers of just those subjects (resolvePointersToExpiredRecords), and
+// then removes only the entries involving a deleted record (RelationSet.removeExpiredRecord).
+//
+// Both must leave the same relations. Each old deletion takes about as long as the first, so for more than ten
+// records the old time is estimated from the time for ten. This is not run by the test suite; run it with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.model.relations.RecordDeletionBenchmark
+
+public final class RecordDeletionBenchmark
+{
+  private static final int RECORD_COUNT = 100000, RELATION_COUNT = 4, OBJECTS_PER_SUBJECT = 3, ROUNDS = 3, MAX_OLD_DELETIONS = 10;
+  private static final int[] DELETION_COUNTS = { 1, 100, 10000 };
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static final class Record
+  {
+    private final int id;
+    private boolean expired = false;
+
+    private Record(int id) { this.id = id; }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static final class Relation
+  {
+    private ArrayListMultimap<Record, Record> subjToObjList = ArrayListMultimap.create(),
+                                              objToSubjList = ArrayListMultimap.create();
+
+  //---------------------------------------------------------------------------
+
+    private void resolvePointers(Record subj)
+    {
+      List<Record> objs = subjToObjList.get(subj);
+
+      for (int ndx = 0; ndx < objs.size(); ndx++)
+      {
+        Record obj = objs.get(ndx);
+
+        if (obj.expired)
+        {
+          objs.remove(ndx--);
+          objToSubjList.remove(obj, subj);
+        }
+      }
+    }
+
+  //---------------------------------------------------------------------------
+
+    private void cleanup()
+    {
+      subjToObjList = rebuildMultimap(subjToObjList);
+      objToSubjList = rebuildMultimap(objToSubjList);
+    }
+
+    private static ArrayListMultimap<Record, Record> rebuildMultimap(ArrayListMultimap<Record, Record> oldMap)
+    {
+      ArrayListMultimap<Record, Record> newMap = ArrayListMultimap.create();
+
+      oldMap.entries().forEach(entry ->
+      {
+        if ((entry.getKey().expired == false) && (entry.getValue().expired == false))
+          newMap.put(entry.getKey(), entry.getValue());
+      });
+
+      return newMap;
+    }
+
+  //---------------------------------------------------------------------------
+
+    private void removeExpiredRecord(Record record)
+    {
+      subjToObjList.removeAll(record).forEach(obj -> objToSubjList.remove(obj, record));
+      objToSubjList.removeAll(record).forEach(subj -> subjToObjList.get(subj).removeIf(curObj -> curObj == record));
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static final class Database
+  {
+    private final Record[] records = new Record[RECORD_COUNT];
+    private final Relation[] relations = new Relation[RELATION_COUNT];
+
+  //---------------------------------------------------------------------------
+
+    private Database()
+    {
+      Random random = new Random(RECORD_COUNT);
+
+      for (int id = 0; id < RECORD_COUNT; id++)
+        records[id] = new Record(id);
+
+      for (int relNdx = 0; relNdx < RELATION_COUNT; relNdx++)
+      {
+        Relation relation = relations[relNdx] = new Relation();
+
+        for (Record subj : records)
+          for (int ndx = 0; ndx < OBJECTS_PER_SUBJECT; ndx++)
+          {
+            Record obj = records[random.nextInt(RECORD_COUNT)];
+
+            relation.subjToObjList.put(subj, obj);
+            relation.objToSubjList.put(obj, subj);
+          }
+      }
+    }
+
+  //---------------------------------------------------------------------------
+
+    private void deleteOneAtATime(int[] ids)
+    {
+      for (int id : ids)
+      {
+        records[id].expired = true;
+
+        for (Record record : records)
+          if (record.expired == false)
+            for (Relation relation : relations)
+              relation.resolvePointers(record);
+
+        for (Relation relation : relations)
+          relation.cleanup();
+      }
+    }
+
+  //---------------------------------------------------------------------------
+
+    private void deleteTogether(int[] ids)
+    {
+      Set<Record> referrersToResolve = new LinkedHashSet<>();
+      List<Record> expiredRecords = new ArrayList<>();
+
+      for (int id : ids)
+      {
+        Record record = records[id];
+
+        for (Relation relation : relations)
+          referrersToResolve.addAll(relation.objToSubjList.get(record));
+
+        record.expired = true;
+        expiredRecords.add(record);
+      }
+
+      for (Record referrer : referrersToResolve)
+        if (referrer.expired == false)
+          for (Relation relation : relations)
+            relation.resolvePointers(referrer);
+
+      for (Record record : expiredRecords)
+        for (Relation relation : relations)
+          relation.removeExpiredRecord(record);
+    }
+
+  //---------------------------------------------------------------------------
+
+    // The object IDs of each subject in order, then the sorted subject IDs of each object
+
+    private List<List<Integer>> contents()
+    {
+      List<List<Integer>> contents = new ArrayList<>();
+
+      for (Relation relation : relations)
+        for (Record record : records)
+        {
+          List<Integer> objIDs = new ArrayList<>(), subjIDs = new ArrayList<>();
+
+          relation.subjToObjList.get(record).forEach(obj -> objIDs.add(obj.id));
+          relation.objToSubjList.get(record).forEach(subj -> subjIDs.add(subj.id));
+          Collections.sort(subjIDs);
+
+          contents.add(objIDs);
+          contents.add(subjIDs);
+        }
+
+      return contents;
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args)
+  {
+    int[] ids = randomIDs(MAX_OLD_DELETIONS);
+    Database oldDB = new Database(), newDB = new Database();
+
+    oldDB.deleteOneAtATime(ids);  // Also the warm-up
+    newDB.deleteTogether(ids);
+
+    if (oldDB.contents().equals(newDB.contents()) == false)
+      throw new AssertionError("The two ways of deleting left different relations");
+
+    System.out.printf("%,d records, %d relations, %,d relation entries%n", RECORD_COUNT, RELATION_COUNT, RECORD_COUNT * RELATION_COUNT * OBJECTS_PER_SUBJECT);
+
+    for (int count : DELETION_COUNTS)
+    {
+      int[] deletionIDs = randomIDs(count);
+      int oldCount = Math.min(count, MAX_OLD_DELETIONS);
+
+      long oldNanos = time(db -> db.deleteOneAtATime(oldCount == count ? deletionIDs : randomIDs(oldCount))) * count / oldCount,
+           newNanos = time(db -> db.deleteTogether(deletionIDs));
+
+      System.out.printf("Delete %,6d: before %,12.1f ms%s, now %,8.2f ms, %,7.0fx faster%n", count, oldNanos / 1e6, oldCount == count ? "       " : " (est.)",
+                        newNanos / 1e6, (double) oldNanos / newNanos);
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static int[] randomIDs(int count)
+  {
+    List<Integer> ids = new ArrayList<>();
+
+    for (int id = 0; id < RECORD_COUNT; id++)
+      ids.add(id);
+
+    Collections.shuffle(ids, new Random(count));
+
+    return ids.subList(0, count).stream().mapToInt(Integer::intValue).toArray();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @FunctionalInterface private interface Deletion { void delete(Database db); }
+
+  private static long time(Deletion deletion)
+  {
+    long best = Long.MAX_VALUE;
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      Database db = new Database();
+
+      long start = System.nanoTime();
+      deletion.delete(db);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+
+    return best;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model.relations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//---------------------------------------------------------------------------
+
+// Times the relation cycle check on large synthetic DAGs where every node links to several nodes in the
+// next layer, so the number of paths grows exponentially with the depth. Each check walks the whole DAG
+// because the target is not reachable. This is not run by the test suite; run it with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.model.relations.RelationGraphBenchmark
+
+public final class RelationGraphBenchmark
+{
+  private static final int[][] SHAPES = { { 100, 100 }, { 1000, 100 }, { 100, 10000 } };  // { layers, width }
+  private static final int LINKS_PER_NODE = 3, ROUNDS = 5;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args)
+  {
+    run(SHAPES[0][0], SHAPES[0][1], false);  // Warm-up
+
+    for (int[] shape : SHAPES)
+      run(shape[0], shape[1], true);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void run(int layers, int width, boolean print)
+  {
+    Random random = new Random(layers * width);
+    List<List<Integer>> graph = new ArrayList<>();
+
+    for (int node = 0; node < layers * width; node++)
+    {
+      List<Integer> objs = new ArrayList<>();
+      int nextLayerStart = ((node / width) + 1) * width;
+
+      if (nextLayerStart < layers * width)
+        for (int ndx = 0; ndx < LINKS_PER_NODE; ndx++)
+          objs.add(nextLayerStart + random.nextInt(width));
+
+      graph.add(objs);
+    }
+
+    long bestNanos = Long.MAX_VALUE;
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      long start = System.nanoTime();
+
+      for (int root = 0; root < width; root += Math.max(1, width / 10))
+        if (RelationGraph.reaches(root, -1, graph::get))
+          throw new AssertionError();
+
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+    }
+
+    if (print)
+      System.out.printf("%,6d layers x %,6d nodes: %,7d ms for 10 cycle checks%n", layers, width, bestNanos / 1000000);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.model.relations;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+//---------------------------------------------------------------------------
+
+public class RelationGraphTest
+{
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static List<Integer> successors(Map<Integer, List<Integer>> graph, int node)
+  {
+    return graph.getOrDefault(node, Collections.emptyList());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void followsChainsWithoutOverflowingTheStack()
+  {
+    Map<Integer, List<Integer>> graph = new HashMap<>();
+    int length = 200000;
+
+    for (int node = 0; node < length; node++)
+      graph.put(node, List.of(node + 1));
+
+    assertTrue(RelationGraph.reaches(0, length, node -> successors(graph, node)));
+    assertFalse(RelationGraph.reaches(length, 0, node -> successors(graph, node)));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // A ladder of diamonds has 2^n paths from top to bottom, but each node should only be expanded once
+
+  @Test public void expandsSharedAncestorsOnce()
+  {
+    Map<Integer, List<Integer>> graph = new HashMap<>();
+    int layers = 60;
+
+    for (int layer = 0; layer < layers; layer++)
+    {
+      graph.put(layer * 2    , List.of((layer + 1) * 2, (layer + 1) * 2 + 1));
+      graph.put(layer * 2 + 1, List.of((layer + 1) * 2, (layer + 1) * 2 + 1));
+    }
+
+    List<Integer> expanded = new ArrayList<>();
+
+    assertFalse(RelationGraph.reaches(0, -1, node -> { expanded.add(node); return successors(graph, node); }));
+    assertEquals((layers + 1) * 2 - 1, expanded.size());  // Every node except the unreachable node 1
+
+    assertTrue(RelationGraph.reaches(1, layers * 2 + 1, node -> successors(graph, node)));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void stopsOnExistingCycles()
+  {
+    Map<Integer, List<Integer>> graph = Map.of(1, List.of(2), 2, List.of(3), 3, List.of(1));
+
+    assertFalse(RelationGraph.reaches(1, 4, node -> successors(graph, node)));
+    assertTrue(RelationGraph.reaches(2, 1, node -> successors(graph, node)));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.queryEngines;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.hypernomicon.model.records.HDT_Record;
+import org.hypernomicon.querySources.QuerySource;
+
+//---------------------------------------------------------------------------
+
+// Times a few typical saved favorite queries over 100k works three ways:
+//
+// Interpreted: how QueryTabCtrlr used to run a query, setting the operands of each row in a static field and
+// evaluating every row for every record, with the operands upper- or lower-cased each time.
+//
+// Compiled: the rows compiled into one QueryPredicate, with the operands normalized once and AND/OR
+// short-circuiting, tested record by record as the query task does for small queries or non-thread-safe rows.
+//
+// Parallel: the compiled predicate tested by ParallelQueryEvaluator on 1, 2, 4, ... threads up to the number of
+// cores, to show how close to linear the scaling is.
+//
+// Building a loaded HyperDB needs the JavaFX UI, so the works are stand-ins that only answer getID, listName and
+// getAllStrings, and the rows are copies of the query code for those fields, without the RecordTextIndex filter
+// that "Any field contains" uses. All three must return the same records in the same order. This is not run by
+// the test suite; run it with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.queryEngines.FavoriteQueryBenchmark
+
+public final class FavoriteQueryBenchmark
+{
+  private static final int RECORD_COUNT = 100000, ROUNDS = 5;
+
+  private static final String[] WORDS = { "argument", "knowledge", "perception", "justification", "modal", "realism", "content",
+                                          "belief", "reasons", "normativity", "causation", "mind", "semantic", "externalism",
+                                          "consciousness", "inference", "truth", "evidence", "agency", "value", "language",
+                                          "metaphysics", "explanation", "representation", "intentionality", "testimony" },
+
+                              LAST_NAMES = { "Smith", "Jones", "Quine", "Lewis", "Kripke", "Anscombe", "Foot", "Davidson", "Sellars",
+                                             "Putnam", "Burge", "Williamson", "Millikan", "Dretske", "Chalmers", "Fodor", "Searle" };
+
+  private static final String[] titles = new String[RECORD_COUNT], authors = new String[RECORD_COUNT],
+                                years  = new String[RECORD_COUNT], abstracts = new String[RECORD_COUNT];
+
+  private static volatile int sink;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private enum RowType { TITLE_CONTAINS, AUTHOR_CONTAINS, YEAR_EQUALS, ANY_FIELD_CONTAINS }
+
+  private static final class Row
+  {
+    private final RowType type;
+    private final String operand;
+    private final boolean or;  // Connective with the rows before it
+
+    private Row(RowType type, String operand, boolean or)
+    {
+      this.type = type;
+      this.operand = operand;
+      this.or = or;
+    }
+  }
+
+  private static final class Favorite
+  {
+    private final String name;
+    private final Row[] rows;
+
+    private Favorite(String name, Row... rows)
+    {
+      this.name = name;
+      this.rows = rows;
+    }
+  }
+
+  private static final Favorite[] FAVORITES =
+  {
+    new Favorite("Title contains \"knowledge\"",
+                 new Row(RowType.TITLE_CONTAINS, "knowledge", false)),
+
+    new Favorite("Title contains \"mind\" and year is 2015",
+                 new Row(RowType.TITLE_CONTAINS, "mind", false), new Row(RowType.YEAR_EQUALS, "2015", false)),
+
+    new Favorite("Author Smith, or title \"realism\", or year 1999",
+                 new Row(RowType.AUTHOR_CONTAINS, "smith", false), new Row(RowType.TITLE_CONTAINS, "realism", true), new Row(RowType.YEAR_EQUALS, "1999", true)),
+
+    new Favorite("Year is 2010 and any field contains \"causation\"",
+                 new Row(RowType.YEAR_EQUALS, "2010", false), new Row(RowType.ANY_FIELD_CONTAINS, "causation", false))
+  };
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args)
+  {
+    List<HDT_Record> records = createRecords(new Random(1));
+    QuerySource source = allRecords(records);
+
+    List<Integer> threadCounts = new ArrayList<>();
+    int cores = Runtime.getRuntime().availableProcessors();
+
+    for (int threads = 1; threads < cores; threads *= 2)
+      threadCounts.add(threads);
+
+    threadCounts.add(cores);
+
+    System.out.printf("%,d records, %d available processors; times in ms%n%n", RECORD_COUNT, cores);
+    System.out.printf("%-50s %11s %9s", "Favorite", "Interpreted", "Compiled");
+    threadCounts.forEach(threads -> System.out.printf(" %12s", threads + (threads == 1 ? " thread" : " threads")));
+    System.out.println();
+
+    for (Favorite favorite : FAVORITES)
+    {
+      QueryPredicate predicate = compile(favorite, source);
+      List<HDT_Record> expected = interpret(records, favorite.rows);
+
+      if ((compiled(records, predicate).equals(expected) == false) || (parallel(records, predicate, ForkJoinPool.commonPool()).equals(expected) == false))
+        throw new AssertionError("Different results for " + favorite.name);
+
+      System.out.printf("%-50s %11.1f %9.1f", favorite.name, time(() -> sink += interpret(records, favorite.rows).size()) / 1e6,
+                                                             time(() -> sink += compiled(records, predicate).size()) / 1e6);
+      long oneThread = 0;
+
+      for (int threads : threadCounts)
+      {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long nanos = time(() -> sink += parallel(records, predicate, pool).size());
+        pool.shutdown();
+
+        if (threads == 1) oneThread = nanos;
+
+        System.out.printf(" %5.1f (%4.1fx)", nanos / 1e6, (double) oneThread / nanos);
+      }
+
+      System.out.printf("  %,d matches%n", expected.size());
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static long time(Runnable runnable)
+  {
+    for (int round = 0; round < ROUNDS; round++)  // Warm-up
+      runnable.run();
+
+    long best = Long.MAX_VALUE;
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      long start = System.nanoTime();
+      runnable.run();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+
+    return best;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static List<HDT_Record> createRecords(Random random)
+  {
+    List<HDT_Record> records = new ArrayList<>(RECORD_COUNT);
+
+    for (int id = 0; id < RECORD_COUNT; id++)
+    {
+      titles[id] = words(random, 3 + random.nextInt(6));
+      authors[id] = LAST_NAMES[random.nextInt(LAST_NAMES.length)] + ", " + (char) ('A' + random.nextInt(26)) + '.';
+      years[id] = String.valueOf(1950 + random.nextInt(71));
+      abstracts[id] = words(random, 30 + random.nextInt(50));
+
+      int recordID = id;
+
+      records.add((HDT_Record) Proxy.newProxyInstance(HDT_Record.class.getClassLoader(), new Class<?>[] { HDT_Record.class }, (proxy, method, methodArgs) ->
+      {
+        switch (method.getName())
+        {
+          case "getID"    : return recordID;
+          case "listName" : return titles[recordID];
+          case "hashCode" : return System.identityHashCode(proxy);
+          case "equals"   : return proxy == methodArgs[0];
+
+          case "getAllStrings" :
+
+            @SuppressWarnings("unchecked") List<String> list = (List<String>) methodArgs[0];
+            list.add(titles[recordID]);
+            list.add(authors[recordID]);
+            list.add(years[recordID]);
+            list.add(abstracts[recordID]);
+            return null;
+
+          default : return null;
+        }
+      }));
+    }
+
+    return records;
+  }
+
+  private static String words(Random random, int count)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (int ndx = 0; ndx < count; ndx++)
+      sb.append(ndx == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+
+    return sb.toString();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static QuerySource allRecords(List<HDT_Record> records)
+  {
+    return new QuerySource()
+    {
+      @Override public boolean hasNext()                         { return false; }
+      @Override public HDT_Record next()                         { throw new NoSuchElementException(); }
+      @Override public int count()                               { return records.size(); }
+      @Override public QuerySourceType sourceType()              { return QuerySourceType.QST_allRecords; }
+      @Override public boolean containsRecord(HDT_Record record) { return true; }
+    };
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static String param1;  // The operand of the row being evaluated, as QueryTabCtrlr kept it
+
+  private static List<HDT_Record> interpret(List<HDT_Record> records, Row[] rows)
+  {
+    List<HDT_Record> results = new ArrayList<>();
+
+    for (HDT_Record record : records)
+    {
+      boolean add = false;
+
+      for (int ndx = 0; ndx < rows.length; ndx++)
+      {
+        param1 = rows[ndx].operand;
+        boolean result = evaluate(record, rows[ndx].type);
+
+        if      (ndx == 0)       add = result;
+        else if (rows[ndx].or)   add = add || result;
+        else                     add = add && result;
+      }
+
+      if (add)
+        results.add(record);
+    }
+
+    return results;
+  }
+
+  private static boolean evaluate(HDT_Record record, RowType type)
+  {
+    switch (type)
+    {
+      case TITLE_CONTAINS  : return record.listName().toUpperCase().indexOf(param1.toUpperCase()) >= 0;
+      case AUTHOR_CONTAINS : return authors[record.getID()].toLowerCase().trim().contains(param1.trim().toLowerCase());
+      case YEAR_EQUALS     : return years[record.getID()].trim().equalsIgnoreCase(param1.trim());
+
+      default :
+
+        List<String> list = new ArrayList<>();
+        record.getAllStrings(list, true);
+        String val1 = param1.toLowerCase();
+        return list.stream().anyMatch(str -> str.toLowerCase().indexOf(val1) >= 0);
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static QueryPredicate compile(Favorite favorite, QuerySource source)
+  {
+    QueryPredicate predicate = null;
+
+    for (Row row : favorite.rows)
+      predicate = predicate == null ? QueryPredicate.firstRow(source, compileRow(row)) : QueryPredicate.connect(predicate, source, compileRow(row), row.or);
+
+    return predicate;
+  }
+
+  private static QueryPredicate compileRow(Row row)
+  {
+    switch (row.type)
+    {
+      case TITLE_CONTAINS :
+
+        String nameUC = row.operand.toUpperCase();
+        return record -> record.listName().toUpperCase().indexOf(nameUC) >= 0;
+
+      case AUTHOR_CONTAINS :
+
+        String textLC = row.operand.trim().toLowerCase();
+        return record -> authors[record.getID()].toLowerCase().trim().contains(textLC);
+
+      case YEAR_EQUALS :
+
+        String text = row.operand.trim();
+        return record -> years[record.getID()].trim().equalsIgnoreCase(text);
+
+      default :
+
+        String valLC = row.operand.toLowerCase();
+        ThreadLocal<List<String>> threadList = ThreadLocal.withInitial(ArrayList::new);
+
+        return record ->
+        {
+          List<String> list = threadList.get();
+          list.clear();
+          record.getAllStrings(list, true);
+
+          for (String str : list)
+            if (str.toLowerCase().indexOf(valLC) >= 0) return true;
+
+          return false;
+        };
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static List<HDT_Record> compiled(List<HDT_Record> records, QueryPredicate predicate)
+  {
+    List<HDT_Record> results = new ArrayList<>();
+
+    for (HDT_Record record : records)
+      if (predicate.test(record))
+        results.add(record);
+
+    return results;
+  }
+
+  private static List<HDT_Record> parallel(List<HDT_Record> records, QueryPredicate predicate, ForkJoinPool pool)
+  {
+    return ParallelQueryEvaluator.evaluate(records, predicate, () -> false, testedCount -> {}, pool);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.queryEngines;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import org.hypernomicon.model.records.HDT_Record;
+import org.hypernomicon.querySources.QuerySource;
+
+//---------------------------------------------------------------------------
+
+public class QueryPredicateTest
+{
+  private final HDT_Record rec1 = newRecord(), rec2 = newRecord(), rec3 = newRecord();
+  private final List<String> calls = new ArrayList<>();
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static HDT_Record newRecord()
+  {
+    return (HDT_Record) Proxy.newProxyInstance(HDT_Record.class.getClassLoader(), new Class<?>[] { HDT_Record.class }, (proxy, method, args) -> null);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static QuerySource source(HDT_Record... records)
+  {
+    return new QuerySource()
+    {
+      @Override public boolean hasNext()                         { return false; }
+      @Override public HDT_Record next()                         { throw new NoSuchElementException(); }
+      @Override public int count()                               { return records.length; }
+      @Override public QuerySourceType sourceType()              { return QuerySourceType.QST_filteredRecords; }
+      @Override public boolean containsRecord(HDT_Record record) { return List.of(records).stream().anyMatch(rec -> rec == record); }
+    };
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // A row that matches the given records and logs each call
+
+  private QueryPredicate row(String name, HDT_Record... matches)
+  {
+    return record ->
+    {
+      calls.add(name);
+      return List.of(matches).stream().anyMatch(rec -> rec == record);
+    };
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void firstRowOnlyAppliesToItsSource()
+  {
+    QueryPredicate predicate = QueryPredicate.firstRow(source(rec1, rec2), row("A", rec1, rec3));
+
+    assertTrue(predicate.test(rec1));
+    assertFalse(predicate.test(rec2));
+    assertFalse(predicate.test(rec3));
+    assertEquals(List.of("A", "A"), calls);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // A AND B OR C is (A AND B) OR C, not A AND (B OR C)
+
+  @Test public void combinesRowsLeftToRight()
+  {
+    QuerySource all = source(rec1, rec2, rec3);
+
+    QueryPredicate predicate = QueryPredicate.connect(QueryPredicate.connect(QueryPredicate.firstRow(all, row("A", rec1)),
+                                                                             all, row("B", rec2), false),
+                                                      all, row("C", rec2, rec3), true);
+
+    assertFalse(predicate.test(rec1));
+    assertTrue (predicate.test(rec2));
+    assertTrue (predicate.test(rec3));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void recordOutsideRowSourceKeepsEarlierResult()
+  {
+    QueryPredicate first = QueryPredicate.firstRow(source(rec1, rec2), row("A", rec1));
+
+    QueryPredicate and = QueryPredicate.connect(first, source(rec2), row("B"), false),
+                   or  = QueryPredicate.connect(first, source(rec2), row("B", rec2), true);
+
+    assertTrue(and.test(rec1));
+    assertEquals(List.of("A"), calls);  // B was skipped
+
+    assertTrue (or.test(rec1));
+    assertTrue (or.test(rec2));
+    assertFalse(or.test(rec3));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void shortCircuits()
+  {
+    QuerySource all = source(rec1, rec2);
+
+    QueryPredicate and = QueryPredicate.connect(QueryPredicate.firstRow(all, row("A", rec1)), all, row("B", rec1), false);
+
+    assertFalse(and.test(rec2));
+    assertEquals(List.of("A"), calls);
+
+    calls.clear();
+
+    QueryPredicate or = QueryPredicate.connect(QueryPredicate.firstRow(all, row("A", rec1)), all, row("B", rec2), true);
+
+    assertTrue(or.test(rec1));
+    assertEquals(List.of("A"), calls);
+
+    assertTrue(or.test(rec2));
+    assertEquals(List.of("A", "A", "B"), calls);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void passesStartAndFinishToEveryRow()
+  {
+    List<String> events = new ArrayList<>();
+
+    QueryPredicate predicate = QueryPredicate.connect(QueryPredicate.firstRow(source(rec1), lifecycleRow("A", events)),
+                                                      source(rec1), lifecycleRow("B", events), true);
+    predicate.start();
+    predicate.finish(true);
+
+    assertEquals(List.of("A start", "B start", "A finish true", "B finish true"), events);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static QueryPredicate lifecycleRow(String name, List<String> events)
+  {
+    return new QueryPredicate()
+    {
+      @Override public boolean test(HDT_Record record)  { return false; }
+      @Override public void start()                     { events.add(name + " start"); }
+      @Override public void finish(boolean cancelled)   { events.add(name + " finish " + cancelled); }
+    };
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void singleThreadedRowMakesWholeQuerySingleThreaded()
+  {
+    QuerySource all = source(rec1);
+    QueryPredicate first = QueryPredicate.firstRow(all, row("A", rec1));
+
+    assertTrue(QueryPredicate.connect(first, all, row("B"), false).isThreadSafe());
+
+    QueryPredicate predicate = QueryPredicate.connect(first, all, QueryPredicate.singleThreaded(row("B", rec1)), false);
+
+    assertFalse(predicate.isThreadSafe());
+    assertTrue(predicate.test(rec1));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
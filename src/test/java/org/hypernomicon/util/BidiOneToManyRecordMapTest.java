@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.util;
+
+import static org.hypernomicon.model.records.HDT_RecordType.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.hypernomicon.model.records.HDT_Record;
+
+//---------------------------------------------------------------------------
+
+public class BidiOneToManyRecordMapTest
+{
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static HDT_Record newRecord(int id)
+  {
+    return (HDT_Record) Proxy.newProxyInstance(HDT_Record.class.getClassLoader(), new Class<?>[] { HDT_Record.class }, (proxy, method, args) ->
+    {
+      switch (method.getName())
+      {
+        case "getType"  : return hdtPerson;
+        case "getID"    : return id;
+        case "hashCode" : return System.identityHashCode(proxy);
+        case "equals"   : return proxy == args[0];
+        case "toString" : return "Record " + id;
+        default         : return null;
+      }
+    });
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void remove(Map<HDT_Record, Set<HDT_Record>> map, HDT_Record key, HDT_Record value)
+  {
+    Set<HDT_Record> set = map.get(key);
+    if (set == null) return;
+
+    set.remove(value);
+    if (set.isEmpty()) map.remove(key);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void agreesWithHashSetsUnderRandomChanges()
+  {
+    BidiOneToManyRecordMap map = new BidiOneToManyRecordMap();
+    Map<HDT_Record, Set<HDT_Record>> forward = new HashMap<>(), reverse = new HashMap<>();
+    List<HDT_Record> records = new ArrayList<>();
+    Random random = new Random(3);
+
+    for (int id = 1; id <= 60; id++)
+      records.add(newRecord(id));
+
+    for (int ndx = 0; ndx < 20000; ndx++)
+    {
+      HDT_Record from = records.get(random.nextInt(records.size())),
+                 to   = records.get(random.nextInt(records.size()));
+
+      switch (random.nextInt(10))
+      {
+        case 0 :
+
+          map.removeRecord(from);
+
+          new HashSet<>(forward.getOrDefault(from, Set.of())).forEach(target -> remove(reverse, target, from));
+          new HashSet<>(reverse.getOrDefault(from, Set.of())).forEach(source -> remove(forward, source, from));
+          forward.remove(from);
+          reverse.remove(from);
+          break;
+
+        case 1 : case 2 : case 3 :
+
+          map.removeForward(from, to);
+
+          remove(forward, from, to);
+          remove(reverse, to, from);
+          break;
+
+        default :
+
+          map.addForward(from, to);
+
+          forward.computeIfAbsent(from, key -> new HashSet<>()).add(to);
+          reverse.computeIfAbsent(to, key -> new HashSet<>()).add(from);
+          break;
+      }
+
+      assertEquals(forward.getOrDefault(from, Set.of()), map.getForwardSet(from));
+      assertEquals(reverse.getOrDefault(to, Set.of()), map.getReverseSet(to));
+      assertEquals(forward.getOrDefault(from, Set.of()).contains(to), map.containsForward(from, to));
+    }
+
+    for (HDT_Record record : records)
+    {
+      assertEquals(forward.getOrDefault(record, Set.of()), map.getForwardSet(record));
+      assertEquals(reverse.getOrDefault(record, Set.of()), map.getReverseSet(record));
+
+      List<HDT_Record> visited = new ArrayList<>();
+      map.forEachForward(record, visited::add);
+
+      assertEquals(forward.getOrDefault(record, Set.of()).size(), visited.size());
+      assertEquals(forward.getOrDefault(record, Set.of()), new HashSet<>(visited));
+    }
+
+    assertEquals(forward.keySet(), map.getAllHeads());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void setsAreSnapshots()
+  {
+    BidiOneToManyRecordMap map = new BidiOneToManyRecordMap();
+    HDT_Record from = newRecord(1), to1 = newRecord(2), to2 = newRecord(3);
+
+    map.addForward(from, to1);
+    Set<HDT_Record> before = map.getForwardSet(from);
+
+    map.addForward(from, to2);
+    map.removeForward(from, to1);
+
+    assertEquals(Set.of(to1), before);
+    assertEquals(Set.of(to2), map.getForwardSet(from));
+    assertEquals(Set.of(), map.getReverseSet(to1));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void headsExcludeUnsavedRecords()
+  {
+    BidiOneToManyRecordMap map = new BidiOneToManyRecordMap();
+    HDT_Record saved = newRecord(1), unsaved = newRecord(-1), target = newRecord(2);
+
+    map.addForward(saved, target);
+    map.addForward(unsaved, target);
+
+    assertEquals(Set.of(saved), map.getAllHeads());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
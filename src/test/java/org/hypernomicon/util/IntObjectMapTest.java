@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+//---------------------------------------------------------------------------
+
+public class IntObjectMapTest
+{
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void putGetRemove()
+  {
+    IntObjectMap<String> map = new IntObjectMap<>();
+
+    assertTrue(map.isEmpty());
+    assertNull(map.put(5, "five"));
+    assertEquals("five", map.put(5, "FIVE"));
+    assertNull(map.put(-3, "minus three"));
+
+    assertEquals(2, map.size());
+    assertEquals("FIVE", map.get(5));
+    assertTrue(map.containsKey(-3));
+    assertFalse(map.containsKey(4));
+    assertNull(map.get(4));
+
+    assertEquals("FIVE", map.remove(5));
+    assertNull(map.remove(5));
+    assertEquals(1, map.size());
+
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertNull(map.get(-3));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test(expected = NullPointerException.class)
+  public void rejectsNullValues()
+  {
+    new IntObjectMap<String>().put(1, null);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Removing from the middle of a run of colliding keys must not hide the keys after it
+
+  @Test public void removeKeepsCollidingKeysReachable()
+  {
+    IntObjectMap<Integer> map = new IntObjectMap<>();
+
+    for (int key = 0; key < 1000; key += 16)
+      map.put(key, key);
+
+    for (int key = 0; key < 1000; key += 32)
+      assertEquals(Integer.valueOf(key), map.remove(key));
+
+    for (int key = 0; key < 1000; key += 16)
+      assertEquals(key % 32 == 0 ? null : Integer.valueOf(key), map.get(key));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void agreesWithHashMap()
+  {
+    IntObjectMap<Integer> map = new IntObjectMap<>();
+    Map<Integer, Integer> expected = new HashMap<>();
+    Random random = new Random(7);
+
+    for (int ndx = 0; ndx < 200000; ndx++)
+    {
+      int key = random.nextInt(5000) - 100, value = random.nextInt();
+
+      if (random.nextInt(3) == 0)
+        assertEquals(expected.remove(key), map.remove(key));
+      else
+        assertEquals(expected.put(key, value), map.put(key, value));
+
+      assertEquals(expected.size(), map.size());
+    }
+
+    for (int key = -100; key < 4900; key++)
+      assertEquals(expected.get(key), map.get(key));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
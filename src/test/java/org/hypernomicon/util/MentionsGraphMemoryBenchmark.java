@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.util;
+
+import static org.hypernomicon.model.records.HDT_RecordType.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.hypernomicon.model.records.HDT_Record;
+
+import com.google.common.collect.Sets;
+
+//---------------------------------------------------------------------------
+
+// Measures the heap taken by the two maps of a mentions index over 100k records, stored the way
+// BidiOneToManyRecordMap used to store them (a Guava concurrent hash set per record) and the way it does now
+// (one RecordSet array per record), as the change in used heap after a full GC. Then times reading every
+// record's mentioners, and the bytes allocated doing it, three ways: through the old map's unmodifiable views,
+// through getForwardSet, which copies each set, and through forEachForward, which does not. Each record mentions
+// up to 20 others, most often the ones with low IDs, so a few records have many mentioners. The stand-in records
+// allocate a little on each hash lookup, which is the allocation left when nothing is copied. This is not run by
+// the test suite; run it with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.util.MentionsGraphMemoryBenchmark
+
+public final class MentionsGraphMemoryBenchmark
+{
+  private static final int RECORD_COUNT = 100000, MAX_MENTIONS = 20, ROUNDS = 5;
+
+  private static final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private static long sink;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // BidiOneToManyRecordMap as it was, reduced to what the mentions index uses here
+
+  private static final class OldMap
+  {
+    private final Map<HDT_Record, Set<HDT_Record>> forwardMap = new ConcurrentHashMap<>(),
+                                                   reverseMap = new ConcurrentHashMap<>();
+
+    private void addForward(HDT_Record fromRecord, HDT_Record toRecord)
+    {
+      forwardMap.computeIfAbsent(fromRecord, record -> Sets.newConcurrentHashSet()).add(toRecord);
+      reverseMap.computeIfAbsent(toRecord, record -> Sets.newConcurrentHashSet()).add(fromRecord);
+    }
+
+    private Set<HDT_Record> getForwardSet(HDT_Record fromRecord)
+    {
+      return Collections.unmodifiableSet(forwardMap.getOrDefault(fromRecord, Collections.emptySet()));
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args)
+  {
+    List<HDT_Record> records = new ArrayList<>(RECORD_COUNT);
+
+    for (int id = 1; id <= RECORD_COUNT; id++)
+      records.add(newRecord(id));
+
+    Random random = new Random(1);
+    List<int[]> mentions = new ArrayList<>();  // { target, mentioner, in description (0 or 1) }
+
+    for (int mentioner = 0; mentioner < RECORD_COUNT; mentioner++)
+      for (int ndx = random.nextInt(MAX_MENTIONS + 1); ndx > 0; ndx--)
+        mentions.add(new int[] { (int) (RECORD_COUNT * Math.pow(random.nextDouble(), 3)), mentioner, random.nextInt(2) });
+
+    long oldBytes = heapUsedBy(() -> buildOld(records, mentions)),
+         newBytes = heapUsedBy(() -> buildNew(records, mentions));
+
+    System.out.printf("%,d records, %,d mentions%n%n", RECORD_COUNT, mentions.size());
+    System.out.printf("Heap for both maps, before: %,7.1f MB (%5.1f bytes per mention)%n", oldBytes / 1e6, (double) oldBytes / mentions.size());
+    System.out.printf("Heap for both maps, now:    %,7.1f MB (%5.1f bytes per mention)%n%n", newBytes / 1e6, (double) newBytes / mentions.size());
+
+    OldMap oldAnywhere = buildOld(records, mentions)[1];
+    BidiOneToManyRecordMap newAnywhere = buildNew(records, mentions)[1];
+
+    read("Old map, unmodifiable views", () -> records.forEach(target -> oldAnywhere.getForwardSet(target).forEach(MentionsGraphMemoryBenchmark::visit)));
+    read("getForwardSet (copies)",      () -> records.forEach(target -> newAnywhere.getForwardSet(target).forEach(MentionsGraphMemoryBenchmark::visit)));
+    read("forEachForward",              () -> records.forEach(target -> newAnywhere.forEachForward(target, MentionsGraphMemoryBenchmark::visit)));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // The description and anywhere maps of the index
+
+  private static OldMap[] buildOld(List<HDT_Record> records, List<int[]> mentions)
+  {
+    OldMap desc = new OldMap(), anywhere = new OldMap();
+
+    for (int[] mention : mentions)
+    {
+      anywhere.addForward(records.get(mention[0]), records.get(mention[1]));
+      if (mention[2] == 1) desc.addForward(records.get(mention[0]), records.get(mention[1]));
+    }
+
+    return new OldMap[] { desc, anywhere };
+  }
+
+  private static BidiOneToManyRecordMap[] buildNew(List<HDT_Record> records, List<int[]> mentions)
+  {
+    BidiOneToManyRecordMap desc = new BidiOneToManyRecordMap(), anywhere = new BidiOneToManyRecordMap();
+
+    for (int[] mention : mentions)
+    {
+      anywhere.addForward(records.get(mention[0]), records.get(mention[1]));
+      if (mention[2] == 1) desc.addForward(records.get(mention[0]), records.get(mention[1]));
+    }
+
+    return new BidiOneToManyRecordMap[] { desc, anywhere };
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static long heapUsedBy(Supplier<Object> builder)
+  {
+    long before = usedHeap();
+    Object built = builder.get();
+    long after = usedHeap();
+
+    Reference.reachabilityFence(built);
+    return after - before;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void visit(HDT_Record record) { sink += System.identityHashCode(record); }
+
+  private static void read(String name, Runnable reader)
+  {
+    for (int round = 0; round < ROUNDS; round++)  // Warm-up
+      reader.run();
+
+    long bestNanos = Long.MAX_VALUE, bestBytes = Long.MAX_VALUE;
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      long bytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()), start = System.nanoTime();
+
+      reader.run();
+
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+      bestBytes = Math.min(bestBytes, threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes);
+    }
+
+    System.out.printf("Read all mentioners, %-28s %7.1f ms, %,7.1f MB allocated%n", name + ':', bestNanos / 1e6, bestBytes / 1e6);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static long usedHeap()
+  {
+    for (int ndx = 0; ndx < 3; ndx++)
+      System.gc();
+
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static HDT_Record newRecord(int id)
+  {
+    return (HDT_Record) Proxy.newProxyInstance(HDT_Record.class.getClassLoader(), new Class<?>[] { HDT_Record.class }, (proxy, method, args) ->
+    {
+      switch (method.getName())
+      {
+        case "getType"  : return hdtPerson;
+        case "getID"    : return id;
+        case "hashCode" : return System.identityHashCode(proxy);
+        case "equals"   : return proxy == args[0];
+        default         : return null;
+      }
+    });
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
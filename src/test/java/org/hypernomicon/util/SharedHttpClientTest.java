@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.util;
+
+import static java.nio.charset.StandardCharsets.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+//---------------------------------------------------------------------------
+
+public class SharedHttpClientTest
+{
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private String baseUrl;
+
+  private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger activeRequests = new AtomicInteger(), maxActiveRequests = new AtomicInteger();
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Before public void startServer() throws IOException
+  {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+
+    server.createContext("/items", exchange -> respond(exchange, 0));
+    server.createContext("/slow" , exchange -> respond(exchange, 200));
+
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @After public void stopServer()
+  {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+    SharedHttpClient.setInstance(null);  // The next caller gets a new default client
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private void respond(HttpExchange exchange, int delayMillis) throws IOException
+  {
+    clientPorts.add(exchange.getRemoteAddress().getPort());
+    maxActiveRequests.accumulateAndGet(activeRequests.incrementAndGet(), Math::max);
+
+    try
+    {
+      Thread.sleep(delayMillis);
+
+      byte[] body = "[{\"key\":\"ABCD1234\"}]".getBytes(UTF_8);
+
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+
+      try (OutputStream out = exchange.getResponseBody()) { out.write(body); }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      activeRequests.decrementAndGet();
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static String get(SharedHttpClient client, String url) throws IOException
+  {
+    return client.getClient().execute(new HttpGet(url), response -> EntityUtils.toString(response.getEntity(), UTF_8));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void reusesConnectionAndCountsRequests() throws IOException
+  {
+    SharedHttpClient client = new SharedHttpClient(4, 2);
+    SharedHttpClient.setInstance(client);
+    assertSame(client, SharedHttpClient.get());
+
+    for (int ndx = 0; ndx < 10; ndx++)
+      assertEquals("[{\"key\":\"ABCD1234\"}]", get(client, baseUrl + "items"));
+
+    assertEquals(1, clientPorts.size());  // Every request went over the same kept-alive connection
+    assertEquals(10, client.getRequestCount());
+    assertEquals(10, client.getResponseCount());
+    assertEquals(1, client.getPoolStats().getAvailable());
+    assertTrue(client.toString().startsWith("Requests: 10, responses: 10"));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void limitsConnectionsPerHost() throws Exception
+  {
+    SharedHttpClient client = new SharedHttpClient(4, 2);
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+
+    try
+    {
+      List<Future<String>> futures = new ArrayList<>();
+
+      for (int ndx = 0; ndx < 6; ndx++)
+        futures.add(executor.submit(() -> get(client, baseUrl + "slow")));
+
+      for (Future<String> future : futures)
+        assertEquals("[{\"key\":\"ABCD1234\"}]", future.get());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+
+    assertTrue(maxActiveRequests.get() <= 2);
+    assertTrue(clientPorts.size() <= 2);
+    assertEquals(6, client.getResponseCount());
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
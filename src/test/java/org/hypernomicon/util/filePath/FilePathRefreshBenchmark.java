@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.hypernomicon.util.filePath;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+//---------------------------------------------------------------------------
+
+// Times the path work of a File Manager refresh of a folder with 20k files: each directory entry gets a new
+// path, which is looked up in an index of the paths that records point to, and each subfolder is matched
+// against the folder tree. The refresh is timed with the identity cache cleared first, as it is after the
+// folder watcher sees a change, and with the cache warm. For comparison, the same lookups are done the way
+// equality used to work, with Files.isSameFile for every match. This is not run by the test suite; run it with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.util.filePath.FilePathRefreshBenchmark
+
+public final class FilePathRefreshBenchmark
+{
+  private static final int FILE_COUNT = 20000, FOLDER_COUNT = 200, ROUNDS = 5;
+
+  private static volatile int sink;  // Keeps the lookups from being optimized away
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args) throws IOException
+  {
+    Path dir = Files.createTempDirectory("hypernomicon").toRealPath();
+
+    try
+    {
+      List<Path> folders = new ArrayList<>();
+
+      for (int ndx = 0; ndx < FILE_COUNT; ndx++)
+        Files.createFile(dir.resolve(String.format("file%05d.pdf", ndx)));
+
+      for (int ndx = 0; ndx < FOLDER_COUNT; ndx++)
+        folders.add(Files.createDirectory(dir.resolve(String.format("folder%03d", ndx))));
+
+      // Every other file is in the index, as if it were attached to a record
+
+      Map<InnerFilePath, Integer> index = new HashMap<>();
+      Map<Path, Integer> oldIndex = new HashMap<>();
+
+      for (int ndx = 0; ndx < FILE_COUNT; ndx += 2)
+      {
+        Path path = dir.resolve(String.format("file%05d.pdf", ndx));
+
+        index.put(new InnerFilePath(path.toString()), ndx);
+        oldIndex.put(path, ndx);
+      }
+
+      List<InnerFilePath> treeFolders = new ArrayList<>();
+      folders.forEach(folder -> treeFolders.add(new InnerFilePath(folder.toString())));
+
+      refresh(dir, index, treeFolders, true);  // Warm-up
+      refreshTheOldWay(dir, oldIndex, folders);
+
+      System.out.printf("%,d files, %,d folders%n", FILE_COUNT, FOLDER_COUNT);
+      System.out.printf("  cache cleared first:    %,6d ms%n", best(() -> refresh(dir, index, treeFolders, true)) / 1000000);
+      System.out.printf("  cache warm:             %,6d ms%n", best(() -> refresh(dir, index, treeFolders, false)) / 1000000);
+      System.out.printf("  Files.isSameFile (old): %,6d ms%n", best(() -> refreshTheOldWay(dir, oldIndex, folders)) / 1000000);
+    }
+    finally
+    {
+      try (Stream<Path> paths = Files.walk(dir))
+      {
+        for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+          Files.delete(path);
+      }
+
+      InnerFilePath.clearCanonicalPathCache();
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @FunctionalInterface private interface Refresh { void run() throws IOException; }
+
+  private static long best(Refresh refresh) throws IOException
+  {
+    long bestNanos = Long.MAX_VALUE;
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      long start = System.nanoTime();
+      refresh.run();
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+    }
+
+    return bestNanos;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void refresh(Path dir, Map<InnerFilePath, Integer> index, List<InnerFilePath> treeFolders, boolean clearCache) throws IOException
+  {
+    if (clearCache)
+      InnerFilePath.clearCanonicalPathCache();
+
+    int found = 0;
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir))
+    {
+      for (Path entry : stream)
+      {
+        InnerFilePath filePath = new InnerFilePath(entry);
+
+        if (index.containsKey(filePath)) found++;
+
+        if (Files.isDirectory(entry))
+          for (InnerFilePath treeFolder : treeFolders)
+            if (treeFolder.equals(filePath)) { found++; break; }
+      }
+    }
+
+    sink = found;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static void refreshTheOldWay(Path dir, Map<Path, Integer> index, List<Path> treeFolders) throws IOException
+  {
+    int found = 0;
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir))
+    {
+      for (Path entry : stream)
+      {
+        if (index.containsKey(entry)) found++;  // Files.isSameFile returns right away for equal paths
+
+        if (Files.isDirectory(entry))
+          for (Path treeFolder : treeFolders)
+            if (Files.isSameFile(treeFolder, entry)) { found++; break; }
+      }
+    }
+
+    sink = found;
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hypernomicon.util.filePath;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+//---------------------------------------------------------------------------
+
+public class InnerFilePathTest
+{
+  private Path dir;
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Before public void createDir() throws IOException
+  {
+    dir = Files.createTempDirectory("hypernomicon").toRealPath();
+    Files.writeString(dir.resolve("a.txt"), "a");
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @After public void deleteDir() throws IOException
+  {
+    try (Stream<Path> paths = Files.walk(dir))
+    {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+        Files.delete(path);
+    }
+
+    InnerFilePath.clearCanonicalPathCache();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static boolean trySymbolicLink(Path link, Path target)
+  {
+    try
+    {
+      Files.createSymbolicLink(link, target);
+      return true;
+    }
+    catch (IOException | UnsupportedOperationException | SecurityException e)
+    {
+      return false;
+    }
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void differentSpellingsAreEqual()
+  {
+    InnerFilePath path1 = new InnerFilePath(dir.resolve("a.txt")),
+                  path2 = new InnerFilePath(dir.resolve("sub/../a.txt").toString()),
+                  path3 = new InnerFilePath(dir.resolve("a.txt").toFile());
+
+    assertEquals(path1, path2);
+    assertEquals(path1, path3);
+    assertEquals(path1.hashCode(), path2.hashCode());
+    assertNotEquals(path1, new InnerFilePath(dir.resolve("b.txt")));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // Hard links are different paths, so they are not equal, but isSameFile recognizes them
+
+  @Test public void hardLinksAreSameFileButNotEqual() throws IOException
+  {
+    try
+    {
+      Files.createLink(dir.resolve("hard.txt"), dir.resolve("a.txt"));
+    }
+    catch (UnsupportedOperationException e)
+    {
+      assumeTrue(false);
+    }
+
+    InnerFilePath original = new InnerFilePath(dir.resolve("a.txt")),
+                  hardLink = new InnerFilePath(dir.resolve("hard.txt"));
+
+    assertNotEquals(original, hardLink);
+    assertTrue(original.isSameFile(hardLink));
+    assertTrue(hardLink.isSameFile(original));
+    assertFalse(original.isSameFile(new InnerFilePath(dir.resolve("b.txt"))));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  // A path that does not exist is resolved through its nearest existing ancestor
+
+  @Test public void missingFileUnderLinkedFolder() throws IOException
+  {
+    Files.createDirectory(dir.resolve("real"));
+    assumeTrue(trySymbolicLink(dir.resolve("link"), dir.resolve("real")));
+
+    assertEquals(new InnerFilePath(dir.resolve("real/missing.txt")), new InnerFilePath(dir.resolve("link/missing.txt")));
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  @Test public void clearingTheCacheRefreshesExistingPaths() throws IOException
+  {
+    InnerFilePath target = new InnerFilePath(dir.resolve("b.txt")),
+                  link   = new InnerFilePath(dir.resolve("link.txt"));
+
+    assertNotEquals(target, link);
+
+    Files.writeString(dir.resolve("b.txt"), "b");
+    assumeTrue(trySymbolicLink(dir.resolve("link.txt"), dir.resolve("b.txt")));
+
+    assertNotEquals(target, link);  // Still cached
+
+    InnerFilePath.clearCanonicalPathCache();
+
+    assertEquals(target, link);
+    assertEquals(target.hashCode(), link.hashCode());  // The hash code follows the new real path, like equals
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015-2020 Jason Winning
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.hypernomicon.view;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.hypernomicon.view.OmniFinderIndex.StringIndex;
+
+//---------------------------------------------------------------------------
+
+// Times the OmniFinder name tiers on 100k synthetic record names: building the exact, prefix and substring
+// indexes, answering queries taken from the names (the OmniFinder target is first results in under 20 ms), and
+// reindexing renamed records, which is what a search does first after names have changed. This is not run by
+// the test suite; run it with:
+//
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.hypernomicon.view.OmniFinderIndexBenchmark
+
+public final class OmniFinderIndexBenchmark
+{
+  private static final int SIZE = 100000, QUERIES = 1000, RENAMES = 1000, ROUNDS = 3;
+
+  private static final String[] WORDS = { "being", "time", "mind", "nature", "reason", "critique", "pure", "practical",
+    "essay", "human", "understanding", "treatise", "principles", "knowledge", "philosophy", "logic", "science",
+    "language", "truth", "meaning", "world", "history", "spirit", "phenomenology", "perception", "consciousness",
+    "ethics", "morals", "justice", "freedom", "will", "representation", "substance", "causation", "necessity" };
+
+  private static volatile int sink;  // Keeps the lookups from being optimized away
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  public static void main(String[] args)
+  {
+    Random random = new Random(SIZE);
+    String[] names = new String[SIZE + 1], newNames = new String[RENAMES];
+
+    for (int id = 1; id <= SIZE; id++)
+      names[id] = randomName(random);
+
+    for (int ndx = 0; ndx < RENAMES; ndx++)
+      newNames[ndx] = randomName(random);
+
+    String[] exactQueries = new String[QUERIES], prefixQueries = new String[QUERIES], containsQueries = new String[QUERIES];
+
+    for (int ndx = 0; ndx < QUERIES; ndx++)
+    {
+      String name = names[1 + random.nextInt(SIZE)];
+      int start = random.nextInt(name.length() - 4);
+
+      exactQueries[ndx] = name;
+      prefixQueries[ndx] = name.substring(0, 1 + random.nextInt(name.length()));
+      containsQueries[ndx] = name.substring(start, start + 3 + random.nextInt(Math.min(10, name.length() - start - 3)));
+    }
+
+    long buildNanos = Long.MAX_VALUE, exactNanos = Long.MAX_VALUE, prefixNanos = Long.MAX_VALUE, containsNanos = Long.MAX_VALUE,
+         worstNanos = Long.MAX_VALUE, renameNanos = Long.MAX_VALUE;
+
+    for (int round = 0; round <= ROUNDS; round++)  // Round 0 is the warm-up
+    {
+      StringIndex exact = new StringIndex(false), prefix = new StringIndex(false), contains = new StringIndex(true);
+
+      long start = System.nanoTime();
+
+      for (int id = 1; id <= SIZE; id++)
+      {
+        exact   .put(id, names[id]);
+        prefix  .put(id, names[id]);
+        contains.put(id, names[id]);
+      }
+
+      long build = System.nanoTime() - start, worst = 0;
+
+      long[] tierNanos = new long[3];
+      StringIndex[] indexes = { exact, prefix, contains };
+      String[][] queries = { exactQueries, prefixQueries, containsQueries };
+
+      for (int tier = 0; tier < 3; tier++)
+        for (String query : queries[tier])
+        {
+          long queryStart = System.nanoTime();
+
+          BitSet matches = tier == 0 ? indexes[tier].equalTo(query) : (tier == 1 ? indexes[tier].startingWith(query) : indexes[tier].containing(query));
+          sink += matches.nextSetBit(0);
+
+          long nanos = System.nanoTime() - queryStart;
+          tierNanos[tier] += nanos;
+          worst = Math.max(worst, nanos);
+        }
+
+      start = System.nanoTime();
+
+      for (int ndx = 0; ndx < RENAMES; ndx++)
+      {
+        int id = 1 + ndx * (SIZE / RENAMES);
+
+        for (StringIndex index : indexes)
+        {
+          index.remove(id);
+          index.put(id, newNames[ndx]);
+        }
+      }
+
+      long rename = System.nanoTime() - start;
+
+      if (round == 0) continue;
+
+      buildNanos    = Math.min(buildNanos   , build);
+      exactNanos    = Math.min(exactNanos   , tierNanos[0]);
+      prefixNanos   = Math.min(prefixNanos  , tierNanos[1]);
+      containsNanos = Math.min(containsNanos, tierNanos[2]);
+      worstNanos    = Math.min(worstNanos   , worst);
+      renameNanos   = Math.min(renameNanos  , rename);
+    }
+
+    System.out.printf("%,d records: build %.1f ms; mean query: exact %.3f ms, prefix %.3f ms, substring %.3f ms; slowest query %.2f ms; rename %.1f us per record%n",
+                      SIZE, buildNanos / 1e6, exactNanos / 1e6 / QUERIES, prefixNanos / 1e6 / QUERIES, containsNanos / 1e6 / QUERIES,
+                      worstNanos / 1e6, renameNanos / 1e3 / RENAMES);
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+  private static String randomName(Random random)
+  {
+    StringBuilder name = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+
+    for (int words = 2 + random.nextInt(5); words > 0; words--)
+      name.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+
+    return name.toString();
+  }
+
+//---------------------------------------------------------------------------
+//---------------------------------------------------------------------------
+
+}